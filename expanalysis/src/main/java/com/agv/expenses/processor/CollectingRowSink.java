@@ -0,0 +1,34 @@
+package com.agv.expenses.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.TransactionRecord;
+
+/**
+ * Default sink which keeps the rows in memory for the buffered response.
+ */
+public class CollectingRowSink implements StatementRowSink {
+
+    private final List<TransactionRecord> rows = new ArrayList<>();
+    private final List<StatementProcessErrorRow> errorRows = new ArrayList<>();
+
+    @Override
+    public void onRow(TransactionRecord row) {
+        rows.add(row);
+    }
+
+    @Override
+    public void onError(StatementProcessErrorRow errorRow) {
+        errorRows.add(errorRow);
+    }
+
+    public TransactionRecord[] getRows() {
+        return rows.toArray(TransactionRecord[]::new);
+    }
+
+    public StatementProcessErrorRow[] getErrorRows() {
+        return errorRows.toArray(StatementProcessErrorRow[]::new);
+    }
+}
@@ -0,0 +1,86 @@
+package com.agv.expenses.processor;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.TransactionRecord;
+
+/**
+ * Writes every row as one CSV record to the given stream, optionally gzip
+ * compressed, in the columns of the Google Sheets rows. Rows are passed on
+ * through a small buffer and not kept, so an export of any length needs the
+ * same memory. Error rows are counted but not written, the file holds
+ * transactions only. Text a spreadsheet would evaluate as a formula, e.g. a
+ * payee starting with '=', is written with a leading apostrophe.
+ * <p>
+ * {@link #close()} must be called to write the end of the compressed stream;
+ * it also closes the given stream.
+ */
+public class CsvRowSink implements StatementRowSink, Closeable {
+
+    public static final String[] HEADER = { "Date", "From", "To", "Subject", "Paid To", "Amount", "Body Cleaned",
+            "Subscriber ID", "Order ID", "Link", "Message", "Transaction Flag" };
+    private static final CSVFormat FORMAT = CSVFormat.DEFAULT.builder().setHeader(HEADER).get();
+    // First characters of a cell which spreadsheets take as the start of a formula
+    private static final String FORMULA_PREFIXES = "=+-@\t\r";
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    private final CSVPrinter printer;
+    private long rowCount;
+    private long errorCount;
+
+    public CsvRowSink(OutputStream out, boolean gzip) throws IOException {
+        OutputStream stream = gzip ? new GZIPOutputStream(out) : out;
+        this.printer = new CSVPrinter(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)),
+                FORMAT);
+    }
+
+    @Override
+    public void onRow(TransactionRecord row) throws IOException {
+        List<Object> cells = row.toSheetRow();
+        cells.replaceAll(CsvRowSink::escapeFormula);
+        printer.printRecord(cells);
+        rowCount++;
+    }
+
+    /**
+     * @return the cell, text which would start a formula prefixed with an
+     *         apostrophe; negative amounts are left alone
+     */
+    static Object escapeFormula(Object cell) {
+        if (cell instanceof String text && !text.isEmpty() && FORMULA_PREFIXES.indexOf(text.charAt(0)) >= 0
+                && !NUMBER.matcher(text).matches()) {
+            return "'" + text;
+        }
+        return cell;
+    }
+
+    @Override
+    public void onError(StatementProcessErrorRow errorRow) {
+        errorCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        printer.close(true);
+    }
+}
@@ -0,0 +1,372 @@
+package com.agv.expenses.processor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.support.DefaultExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.agv.expenses.service.PDFTextExtractor;
+import com.agv.expenses.service.ProcessedFileRepository;
+import com.agv.expenses.service.StatementCache;
+import com.agv.expenses.service.StatementDocument;
+import com.agv.expenses.service.StatementDocumentLoader;
+import com.agv.expenses.service.StatementParserRegistry;
+import com.agv.expenses.service.TransactionStore;
+import com.agv.expenses.service.model.FolderIngestionSummary;
+import com.agv.expenses.service.model.ReconciliationSummary;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Ingests the statement files of one poll of <code>data.input.folder</code>,
+ * the body being the list of their absolute paths.
+ * <p>
+ * Files are decrypted, extracted and recognised on a pool of
+ * <code>expense.folder.max-concurrency</code> threads, PhonePe statements are
+ * parsed there as well. The results are then merged in a fixed order: the
+ * PhonePe statements first, as the bank statements are reconciled against
+ * them, then the bank statements, each by the start of the statement period
+ * and the file name. The PhonePe rows of earlier polls are taken from the
+ * {@link TransactionStore}. Bank statements are parsed during the merge, one at a
+ * time, because which PhonePe payment a fuzzy match claims depends on the
+ * rows matched before. Before the first of them is parsed, the payments whose
+ * UTR occurs in any bank statement of the poll are reserved for their exact
+ * match, so that a fuzzy match of an earlier statement cannot take them. The
+ * master data map, the transaction store and the reconciliation are
+ * therefore the same as when the files are ingested one by one, whatever
+ * order they were polled or extracted in.
+ * <p>
+ * The rows are stored once all statements are merged, the PhonePe rows as
+ * enriched by the bank statements. <code>MASTER_DATA_MAP</code> is left with
+ * the PhonePe rows of this poll only; the rows of earlier polls which it
+ * enriched are updated in the store and handed on in
+ * <code>EXCH_PROPERTY_UPDATED_ROWS</code>.
+ * <p>
+ * A file which fails is logged and removed from the
+ * {@link ProcessedFileRepository}, so that it is picked up again by the next
+ * poll, as Camel does for a failed exchange; the other files of the poll are
+ * ingested regardless.
+ */
+@Component
+public class FolderIngestionProcessor implements Processor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FolderIngestionProcessor.class);
+    private static final String THREAD_POOL_NAME = "FolderIngestion";
+    private static final String MASTER_DATA_MAP = "MASTER_DATA_MAP";
+    private static final Comparator<Extracted> MERGE_ORDER = Comparator
+            .comparing((Extracted statement) -> !statement.parser().isReference())
+            .thenComparing(Extracted::startDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(statement -> statement.file().getFileName().toString())
+            .thenComparing(Extracted::file);
+
+    @Autowired
+    private CamelContext camelContext;
+    @Autowired
+    private StatementParserRegistry statementParserRegistry;
+    @Autowired
+    private StatementDocumentLoader statementDocumentLoader;
+    @Autowired
+    private PDFTextExtractor pdfTextExtractor;
+    @Autowired
+    private StatementCache statementCache;
+    @Autowired
+    private TransactionStore transactionStore;
+    @Autowired
+    private ProcessedFileRepository processedFiles;
+    @Value("${expense.folder.max-concurrency:4}")
+    private int maxConcurrency = 4;
+    @Value("${expense.reconcile.date-window-days:1}")
+    private int reconcileDateWindowDays = 1;
+    @Value("${expense.reconcile.amount-tolerance:1.00}")
+    private String reconcileAmountTolerance = "1.00";
+    @Value("${expense.reconcile.min-confidence:0.5}")
+    private double reconcileMinConfidence = 0.5;
+    @Value("${expense.reconcile.merge-confidence:0.8}")
+    private double reconcileMergeConfidence = 0.8;
+
+    private volatile ExecutorService executor;
+    private volatile FolderIngestionSummary lastSummary;
+
+    /**
+     * @param parser    recognised format
+     * @param startDate start of the statement period, null if not known
+     * @param exchange  exchange the statement was parsed on, null for bank
+     *                  statements, which are parsed during the merge
+     */
+    private record Extracted(Path file, String sourceKey, StatementParser parser, String text, LocalDate startDate,
+            Exchange exchange) {
+    }
+
+    /**
+     * Rows of a merged statement, stored once the merge is done.
+     */
+    private record Parsed(Extracted statement, TransactionRecord[] rows) {
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        List<String> paths = toPaths(exchange.getIn().getBody());
+        List<String> failedFiles = new ArrayList<>();
+        long start = System.nanoTime();
+        List<Extracted> statements = extractAll(paths, failedFiles);
+        long extracted = System.nanoTime();
+
+        statements.sort(MERGE_ORDER);
+        // PhonePe rows of earlier polls, bank statements are not always polled along with theirs
+        Map<String, TransactionRecord> earlier = transactionStore.getPhonePeRows();
+        Map<String, TransactionRecord> masterDataMap = new ConcurrentHashMap<>(earlier);
+        List<Parsed> merged = new ArrayList<>(statements.size());
+        Exchange bankExchange = new DefaultExchange(camelContext);
+        bankExchange.setProperty(MASTER_DATA_MAP, masterDataMap);
+        ReconciliationSummary reconciliation = null;
+        boolean reserved = false;
+        int rows = 0;
+        for (Extracted statement : statements) {
+            try {
+                TransactionRecord[] parsed;
+                if (statement.exchange() == null && !reserved) {
+                    // All PhonePe rows are merged, bank statements follow
+                    reserve(statements, bankExchange);
+                    reserved = true;
+                }
+                if (statement.exchange() != null) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, TransactionRecord> referenceRows = statement.exchange()
+                            .getProperty(MASTER_DATA_MAP, Map.class);
+                    if (referenceRows != null) {
+                        masterDataMap.putAll(referenceRows);
+                    }
+                    parsed = statement.exchange().getProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD,
+                            TransactionRecord[].class);
+                } else {
+                    parsed = parse(statement, bankExchange, masterDataMap);
+                    ReconciliationSummary summary = bankExchange.getProperty(
+                            ExpenseUtil.EXCH_PROPERTY_RECONCILIATION, ReconciliationSummary.class);
+                    reconciliation = (summary != null) ? summary : reconciliation;
+                }
+                if (parsed != null) {
+                    merged.add(new Parsed(statement, parsed));
+                }
+            } catch (Exception e) {
+                fail(statement.file(), e, failedFiles);
+            }
+        }
+        for (Parsed parsed : merged) {
+            Extracted statement = parsed.statement();
+            try {
+                // Enriched by the bank statements merged after it
+                List<TransactionRecord> records = Arrays.stream(parsed.rows())
+                        .map(row -> statement.parser().isReference() ? current(row, masterDataMap) : row)
+                        .toList();
+                transactionStore.add(statement.sourceKey(), records);
+                rows += records.size();
+                LOG.info("Ingested {} ({}, period from {})", statement.file().getFileName(),
+                        statement.parser().getName(), statement.startDate());
+            } catch (Exception e) {
+                fail(statement.file(), e, failedFiles);
+            }
+        }
+        List<TransactionRecord> updated = new ArrayList<>();
+        Map<String, TransactionRecord> polled = new HashMap<>();
+        masterDataMap.forEach((utr, row) -> {
+            TransactionRecord before = earlier.get(utr);
+            if (before == null) {
+                polled.put(utr, row);
+            } else if (!Objects.equals(before.getPaidTo(), row.getPaidTo())) {
+                updated.add(row);
+            }
+        });
+        if (!updated.isEmpty()) {
+            transactionStore.updatePayees(updated);
+        }
+
+        FolderIngestionSummary summary = FolderIngestionSummary.builder()
+                .files(paths.size())
+                .statements(paths.size() - failedFiles.size())
+                .failedFiles(failedFiles)
+                .rows(rows)
+                .reconciliation(reconciliation)
+                .concurrency(Math.min(maxConcurrency, paths.size()))
+                .extractMs((extracted - start) / 1_000_000)
+                .mergeMs((System.nanoTime() - extracted) / 1_000_000)
+                .build();
+        lastSummary = summary;
+        LOG.info("Ingested {} of {} statement files, {} rows, extraction {} ms, merge {} ms",
+                summary.getStatements(), summary.getFiles(), rows, summary.getExtractMs(), summary.getMergeMs());
+        exchange.setProperty(MASTER_DATA_MAP, polled);
+        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_UPDATED_ROWS, updated);
+        if (reconciliation != null) {
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RECONCILIATION, reconciliation);
+        }
+        exchange.getIn().setBody(summary);
+    }
+
+    /**
+     * @return summary of the last poll of the folder, null if none was
+     *         ingested yet
+     */
+    public FolderIngestionSummary getLastSummary() {
+        return lastSummary;
+    }
+
+    /**
+     * Extracts the files concurrently, the results are in the order of the
+     * paths and exclude the files which failed.
+     */
+    private List<Extracted> extractAll(List<String> paths, List<String> failedFiles) throws InterruptedException {
+        List<Future<Extracted>> futures = new ArrayList<>(paths.size());
+        // A single file is not worth a hand-off to the pool
+        ExecutorService pool = (paths.size() > 1 && maxConcurrency > 1) ? getExecutor() : null;
+        for (String path : paths) {
+            if (pool != null) {
+                futures.add(pool.submit(() -> extract(path)));
+            }
+        }
+        List<Extracted> statements = new ArrayList<>(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            Path file = Path.of(paths.get(i));
+            try {
+                statements.add((pool != null) ? futures.get(i).get() : extract(paths.get(i)));
+            } catch (ExecutionException e) {
+                fail(file, e.getCause(), failedFiles);
+            } catch (Exception e) {
+                fail(file, e, failedFiles);
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Decrypts and extracts the file, the text is taken from the statement
+     * cache if the content was extracted before, and parses it if it is a
+     * reference statement.
+     */
+    private Extracted extract(String path) throws Exception {
+        Path file = Path.of(path);
+        String contentKey = processedFiles.contentKey(path);
+        String text = (contentKey == null) ? null : statementCache.getText(StatementCache.textKey(contentKey));
+        StatementParser parser;
+        if (text != null) {
+            parser = statementParserRegistry.detect(null, text);
+        } else {
+            try (StatementDocument document = statementDocumentLoader.load(file)) {
+                StatementParserRegistry.Detection detection = statementParserRegistry.detect(document);
+                parser = detection.parser();
+                text = pdfTextExtractor.extractText(document, detection.password());
+            }
+            if (contentKey != null) {
+                statementCache.putText(StatementCache.textKey(contentKey), text);
+            }
+        }
+        if (parser == null || !parser.isPdf()) {
+            throw new IllegalArgumentException("Statement format is not recognised");
+        }
+        String sourceKey = (contentKey != null) ? contentKey
+                : path + ":" + Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+        Exchange exchange = null;
+        if (parser.isReference()) {
+            exchange = new DefaultExchange(camelContext);
+            exchange.getIn().setBody(text);
+            parser.process(exchange);
+        }
+        return new Extracted(file, sourceKey, parser, text, parser.startDate(text), exchange);
+    }
+
+    /**
+     * Creates the reconciler of the bank statements and reserves the
+     * payments whose UTR occurs in any of them.
+     */
+    private void reserve(List<Extracted> statements, Exchange bankExchange) {
+        PhonePeReconciler reconciler = PhonePeReconciler.forExchange(bankExchange, reconcileDateWindowDays,
+                ExpenseUtil.toPaise(reconcileAmountTolerance, 0), reconcileMinConfidence,
+                reconcileMergeConfidence);
+        int reserved = 0;
+        for (Extracted statement : statements) {
+            if (statement.exchange() == null) {
+                reserved += reconciler.reserve(statement.text());
+            }
+        }
+        LOG.debug("Reserved {} PhonePe payments for their exact match", reserved);
+    }
+
+    /**
+     * Parses a bank statement on the exchange shared by the bank statements
+     * of the poll, which carries the reconciler of the master data map.
+     *
+     * @return the parsed rows, null if the parser does not report them
+     */
+    private static TransactionRecord[] parse(Extracted statement, Exchange exchange,
+            Map<String, TransactionRecord> masterDataMap) throws Exception {
+        exchange.removeProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD);
+        exchange.removeProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST);
+        exchange.removeProperty(ExpenseUtil.EXCH_PROPERTY_RECONCILIATION);
+        exchange.getIn().setBody(statement.text());
+        try {
+            statement.parser().process(exchange);
+        } finally {
+            // Some parsers leave a map of their own behind
+            exchange.setProperty(MASTER_DATA_MAP, masterDataMap);
+        }
+        return exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD, TransactionRecord[].class);
+    }
+
+    /**
+     * @return the PhonePe row as it is in the master data map, where bank
+     *         statements may have replaced it with an enriched copy
+     */
+    private static TransactionRecord current(TransactionRecord row, Map<String, TransactionRecord> masterDataMap) {
+        TransactionRecord current = (row.getMessage() == null) ? null : masterDataMap.get(row.getMessage());
+        return (current != null) ? current : row;
+    }
+
+    private void fail(Path file, Throwable e, List<String> failedFiles) {
+        LOG.error("Could not ingest {}, it is retried on the next poll", file, e);
+        failedFiles.add(file.getFileName().toString());
+        processedFiles.remove(file.toString());
+    }
+
+    private static List<String> toPaths(Object body) {
+        List<String> paths = new ArrayList<>();
+        if (body instanceof List<?> list) {
+            for (Object path : list) {
+                paths.add(String.valueOf(path));
+            }
+        } else if (body != null) {
+            paths.add(String.valueOf(body));
+        }
+        return paths;
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    // Managed by Camel so the pool is shut down along with the context
+                    executor = camelContext.getExecutorServiceManager().newFixedThreadPool(this, THREAD_POOL_NAME,
+                            maxConcurrency);
+                }
+            }
+        }
+        return executor;
+    }
+}
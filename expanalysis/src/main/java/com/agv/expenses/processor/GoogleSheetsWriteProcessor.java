@@ -1,38 +1,70 @@
 package com.agv.expenses.processor;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
-import com.google.api.services.sheets.v4.model.ValueRange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
 
+import com.agv.expenses.service.SheetsWriter;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Hands the rows of <code>MASTER_DATA_MAP</code> to the {@link SheetsWriter},
+ * which journals them, coalesces them with the rows of other statements and
+ * appends them in the background. The body is set to the number of rows
+ * queued, rows whose order id was queued or written before are not counted.
+ * <p>
+ * Rows of earlier polls which the statements of this one enriched, in
+ * <code>EXCH_PROPERTY_UPDATED_ROWS</code>, are rewritten in the sheet.
+ */
+@Component
 public class GoogleSheetsWriteProcessor implements org.apache.camel.Processor {
     
     
     private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(GoogleSheetsWriteProcessor.class);
 
+    @Autowired
+    private SheetsWriter sheetsWriter;
+    @Value("${google.sheets.write.enabled:true}")
+    private boolean enabled;
+
     @Override
     public void process(org.apache.camel.Exchange exchange) throws Exception {
-        Map<String,List<Object>> masterDataMap =  (Map<String, List<Object>>) exchange.getProperty("MASTER_DATA_MAP");
-        /* 
-        for(List<Object> rowData : masterDataMap.values()){
-            if(!"alerts@phonepe.com".equals(rowData.get(1))){
-                LOG.info("Skipping PhonePe alert row for To: {}", rowData.get(2));
-            }else{
-                LOG.info("Processing PhonePe alert row for To: {}", rowData.get(2));
-            }
-            LOG.info("Key: {}, Value: ", rowData.get(5));
-        } */
+        Map<String,TransactionRecord> masterDataMap =  (Map<String, TransactionRecord>) exchange.getProperty("MASTER_DATA_MAP");
         if(masterDataMap!=null){
-            // 2. Wrap it in the official Google ValueRange object
-            ValueRange gsheetsData = new ValueRange();
-            gsheetsData.setValues(masterDataMap.values().stream().toList());
-            exchange.getIn().setHeader("CamelGoogleSheets.spreadsheetId", "1vNudr4ijhD8bo_NvCnphnIoiKRz3zjW-FTGVcK45a9c");
-            exchange.getIn().setHeader("CamelGoogleSheets.range", "Sheet1!A1");
-            exchange.getIn().setHeader("CamelGoogleSheets.values", gsheetsData);
-            exchange.getIn().setBody(gsheetsData);
+            // Rows are converted to cells only here
+            List<List<Object>> rows = masterDataMap.values().stream().map(TransactionRecord::toSheetRow).toList();
+            int queued = 0;
+            if (enabled) {
+                queued = sheetsWriter.submit(rows);
+                LOG.info("Queued {} of {} rows for Google Sheets", queued, rows.size());
+                update(exchange);
+            } else {
+                LOG.info("Google Sheets writes are disabled, skipping {} rows", rows.size());
+            }
+            exchange.getIn().setBody(queued);
         }else{
             LOG.warn("MASTER_DATA_MAP not found in exchange properties.");
         }
     }
+
+    private void update(org.apache.camel.Exchange exchange) throws InterruptedException {
+        @SuppressWarnings("unchecked")
+        List<TransactionRecord> updated = exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_UPDATED_ROWS, List.class);
+        if (updated == null || updated.isEmpty()) {
+            return;
+        }
+        try {
+            int rewritten = sheetsWriter.update(updated.stream().map(TransactionRecord::toSheetRow).toList());
+            LOG.info("Updated {} of {} enriched rows in Google Sheets", rewritten, updated.size());
+        } catch (IOException e) {
+            // The rows keep their earlier payee in the sheet, the store has the new one
+            LOG.error("Could not update {} enriched rows in Google Sheets", updated.size(), e);
+        }
+    }
     
 }
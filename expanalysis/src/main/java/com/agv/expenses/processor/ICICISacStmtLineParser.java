@@ -0,0 +1,410 @@
+package com.agv.expenses.processor;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.DatePattern;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Line parser for the text of ICICI savings account statements. The text is
+ * scanned once, line by line, without splitting it up front, and every line
+ * is classified by a small state machine:
+ * <ul>
+ * <li>{@link State#HEADER} until the column header of the transaction table,
+ * picking up the account number on the way</li>
+ * <li>{@link State#IN_TABLE} waiting for a line starting with a date</li>
+ * <li>{@link State#CAPTURING} collecting continuation lines of a transaction
+ * until its amounts are found</li>
+ * <li>{@link State#PAGE_FOOTER} on the totals line of a page, flushing an
+ * incomplete row before going back to the header state</li>
+ * </ul>
+ * Patterns are compiled once and matched against regions of the text, so
+ * only lines inside the table are copied into strings.
+ * <p>
+ * Debits without a reference are held back until the end of the text and
+ * only then matched to PhonePe payments on date and amount, after every
+ * other row had the chance to match its UTR exactly. The rows kept are
+ * passed on after the other rows of the statement.
+ * <p>
+ * A parser holds the state of one statement and is not thread safe.
+ */
+public class ICICISacStmtLineParser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ICICISacStmtLineParser.class);
+    static final String TXN_LOG_START_INDICATOR = "DATE MODE PARTICULARS DEPOSITS WITHDRAWALS BALANCE";
+    private static final Pattern ACC_NO_PATTERN = Pattern.compile("^Savings A/c\\s+(X{8}\\d{4})");
+    private static final Pattern TXN_AMT_PATTERN = Pattern
+            .compile("(\\d{1,3}(?:,\\d{2,3})*\\.\\d{2})(\\s+)(\\d{1,3}(?:,\\d{2,3})*\\.\\d{2})");
+    private static final Pattern PAGE_END_PATTERN = Pattern.compile("^Total:\\s");
+    private static final String BROUGHT_FORWARD_TOKEN = "  B/F  ";
+    private static final String FIELD_SEP_TOKEN = "###";
+    private static final String DEFAULT_FROM = "estatement.icicibank.com";
+    private static final int DATE_STR_LENGTH = 10;
+
+    enum State {
+        HEADER, IN_TABLE, CAPTURING, PAGE_FOOTER
+    }
+
+    /**
+     * Receives the rows of the statement in the order they are completed.
+     */
+    public interface RowHandler {
+        /**
+         * @param row row data, see {@link ExpenseUtil#DATA_ARRAY_SIZE} for
+         *            the layout
+         */
+        void onRow(String[] row) throws Exception;
+
+        /**
+         * @param line the trimmed line that could not be processed
+         * @param e    the cause
+         */
+        void onLineError(String line, Exception e) throws Exception;
+    }
+
+    private final Map<String, String> accountNameMap;
+    private final PhonePeReconciler reconciler;
+    private final RowHandler handler;
+    private final Matcher accNoMatcher = ACC_NO_PATTERN.matcher("");
+    private final Matcher pageEndMatcher = PAGE_END_PATTERN.matcher("");
+    private final Matcher txnAmountMatcher = TXN_AMT_PATTERN.matcher("");
+    // Debits without a reference, for the fuzzy pass at the end
+    private final List<PendingRow> pendingRows = new ArrayList<>();
+
+    private State state = State.HEADER;
+    private String accountNo = "";
+    private String[] currentRow;
+    private StringBuilder rawMsgString;
+    private StringBuilder txnDescString;
+
+    public ICICISacStmtLineParser(Map<String, String> accountNameMap, PhonePeReconciler reconciler,
+            RowHandler handler) {
+        this.accountNameMap = accountNameMap;
+        this.reconciler = reconciler;
+        this.handler = handler;
+    }
+
+    /**
+     * Parses the complete text of a statement.
+     */
+    public void parse(CharSequence text) throws Exception {
+        accNoMatcher.reset(text);
+        pageEndMatcher.reset(text);
+        int length = text.length();
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            // Same bounds as String.trim()
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && text.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && text.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (start < end) {
+                parseLine(text, start, end);
+            }
+            lineStart = lineEnd + 1;
+        }
+        reconcilePendingRows();
+    }
+
+    /**
+     * Second pass over the debits without a reference. A row replaced by a
+     * PhonePe row is dropped, one with a weaker match is kept with a note.
+     */
+    private void reconcilePendingRows() throws Exception {
+        for (PendingRow pending : pendingRows) {
+            String[] row = pending.row();
+            try {
+                PhonePeReconciler.Match match = reconciler.reconcile("", pending.date(), pending.amountPaise(),
+                        true, pending.enrichmentInfo());
+                if (match != null && !match.flagged()) {
+                    continue;
+                }
+                if (match != null) {
+                    row[10] = match.note();
+                }
+            } catch (Exception e) {
+                handler.onLineError(row[6], e);
+                continue;
+            }
+            handler.onRow(row);
+        }
+        pendingRows.clear();
+    }
+
+    /**
+     * @return account number found in the statement header, empty if none was
+     *         found so far
+     */
+    public String getAccountNo() {
+        return accountNo;
+    }
+
+    private record PendingRow(String[] row, LocalDate date, long amountPaise, String enrichmentInfo) {
+    }
+
+    State getState() {
+        return state;
+    }
+
+    private void parseLine(CharSequence text, int start, int end) throws Exception {
+        String rawLine = null;
+        try {
+            if (isHeaderLine(text, start, end)) {
+                if (state == State.HEADER) {
+                    state = State.IN_TABLE;
+                }
+                return;
+            }
+            if (pageEndMatcher.region(start, end).matches()) {
+                state = State.PAGE_FOOTER;
+                if (rawMsgString != null && rawMsgString.length() > 0) {
+                    flushIncompleteRow();
+                }
+                state = State.HEADER;
+            }
+            if (state == State.HEADER) {
+                // If Account no is not extracted check for the matching pattern
+                if ("".equals(accountNo) && accNoMatcher.region(start, end).find()) {
+                    accountNo = accNoMatcher.group(1);
+                }
+                return;
+            }
+            boolean dateLine = startsWithDate(text, start, end);
+            if (!dateLine && state != State.CAPTURING) {
+                return;
+            }
+            rawLine = text.subSequence(start, end).toString();
+            if (dateLine && rawLine.indexOf(BROUGHT_FORWARD_TOKEN) == -1) {
+                startRow(rawLine);
+            } else if (state == State.CAPTURING) {
+                continueRow(rawLine);
+            }
+        } catch (Exception e) {
+            if (rawLine == null) {
+                rawLine = text.subSequence(start, end).toString();
+            }
+            handler.onLineError(rawLine, e);
+        }
+    }
+
+    private void startRow(String rawLine) throws Exception {
+        if (rawMsgString != null && rawMsgString.length() > 0) {
+            flushIncompleteRow();
+        }
+        rawMsgString = new StringBuilder();
+        txnDescString = new StringBuilder();
+        // The local name shows in helpful NullPointerException messages reported as error rows
+        String[] rowDataStrArr = new String[ExpenseUtil.DATA_ARRAY_SIZE];
+        currentRow = rowDataStrArr;
+        rowDataStrArr[1] = ("".equals(accountNo)) ? DEFAULT_FROM : accountNameMap.get(accountNo);
+        // if length is matching that of date then processing this line is over
+        if (rawLine.length() == DATE_STR_LENGTH) {
+            rowDataStrArr[0] = rawLine;
+            rawMsgString.append(rawLine).append(FIELD_SEP_TOKEN);
+            state = State.CAPTURING;
+            return;
+        }
+        rowDataStrArr[0] = rawLine.substring(0, DATE_STR_LENGTH);
+        Matcher amounts = txnAmountMatcher.reset(rawLine);
+        rawMsgString.append(rowDataStrArr[0]).append(FIELD_SEP_TOKEN);
+        if (amounts.find()) {
+            String transactionAmount = amounts.group(1);
+            String spaces = amounts.group(2);
+            String balanceAmount = amounts.group(3);
+            String type = (spaces.length() == 1) ? "DEBIT" : "CREDIT";
+            rowDataStrArr[11] = type;
+            String txnDesc = rawLine.substring(DATE_STR_LENGTH, rawLine.indexOf(transactionAmount)).trim();
+            rawMsgString.append(txnDesc).append(FIELD_SEP_TOKEN)
+                    .append(transactionAmount).append(FIELD_SEP_TOKEN)
+                    .append(type).append(FIELD_SEP_TOKEN)
+                    .append(balanceAmount);
+            rowDataStrArr[5] = transactionAmount;
+            rowDataStrArr[6] = rawMsgString.toString();
+            rowDataStrArr[7] = accountNo;
+            if (!processTxnMessage(rowDataStrArr, txnDesc)) {
+                if (rowDataStrArr[2].contains("NEFT-") || rowDataStrArr[2].contains(":Int.Pd:")) {
+                    LOG.warn("Subscriber ID is empty for row: {}", Arrays.toString(rowDataStrArr));
+                }
+                handler.onRow(rowDataStrArr);
+            }
+            rowCompleted();
+        } else {
+            txnDescString.append(rawLine.substring(DATE_STR_LENGTH).trim()).append(' ');
+            state = State.CAPTURING;
+        }
+    }
+
+    private void continueRow(String rawLine) throws Exception {
+        String[] rowDataStrArr = currentRow;
+        Matcher amounts = txnAmountMatcher.reset(rawLine);
+        if (amounts.find()) {
+            String transactionAmount = amounts.group(1);
+            String spaces = amounts.group(2);
+            String balanceAmount = amounts.group(3);
+            String type = (spaces.length() == 1) ? "DEBIT" : "CREDIT";
+            rowDataStrArr[11] = type;
+            rawMsgString.append(txnDescString).append(FIELD_SEP_TOKEN)
+                    .append(transactionAmount).append(FIELD_SEP_TOKEN)
+                    .append(type).append(FIELD_SEP_TOKEN)
+                    .append(balanceAmount);
+            rowDataStrArr[5] = transactionAmount;
+            rowDataStrArr[6] = rawMsgString.toString();
+            rowDataStrArr[7] = accountNo;
+            if (!processTxnMessage(rowDataStrArr, txnDescString.toString())) {
+                handler.onRow(rowDataStrArr);
+                if (rowDataStrArr[2].startsWith("NEFT-") || rowDataStrArr[2].contains(":Int.Pd:")) {
+                    LOG.warn("Subscriber ID is empty for row: {}", Arrays.toString(rowDataStrArr));
+                }
+            }
+            rowCompleted();
+        } else {
+            txnDescString.append(rawLine);
+        }
+    }
+
+    /**
+     * A new row or the end of a page was reached before the amounts of the
+     * current row, the row is passed on with its full text for review.
+     */
+    private void flushIncompleteRow() throws Exception {
+        LOG.warn("Row processing error for {}", rawMsgString);
+        String[] rowDataStrArr = currentRow;
+        rowDataStrArr[6] = rawMsgString.toString();
+        handler.onRow(rowDataStrArr);
+        rawMsgString = null;
+        txnDescString = null;
+        if (state == State.CAPTURING) {
+            state = State.IN_TABLE;
+        }
+    }
+
+    private void rowCompleted() {
+        rawMsgString = null;
+        txnDescString = null;
+        currentRow = null;
+        state = State.IN_TABLE;
+    }
+
+    private static boolean isHeaderLine(CharSequence text, int start, int end) {
+        int length = TXN_LOG_START_INDICATOR.length();
+        if (end - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(start + i) != TXN_LOG_START_INDICATOR.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as matching the whole line against
+     * {@code ^\d{2}-\d{2}-\d{4}.*}: a dd-mm-yyyy prefix followed by anything
+     * but line terminators.
+     */
+    static boolean startsWithDate(CharSequence text, int start, int end) {
+        if (end - start < DATE_STR_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < DATE_STR_LENGTH; i++) {
+            char c = text.charAt(start + i);
+            boolean ok = (i == 2 || i == 5) ? c == '-' : (c >= '0' && c <= '9');
+            if (!ok) {
+                return false;
+            }
+        }
+        for (int i = start + DATE_STR_LENGTH; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the row was reconciled with a PhonePe row, which it
+     *         enriched instead of being added itself, or held back for the
+     *         fuzzy pass
+     */
+    private boolean processTxnMessage(String[] rowDataStrArr, String fullDescString) {
+        if (fullDescString == null || fullDescString.length() < 1) {
+            return false;
+        }
+        if (fullDescString.contains("NEFT-")) {
+            fullDescString = fullDescString.replace('-', '/');
+        }
+        String[] txnDetails = fullDescString.split("/");
+        if (txnDetails.length > 4 && ExpenseUtil.isOnlyNumbers(txnDetails[4])) {
+            rowDataStrArr[8] = txnDetails[4];
+        } else {
+            for (int idx = txnDetails.length - 1; idx >= 0; idx--) {
+                if (ExpenseUtil.isOnlyNumbers(txnDetails[idx])) {
+                    rowDataStrArr[8] = txnDetails[idx];
+                    break;
+                }
+            }
+        }
+        if (rowDataStrArr[8] == null || rowDataStrArr[8].isEmpty()) {
+            rowDataStrArr[8] = "";
+        }
+        boolean debit = "DEBIT".equals(rowDataStrArr[11]);
+        boolean deferred = !reconciler.isEmpty() && PhonePeReconciler.isFuzzyCandidate(rowDataStrArr[8], debit);
+        PhonePeReconciler.Match match = (reconciler.isEmpty() || deferred) ? null
+                : reconciler.reconcile(rowDataStrArr[8], toDate(rowDataStrArr[0]),
+                        ExpenseUtil.toPaise(rowDataStrArr[5], TransactionRecord.NO_AMOUNT),
+                        debit, PhonePeReconciler.enrichmentInfo(txnDetails));
+        if (match != null) {
+            // IF this row is existing there is no need to add again
+            return true;
+        } else if (!deferred) {
+            LOG.info("No matching PhonePe entry found for Order ID: {}", rowDataStrArr[8]);
+        }
+        rowDataStrArr[2] = txnDetails[0]; // To
+        rowDataStrArr[3] = "";
+        rowDataStrArr[4] = Arrays.stream(txnDetails)
+                .skip(1)
+                .collect(Collectors.joining(" | ")); // Paid To
+        if (fullDescString.contains(":Int.Pd:")) {
+            rowDataStrArr[2] = "Interest Credit"; // To
+            rowDataStrArr[3] = "";
+            rowDataStrArr[4] = fullDescString;
+        }
+        if (deferred) {
+            pendingRows.add(new PendingRow(rowDataStrArr, toDate(rowDataStrArr[0]),
+                    ExpenseUtil.toPaise(rowDataStrArr[5], TransactionRecord.NO_AMOUNT),
+                    PhonePeReconciler.enrichmentInfo(txnDetails)));
+            return true;
+        }
+        return false;
+    }
+
+    private static LocalDate toDate(String txnDate) {
+        try {
+            return LocalDate.parse(txnDate, DatePattern.ICICI_SAC_DATE.getFormatter());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -10,58 +10,113 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.regex.*;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.pulsar.PulsarProperties.Transaction;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import com.agv.expenses.service.model.PDFExtractPayload;
+import com.agv.expenses.service.model.ReconciliationSummary;
 import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
 import com.agv.expenses.util.DatePattern;
 import com.agv.expenses.util.ExpenseUtil;
 import com.google.api.services.sheets.v4.model.ValueRange;
 
 @Component
-public class ICICISacStmtPDFProcessor implements Processor {
+@Order(1)
+public class ICICISacStmtPDFProcessor implements StatementParser {
 
     // Standard SLF4J Logger
     private static final Logger LOG = LoggerFactory.getLogger(ICICISacStmtPDFProcessor.class);
-    private static final String TXN_LOG_START_INDICATOR = "DATE MODE PARTICULARS DEPOSITS WITHDRAWALS BALANCE";
-    private static final Pattern ACC_NO_PATTERN = Pattern.compile("^Savings A/c\\s+(X{8}\\d{4})");
-    private static final Pattern TXN_AMT_PATTERN = Pattern
-            // .compile("(\\d{1,3}(?:,\\d{3})*\\.\\d{2})(\\s+)(\\d{1,3}(?:,\\d{3})*\\.\\d{2})");
-            .compile("(\\d{1,3}(?:,\\d{2,3})*\\.\\d{2})(\\s+)(\\d{1,3}(?:,\\d{2,3})*\\.\\d{2})");
-    // private static final Pattern CURRENCY_SEARCH_PATTERN =
-    // Pattern.compile("\\d{1,3}(?:,\\d{3})*\\.\\d{2}");
-    private static final String START_PATTERN = "^\\d{2}-\\d{2}-\\d{4}.*";
-    private static final String PAGE_END_PATTERN = "^Total:\\s";
-    private static final String FIELD_SEP_TOKEN = "###";
-    private static final int DATE_STR_LENGTH = 10;
+    // Part of the statement cache key, increment whenever the parsed output changes
+    public static final String PARSER_NAME = "icici-savings-pdf";
+    public static final String PARSER_VERSION = "4";
     @Value("#{${icici.account.map}}")
     private Map<String, String> accountNameMap;
+    @Value("${icici.pdf.password}")
+    private String pdfPassword;
+    // Matching of bank rows to PhonePe payments, see PhonePeReconciler
+    @Value("${expense.reconcile.date-window-days:1}")
+    private int reconcileDateWindowDays = 1;
+    @Value("${expense.reconcile.amount-tolerance:1.00}")
+    private String reconcileAmountTolerance = "1.00";
+    @Value("${expense.reconcile.min-confidence:0.5}")
+    private double reconcileMinConfidence = 0.5;
+    @Value("${expense.reconcile.merge-confidence:0.8}")
+    private double reconcileMergeConfidence = 0.8;
+    // Failures of each cause reported as error rows, see StatementErrorCollector
+    @Value("${expense.errors.max-rows-per-cause:10}")
+    private int maxErrorRowsPerCause = 10;
+    @Value("${expense.errors.max-stacks-per-cause:1}")
+    private int maxErrorStacksPerCause = 1;
 
     private static final String EXTRACTION_REGEX = "^(\\d{2}-\\d{2}-\\d{2})\\s+(.*?)\\s+-\\s+.*?-\\s+([\\d\\.]+)";
     private static final Pattern EXTRACTION_PATTERN = Pattern.compile(EXTRACTION_REGEX, Pattern.DOTALL);
     Pattern DEBIT_PATTERN = Pattern.compile("(?<= - - )([^ ]+)");
+    // Transaction and brought forward lines start with their date
+    private static final Pattern ROW_DATE_PATTERN = Pattern.compile("^\\s*(\\d{2}-\\d{2}-\\d{4})\\b",
+            Pattern.MULTILINE);
     // Validation: Date + Space + Alphabet
 
+    @Override
+    public String getName() {
+        return PARSER_NAME;
+    }
+
+    @Override
+    public String getVersion() {
+        return PARSER_VERSION;
+    }
+
+    @Override
+    public boolean isPdf() {
+        return true;
+    }
+
+    @Override
+    public String getPassword() {
+        return pdfPassword;
+    }
+
+    @Override
+    public LocalDate startDate(String text) {
+        return ExpenseUtil.earliestDate(text, ROW_DATE_PATTERN, DatePattern.ICICI_SAC_DATE.getFormatter());
+    }
+
+    @Override
+    public boolean matches(byte[] header, String firstPageText) {
+        return firstPageText != null && (firstPageText.contains(ICICISacStmtLineParser.TXN_LOG_START_INDICATOR)
+                || firstPageText.contains("Statement of Transactions in Savings Account"));
+    }
+
+    @Override
+    public boolean emitsRows() {
+        return true;
+    }
+
     @Override
     public void process(Exchange exchange) throws Exception {
         String rawText = exchange.getIn().getBody(String.class);
         // System.out.println("Raw Text: " + rawText);
         String messageID = exchange.getIn().getHeader(ExpenseUtil.EXCH_HEADER_PROPERTY_EMAIL_MSG_ID, String.class);
         // LOG.debug(rawText);
-        List<String[]> allRows = new ArrayList<>();
-        Map<String, List<Object>> masterDataMap = exchange.getProperty("MASTER_DATA_MAP", Map.class);
-        List<StatementProcessErrorRow> errorRowsList = new ArrayList<StatementProcessErrorRow>();
-        if (masterDataMap == null) {
-            masterDataMap = new HashMap<>();
-            exchange.setProperty("MASTER_DATA_MAP", masterDataMap);
+        // Rows are handed over as soon as they are complete, either to a streaming
+        // sink supplied by the caller or collected for the buffered response
+        StatementRowSink rowSink = exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_ROW_SINK, StatementRowSink.class);
+        CollectingRowSink collectingSink = null;
+        if (rowSink == null) {
+            collectingSink = new CollectingRowSink();
+            rowSink = collectingSink;
         }
+        // Shared with other statements of the same run, creates MASTER_DATA_MAP if missing
+        PhonePeReconciler reconciler = PhonePeReconciler.forExchange(exchange, reconcileDateWindowDays,
+                ExpenseUtil.toPaise(reconcileAmountTolerance, 0), reconcileMinConfidence,
+                reconcileMergeConfidence);
         /**
          * Index position and corresponding values
          * 0. Date
@@ -77,234 +132,76 @@ public class ICICISacStmtPDFProcessor implements Processor {
          * 10. Message
          * 11. Flag
          */
-        boolean txnRowStartFlag = false;
-        boolean isCaptureMode = false;
-        // Regex to find segments starting with Date (e.g., Dec 07, 2025)
-        String[] lines = rawText.split("\\n");
-        String[] rowDataStrArr = null;
-        StringBuffer rawMsgString = null;
-        StringBuffer txnDescString = null;
-        String accountNo = "";
-        for (String rawLine : lines) {
-            rawLine = rawLine.trim();
-            try {
-                if (TXN_LOG_START_INDICATOR.equals(rawLine)) {
-                    txnRowStartFlag = true;
-                    continue;
-                }
-                if (rawLine.matches(PAGE_END_PATTERN)) {
-                    if (rawMsgString != null && rawMsgString.length() > 0) {
-                        // This condition means an error hence capturing full text for review
-                        LOG.warn("Row processing error for " + rawMsgString.toString());
-                        rowDataStrArr[6] = rawMsgString.toString();
-                        allRows.add(rowDataStrArr);
-                        rawMsgString = null;
-                        txnDescString = null;
-                        isCaptureMode = false;
+        StatementRowSink sink = rowSink;
+        StatementErrorCollector errors = new StatementErrorCollector(rowSink, LOG, messageID,
+                exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_MAX_ERROR_ROWS, maxErrorRowsPerCause, Integer.class),
+                exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_MAX_ERROR_STACKS, maxErrorStacksPerCause,
+                        Integer.class));
+        ICICISacStmtLineParser parser = new ICICISacStmtLineParser(accountNameMap, reconciler,
+                new ICICISacStmtLineParser.RowHandler() {
+                    @Override
+                    public void onRow(String[] row) throws Exception {
+                        emitRow(sink, errors, row);
                     }
-                    txnRowStartFlag = false;
-                }
-                if (!txnRowStartFlag) {
-                    // If Account no is not extracted check for the matching pattern
-                    if ("".equals(accountNo)) {
-                        Matcher acnoMatcher = ACC_NO_PATTERN.matcher(rawLine);
-                        if (acnoMatcher.find()) {
-                            accountNo = acnoMatcher.group(1);
-                        }
-                    }
-                    continue;
-                }
-                if ((!rawLine.matches(START_PATTERN) && !isCaptureMode)) {
-                    continue;
-                }
-                if (rawLine.matches(START_PATTERN) && rawLine.indexOf("  B/F  ") == -1) {
-                    if (rawMsgString != null && rawMsgString.length() > 0) {
-                        // This condition means an error hence capturing full text for review
-                        LOG.warn("Row processing error for " + rawMsgString.toString());
-                        rowDataStrArr[6] = rawMsgString.toString();
-                        allRows.add(rowDataStrArr);
-                        rawMsgString = null;
-                        txnDescString = null;
-                        isCaptureMode = false;
-                    }
-                    rawMsgString = new StringBuffer();
-                    txnDescString = new StringBuffer();
-                    rowDataStrArr = new String[ExpenseUtil.DATA_ARRAY_SIZE];
-                    rowDataStrArr[1] = ("".equals(accountNo)) ? "estatement.icicibank.com"
-                            : accountNameMap.get(accountNo);
-                    // if length is matching that of date then processing this line is over
-                    if (rawLine.length() == DATE_STR_LENGTH) {
-                        rowDataStrArr[0] = rawLine;
-                        rawMsgString.append(rawLine).append(FIELD_SEP_TOKEN);
-                        isCaptureMode = true;
-                        continue;
-                    } else {
-                        rowDataStrArr[0] = rawLine.substring(0, DATE_STR_LENGTH);
-                        Matcher txtAmountsLineMather = TXN_AMT_PATTERN.matcher(rawLine);
-                        rawMsgString.append(rowDataStrArr[0]).append(FIELD_SEP_TOKEN);
-                        if (txtAmountsLineMather.find()) {
-                            String transactionAmount = txtAmountsLineMather.group(1);
-                            String spaces = txtAmountsLineMather.group(2);
-                            String balanceAmount = txtAmountsLineMather.group(3);
-                            String type = (spaces.length() == 1) ? "DEBIT" : "CREDIT";
-                            rowDataStrArr[11] = type;
-                            String txnDesc = rawLine.substring(DATE_STR_LENGTH, rawLine.indexOf(transactionAmount))
-                                    .trim();
-                            rawMsgString.append(txnDesc).append(FIELD_SEP_TOKEN)
-                                    .append(transactionAmount).append(FIELD_SEP_TOKEN)
-                                    .append(type).append(FIELD_SEP_TOKEN)
-                                    .append(balanceAmount);
-                            rowDataStrArr[5] = transactionAmount;
-                            rowDataStrArr[6] = rawMsgString.toString();
-                            rowDataStrArr[7] = accountNo;
-                            processTxnMessage(masterDataMap, rowDataStrArr, txnDesc);
-                            if (rowDataStrArr[2].contains("NEFT-") || rowDataStrArr[2].contains(":Int.Pd:")) {
-                                LOG.warn("Subscriber ID is empty for row: " + Arrays.toString(rowDataStrArr));
-                            }
-                            allRows.add(rowDataStrArr);
-                            rawMsgString = null;
-                            txnDescString = null;
-                            rowDataStrArr = null;
-                            isCaptureMode = false;
-                        } else {
-                            txnDescString.append(rawLine.substring(DATE_STR_LENGTH).trim())
-                                    .append(" ");
-                            isCaptureMode = true;
-                            continue;
-                        }
-                    }
-                } else if (isCaptureMode) {
-                    Matcher txtAmountsLineMather = TXN_AMT_PATTERN.matcher(rawLine);
-                    if (txtAmountsLineMather.find()) {
-                        String transactionAmount = txtAmountsLineMather.group(1);
-                        String spaces = txtAmountsLineMather.group(2);
-                        String balanceAmount = txtAmountsLineMather.group(3);
-                        String type = (spaces.length() == 1) ? "DEBIT" : "CREDIT";
-                        rowDataStrArr[11] = type;
-                        rawMsgString.append(txnDescString).append(FIELD_SEP_TOKEN)
-                                .append(transactionAmount).append(FIELD_SEP_TOKEN)
-                                .append(type).append(FIELD_SEP_TOKEN)
-                                .append(balanceAmount);
-                        rowDataStrArr[5] = transactionAmount;
-                        rowDataStrArr[6] = rawMsgString.toString();
-                        rowDataStrArr[7] = accountNo;
-                        processTxnMessage(masterDataMap, rowDataStrArr, txnDescString.toString());
-                        allRows.add(rowDataStrArr);
-                        if (rowDataStrArr[2].startsWith("NEFT-") || rowDataStrArr[2].contains(":Int.Pd:")) {
-                            LOG.warn("Subscriber ID is empty for row: " + Arrays.toString(rowDataStrArr));
-                        }
-                        rawMsgString = null;
-                        txnDescString = null;
-                        rowDataStrArr = null;
-                        isCaptureMode = false;
-                    } else {
-                        txnDescString.append(rawLine).append("");
-                    }
-                }
-
-            } catch (Exception e) {
-                LOG.error("Error processing line: " + rawLine, e);
-                StatementProcessErrorRow errorRow = StatementProcessErrorRow.builder()
-                        .date(ExpenseUtil.getCurrentDateTimeString(null))
-                        .messageId(messageID)
-                        .errorMessage(e.getMessage())
-                        .referenceLine(rawLine)
-                        .errorStack(ExpenseUtil.getStackTrace(e))
-                        .build();
-                errorRowsList.add(errorRow);
-                continue;
-            }
 
+                    @Override
+                    public void onLineError(String line, Exception e) throws Exception {
+                        errors.onError(() -> line, e);
+                    }
+                });
+        parser.parse(rawText);
+        errors.logSummary();
+        LOG.info("Completed Processing, {} failed lines", errors.getErrorCount());
+        if (!reconciler.isEmpty()) {
+            ReconciliationSummary summary = reconciler.getSummary();
+            LOG.info("Reconciled with {} PhonePe rows: {} exact, {} fuzzy, {} flagged, {} unmatched debits",
+                    summary.getPhonePeRows(), summary.getExactMatches(), summary.getFuzzyMatches(),
+                    summary.getFlaggedMatches(), summary.getUnmatched());
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RECONCILIATION, summary);
         }
-        LOG.info("Completed Processing");
-        PDFExtractPayload[] payLoadArr = new PDFExtractPayload[allRows.size()];
-        int rowIdx = 0;
-        for (String[] currentRow : allRows) {
-            try {
-                PDFExtractPayload payLd = PDFExtractPayload.builder().txnDate(currentRow[0]).from(currentRow[1])
-                        .to(currentRow[2]).subject(currentRow[3]).paidTo(currentRow[4]).amount(
-                            (currentRow[5]==null)?"":currentRow[5].replaceAll(",", ""))
-                        .bodyCleaned(currentRow[6]).subscriberID(currentRow[7]).orderID(currentRow[8])
-                        .link(currentRow[9])
-                        .message(currentRow[10]).transactionFlag(currentRow[11]).build();
-                var reptDate = ExpenseUtil.convertStrngDateFormat(payLd.getTxnDate(), DatePattern.ICICI_SAC_DATE,
-                        DatePattern.REPORT_DATE);
-                payLd.setTxnDate(reptDate);
-                payLd.validate();
-                payLoadArr[rowIdx++] = payLd;
-            } catch (Exception e) {
-                LOG.error("Error validating row: " + Arrays.toString(currentRow), e);
-                StatementProcessErrorRow errorRow = StatementProcessErrorRow.builder()
-                        .date(ExpenseUtil.getCurrentDateTimeString(null))
-                        .messageId(messageID)
-                        .errorMessage(e.getMessage())
-                        .referenceLine(Arrays.toString(currentRow))
-                        .errorStack(ExpenseUtil.getStackTrace(e))
-                        .build();
-                errorRowsList.add(errorRow);
-                continue;
-            }
+        if (collectingSink != null) {
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD, collectingSink.getRows());
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST, collectingSink.getErrorRows());
+        } else {
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD, new TransactionRecord[0]);
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST, new StatementProcessErrorRow[0]);
         }
-        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD, payLoadArr);
-
-        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST,
-                errorRowsList.toArray(StatementProcessErrorRow[]::new));
+        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_CAUSES, errors.getCauses());
 
         // TODO Adding last row
 
     }
 
-    private void processTxnMessage(Map<String, List<Object>> masterDataMap, String[] rowDataStrArr,
-            String fullDescString) {
-        if (fullDescString == null || fullDescString.length() < 1) {
-            return;
-        }
-        if(fullDescString.contains("NEFT-")) {
-            fullDescString=fullDescString.replace('-', '/');
-        }
-        String[] txnDetails = fullDescString.split("/");
-        if (txnDetails.length > 4 && ExpenseUtil.isOnlyNumbers(txnDetails[4])) {
-            rowDataStrArr[8] = txnDetails[4];
-        } else {
-            for (int idx = txnDetails.length - 1; idx >= 0; idx--) {
-                if (ExpenseUtil.isOnlyNumbers(txnDetails[idx])) {
-                    rowDataStrArr[8] = txnDetails[idx];
-                    break;
-                }
-            }
-        }
-        if (rowDataStrArr[8] == null || rowDataStrArr[8].isEmpty()) {
-            rowDataStrArr[8] = "";
-        }
-        if (masterDataMap != null && masterDataMap.containsKey(rowDataStrArr[8])) {
-            List<Object> phonePeRow = masterDataMap.get(rowDataStrArr[8]);
-            String enrichmentInfo = "";
-            for (int idx = 1; idx < txnDetails.length; idx++) {
-                if (txnDetails[idx].indexOf("@") == -1 && !ExpenseUtil.isOnlyNumbers(txnDetails[idx])) {
-                    enrichmentInfo = txnDetails[idx];
-                    break;
-                }
+    /**
+     * Converts a completed row to a transaction record, validates it and
+     * passes it on to the sink. Validation failures are reported to the error
+     * collector.
+     */
+    private void emitRow(StatementRowSink rowSink, StatementErrorCollector errors, String[] currentRow)
+            throws Exception {
+        TransactionRecord txn;
+        try {
+            String amount = (currentRow[5] == null) ? "" : currentRow[5].replaceAll(",", "");
+            LocalDate txnDate = ExpenseUtil.convertStringToDate(currentRow[0], DatePattern.ICICI_SAC_DATE);
+            long amountPaise = ExpenseUtil.toPaise(amount, TransactionRecord.NO_AMOUNT);
+            // Same order id as PDFExtractPayload.validate() assigns, which also
+            // rejects amounts that are not numbers
+            String orderId = currentRow[8];
+            if (orderId == null || orderId.isBlank()) {
+                orderId = (amountPaise == TransactionRecord.NO_AMOUNT) ? ExpenseUtil.generateOrderId(txnDate, amount)
+                        : ExpenseUtil.generateOrderId(txnDate, amountPaise);
             }
-            String paidToEnrich = String.valueOf(phonePeRow.get(4)) + " | "
-                    + enrichmentInfo;
-            phonePeRow.set(4, paidToEnrich);
-            // IF this row is existing there is no need to add again
+            txn = TransactionRecord.builder().date(txnDate).from(currentRow[1])
+                    .to(currentRow[2]).subject(currentRow[3]).paidTo(currentRow[4])
+                    .amountPaise(amountPaise)
+                    .bodyCleaned(currentRow[6]).account(currentRow[7]).orderId(orderId)
+                    .link(currentRow[9])
+                    .message(currentRow[10]).type(TransactionType.of(currentRow[11])).build();
+        } catch (Exception e) {
+            errors.onError(() -> Arrays.toString(currentRow), e);
             return;
-        } else {
-            LOG.info("No matching PhonePe entry found for Order ID: {}", rowDataStrArr[8]);
-            // rowDataStrArr[1] = accountName; // From
-            rowDataStrArr[2] = txnDetails[0]; // To
-            rowDataStrArr[3] = "";
-            rowDataStrArr[4] = Arrays.stream(txnDetails)
-                    .skip(1) // Skips the first element (20250111)
-                    .collect(Collectors.joining(" | ")); // Paid To
-
-        }
-        if (fullDescString.contains(":Int.Pd:")) {
-            rowDataStrArr[2] = "Interest Credit"; // To
-            rowDataStrArr[3] = "";
-            rowDataStrArr[4] = fullDescString;
         }
+        rowSink.onRow(txn);
     }
 
 }
@@ -3,27 +3,81 @@ package com.agv.expenses.processor;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.commons.math3.analysis.function.Exp;
-import org.apache.poi.ss.usermodel.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import com.agv.expenses.service.model.ReconciliationSummary;
+import com.agv.expenses.service.model.TransactionRecord;
 import com.agv.expenses.util.ExpenseUtil;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 @Component
-public class ICICITransactionProcessor implements Processor {
+@Order(4)
+public class ICICITransactionProcessor implements StatementParser {
     private static final Logger LOG = LoggerFactory.getLogger(ICICITransactionProcessor.class);
-    // Define the specific date format requested
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MMM-yyyy");
-    private final int DATA_ARRAY_SIZE = 12;
+    private static final String SHEET_NAME = "OpTransactionHistory";
+    // Columns up to the balance, column 0 is empty in the export
+    private static final int COLUMNS = 9;
+    // Immutable, shared by the statements parsed concurrently; date cells are formatted with it as well
+    private static final DateTimeFormatter TXN_DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MMM-yyyy", Locale.ENGLISH);
+    // Transaction history is exported as a legacy .xls, i.e. an OLE2 compound document
+    private static final byte[] OLE2_SIGNATURE = { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1,
+            (byte) 0xB1, 0x1A, (byte) 0xE1 };
+    // Saved again as .xlsx it is a ZIP archive
+    private static final byte[] ZIP_SIGNATURE = { 'P', 'K', 3, 4 };
+    // Matching of bank rows to PhonePe payments, see PhonePeReconciler
+    @Value("${expense.reconcile.date-window-days:1}")
+    private int reconcileDateWindowDays = 1;
+    @Value("${expense.reconcile.amount-tolerance:1.00}")
+    private String reconcileAmountTolerance = "1.00";
+    @Value("${expense.reconcile.min-confidence:0.5}")
+    private double reconcileMinConfidence = 0.5;
+    @Value("${expense.reconcile.merge-confidence:0.8}")
+    private double reconcileMergeConfidence = 0.8;
+
+    @Override
+    public String getName() {
+        return "icici-transaction-history-excel";
+    }
+
+    @Override
+    public String getVersion() {
+        return "2";
+    }
+
+    @Override
+    public boolean isPdf() {
+        return false;
+    }
+
+    @Override
+    public boolean matches(byte[] header, String firstPageText) {
+        return startsWith(header, OLE2_SIGNATURE) || startsWith(header, ZIP_SIGNATURE);
+    }
+
+    /**
+     * The header only tells a workbook, the export holds its transaction
+     * history sheet.
+     */
+    @Override
+    public boolean matchesContent(InputStream content) throws IOException {
+        return StreamingSheetReader.hasSheet(content, SHEET_NAME);
+    }
 
     @Override
     public void process(Exchange exchange) throws Exception {
@@ -42,132 +96,184 @@ public class ICICITransactionProcessor implements Processor {
          * 10. Message
          * 11. Flag
          */
-        String[] rowDataArr = null;
-        String ACCOUNT_NO_STRING_PREFIX = "Transactions List -";
-        InputStream is = exchange.getIn().getBody(InputStream.class);
-        Map<String, List<Object>> masterDataMap = exchange.getProperty("MASTER_DATA_MAP", Map.class);
-        try (Workbook workbook = WorkbookFactory.create(is)) {
-            // 1. Get sheet by specific name
-            Sheet sheet = workbook.getSheet("OpTransactionHistory");
-
-            if (sheet == null) {
-                throw new IllegalArgumentException("Sheet 'OpTransactionHistory' not found in the Excel file!");
+        PhonePeReconciler reconciler = PhonePeReconciler.forExchange(exchange, reconcileDateWindowDays,
+                ExpenseUtil.toPaise(reconcileAmountTolerance, 0), reconcileMinConfidence,
+                reconcileMergeConfidence);
+        Map<String, TransactionRecord> masterDataMap = reconciler.getRows();
+        // Rows of this statement only, the map also holds the PhonePe rows
+        List<TransactionRecord> statementRows = new ArrayList<>();
+        StatementRowHandler handler = new StatementRowHandler(reconciler, masterDataMap, statementRows);
+        StreamingSheetReader reader = new StreamingSheetReader(SHEET_NAME, COLUMNS, TXN_DATE_FORMAT, handler);
+        try {
+            // Rows are read one at a time, the workbook is never held in memory
+            File file = exchange.getIn().getBody(File.class);
+            if (file != null) {
+                reader.read(file);
+            } else {
+                try (InputStream is = exchange.getIn().getBody(InputStream.class)) {
+                    reader.read(is);
+                }
             }
+        } catch (Exception e) {
+            LOG.error("Error processing Excel file: {}", e.getMessage(), e);
+            // throw e;
+        }
+        handler.reconcilePendingRows();
+        if (!reconciler.isEmpty()) {
+            ReconciliationSummary summary = reconciler.getSummary();
+            LOG.info("Reconciled with {} PhonePe rows: {} exact, {} fuzzy, {} flagged, {} unmatched debits",
+                    summary.getPhonePeRows(), summary.getExactMatches(), summary.getFuzzyMatches(),
+                    summary.getFlaggedMatches(), summary.getUnmatched());
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RECONCILIATION, summary);
+        }
+        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD, statementRows.toArray(TransactionRecord[]::new));
+    }
 
-            String accountNumber = "";
-            String accountName = "";
-            int dataRowIdx = -1;
-            // 2. Iterate through all rows
-            for (int i = 0; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null)
-                    continue;
+    /**
+     * Row logic of the transaction history, applied to each row as it is
+     * read. Debits without a reference are held back and matched on date and
+     * amount once all rows were read, see {@link PhonePeReconciler}.
+     */
+    private static class StatementRowHandler implements StreamingSheetReader.RowHandler {
 
-                Cell cell2 = row.getCell(1);
-                if (getCellValueAsString(cell2).indexOf(ACCOUNT_NO_STRING_PREFIX) != -1) {
-                    String cellValueStr = getCellValueAsString(cell2);
-                    String[] parts = cellValueStr.split(" - ");
-                    accountNumber = parts[parts.length - 1].trim();
-                    LOG.info("Found Account Number: {}", accountNumber);
-                    if ("021201554990".equals(accountNumber)) {
-                        accountName = "ICICI - Santhome";
-                    } else {
-                        accountName = "ICICI - Tripunitura";
-                    }
-                    dataRowIdx++;
-                    continue;
-                }
-                if (dataRowIdx >= 0) {
-                    // Data Rows
-                    dataRowIdx++;
-                }
-                if (dataRowIdx > 0) {
-                    rowDataArr = ExpenseUtil.initializeDataArray(null);
-                    rowDataArr[0] = getCellValueAsString(row.getCell(2));
-                    String cellValue = getCellValueAsString(row.getCell(5));
-                    String[] txnDetails = getCellValueAsString(row.getCell(5)).split("/");
-                    /*
-                     * if (txnDetails.length < 5) {
-                     * LOG.warn("Skipping row due to unexpected Txn Details format: {}",
-                     * getCellValueAsString(row.getCell(5)));
-                     * continue;
-                     * }
-                     */
-                    if (txnDetails.length > 4 && ExpenseUtil.isOnlyNumbers(txnDetails[4])) {
-                        rowDataArr[8] = txnDetails[4];
-                    } else {
-                        for (int idx = txnDetails.length - 1; idx >= 0; idx--) {
-                            if (ExpenseUtil.isOnlyNumbers(txnDetails[idx])) {
-                                rowDataArr[8] = txnDetails[idx];
-                                break;
-                            }
-                        }
-                    }
-                    if (rowDataArr[8] == null || rowDataArr[8].isEmpty()) {
-                        rowDataArr[8] = "";
-                    }
+        private static final String ACCOUNT_NO_STRING_PREFIX = "Transactions List -";
 
-                    if (masterDataMap != null && masterDataMap.containsKey(rowDataArr[8])) {
-                        List<Object> phonePeRow = masterDataMap.get(rowDataArr[8]);
-                        String enrichmentInfo = "";
-                        for (int idx = 1; idx < txnDetails.length; idx++) {
-                            if (txnDetails[idx].indexOf("@") == -1 && !ExpenseUtil.isOnlyNumbers(txnDetails[idx])) {
-                                enrichmentInfo = txnDetails[idx];
-                                break;
-                            }
-                        }
-                        String paidToEnrich = String.valueOf(phonePeRow.get(4)) + " | "
-                                + enrichmentInfo;
-                        phonePeRow.set(4, paidToEnrich);
-                        // IF this row is existing there is no need to add again
-                        continue;
-                    } else {
-                        LOG.info("No matching PhonePe entry found for Order ID: {}", rowDataArr[8]);
-                        rowDataArr[1] = accountName; // From
-                        rowDataArr[2] = txnDetails[0]; // To
-                        rowDataArr[3] = "";
-                        rowDataArr[4] = Arrays.stream(txnDetails)
-                                .skip(1) // Skips the first element (20250111)
-                                .collect(Collectors.joining(" | ")); // Paid To
-                        rowDataArr[5] = getCellValueAsString(row.getCell(6));
-                        rowDataArr[7] = accountNumber;
-                        StringBuilder bodyCleaned = new StringBuilder();
-                        for (int col = 1; col <= 8; col++) {
-                            Cell cell = row.getCell(col);
-                            bodyCleaned.append(getCellValueAsString(cell)).append(" | ");
-                        }
-                        rowDataArr[6] = bodyCleaned.toString();
-                        // Checking whether transaction is debit.
-                        if (!"".equals(rowDataArr[5]) && !"".equals(rowDataArr[0]) && ExpenseUtil.isOnlyNumbers(rowDataArr[5]) 
-                            && Double.parseDouble(rowDataArr[5]) > 0) {
-                            String key = ExpenseUtil.reformatDate(rowDataArr[0]) + rowDataArr[5];
-                            masterDataMap.put(ExpenseUtil.removePeriod(key), Arrays.asList((Object[]) rowDataArr));
-                        }
+        private final PhonePeReconciler reconciler;
+        private final Map<String, TransactionRecord> masterDataMap;
+        private final List<TransactionRecord> statementRows;
+        // Debits without a reference, for the fuzzy pass at the end
+        private final List<PendingRow> pendingRows = new ArrayList<>();
+        private String accountNumber = "";
+        private String accountName = "";
+        private int dataRowIdx = -1;
 
+        StatementRowHandler(PhonePeReconciler reconciler, Map<String, TransactionRecord> masterDataMap,
+                List<TransactionRecord> statementRows) {
+            this.reconciler = reconciler;
+            this.masterDataMap = masterDataMap;
+            this.statementRows = statementRows;
+        }
+
+        @Override
+        public void onRow(int rowNum, String[] cells) {
+            if (cells[1].indexOf(ACCOUNT_NO_STRING_PREFIX) != -1) {
+                String[] parts = cells[1].split(" - ");
+                accountNumber = parts[parts.length - 1].trim();
+                LOG.info("Found Account Number: {}", accountNumber);
+                if ("021201554990".equals(accountNumber)) {
+                    accountName = "ICICI - Santhome";
+                } else {
+                    accountName = "ICICI - Tripunitura";
+                }
+                dataRowIdx++;
+                return;
+            }
+            if (dataRowIdx >= 0) {
+                // Data Rows
+                dataRowIdx++;
+            }
+            if (dataRowIdx <= 0) {
+                return;
+            }
+            String[] rowDataArr = ExpenseUtil.initializeDataArray(null);
+            rowDataArr[0] = cells[2];
+            String[] txnDetails = cells[5].split("/");
+            if (txnDetails.length > 4 && ExpenseUtil.isOnlyNumbers(txnDetails[4])) {
+                rowDataArr[8] = txnDetails[4];
+            } else {
+                for (int idx = txnDetails.length - 1; idx >= 0; idx--) {
+                    if (ExpenseUtil.isOnlyNumbers(txnDetails[idx])) {
+                        rowDataArr[8] = txnDetails[idx];
+                        break;
                     }
+                }
+            }
+            if (rowDataArr[8] == null || rowDataArr[8].isEmpty()) {
+                rowDataArr[8] = "";
+            }
 
+            PhonePeReconciler.Match match = null;
+            // Withdrawals are in column 6, only debits are matched on date and amount
+            long withdrawalPaise = ExpenseUtil.toPaise(cells[6], TransactionRecord.NO_AMOUNT);
+            boolean deferred = !reconciler.isEmpty() && PhonePeReconciler.isFuzzyCandidate(rowDataArr[8],
+                    withdrawalPaise != TransactionRecord.NO_AMOUNT && withdrawalPaise > 0);
+            if (!reconciler.isEmpty() && !deferred) {
+                match = reconciler.reconcile(rowDataArr[8], toDate(rowDataArr[0]), withdrawalPaise,
+                        withdrawalPaise != TransactionRecord.NO_AMOUNT && withdrawalPaise > 0,
+                        PhonePeReconciler.enrichmentInfo(txnDetails));
+            }
+            if (match != null) {
+                // IF this row is existing there is no need to add again
+                return;
+            }
+            if (!deferred) {
+                LOG.info("No matching PhonePe entry found for Order ID: {}", rowDataArr[8]);
+            }
+            rowDataArr[1] = accountName; // From
+            rowDataArr[2] = txnDetails[0]; // To
+            rowDataArr[3] = "";
+            rowDataArr[4] = Arrays.stream(txnDetails)
+                    .skip(1) // Skips the first element (20250111)
+                    .collect(Collectors.joining(" | ")); // Paid To
+            rowDataArr[5] = cells[6];
+            rowDataArr[7] = accountNumber;
+            StringBuilder bodyCleaned = new StringBuilder();
+            for (int col = 1; col <= 8; col++) {
+                bodyCleaned.append(cells[col]).append(" | ");
+            }
+            rowDataArr[6] = bodyCleaned.toString();
+            // Checking whether transaction is debit.
+            if (!"".equals(rowDataArr[5]) && !"".equals(rowDataArr[0]) && ExpenseUtil.isOnlyNumbers(rowDataArr[5])
+                    && Double.parseDouble(rowDataArr[5]) > 0) {
+                String key = ExpenseUtil.reformatDate(rowDataArr[0]) + rowDataArr[5];
+                TransactionRecord txn = TransactionRecord.fromRow(rowDataArr, toDate(rowDataArr[0]));
+                if (deferred) {
+                    pendingRows.add(new PendingRow(ExpenseUtil.removePeriod(key), txn, withdrawalPaise,
+                            PhonePeReconciler.enrichmentInfo(txnDetails)));
+                    return;
                 }
+                masterDataMap.put(ExpenseUtil.removePeriod(key), txn);
+                statementRows.add(txn);
+            }
+        }
 
+        /**
+         * Second pass over the debits without a reference. A row replaced by
+         * a PhonePe row is dropped, one with a weaker match is kept with a
+         * note.
+         */
+        void reconcilePendingRows() {
+            for (PendingRow pending : pendingRows) {
+                TransactionRecord txn = pending.txn();
+                PhonePeReconciler.Match match = reconciler.reconcile("", txn.getDate(), pending.withdrawalPaise(),
+                        true, pending.enrichmentInfo());
+                if (match != null && !match.flagged()) {
+                    continue;
+                }
+                if (match != null) {
+                    txn = txn.toBuilder().message(match.note()).build();
+                }
+                masterDataMap.put(pending.key(), txn);
+                statementRows.add(txn);
             }
-        } catch (Exception e) {
-            LOG.error("Error processing Excel file: {}", e.getMessage(), e);
-            // throw e;
+            pendingRows.clear();
         }
     }
 
-    // Helper method to handle different cell types (String, Numeric, etc.)
-    private String getCellValueAsString(Cell cell) {
-        if (cell == null)
-            return "";
-        return switch (cell.getCellType()) {
-            case STRING -> cell.getStringCellValue();
-            case NUMERIC -> DateUtil.isCellDateFormatted(cell)
-                    ? dateFormat.format(cell.getDateCellValue())
-                    : String.valueOf(cell.getNumericCellValue());
-            case BOOLEAN -> String.valueOf(cell.getBooleanCellValue());
-            case FORMULA -> cell.getCellFormula();
-            default -> "";
-        };
+    private record PendingRow(String key, TransactionRecord txn, long withdrawalPaise, String enrichmentInfo) {
+    }
+
+    private static boolean startsWith(byte[] header, byte[] signature) {
+        return header != null && header.length >= signature.length
+                && Arrays.equals(header, 0, signature.length, signature, 0, signature.length);
+    }
+
+    private static LocalDate toDate(String txnDate) {
+        try {
+            return LocalDate.parse(txnDate, TXN_DATE_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
     }
 
-}
\ No newline at end of file
+}
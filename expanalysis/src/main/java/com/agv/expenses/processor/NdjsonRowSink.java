@@ -0,0 +1,57 @@
+package com.agv.expenses.processor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.agv.expenses.service.model.StatementErrorCause;
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.StatementStreamRecord;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Writes every row as one JSON document per line (NDJSON) to the given
+ * stream and flushes it, so that the caller sees rows while the statement is
+ * still being parsed.
+ */
+public class NdjsonRowSink implements StatementRowSink {
+
+    private static final byte[] NEW_LINE = { '\n' };
+
+    private final OutputStream out;
+    private final ObjectWriter writer;
+
+    public NdjsonRowSink(OutputStream out, ObjectMapper objectMapper) {
+        this.out = out;
+        this.writer = objectMapper.writerFor(StatementStreamRecord.class);
+    }
+
+    @Override
+    public void onRow(TransactionRecord row) throws IOException {
+        write(StatementStreamRecord.builder().type(StatementStreamRecord.TYPE_ROW).row(row.toPayload()).build());
+    }
+
+    @Override
+    public void onError(StatementProcessErrorRow errorRow) throws IOException {
+        write(StatementStreamRecord.builder().type(StatementStreamRecord.TYPE_ERROR).errorRow(errorRow).build());
+    }
+
+    /**
+     * Writes the closing status line of the stream.
+     *
+     * @param errorCauses failures of the statement by cause, null if none
+     *                    were counted
+     */
+    public void onComplete(String status, String errorMessage, StatementErrorCause[] errorCauses)
+            throws IOException {
+        write(StatementStreamRecord.builder().type(StatementStreamRecord.TYPE_STATUS)
+                .status(status).errorMessage(errorMessage).errorCauses(errorCauses).build());
+    }
+
+    private void write(StatementStreamRecord streamRecord) throws IOException {
+        out.write(writer.writeValueAsBytes(streamRecord));
+        out.write(NEW_LINE);
+        out.flush();
+    }
+}
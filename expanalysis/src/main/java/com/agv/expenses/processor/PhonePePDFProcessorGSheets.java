@@ -2,22 +2,27 @@ package com.agv.expenses.processor;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
-import org.apache.camel.spi.annotations.Component;
 import org.apache.commons.math3.analysis.function.Exp;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
 
+import com.agv.expenses.service.model.TransactionRecord;
 import com.agv.expenses.util.ExpenseUtil;
 import com.google.api.services.sheets.v4.model.ValueRange;
 
-public class PhonePePDFProcessorGSheets implements Processor {
+@Component
+@Order(3)
+public class PhonePePDFProcessorGSheets implements StatementParser {
 
     // Standard SLF4J Logger
     private static final Logger LOG = LoggerFactory.getLogger(PhonePePDFProcessor.class);
@@ -28,12 +33,51 @@ public class PhonePePDFProcessorGSheets implements Processor {
     private static final Pattern txn_id_pattern = Pattern.compile("(?<=Transaction ID\s).+$");
     private static final Pattern utr_no_pattern = Pattern.compile("(?<=UTR No.\s).+$");
     private static final Pattern paid_by_pattern = Pattern.compile("(?<=Paid by\s).+$");
+    private static final String SIGNATURE = "Transaction Statement for ";
+    private static final Pattern ROW_DATE_PATTERN = Pattern.compile("^\\s*([A-Z][a-z]{2}\\s\\d{2},\\s\\d{4})\\s*$",
+            Pattern.MULTILINE);
+    private static final DateTimeFormatter ROW_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy",
+            Locale.ENGLISH);
+
+    @Override
+    public String getName() {
+        return "phonepe-pdf";
+    }
+
+    @Override
+    public String getVersion() {
+        return "1";
+    }
+
+    @Override
+    public boolean isPdf() {
+        return true;
+    }
+
+    /**
+     * @return true, bank statements are reconciled against the PhonePe payments
+     */
+    @Override
+    public boolean isReference() {
+        return true;
+    }
+
+    @Override
+    public LocalDate startDate(String text) {
+        return ExpenseUtil.earliestDate(text, ROW_DATE_PATTERN, ROW_DATE_FORMAT);
+    }
+
+    @Override
+    public boolean matches(byte[] header, String firstPageText) {
+        return firstPageText != null && firstPageText.contains(SIGNATURE);
+    }
+
     @Override
     public void process(Exchange exchange) throws Exception {
         String rawText = exchange.getIn().getBody(String.class);
         //LOG.debug(rawText);
-        List<List<Object>> allRows = new ArrayList<>();
-        Map<String,List<Object>> masterDataMap = new HashMap<>();
+        // Concurrent, bank statements may be reconciled against it in parallel
+        Map<String,TransactionRecord> masterDataMap = new ConcurrentHashMap<>();
         /**
          *  Index position and corresponding values
          *  0. Date
@@ -50,6 +94,7 @@ public class PhonePePDFProcessorGSheets implements Processor {
             11. Flag
          */
         String[] rowDataArr=null;
+        LocalDate rowDate=null;
         
         // Add Header
         //allRows.add(Arrays.asList("Date","From","To", "Subject", "Paid To", "Amount", "Body Cleaned", "Subscriber ID", "Order ID", "Link", "Message"));
@@ -71,10 +116,8 @@ public class PhonePePDFProcessorGSheets implements Processor {
                     }else{ 
                         //LOG.debug("Adding row: "+Arrays.toString(rowDataArr));
                         rowDataArr=ExpenseUtil.initializeDataArray(rowDataArr);
-                        List<Object> rowDataList = Arrays.asList(rowDataArr);
-                        allRows.add(rowDataList);
-                        if(rowDataArr[10]!=null && !rowDataArr[10].toString().isEmpty()){
-                            masterDataMap.put(rowDataArr[10].toString(), rowDataList);
+                        if(!rowDataArr[10].isEmpty()){
+                            masterDataMap.put(rowDataArr[10], TransactionRecord.fromRow(rowDataArr, rowDate));
                         }else{
                             LOG.warn("Transaction Reference Not available for PhnePe Entry :"+rowDataArr[6]);
                         }
@@ -85,15 +128,13 @@ public class PhonePePDFProcessorGSheets implements Processor {
                 rawMsgString=new StringBuffer();
                 rawMsgString.append(rawLine).append(" ");
                 try{
-                    rowDataArr[0]=
-                        LocalDate.parse(rawLine, 
-                                DateTimeFormatter.ofPattern("MMM d, yyyy", Locale.ENGLISH))
-                                .format(DateTimeFormatter.ofPattern("dd-MMM-yyyy"));                
+                    rowDate=LocalDate.parse(rawLine, 
+                                DateTimeFormatter.ofPattern("MMM d, yyyy", Locale.ENGLISH));
                 } catch (DateTimeParseException e) {
                     LOG.warn("Exception "+e.getMessage()+" while parsing "+rawLine);
-                    rowDataArr[0]=rawLine;
+                    rowDate=null;
                 }
-                rowDataArr[1]="alerts@phonepe.com";
+                rowDataArr[1]=ExpenseUtil.PHONEPE_SENDER;
                 rowDataArr[2]="ageorgev@gmail.com";
             }else if (rawLine.startsWith("DEBIT ")){
                 Matcher matcher = amount_pattern.matcher(rawLine);
@@ -133,16 +174,16 @@ public class PhonePePDFProcessorGSheets implements Processor {
             }else{
                 //LOG.debug("Adding row: "+Arrays.toString(rowDataArr));
                 rowDataArr=ExpenseUtil.initializeDataArray(rowDataArr);
-                List<Object> rowDataList = Arrays.asList(rowDataArr);
-                allRows.add(rowDataList);
-                if(rowDataArr[10]!=null && !rowDataArr[10].toString().isEmpty()){
-                    masterDataMap.put(rowDataArr[10].toString(), rowDataList);
+                if(!rowDataArr[10].isEmpty()){
+                    masterDataMap.put(rowDataArr[10], TransactionRecord.fromRow(rowDataArr, rowDate));
                 }else{
                     LOG.warn("Transaction Reference Not available for PhnePe Entry :"+rowDataArr[6]);
                 }
             }
         }
         exchange.setProperty("MASTER_DATA_MAP",masterDataMap);
+        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD,
+                masterDataMap.values().toArray(TransactionRecord[]::new));
 
     }
 }
\ No newline at end of file
@@ -0,0 +1,421 @@
+package com.agv.expenses.processor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.camel.Exchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.agv.expenses.service.model.ReconciliationMatch;
+import com.agv.expenses.service.model.ReconciliationSummary;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.DatePattern;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Matches bank rows to the PhonePe payments they settle, so that the bank
+ * row enriches the PhonePe row instead of being added a second time.
+ * <p>
+ * A bank row whose reference is a PhonePe UTR matches exactly. A bank row
+ * with a reference of its own, such as the UTR of a card or another UPI
+ * app, is a transaction of its own and never matched otherwise. Debits
+ * without any reference are matched to the closest PhonePe payment within
+ * <code>dateWindowDays</code> of the bank date and
+ * <code>amountTolerancePaise</code> of the amount, found by a binary search
+ * over the payments sorted by amount and date. Each payment is matched
+ * fuzzily at most once and only above <code>minConfidence</code>.
+ * <p>
+ * Only fuzzy matches from <code>mergeConfidence</code> on replace the bank
+ * row. Weaker ones are returned as flagged, the bank row is kept with a note
+ * of the payment it may duplicate and the PhonePe row is left as it is.
+ * <p>
+ * Rows of a statement should be reconciled in two passes, first the rows
+ * with a reference and then the debits without one, see
+ * {@link #isFuzzyCandidate(String, boolean)}. Otherwise a fuzzy match may
+ * claim a payment whose UTR is found further down the statement. Across
+ * statements the same holds for a payment whose UTR is in a statement
+ * reconciled later, so the texts of all bank statements should be
+ * {@link #reserve(String) reserved} before the first is reconciled. An exact
+ * match always takes the payment; if a fuzzy match merged it before, that
+ * match is revoked and its enrichment removed, but the bank row it replaced
+ * is gone and only counted as revoked.
+ * <p>
+ * Building the index is O(n log n), a match O(log n) plus the payments
+ * within the amount tolerance.
+ * <p>
+ * A reconciler is safe to share between bank statements processed in
+ * parallel. The sorted index is immutable once built; payments are claimed
+ * with a compare-and-set on their slot and rows are enriched with an atomic
+ * update of their entry in the concurrent master data map, whose per-bin
+ * locks stripe the writes, so no update of a PhonePe row is lost.
+ */
+public class PhonePeReconciler {
+
+    public static final double EXACT_CONFIDENCE = 1.0;
+    // A fuzzy match on same day and amount, lowered by the date lag and the
+    // amount difference as a fraction of the window and the tolerance
+    private static final double FUZZY_CONFIDENCE = 0.9;
+    private static final double DATE_PENALTY = 0.2;
+    private static final double AMOUNT_PENALTY = 0.2;
+    private static final String MASTER_DATA_MAP = "MASTER_DATA_MAP";
+    private static final Logger LOG = LoggerFactory.getLogger(PhonePeReconciler.class);
+
+    // Claims of the payments
+    private static final int FREE = 0;
+    // UTR found in a bank statement, only an exact match may take it
+    private static final int RESERVED = 1;
+    private static final int EXACT = 2;
+    private static final int FUZZY = 3;
+    private static final int FLAGGED = 4;
+
+    /**
+     * @param key        key of the PhonePe row in the master data map
+     * @param phonePeRow the PhonePe row after the enrichment
+     * @param flagged    true if the match is too weak to replace the bank
+     *                   row, which is kept with {@link #note()}
+     */
+    public record Match(String key, TransactionRecord phonePeRow, double confidence, boolean flagged) {
+
+        /**
+         * @return message for a bank row kept despite the match
+         */
+        public String note() {
+            return String.format(Locale.ROOT, "Possible PhonePe payment %s, confidence %.2f", key, confidence);
+        }
+    }
+
+    private final ConcurrentMap<String, TransactionRecord> phonePeRows;
+    private final int dateWindowDays;
+    private final long amountTolerancePaise;
+    private final double minConfidence;
+    private final double mergeConfidence;
+    private final int phonePeCount;
+
+    // PhonePe rows with date and amount, sorted by amount then date
+    private final String[] keys;
+    private final long[] amounts;
+    private final int[] days;
+    private final Map<String, Integer> positions = new HashMap<>();
+    // Claim of the payment at the same position
+    private final AtomicIntegerArray claims;
+    // Enrichment of the fuzzy match which merged the payment, to revoke it
+    private final AtomicReferenceArray<String> fuzzyEnrichments;
+
+    private final AtomicInteger exactMatches = new AtomicInteger();
+    private final AtomicInteger fuzzyMatches = new AtomicInteger();
+    private final AtomicInteger flaggedMatches = new AtomicInteger();
+    private final AtomicInteger unmatched = new AtomicInteger();
+    private final AtomicInteger revokedMatches = new AtomicInteger();
+    private final Queue<ReconciliationMatch> matches = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param phonePeRows master data map keyed by UTR, enriched rows are
+     *                    written back to it
+     * @param minConfidence   fuzzy matches below are not matches at all
+     * @param mergeConfidence fuzzy matches below are only flagged
+     */
+    public PhonePeReconciler(ConcurrentMap<String, TransactionRecord> phonePeRows, int dateWindowDays,
+            long amountTolerancePaise, double minConfidence, double mergeConfidence) {
+        this.phonePeRows = phonePeRows;
+        this.dateWindowDays = dateWindowDays;
+        this.amountTolerancePaise = amountTolerancePaise;
+        this.minConfidence = minConfidence;
+        this.mergeConfidence = mergeConfidence;
+        // Processors add their own rows to the map as they go
+        this.phonePeCount = phonePeRows.size();
+        List<Map.Entry<String, TransactionRecord>> indexed = new ArrayList<>();
+        for (Map.Entry<String, TransactionRecord> entry : phonePeRows.entrySet()) {
+            TransactionRecord row = entry.getValue();
+            if (row.getEpochDay() != TransactionRecord.NO_DATE && row.getAmountPaise() != TransactionRecord.NO_AMOUNT) {
+                indexed.add(Map.entry(entry.getKey(), row));
+            }
+        }
+        indexed.sort(Comparator.comparingLong((Map.Entry<String, TransactionRecord> entry) -> entry.getValue()
+                .getAmountPaise()).thenComparingInt(entry -> entry.getValue().getEpochDay())
+                .thenComparing(Map.Entry::getKey));
+        keys = new String[indexed.size()];
+        amounts = new long[indexed.size()];
+        days = new int[indexed.size()];
+        claims = new AtomicIntegerArray(indexed.size());
+        fuzzyEnrichments = new AtomicReferenceArray<>(indexed.size());
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = indexed.get(i).getKey();
+            amounts[i] = indexed.get(i).getValue().getAmountPaise();
+            days[i] = indexed.get(i).getValue().getEpochDay();
+            positions.put(keys[i], i);
+        }
+    }
+
+    /**
+     * Returns the reconciler of the exchange, creating it from
+     * <code>MASTER_DATA_MAP</code> on first use or when the map was replaced.
+     * The map is replaced by a concurrent copy if needed. Exchanges split off
+     * afterwards share the reconciler, so it should be created before bank
+     * statements are processed in parallel.
+     */
+    public static PhonePeReconciler forExchange(Exchange exchange, int dateWindowDays, long amountTolerancePaise,
+            double minConfidence, double mergeConfidence) {
+        PhonePeReconciler reconciler = exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_RECONCILER,
+                PhonePeReconciler.class);
+        @SuppressWarnings("unchecked")
+        Map<String, TransactionRecord> masterDataMap = exchange.getProperty(MASTER_DATA_MAP, Map.class);
+        if (reconciler == null || reconciler.getRows() != masterDataMap) {
+            ConcurrentMap<String, TransactionRecord> phonePeRows;
+            if (masterDataMap instanceof ConcurrentMap<String, TransactionRecord> concurrentMap) {
+                phonePeRows = concurrentMap;
+            } else {
+                phonePeRows = (masterDataMap == null) ? new ConcurrentHashMap<>()
+                        : new ConcurrentHashMap<>(masterDataMap);
+                exchange.setProperty(MASTER_DATA_MAP, phonePeRows);
+            }
+            reconciler = new PhonePeReconciler(phonePeRows, dateWindowDays, amountTolerancePaise, minConfidence,
+                    mergeConfidence);
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RECONCILER, reconciler);
+        }
+        return reconciler;
+    }
+
+    /**
+     * @return true if there are no PhonePe rows, nothing can match then
+     */
+    public boolean isEmpty() {
+        return phonePeCount == 0;
+    }
+
+    /**
+     * @return true if the bank row has no reference and is a debit, so it is
+     *         matched on date and amount and belongs in the second pass
+     */
+    public static boolean isFuzzyCandidate(String reference, boolean debit) {
+        return debit && (reference == null || reference.isEmpty());
+    }
+
+    /**
+     * Reserves the payments whose UTR occurs in the text of a bank statement
+     * for their exact match, so that no fuzzy match of another statement
+     * takes them first.
+     *
+     * @param bankStatementText text of a bank statement still to be
+     *                          reconciled
+     * @return number of payments reserved
+     */
+    public int reserve(String bankStatementText) {
+        int reserved = 0;
+        int length = bankStatementText.length();
+        for (int start = 0, end; start < length; start = end + 1) {
+            end = start;
+            while (end < length && Character.isLetterOrDigit(bankStatementText.charAt(end))) {
+                end++;
+            }
+            Integer position = (end > start) ? positions.get(bankStatementText.substring(start, end)) : null;
+            if (position != null && claims.compareAndSet(position, FREE, RESERVED)) {
+                reserved++;
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * @return the master data map the rows are enriched in
+     */
+    public ConcurrentMap<String, TransactionRecord> getRows() {
+        return phonePeRows;
+    }
+
+    /**
+     * Matches the bank row and, if a PhonePe row matches, appends the details
+     * of the bank row to its payee in the same atomic step. A flagged match
+     * claims the payment without enriching it. An exact match revokes a fuzzy
+     * match of the same payment.
+     *
+     * @param reference      UTR or order id of the bank row, may be empty
+     * @param date           bank date, null if not known
+     * @param amountPaise    bank amount, {@link TransactionRecord#NO_AMOUNT}
+     *                       if not known
+     * @param debit          true for debits, only debits without a reference
+     *                       are matched fuzzily
+     * @param enrichmentInfo appended to the payee of the PhonePe row
+     * @return the match, null if there is none
+     */
+    public Match reconcile(String reference, LocalDate date, long amountPaise, boolean debit,
+            String enrichmentInfo) {
+        if (reference != null && !reference.isEmpty()) {
+            Integer position = positions.get(reference);
+            TransactionRecord row = phonePeRows.computeIfPresent(reference, (key, current) -> {
+                // Under the lock of the entry, a fuzzy match enriches it under the same lock
+                if (position != null && claims.getAndSet(position, EXACT) == FUZZY) {
+                    current = revoke(position, current);
+                }
+                return enrich(current, enrichmentInfo);
+            });
+            if (row != null) {
+                exactMatches.incrementAndGet();
+                return record(reference, row, EXACT_CONFIDENCE, false, reference, date, amountPaise);
+            }
+        }
+        if (!isFuzzyCandidate(reference, debit)) {
+            if (debit) {
+                unmatched.incrementAndGet();
+            }
+            return null;
+        }
+        if (date != null && amountPaise != TransactionRecord.NO_AMOUNT) {
+            int day = (int) date.toEpochDay();
+            // Another statement may claim the best payment first, then the next best is taken
+            for (int best = findBest(day, amountPaise); best >= 0; best = findBest(day, amountPaise)) {
+                double confidence = confidence(best, day, amountPaise);
+                boolean flagged = confidence < mergeConfidence;
+                if (!claims.compareAndSet(best, FREE, flagged ? FLAGGED : FUZZY)) {
+                    continue;
+                }
+                if (flagged) {
+                    flaggedMatches.incrementAndGet();
+                    return record(keys[best], phonePeRows.get(keys[best]), confidence, true, reference,
+                            date, amountPaise);
+                }
+                int position = best;
+                boolean[] merged = new boolean[1];
+                TransactionRecord row = phonePeRows.computeIfPresent(keys[best], (key, current) -> {
+                    // An exact match may have taken the payment since it was claimed
+                    merged[0] = claims.get(position) == FUZZY;
+                    if (!merged[0]) {
+                        return current;
+                    }
+                    fuzzyEnrichments.set(position, enrichmentInfo);
+                    return enrich(current, enrichmentInfo);
+                });
+                if (merged[0]) {
+                    fuzzyMatches.incrementAndGet();
+                    return record(keys[best], row, confidence, false, reference, date, amountPaise);
+                }
+            }
+        }
+        unmatched.incrementAndGet();
+        return null;
+    }
+
+    public ReconciliationSummary getSummary() {
+        return ReconciliationSummary.builder()
+                .phonePeRows(phonePeCount)
+                .exactMatches(exactMatches.get())
+                .fuzzyMatches(fuzzyMatches.get())
+                .flaggedMatches(flaggedMatches.get())
+                .unmatched(unmatched.get())
+                .revokedMatches(revokedMatches.get())
+                .matches(new ArrayList<>(matches))
+                .build();
+    }
+
+    /**
+     * @return position of the unclaimed payment with the highest confidence,
+     *         ties keep the smaller amount and earlier date; -1 if none
+     *         reaches the minimum confidence
+     */
+    private int findBest(int day, long amountPaise) {
+        int best = -1;
+        double bestConfidence = minConfidence;
+        for (int i = lowerBound(amountPaise - amountTolerancePaise); i < amounts.length
+                && amounts[i] <= amountPaise + amountTolerancePaise; i++) {
+            if (claims.get(i) != FREE || Math.abs(days[i] - day) > dateWindowDays) {
+                continue;
+            }
+            double confidence = confidence(i, day, amountPaise);
+            if (confidence > bestConfidence || (best < 0 && confidence >= minConfidence)) {
+                best = i;
+                bestConfidence = confidence;
+            }
+        }
+        return best;
+    }
+
+    private double confidence(int position, int day, long amountPaise) {
+        return FUZZY_CONFIDENCE
+                - DATE_PENALTY * Math.abs(days[position] - day) / Math.max(dateWindowDays, 1)
+                - AMOUNT_PENALTY * Math.abs(amounts[position] - amountPaise) / Math.max(amountTolerancePaise, 1);
+    }
+
+    /**
+     * @param txnDetails narration of the bank row split at '/'
+     * @return the first part after the transaction type which is neither a
+     *         VPA nor a number, usually the payee as named by the bank
+     */
+    public static String enrichmentInfo(String[] txnDetails) {
+        for (int idx = 1; idx < txnDetails.length; idx++) {
+            if (txnDetails[idx].indexOf("@") == -1 && !ExpenseUtil.isOnlyNumbers(txnDetails[idx])) {
+                return txnDetails[idx];
+            }
+        }
+        return "";
+    }
+
+    private static TransactionRecord enrich(TransactionRecord row, String enrichmentInfo) {
+        return row.toBuilder().paidTo(String.valueOf(row.getPaidTo()) + " | " + enrichmentInfo).build();
+    }
+
+    /**
+     * Removes the enrichment of the fuzzy match which merged the payment
+     * before its exact match was found.
+     */
+    private TransactionRecord revoke(int position, TransactionRecord row) {
+        String enrichmentInfo = fuzzyEnrichments.getAndSet(position, null);
+        if (enrichmentInfo == null) {
+            // Claimed but not merged yet, the fuzzy match looks for another payment
+            return row;
+        }
+        fuzzyMatches.decrementAndGet();
+        revokedMatches.incrementAndGet();
+        LOG.warn("Fuzzy match of PhonePe payment {} revoked by its exact match, the bank row it replaced ({})"
+                + " is lost", keys[position], enrichmentInfo);
+        String paidTo = String.valueOf(row.getPaidTo());
+        int index = paidTo.indexOf(" | " + enrichmentInfo);
+        return (index < 0) ? row : row.toBuilder()
+                .paidTo(paidTo.substring(0, index) + paidTo.substring(index + 3 + enrichmentInfo.length())).build();
+    }
+
+    private Match record(String key, TransactionRecord row, double confidence, boolean flagged, String reference,
+            LocalDate date, long amountPaise) {
+        matches.add(ReconciliationMatch.builder()
+                .phonePeReference(key)
+                .bankReference(reference)
+                .bankDate(ExpenseUtil.toDateString(date, DatePattern.REPORT_DATE))
+                .phonePeDate(ExpenseUtil.toDateString(row.getDate(), DatePattern.REPORT_DATE))
+                .bankAmount((amountPaise == TransactionRecord.NO_AMOUNT) ? ""
+                        : BigDecimal.valueOf(amountPaise, 2).toPlainString())
+                .phonePeAmount(row.formatAmount())
+                .confidence(confidence)
+                .flagged(flagged)
+                .build());
+        return new Match(key, row, confidence, flagged);
+    }
+
+    /**
+     * @return index of the first amount not below the given one
+     */
+    private int lowerBound(long amountPaise) {
+        int low = 0;
+        int high = amounts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (amounts[mid] < amountPaise) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,32 @@
+package com.agv.expenses.processor;
+
+import com.agv.expenses.service.TransactionStore;
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.TransactionRecord;
+
+/**
+ * Passes rows on to another sink and adds them to the transaction store on
+ * the way, in batches, so that streamed rows are stored without keeping the
+ * statement in memory.
+ */
+public class RecordingRowSink implements StatementRowSink {
+
+    private final StatementRowSink delegate;
+    private final TransactionStore.StatementAppender appender;
+
+    public RecordingRowSink(StatementRowSink delegate, TransactionStore.StatementAppender appender) {
+        this.delegate = delegate;
+        this.appender = appender;
+    }
+
+    @Override
+    public void onRow(TransactionRecord row) throws Exception {
+        appender.add(row);
+        delegate.onRow(row);
+    }
+
+    @Override
+    public void onError(StatementProcessErrorRow errorRow) throws Exception {
+        delegate.onError(errorRow);
+    }
+}
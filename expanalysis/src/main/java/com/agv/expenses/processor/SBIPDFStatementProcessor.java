@@ -13,14 +13,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.pulsar.PulsarProperties.Transaction;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+import com.agv.expenses.util.DatePattern;
 import com.agv.expenses.util.ExpenseUtil;
 import com.google.api.services.sheets.v4.model.ValueRange;
 
 @Component
-public class SBIPDFStatementProcessor implements Processor {
+@Order(2)
+public class SBIPDFStatementProcessor implements StatementParser {
 
     // Standard SLF4J Logger
     private static final Logger LOG = LoggerFactory.getLogger(SBIPDFStatementProcessor.class);
@@ -35,13 +41,61 @@ public class SBIPDFStatementProcessor implements Processor {
     Pattern DEBIT_PATTERN = Pattern.compile("(?<= - - )([^ ]+)");
     // Validation: Date + Space + Alphabet
     private static final String START_PATTERN = "^\\d{2}-\\d{2}-\\d{2}\\s+[A-Za-z].*";
+    private static final Pattern ROW_DATE_PATTERN = Pattern.compile("^\\s*(\\d{2}-\\d{2}-\\d{2})\\s+[A-Za-z]",
+            Pattern.MULTILINE);
+    private static final Pattern SIGNATURE_PATTERN = Pattern.compile("State Bank of India|Ref\\.No\\./Chq\\.No\\.",
+            Pattern.CASE_INSENSITIVE);
+    @Value("${sbi.pdf.password}")
+    private String pdfPassword;
+    // Failures of each cause reported as error rows, see StatementErrorCollector
+    @Value("${expense.errors.max-rows-per-cause:10}")
+    private int maxErrorRowsPerCause = 10;
+    @Value("${expense.errors.max-stacks-per-cause:1}")
+    private int maxErrorStacksPerCause = 1;
+
+    @Override
+    public String getName() {
+        return "sbi-pdf";
+    }
+
+    @Override
+    public String getVersion() {
+        return "2";
+    }
+
+    @Override
+    public boolean isPdf() {
+        return true;
+    }
+
+    @Override
+    public String getPassword() {
+        return pdfPassword;
+    }
+
+    @Override
+    public LocalDate startDate(String text) {
+        return ExpenseUtil.earliestDate(text, ROW_DATE_PATTERN, DatePattern.SBI_DATE.getFormatter());
+    }
+
+    @Override
+    public boolean matches(byte[] header, String firstPageText) {
+        return firstPageText != null && SIGNATURE_PATTERN.matcher(firstPageText).find();
+    }
 
     @Override
     public void process(Exchange exchange) throws Exception {
         String rawText = exchange.getIn().getBody(String.class);
+        String messageID = exchange.getIn().getHeader(ExpenseUtil.EXCH_HEADER_PROPERTY_EMAIL_MSG_ID, String.class);
         // LOG.debug(rawText);
-        List<String[]> allRows = new ArrayList<>();
-        Map<String, List<Object>> masterDataMap = new HashMap<>();
+        List<TransactionRecord> allRows = new ArrayList<>();
+        // Collects the error rows only, the rows are kept in allRows
+        CollectingRowSink errorSink = new CollectingRowSink();
+        StatementErrorCollector errors = new StatementErrorCollector(errorSink, LOG, messageID,
+                exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_MAX_ERROR_ROWS, maxErrorRowsPerCause, Integer.class),
+                exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_MAX_ERROR_STACKS, maxErrorStacksPerCause,
+                        Integer.class));
+        Map<String, TransactionRecord> masterDataMap = new HashMap<>();
         /**
          * Index position and corresponding values
          * 0. Date
@@ -70,7 +124,7 @@ public class SBIPDFStatementProcessor implements Processor {
             if (rawLine.matches(START_PATTERN)) {
                 if (rawMsgString != null && rawMsgString.length() > 0) {
                     // Process previous buffer
-                    allRows.add(processBuffer(rawMsgString.toString()));
+                    addRow(allRows, errors, rawMsgString.toString());
                     rawMsgString = null;
                     isCaptureMode = false;
                 }
@@ -81,14 +135,14 @@ public class SBIPDFStatementProcessor implements Processor {
                     isCaptureMode = true;
                     continue;
                 } else {
-                    allRows.add(processBuffer(rawLine));
+                    addRow(allRows, errors, rawLine);
                     rawMsgString = null;
                     isCaptureMode = false;
                 }
             } else if (isCaptureMode) {
                 rawMsgString.append(rawLine).append(" ");
                 if (StringUtils.countOccurrencesOf(rawMsgString.toString(), " - ") > 1) {
-                    allRows.add(processBuffer(rawMsgString.toString()));
+                    addRow(allRows, errors, rawMsgString.toString());
                     rawMsgString = null;
                     isCaptureMode = false;
                 }
@@ -96,12 +150,31 @@ public class SBIPDFStatementProcessor implements Processor {
 
         }
         // TODO Adding last row
+        errors.logSummary();
         exchange.setProperty("MASTER_DATA_MAP", masterDataMap);
+        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD, allRows.toArray(TransactionRecord[]::new));
+        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST, errorSink.getErrorRows());
+        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_CAUSES, errors.getCauses());
 
     }
 
-    private String[] processBuffer(String fullRecord) {
-        String[] txnRowArr = new String[4];
+    /**
+     * Adds the row of a complete record, a record which cannot be parsed is
+     * reported as an error row instead.
+     */
+    private void addRow(List<TransactionRecord> allRows, StatementErrorCollector errors, String fullRecord)
+            throws Exception {
+        TransactionRecord txn;
+        try {
+            txn = processBuffer(fullRecord);
+        } catch (IllegalArgumentException e) {
+            errors.onError(() -> fullRecord, e);
+            return;
+        }
+        allRows.add(txn);
+    }
+
+    private TransactionRecord processBuffer(String fullRecord) {
         /*
          * Matcher matcher = EXTRACTION_PATTERN.matcher(fullRecord);
          * 
@@ -114,9 +187,10 @@ public class SBIPDFStatementProcessor implements Processor {
          */
         // 1. Extract the Date and the "Rest of the line"
         // Using limit 2 to separate the date from the rest
-        String[] dateSplit = fullRecord.split("\\s+", 2);
-        if (dateSplit.length < 2)
-            return txnRowArr;
+        String[] dateSplit = fullRecord.trim().split("\\s+", 2);
+        if (dateSplit.length < 2) {
+            throw new IllegalArgumentException("No description after the date");
+        }
 
         String date = dateSplit[0];
         String remaining = dateSplit[1];
@@ -146,10 +220,18 @@ public class SBIPDFStatementProcessor implements Processor {
             }
 
         }
-        txnRowArr[0] = date;
-        txnRowArr[1] = description;
-        txnRowArr[2] = amount;
-        txnRowArr[3] = type;
-        return txnRowArr;
+        LocalDate txnDate;
+        try {
+            txnDate = LocalDate.parse(date, DatePattern.SBI_DATE.getFormatter());
+        } catch (DateTimeParseException e) {
+            LOG.debug("Exception " + e.getMessage() + " while parsing " + date);
+            txnDate = null;
+        }
+        return TransactionRecord.builder()
+                .date(txnDate)
+                .paidTo(description)
+                .amountPaise(ExpenseUtil.toPaise(amount, TransactionRecord.NO_AMOUNT))
+                .type(TransactionType.of(type))
+                .build();
     }
 }
\ No newline at end of file
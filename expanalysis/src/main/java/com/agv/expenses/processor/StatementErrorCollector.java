@@ -0,0 +1,118 @@
+package com.agv.expenses.processor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+
+import com.agv.expenses.service.model.StatementErrorCause;
+import com.agv.expenses.service.model.StatementErrorCode;
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Reports the failures of one statement at a bounded cost. Failures are
+ * grouped by cause, being the error code and the exception class. Only the
+ * first <code>maxRowsPerCause</code> failures of a cause are logged and
+ * passed on as error rows, and only the first
+ * <code>maxStacksPerCause</code> of those carry a stack trace. Further
+ * failures are only counted, without rendering their message, line or
+ * stack, so a statement full of broken lines costs little more than a clean
+ * one and its response stays small.
+ */
+public class StatementErrorCollector {
+
+    private final StatementRowSink sink;
+    private final Logger log;
+    private final String messageId;
+    private final int maxRowsPerCause;
+    private final int maxStacksPerCause;
+    private final String date = ExpenseUtil.getCurrentDateTimeString(null);
+    private final Map<CauseKey, StatementErrorCause> causes = new LinkedHashMap<>();
+    private int errorCount;
+
+    private record CauseKey(StatementErrorCode code, Class<?> exceptionClass) {
+    }
+
+    /**
+     * @param sink receives the reported error rows
+     * @param log  logger of the processor
+     */
+    public StatementErrorCollector(StatementRowSink sink, Logger log, String messageId, int maxRowsPerCause,
+            int maxStacksPerCause) {
+        this.sink = sink;
+        this.log = log;
+        this.messageId = messageId;
+        this.maxRowsPerCause = Math.max(0, maxRowsPerCause);
+        this.maxStacksPerCause = Math.max(0, maxStacksPerCause);
+    }
+
+    /**
+     * @param referenceLine the line or row that failed, only built if the
+     *                      failure is reported
+     */
+    public void onError(Supplier<String> referenceLine, Exception e) throws Exception {
+        errorCount++;
+        StatementErrorCode code = StatementErrorCode.of(e);
+        CauseKey key = new CauseKey(code, e.getClass());
+        StatementErrorCause cause = causes.get(key);
+        if (cause == null) {
+            cause = StatementErrorCause.builder()
+                    .errorCode(code.name())
+                    .exceptionClass(e.getClass().getName())
+                    .errorMessage(e.getMessage())
+                    .referenceLine(referenceLine.get())
+                    .build();
+            causes.put(key, cause);
+        }
+        cause.setCount(cause.getCount() + 1);
+        if (cause.getReportedRows() >= maxRowsPerCause) {
+            return;
+        }
+        cause.setReportedRows(cause.getReportedRows() + 1);
+        String line = (cause.getCount() == 1) ? cause.getReferenceLine() : referenceLine.get();
+        String message = (cause.getCount() == 1) ? cause.getErrorMessage() : e.getMessage();
+        boolean withStack = cause.getReportedRows() <= maxStacksPerCause;
+        if (withStack) {
+            log.error("Error processing line [{}]: {}", code, line, e);
+        } else {
+            log.error("Error processing line [{}]: {}: {}", code, line, message);
+        }
+        sink.onError(StatementProcessErrorRow.builder()
+                .date(date)
+                .messageId(messageId)
+                .errorCode(code.name())
+                .errorMessage(message)
+                .referenceLine(line)
+                .errorStack(withStack ? ExpenseUtil.getStackTrace(e) : null)
+                .build());
+    }
+
+    /**
+     * @return number of failures, reported or not
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the causes in the order they first occurred
+     */
+    public StatementErrorCause[] getCauses() {
+        return causes.values().toArray(StatementErrorCause[]::new);
+    }
+
+    /**
+     * Logs the failures which were counted but not reported.
+     */
+    public void logSummary() {
+        for (StatementErrorCause cause : causes.values()) {
+            if (cause.getCount() > cause.getReportedRows()) {
+                log.warn("{} more failures [{}] {} not reported, {} in total: {}",
+                        cause.getCount() - cause.getReportedRows(), cause.getErrorCode(),
+                        cause.getExceptionClass(), cause.getCount(), cause.getErrorMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.agv.expenses.processor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+
+import org.apache.camel.Processor;
+
+/**
+ * A statement format the application can parse. Parsers are Spring beans
+ * picked up by {@link com.agv.expenses.service.StatementParserRegistry},
+ * which recognises the format of a statement from its first page before the
+ * whole document is extracted.
+ */
+public interface StatementParser extends Processor {
+
+    /**
+     * @return name of the format, part of the statement cache key
+     */
+    String getName();
+
+    /**
+     * @return version of the parsed output, increment whenever it changes
+     */
+    String getVersion();
+
+    /**
+     * @return true for PDF statements, whose text is extracted before
+     *         {@link #process} is called
+     */
+    boolean isPdf();
+
+    /**
+     * @return password of protected PDF statements, null if not protected
+     */
+    default String getPassword() {
+        return null;
+    }
+
+    /**
+     * Signature check of the format, it has to be cheap as it is run for
+     * every parser until one matches.
+     *
+     * @param header        leading bytes of the file
+     * @param firstPageText text of the first page, null if the file is not a
+     *                      PDF
+     * @return true if the statement is in this format
+     */
+    boolean matches(byte[] header, String firstPageText);
+
+    /**
+     * Closer look at a statement which is not a PDF, run once its header
+     * matched, e.g. for a sheet the workbook has to hold. Formats whose header
+     * is specific enough need not override it.
+     *
+     * @param content the whole file
+     * @return true if the statement is in this format
+     */
+    default boolean matchesContent(InputStream content) throws IOException {
+        return true;
+    }
+
+    /**
+     * @return true if the parser reports its rows through a
+     *         {@link StatementRowSink} and the response properties, as
+     *         required by the REST API
+     */
+    default boolean emitsRows() {
+        return false;
+    }
+
+    /**
+     * @return true if the rows of other statements are reconciled against the
+     *         rows of this format, such statements are merged first when a
+     *         folder is ingested
+     */
+    default boolean isReference() {
+        return false;
+    }
+
+    /**
+     * Cheap scan of the extracted text for the start of the statement period,
+     * the statements of a folder are merged in the order of their periods.
+     *
+     * @return date of the earliest transaction, null if not known
+     */
+    default LocalDate startDate(String text) {
+        return null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.agv.expenses.processor;
+
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.TransactionRecord;
+
+/**
+ * Receives the rows of a statement as soon as the processor has parsed and
+ * validated them. Set on the exchange under
+ * {@link com.agv.expenses.util.ExpenseUtil#EXCH_PROPERTY_ROW_SINK} to stream
+ * results instead of collecting them into the response arrays.
+ */
+public interface StatementRowSink {
+
+    void onRow(TransactionRecord row) throws Exception;
+
+    void onError(StatementProcessErrorRow errorRow) throws Exception;
+
+}
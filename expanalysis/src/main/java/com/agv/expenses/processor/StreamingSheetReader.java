@@ -0,0 +1,360 @@
+package com.agv.expenses.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.EventWorkbookBuilder;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.RecordFormatException;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads the rows of one sheet of an Excel workbook without building the
+ * workbook model: .xls files are read record by record with the HSSF event
+ * API, .xlsx files with a SAX parser over the sheet XML. Only the strings of
+ * the current row are held, so the memory needed does not grow with the
+ * number of rows.
+ * <p>
+ * Cells are reported as the user model's cell values would be turned into
+ * strings: text as is, numbers with {@link String#valueOf(double)}, numbers
+ * in a date format with the given formatter, formulas as the formula text.
+ * The 1904 date system is only recognised in .xls files.
+ * <p>
+ * A reader is not thread safe, the formatter is.
+ */
+public class StreamingSheetReader {
+
+    /**
+     * Receives the rows of the sheet in order, rows without cells are not
+     * reported.
+     */
+    public interface RowHandler {
+        /**
+         * @param rowNum 0-based row number
+         * @param cells  cell values by column, empty for missing cells; the
+         *               array is reused for the next row
+         */
+        void onRow(int rowNum, String[] cells);
+    }
+
+    private final String sheetName;
+    private final int columns;
+    private final DateTimeFormatter dateFormat;
+    private final RowHandler handler;
+    private final String[] cells;
+
+    /**
+     * @param columns number of leading columns reported, cells beyond are
+     *                skipped
+     */
+    public StreamingSheetReader(String sheetName, int columns, DateTimeFormatter dateFormat, RowHandler handler) {
+        this.sheetName = sheetName;
+        this.columns = columns;
+        this.dateFormat = dateFormat;
+        this.handler = handler;
+        this.cells = new String[columns];
+    }
+
+    /**
+     * Reads the file in place, .xls files are not copied into memory.
+     */
+    public void read(File file) throws IOException {
+        FileMagic magic = FileMagic.valueOf(file);
+        if (magic == FileMagic.OLE2) {
+            try (POIFSFileSystem fs = new POIFSFileSystem(file, true)) {
+                readXls(fs);
+            }
+        } else if (magic == FileMagic.OOXML) {
+            try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+                readXlsx(pkg);
+            } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+                throw new IOException("Could not read " + file, e);
+            }
+        } else {
+            throw new IllegalArgumentException("Not an Excel workbook: " + file);
+        }
+    }
+
+    public void read(InputStream in) throws IOException {
+        InputStream stream = FileMagic.prepareToCheckMagic(in);
+        FileMagic magic = FileMagic.valueOf(stream);
+        if (magic == FileMagic.OLE2) {
+            try (POIFSFileSystem fs = new POIFSFileSystem(stream)) {
+                readXls(fs);
+            }
+        } else if (magic == FileMagic.OOXML) {
+            try (OPCPackage pkg = OPCPackage.open(stream)) {
+                readXlsx(pkg);
+            } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+                throw new IOException("Could not read the workbook", e);
+            }
+        } else {
+            throw new IllegalArgumentException("Not an Excel workbook");
+        }
+    }
+
+    /**
+     * Reads the sheet names only, up to the first sheet of an .xls workbook.
+     *
+     * @return true if the content is a workbook with a sheet of the name,
+     *         false for other content
+     */
+    public static boolean hasSheet(InputStream in, String sheetName) throws IOException {
+        InputStream stream = FileMagic.prepareToCheckMagic(in);
+        FileMagic magic = FileMagic.valueOf(stream);
+        try {
+            if (magic == FileMagic.OLE2) {
+                try (POIFSFileSystem fs = new POIFSFileSystem(stream)) {
+                    boolean[] found = new boolean[1];
+                    AbortableHSSFListener listener = new AbortableHSSFListener() {
+                        @Override
+                        public short abortableProcessRecord(Record record) {
+                            if (record instanceof BoundSheetRecord boundSheet) {
+                                found[0] |= sheetName.equals(boundSheet.getSheetname());
+                            }
+                            // The bound sheet records precede the first sheet
+                            return (record instanceof BOFRecord bof && bof.getType() == BOFRecord.TYPE_WORKSHEET)
+                                    ? (short) 1
+                                    : 0;
+                        }
+                    };
+                    HSSFRequest request = new HSSFRequest();
+                    request.addListener(listener, BoundSheetRecord.sid);
+                    request.addListener(listener, BOFRecord.sid);
+                    new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs);
+                    return found[0];
+                }
+            } else if (magic == FileMagic.OOXML) {
+                try (OPCPackage pkg = OPCPackage.open(stream)) {
+                    XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+                    while (sheets.hasNext()) {
+                        try (InputStream sheet = sheets.next()) {
+                            if (sheetName.equals(sheets.getSheetName())) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IllegalArgumentException | RecordFormatException | HSSFUserException | OpenXML4JException e) {
+            // E.g. a Word document or a ZIP archive which is no workbook
+            return false;
+        }
+        return false;
+    }
+
+    private void readXls(POIFSFileSystem fs) throws IOException {
+        XlsListener listener = new XlsListener();
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords(listener.formats);
+        new HSSFEventFactory().processWorkbookEvents(request, fs);
+        if (!listener.found) {
+            throw sheetNotFound();
+        }
+    }
+
+    private void readXlsx(OPCPackage pkg)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        XSSFReader reader = new XSSFReader(pkg);
+        ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+        StylesTable styles = reader.getStylesTable();
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext()) {
+            try (InputStream sheet = sheets.next()) {
+                if (!sheetName.equals(sheets.getSheetName())) {
+                    continue;
+                }
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, strings, new XlsxHandler(),
+                        new CellFormatter(), true));
+                parser.parse(new InputSource(sheet));
+                return;
+            }
+        }
+        throw sheetNotFound();
+    }
+
+    private IllegalArgumentException sheetNotFound() {
+        return new IllegalArgumentException("Sheet '" + sheetName + "' not found in the Excel file!");
+    }
+
+    private String formatNumber(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+        if (formatString != null && DateUtil.isADateFormat(formatIndex, formatString)
+                && DateUtil.isValidExcelDate(value)) {
+            return DateUtil.getLocalDateTime(value, use1904Windowing).format(dateFormat);
+        }
+        return String.valueOf(value);
+    }
+
+    private void startRow() {
+        Arrays.fill(cells, "");
+    }
+
+    /**
+     * Listens to the records of the .xls workbook. Sheets are matched by the
+     * order of their BOF records to their bound sheet records, as in the
+     * file.
+     */
+    private class XlsListener implements HSSFListener {
+
+        private final EventWorkbookBuilder.SheetRecordCollectingListener workbook =
+                new EventWorkbookBuilder.SheetRecordCollectingListener(this);
+        private final FormatTrackingHSSFListener formats = new FormatTrackingHSSFListener(workbook);
+        private final List<BoundSheetRecord> boundSheets = new ArrayList<>();
+        private BoundSheetRecord[] orderedSheets;
+        private SSTRecord strings;
+        private boolean use1904Windowing;
+        private int sheetIndex = -1;
+        private boolean inSheet;
+        private boolean found;
+        private int rowNum = -1;
+
+        @Override
+        public void processRecord(Record record) {
+            if (record instanceof BoundSheetRecord boundSheet) {
+                boundSheets.add(boundSheet);
+            } else if (record instanceof DateWindow1904Record window) {
+                use1904Windowing = window.getWindowing() == 1;
+            } else if (record instanceof SSTRecord sst) {
+                strings = sst;
+            } else if (record instanceof BOFRecord bof && bof.getType() == BOFRecord.TYPE_WORKSHEET) {
+                if (orderedSheets == null) {
+                    orderedSheets = BoundSheetRecord.orderByBofPosition(boundSheets);
+                }
+                sheetIndex++;
+                inSheet = sheetIndex < orderedSheets.length
+                        && sheetName.equals(orderedSheets[sheetIndex].getSheetname());
+                found |= inSheet;
+                rowNum = -1;
+            } else if (record instanceof EOFRecord && inSheet) {
+                endRow();
+                inSheet = false;
+            } else if (inSheet && record instanceof CellValueRecordInterface cell) {
+                String value = valueOf(record);
+                if (value == null) {
+                    return;
+                }
+                if (cell.getRow() != rowNum) {
+                    endRow();
+                    rowNum = cell.getRow();
+                    startRow();
+                }
+                if (cell.getColumn() < columns) {
+                    cells[cell.getColumn()] = value;
+                }
+            }
+        }
+
+        /**
+         * @return the value of the cell, null for records which are not
+         *         reported
+         */
+        private String valueOf(Record record) {
+            if (record instanceof LabelSSTRecord label) {
+                return strings.getString(label.getSSTIndex()).getString();
+            } else if (record instanceof LabelRecord label) {
+                return label.getValue();
+            } else if (record instanceof NumberRecord number) {
+                CellValueRecordInterface cell = number;
+                return formatNumber(number.getValue(), formats.getFormatIndex(cell), formats.getFormatString(cell),
+                        use1904Windowing);
+            } else if (record instanceof BoolErrRecord boolErr) {
+                return boolErr.isBoolean() ? String.valueOf(boolErr.getBooleanValue()) : "";
+            } else if (record instanceof FormulaRecord formula) {
+                return HSSFFormulaParser.toFormulaString(workbook.getStubHSSFWorkbook(),
+                        formula.getParsedExpression());
+            }
+            // Blank cells, the row is reported once it has a value
+            return null;
+        }
+
+        private void endRow() {
+            if (rowNum >= 0) {
+                handler.onRow(rowNum, cells);
+                rowNum = -1;
+            }
+        }
+    }
+
+    private class XlsxHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private int column;
+        private boolean hasCells;
+
+        @Override
+        public void startRow(int rowNum) {
+            StreamingSheetReader.this.startRow();
+            column = -1;
+            hasCells = false;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (hasCells) {
+                handler.onRow(rowNum, cells);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // The reference is optional, cells without one follow the previous cell
+            column = (cellReference == null) ? column + 1 : new CellReference(cellReference).getCol();
+            if (column < columns && formattedValue != null) {
+                cells[column] = formattedValue;
+                hasCells = true;
+            }
+        }
+    }
+
+    /**
+     * Formats numbers as {@link #formatNumber} does for .xls files.
+     */
+    private class CellFormatter extends DataFormatter {
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return formatNumber(value, formatIndex, formatString, false);
+        }
+    }
+}
@@ -1,53 +1,103 @@
 package com.agv.expenses.route;
 
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.camel.Exchange;
-import org.apache.camel.PropertyInject;
+import org.apache.camel.Message;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.dataformat.JsonLibrary;
 import org.apache.camel.model.rest.RestBindingMode;
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.camel.processor.aggregate.GroupedBodyAggregationStrategy;
 import org.apache.pdfbox.pdmodel.encryption.StandardDecryptionMaterial;
-import org.apache.pdfbox.text.PDFTextStripper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.agv.expenses.processor.FolderIngestionProcessor;
 import com.agv.expenses.processor.GoogleSheetsWriteProcessor;
-import com.agv.expenses.processor.ICICISacStmtPDFProcessor;
 import com.agv.expenses.processor.ICICITransactionProcessor;
 import com.agv.expenses.processor.PhonePePDFProcessor;
-import com.agv.expenses.processor.PhonePePDFProcessorGSheets;
-import com.agv.expenses.processor.SBIPDFStatementProcessor;
+import com.agv.expenses.processor.RecordingRowSink;
+import com.agv.expenses.processor.StatementParser;
+import com.agv.expenses.processor.StatementRowSink;
+import com.agv.expenses.service.DriveFileFetcher;
+import com.agv.expenses.service.PDFTextExtractor;
+import com.agv.expenses.service.SheetsWriter;
+import com.agv.expenses.service.SpendingRollups;
+import com.agv.expenses.service.StatementCache;
+import com.agv.expenses.service.StatementDocument;
+import com.agv.expenses.service.StatementDocumentLoader;
+import com.agv.expenses.service.StatementJobService;
+import com.agv.expenses.service.StatementParserRegistry;
+import com.agv.expenses.service.StatementStreamService;
+import com.agv.expenses.service.TransactionExportService;
+import com.agv.expenses.service.TransactionStore;
+import com.agv.expenses.service.model.CacheStats;
 import com.agv.expenses.service.model.Health;
-import com.agv.expenses.service.model.PDFExtractPayload;
+import com.agv.expenses.service.model.ParsedStatement;
+import com.agv.expenses.service.model.SheetsWriteStats;
+import com.agv.expenses.service.model.SpendingRollupResponse;
+import com.agv.expenses.service.model.StatementBatchRequest;
+import com.agv.expenses.service.model.StatementBatchResponse;
+import com.agv.expenses.service.model.StatementErrorCause;
+import com.agv.expenses.service.model.StatementJobStatus;
 import com.agv.expenses.service.model.StatementProcessErrorRow;
 import com.agv.expenses.service.model.StatementProcessRequest;
 import com.agv.expenses.service.model.StatementProcessResponse;
+import com.agv.expenses.service.model.TransactionExportResponse;
+import com.agv.expenses.service.model.TransactionQuery;
+import com.agv.expenses.service.model.TransactionQueryResponse;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+import com.agv.expenses.util.DatePattern;
 import com.agv.expenses.util.ExpenseUtil;
 import com.google.api.services.sheets.v4.model.ValueRange;
-import com.google.api.services.drive.Drive;
 
 @Component
 public class ExpenseDataRoute extends RouteBuilder {
         @Value("${my.spreadsheet.id}")
         private String spreadsheetId;
-        @PropertyInject("sbi.pdf.password")
-        private String sbiPDFPassword;
-        @PropertyInject("icici.pdf.password")
-        private String iciciPDFPassword;
+        @Value("${expense.batch.max-concurrency:4}")
+        private int batchMaxConcurrency;
         @Autowired
-        private Drive driveService;        
+        private DriveFileFetcher driveFileFetcher;
         @Autowired
         private ICICITransactionProcessor iciciTransactionProcessor;
         @Autowired
-        private SBIPDFStatementProcessor sbiPDFStatementProcessor;
+        private GoogleSheetsWriteProcessor googleSheetsWriteProcessor;
         @Autowired
-        private ICICISacStmtPDFProcessor iciciPDFStmtProcessor;
+        private FolderIngestionProcessor folderIngestionProcessor;
+        @Autowired
+        private SheetsWriter sheetsWriter;
+        @Autowired
+        private StatementParserRegistry statementParserRegistry;
+        @Autowired
+        private PDFTextExtractor pdfTextExtractor;
+        @Autowired
+        private StatementDocumentLoader statementDocumentLoader;
+        @Autowired
+        private StatementCache statementCache;
+        @Autowired
+        private StatementJobService statementJobService;
+        @Autowired
+        private StatementStreamService statementStreamService;
+        @Autowired
+        private TransactionStore transactionStore;
+        @Autowired
+        private TransactionExportService transactionExportService;
+        @Autowired
+        private SpendingRollups spendingRollups;
         private static final Logger LOG = LoggerFactory.getLogger(ExpenseDataRoute.class);
+        // Options of the folder endpoints, see ProcessedFileRepository
+        private static final String PROCESSED_FILES = "&idempotentKey=${file:absolute.path}"
+                        + "&idempotentRepository=#processedFileRepository";
         @Override
         public void configure() throws Exception {
                 /** ############### REST Configurations ########################## */
@@ -55,6 +105,9 @@ public class ExpenseDataRoute extends RouteBuilder {
                 restConfiguration()
                                 .component("servlet")
                                 .bindingMode(RestBindingMode.json)
+                                // direct:processRequest is also called by the stream and job services, it has to
+                                // stay a route of its own rather than being inlined into the REST route
+                                .inlineRoutes(false)
                                 .contextPath("/expense");
 
                 // Define REST endpoint
@@ -64,11 +117,166 @@ public class ExpenseDataRoute extends RouteBuilder {
                                 .outType(StatementProcessResponse.class) // outgoing Response → JSON
                                 .to("direct:processRequest");
 
+                // Streaming variant: rows are written as NDJSON while the statement is parsed
+                rest("/api")
+                                .post("/processMessage/stream")
+                                .bindingMode(RestBindingMode.off)
+                                .consumes("application/json")
+                                .produces("application/x-ndjson")
+                                .to("direct:processRequestStream");
+
+                // CSV variant of the streaming response, gzip compressed with ?gzip=true
+                rest("/api")
+                                .post("/processMessage/csv")
+                                .bindingMode(RestBindingMode.off)
+                                .consumes("application/json")
+                                .produces("text/csv")
+                                .to("direct:processRequestCsv");
+
+                // Batch of statements processed concurrently, capped by expense.batch.max-concurrency
+                rest("/api")
+                                .post("/processBatch")
+                                .type(StatementBatchRequest.class)
+                                .outType(StatementBatchResponse.class)
+                                .to("direct:processBatch");
+
+                // Asynchronous variant: POST returns a job id, GET polls the job status
+                rest("/api")
+                                .post("/jobs")
+                                .type(StatementProcessRequest.class)
+                                .outType(StatementJobStatus.class)
+                                .to("direct:submitJob")
+                                .get("/jobs/{jobId}")
+                                .outType(StatementJobStatus.class)
+                                .to("direct:jobStatus");
+
                 // Extended Health endpoint
                 rest("/api")
                                 .get("/health")
                                 .to("direct:health");
 
+                // Debit and credit totals per day or month, in total, per account or per payee
+                rest("/api")
+                                .get("/rollups")
+                                .outType(SpendingRollupResponse.class)
+                                .to("direct:rollups");
+
+                from("direct:rollups")
+                                .process(exchange -> {
+                                        Message in = exchange.getIn();
+                                        try {
+                                                SpendingRollups.Period period = toEnum(SpendingRollups.Period.class,
+                                                                in.getHeader("period", String.class), SpendingRollups.Period.MONTH);
+                                                SpendingRollups.GroupBy groupBy = toEnum(SpendingRollups.GroupBy.class,
+                                                                in.getHeader("groupBy", String.class), SpendingRollups.GroupBy.NONE);
+                                                exchange.getMessage().setBody(SpendingRollupResponse.builder()
+                                                                .status("Success")
+                                                                .period(period.name())
+                                                                .groupBy(groupBy.name())
+                                                                .rollups(spendingRollups.query(period, groupBy,
+                                                                                in.getHeader("group", String.class),
+                                                                                toQueryDate(in.getHeader("fromDate", String.class)),
+                                                                                toQueryDate(in.getHeader("toDate", String.class))))
+                                                                .build());
+                                        } catch (IllegalArgumentException | DateTimeException e) {
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                                                exchange.getMessage().setBody(SpendingRollupResponse.builder()
+                                                                .status("Failed")
+                                                                .errorMessage(e.getMessage())
+                                                                .build());
+                                        }
+                                });
+
+                rest("/api")
+                                .get("/cache/stats")
+                                .outType(CacheStats.class)
+                                .to("direct:cacheStats");
+
+                rest("/api")
+                                .get("/sheets/stats")
+                                .outType(SheetsWriteStats.class)
+                                .to("direct:sheetsStats");
+
+                // Transactions parsed so far, filtered by date range, account, amount and type
+                rest("/api")
+                                .get("/transactions")
+                                .outType(TransactionQueryResponse.class)
+                                .to("direct:queryTransactions");
+
+                // All transactions of the ledger as CSV, with the filters of /transactions; GET streams the
+                // file to the client, POST writes it to expense.export.dir
+                rest("/api")
+                                .get("/transactions/export")
+                                .bindingMode(RestBindingMode.off)
+                                .produces("text/csv")
+                                .to("direct:exportTransactions")
+                                .post("/transactions/export")
+                                .outType(TransactionExportResponse.class)
+                                .to("direct:exportTransactionsToFile");
+
+                from("direct:exportTransactions")
+                                .process(exchange -> {
+                                        Message in = exchange.getIn();
+                                        try {
+                                                TransactionQuery query = toTransactionQuery(in);
+                                                boolean gzip = toGzip(in);
+                                                setCsvHeaders(exchange.getMessage(), "transactions", gzip);
+                                                exchange.getMessage().setBody(
+                                                                transactionExportService.openExport(query, gzip));
+                                        } catch (IllegalArgumentException | DateTimeException e) {
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                                                exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, "text/plain");
+                                                exchange.getMessage().setBody(e.getMessage());
+                                        }
+                                });
+
+                from("direct:exportTransactionsToFile")
+                                .process(exchange -> {
+                                        Message in = exchange.getIn();
+                                        try {
+                                                TransactionExportService.ExportedFile exported = transactionExportService
+                                                                .exportToFile(toTransactionQuery(in), toGzip(in));
+                                                exchange.getMessage().setBody(TransactionExportResponse.builder()
+                                                                .status("Success")
+                                                                .file(exported.file().toAbsolutePath().toString())
+                                                                .rows(exported.rows())
+                                                                .build());
+                                        } catch (IllegalArgumentException | DateTimeException e) {
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                                                exchange.getMessage().setBody(TransactionExportResponse.builder()
+                                                                .status("Failed")
+                                                                .errorMessage(e.getMessage())
+                                                                .build());
+                                        } catch (IOException e) {
+                                                LOG.error("Could not export the transactions", e);
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 500);
+                                                exchange.getMessage().setBody(TransactionExportResponse.builder()
+                                                                .status("Failed")
+                                                                .errorMessage(e.getMessage())
+                                                                .build());
+                                        }
+                                });
+
+                from("direct:queryTransactions")
+                                .process(exchange -> {
+                                        try {
+                                                exchange.getMessage().setBody(
+                                                                transactionStore.query(toTransactionQuery(exchange.getIn())));
+                                        } catch (IllegalArgumentException | DateTimeException e) {
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                                                exchange.getMessage().setBody(TransactionQueryResponse.builder()
+                                                                .status("Failed")
+                                                                .errorMessage(e.getMessage())
+                                                                .build());
+                                        }
+                                });
+
+                from("direct:cacheStats")
+                                .process(e -> e.getMessage().setBody(statementCache.getStats()));
+
+                from("direct:sheetsStats")
+                                .process(e -> e.getMessage().setBody(sheetsWriter.getStats()));
+
                 from("direct:health")
                                 .process(e -> {
                                         var ctx = e.getContext();
@@ -79,6 +287,102 @@ public class ExpenseDataRoute extends RouteBuilder {
                                                         .camel(camelUp ? "STARTED" : "STOPPED").build());
                                 });
 
+                from("direct:processRequestStream")
+                                .unmarshal().json(JsonLibrary.Jackson, StatementProcessRequest.class)
+                                .process(exchange -> {
+                                        StatementProcessRequest req = exchange.getIn()
+                                                        .getBody(StatementProcessRequest.class);
+                                        exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, "application/x-ndjson");
+                                        exchange.getMessage().setBody(statementStreamService.openStream(req));
+                                });
+
+                from("direct:processRequestCsv")
+                                .unmarshal().json(JsonLibrary.Jackson, StatementProcessRequest.class)
+                                .process(exchange -> {
+                                        StatementProcessRequest req = exchange.getIn()
+                                                        .getBody(StatementProcessRequest.class);
+                                        boolean gzip = toGzip(exchange.getIn());
+                                        setCsvHeaders(exchange.getMessage(), "statement", gzip);
+                                        exchange.getMessage().setBody(statementStreamService.openCsvStream(req, gzip));
+                                });
+
+                from("direct:submitJob")
+                                .process(exchange -> {
+                                        StatementProcessRequest req = exchange.getIn()
+                                                        .getBody(StatementProcessRequest.class);
+                                        if (req == null || req.getFileId() == null || req.getFileId().isBlank()) {
+                                                exchange.getMessage().setBody(StatementJobStatus.builder()
+                                                                .status(StatementJobStatus.FAILED)
+                                                                .messageId((req == null) ? null : req.getMessageId())
+                                                                .errorMessage((req == null) ? "Request body is required"
+                                                                                : "fileId is required")
+                                                                .build());
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                                                return;
+                                        }
+                                        try {
+                                                exchange.getMessage().setBody(statementJobService.submit(req));
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 202);
+                                        } catch (java.util.concurrent.RejectedExecutionException e) {
+                                                LOG.warn("Statement job queue is full, rejecting file {}", req.getFileId());
+                                                exchange.getMessage().setBody(StatementJobStatus.builder()
+                                                                .status(StatementJobStatus.FAILED)
+                                                                .messageId(req.getMessageId())
+                                                                .fileId(req.getFileId())
+                                                                .errorMessage("Job queue is full, retry later")
+                                                                .build());
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 503);
+                                        } catch (IllegalArgumentException e) {
+                                                exchange.getMessage().setBody(StatementJobStatus.builder()
+                                                                .status(StatementJobStatus.FAILED)
+                                                                .messageId(req.getMessageId())
+                                                                .fileId(req.getFileId())
+                                                                .errorMessage(e.getMessage())
+                                                                .build());
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                                        }
+                                });
+
+                from("direct:jobStatus")
+                                .process(exchange -> {
+                                        StatementJobStatus job = statementJobService
+                                                        .getJob(exchange.getIn().getHeader("jobId", String.class));
+                                        if (job == null) {
+                                                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 404);
+                                                exchange.getMessage().setBody(StatementJobStatus.builder()
+                                                                .status(StatementJobStatus.FAILED)
+                                                                .errorMessage("Unknown job id")
+                                                                .build());
+                                        } else {
+                                                exchange.getMessage().setBody(job);
+                                        }
+                                });
+
+                ExecutorService batchExecutor = getContext().getExecutorServiceManager()
+                                .newFixedThreadPool(this, "StatementBatch", batchMaxConcurrency);
+                from("direct:processBatch")
+                                .process(exchange -> {
+                                        StatementBatchRequest req = exchange.getIn().getBody(StatementBatchRequest.class);
+                                        List<StatementProcessRequest> items = (req == null || req.getItems() == null)
+                                                        ? List.of()
+                                                        : req.getItems();
+                                        exchange.setProperty("BATCH_ITEMS", items);
+                                        exchange.getIn().setBody(items);
+                                })
+                                .split(body(), new StatementBatchAggregationStrategy())
+                                        .parallelProcessing()
+                                        .executorService(batchExecutor)
+                                        .to("direct:processRequest")
+                                .end()
+                                .process(exchange -> {
+                                        @SuppressWarnings("unchecked")
+                                        List<StatementProcessRequest> items = exchange.getProperty("BATCH_ITEMS",
+                                                        List.class);
+                                        exchange.removeProperty("BATCH_ITEMS");
+                                        exchange.getMessage().setBody(
+                                                        StatementBatchAggregationStrategy.toBatchResponse(exchange, items));
+                                });
+
                 // Actual processor route
                 from("direct:processRequest")
                         .doTry()
@@ -89,38 +393,154 @@ public class ExpenseDataRoute extends RouteBuilder {
                                                         req.getFileId());
                                         exchange.getIn().setHeader(ExpenseUtil.EXCH_HEADER_PROPERTY_EMAIL_MSG_ID,
                                                         req.getMessageId());
+                                        if (req.getMaxErrorRowsPerCause() != null) {
+                                                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_MAX_ERROR_ROWS,
+                                                                req.getMaxErrorRowsPerCause());
+                                        }
+                                        if (req.getMaxErrorStacksPerCause() != null) {
+                                                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_MAX_ERROR_STACKS,
+                                                                req.getMaxErrorStacksPerCause());
+                                        }
                                 })
                                 .log("${header.CamelGoogleDrive.fileId}")
-                                // Step 2: Call Google Drive to get the file
-                                // 'drive-files/get' fetches the file metadata and content
-                                .to("google-drive://drive-files/get?scopes=https://www.googleapis.com/auth/drive.readonly")
-                                .process(exchange -> {
-                                        // After the .to(), the body contains the File Metadata. 
-                                        // To get the media, we access the underlying Google SDK Request object.
-                                        com.google.api.services.drive.model.File fileMetadata = exchange.getIn().getBody(com.google.api.services.drive.model.File.class);
-
-                                        // Execute the download
-                                        try (java.io.InputStream is = driveService.files().get(fileMetadata.getId()).executeMediaAsInputStream()) {
-                                        byte[] pdfBytes = is.readAllBytes();
-
-                                        // Step 4: Parse PDF using PDFBox
-                                        try (PDDocument document = Loader.loadPDF(pdfBytes, iciciPDFPassword)) {
-                                                        PDFTextStripper stripper = new PDFTextStripper();
-                                                        String text = stripper.getText(document);
-                                                        exchange.getIn().setBody(text);
+                                // Step 2: Resolve the content key of the file. Files seen before are recognised
+                                // from cached Drive metadata, unknown files are downloaded straight away
+                                .process(exchange -> lookupCachedResult(exchange, driveFileFetcher.findContentKey(
+                                                exchange.getIn().getHeader(ExpenseUtil.EXCH_HEADER_PROPERTY_PDF_FILE_ID,
+                                                                String.class))))
+                                .choice()
+                                .when(exchangeProperty(ExpenseUtil.EXCH_PROPERTY_CACHED_RESULT).isNull())
+                                        .process(exchange -> {
+                                                String contentKey = exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_CONTENT_KEY,
+                                                                String.class);
+                                                String text = (contentKey == null) ? null
+                                                                : statementCache.getText(StatementCache.textKey(contentKey));
+                                                if (text != null) {
+                                                        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_STATEMENT_PARSER,
+                                                                        requireRowParser(statementParserRegistry.detect(null, text)));
+                                                } else {
+                                                        String fileId = exchange.getIn().getHeader(
+                                                                        ExpenseUtil.EXCH_HEADER_PROPERTY_PDF_FILE_ID, String.class);
+                                                        // Step 3: Download the media in a single request, large files are spooled
+                                                        // to disk when pdf.load.disk-backed is set
+                                                        try (DriveFileFetcher.Download media = driveFileFetcher.download(fileId);
+                                                                        StatementDocument document = statementDocumentLoader.load(media)) {
+                                                                contentKey = media.getContentKey();
+                                                                // Same content may have been parsed before under another file id
+                                                                if (lookupCachedResult(exchange, contentKey)) {
+                                                                        return;
+                                                                }
+                                                                // Step 4: Recognise the format from the first page, so that statements
+                                                                // the API cannot parse are rejected before the full extraction
+                                                                StatementParserRegistry.Detection detection = statementParserRegistry
+                                                                                .detect(document);
+                                                                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_STATEMENT_PARSER,
+                                                                                requireRowParser(detection.parser()));
+                                                                // Step 5: Parse PDF using PDFBox
+                                                                text = pdfTextExtractor.extractText(document, detection.password());
+                                                        }
+                                                        if (contentKey != null) {
+                                                                statementCache.putText(StatementCache.textKey(contentKey), text);
+                                                        }
                                                 }
-                                        }
-                                })
-                                .process(iciciPDFStmtProcessor)
+                                                exchange.getIn().setBody(text);
+                                        })
+                                .end()
+                                .choice()
+                                .when(exchangeProperty(ExpenseUtil.EXCH_PROPERTY_CACHED_RESULT).isNotNull())
+                                        // Cache hit, PDFBox and the parser are skipped entirely
+                                        .process(exchange -> {
+                                                ParsedStatement cached = exchange.getProperty(
+                                                                ExpenseUtil.EXCH_PROPERTY_CACHED_RESULT, ParsedStatement.class);
+                                                exchange.removeProperty(ExpenseUtil.EXCH_PROPERTY_CACHED_RESULT);
+                                                StatementRowSink rowSink = exchange.getProperty(
+                                                                ExpenseUtil.EXCH_PROPERTY_ROW_SINK, StatementRowSink.class);
+                                                // The store is in memory only, after a restart it is refilled from the cache
+                                                transactionStore.add(exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_CONTENT_KEY,
+                                                                String.class), Arrays.asList(cached.getRows()));
+                                                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_CAUSES,
+                                                                cached.getErrorCauses());
+                                                if (rowSink == null) {
+                                                        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD, cached.getRows());
+                                                        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST,
+                                                                        cached.getErrorRows());
+                                                        return;
+                                                }
+                                                for (TransactionRecord row : cached.getRows()) {
+                                                        rowSink.onRow(row);
+                                                }
+                                                for (StatementProcessErrorRow errorRow : cached.getErrorRows()) {
+                                                        rowSink.onError(errorRow);
+                                                }
+                                                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD, new TransactionRecord[0]);
+                                                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST,
+                                                                new StatementProcessErrorRow[0]);
+                                        })
+                                .otherwise()
+                                        .process(exchange -> {
+                                                StatementParser parser = exchange.getProperty(
+                                                                ExpenseUtil.EXCH_PROPERTY_STATEMENT_PARSER, StatementParser.class);
+                                                StatementRowSink rowSink = exchange.getProperty(
+                                                                ExpenseUtil.EXCH_PROPERTY_ROW_SINK, StatementRowSink.class);
+                                                if (rowSink == null) {
+                                                        parser.process(exchange);
+                                                        storeParsedRows(exchange);
+                                                        return;
+                                                }
+                                                // Streamed rows are added to the transaction store in batches on the way
+                                                TransactionStore.StatementAppender appender = transactionStore
+                                                                .appender(sourceKey(exchange));
+                                                if (appender != null) {
+                                                        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_ROW_SINK,
+                                                                        new RecordingRowSink(rowSink, appender));
+                                                }
+                                                try {
+                                                        parser.process(exchange);
+                                                        if (appender != null) {
+                                                                appender.finish();
+                                                        }
+                                                } finally {
+                                                        exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_ROW_SINK, rowSink);
+                                                        if (appender != null) {
+                                                                appender.release();
+                                                        }
+                                                }
+                                        })
+                                        .process(exchange -> {
+                                                String contentKey = exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_CONTENT_KEY,
+                                                                String.class);
+                                                StatementParser parser = exchange.getProperty(
+                                                                ExpenseUtil.EXCH_PROPERTY_STATEMENT_PARSER, StatementParser.class);
+                                                // Streamed rows are not retained, hence only buffered results are cached,
+                                                // and only if their error rows were captured with the default limits
+                                                if (contentKey != null
+                                                                && exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_ROW_SINK) == null
+                                                                && !hasErrorLimits(exchange)) {
+                                                        statementCache.putResult(StatementCache.resultKey(contentKey,
+                                                                        parser.getName(), parser.getVersion()),
+                                                                        ParsedStatement.builder()
+                                                                                        .rows((TransactionRecord[]) exchange.getProperty(
+                                                                                                        ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD))
+                                                                                        .errorRows((StatementProcessErrorRow[]) exchange.getProperty(
+                                                                                                        ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST))
+                                                                                        .errorCauses((StatementErrorCause[]) exchange.getProperty(
+                                                                                                        ExpenseUtil.EXCH_PROPERTY_RES_ERR_CAUSES))
+                                                                                        .build());
+                                                }
+                                        })
+                                .endDoTry()
                                 .process(exchange -> {
                                         StatementProcessRequest req = exchange.getIn()
                                                         .getBody(StatementProcessRequest.class);
                                         StatementProcessResponse resp = StatementProcessResponse.builder()
                                                         .status("Success")
-                                                        .responsePayLoad((PDFExtractPayload[]) exchange.getProperty(
-                                                                        ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD))
+                                                        // Rows are converted to the API model only here
+                                                        .responsePayLoad(TransactionRecord.toPayloads((TransactionRecord[]) exchange
+                                                                        .getProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD)))
                                                         .errorRows((StatementProcessErrorRow[]) exchange.getProperty(
                                                                         ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST))
+                                                        .errorCauses((StatementErrorCause[]) exchange.getProperty(
+                                                                        ExpenseUtil.EXCH_PROPERTY_RES_ERR_CAUSES))
                                                         .build();
                                         //LOG.debug(resp.toString());
                                         exchange.getMessage().setBody(resp);
@@ -154,58 +574,157 @@ public class ExpenseDataRoute extends RouteBuilder {
                         .end(); // End of doTry-doCatch block
 
                 /** ############### END of REST Configurations ########################## */
-                from("file:{{data.input.folder}}?include=.*StmtPDF.pdf&noop=true")
+                // Statement files are consumed once per content, also across restarts. The files of a poll
+                // are extracted concurrently and merged in the order of their statement periods
+                from("file:{{data.input.folder}}?include=RAW(.*StmtPDF\\.pdf|SBI_Statement.*\\.pdf|"
+                                + "{{icici.pdf.file.pattern}})&noop=true" + PROCESSED_FILES)
                                 .log("Reading file: ${header.CamelFileName}")
-                                .convertBodyTo(byte[].class)
-                                .to("pdf:extractText")
-                                // .log("Extracted Body: ${body}")
-                                .process(new PhonePePDFProcessorGSheets())
-                                // .marshal().csv() // Converts List<List<String>> to CSV format
-                                // .to("file:C:/Anish/Temp/output?fileName=statement.csv")
-                                // .log("Finished Extraction");
-                                .to("direct:processSBIPDFTransactions")
-                                .process(new GoogleSheetsWriteProcessor())
-                                // Writing to Google Sheets
-                                // .to("google-sheets://data/append?valueInputOption=USER_ENTERED")
-                                .log("Data successfully appended to Google Sheets!");
+                                .setBody(simple("${file:absolute.path}"))
+                                .aggregate(constant(true), new GroupedBodyAggregationStrategy())
+                                        .completionFromBatchConsumer()
+                                        .process(folderIngestionProcessor)
+                                        // Writing to Google Sheets, batched with the rows of other statements
+                                        .process(googleSheetsWriteProcessor)
+                                        .log("Queued ${body} rows for Google Sheets")
+                                .end();
 
                 from("direct:processSanthomeTransactions")
                                 .pollEnrich()
                                 .simple("file:{{data.input.folder}}?fileName={{santhome.excel.file.name}}&noop=true")
                                 .process(iciciTransactionProcessor)
+                                .process(this::storeParsedRows)
                                 .log("Successfully unmarshalled Excel workbook!");
+        }
 
-                from("direct:processSBIPDFTransactions")
-                                // .setHeader("CamelPdfDecryptionMaterial", constant(new
-                                // StandardDecryptionMaterial("42715220579")))
-                                .pollEnrich().simple("file:{{data.input.folder}}?fileName=SBI_Statement.pdf&noop=true")
-                                // .setHeader("CamelPdfPassword", constant("42715220579"))
-                                .process(exchange -> {
-                                        byte[] pdfBytes = exchange.getIn().getBody(byte[].class);
-                                        try (PDDocument document = Loader.loadPDF(pdfBytes, sbiPDFPassword)) {
-                                                PDFTextStripper stripper = new PDFTextStripper();
-                                                String text = stripper.getText(document);
-                                                exchange.getIn().setBody(text);
-                                        }
-                                })
-                                // .log("${body}")
-                                // .convertBodyTo(byte[].class)
-                                // .to("pdf:extractText")
-                                // .log("Extracted Body: ${body}")
-                                .process(sbiPDFStatementProcessor)
-                                .log("Successfully unmarshalled Excel workbook!");
+        /**
+         * Remembers the content key on the exchange and looks up the parse result
+         * cached for it by any of the parsers the API supports. Requests with
+         * error limits of their own are always parsed.
+         * 
+         * @return true if a cached result was found
+         */
+        private boolean lookupCachedResult(Exchange exchange, String contentKey) {
+                if (contentKey == null) {
+                        return false;
+                }
+                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_CONTENT_KEY, contentKey);
+                if (hasErrorLimits(exchange)) {
+                        return false;
+                }
+                ParsedStatement cached = null;
+                for (StatementParser parser : statementParserRegistry.getParsers()) {
+                        if (parser.emitsRows()) {
+                                cached = statementCache.getResult(StatementCache.resultKey(contentKey,
+                                                parser.getName(), parser.getVersion()));
+                                if (cached != null) {
+                                        break;
+                                }
+                        }
+                }
+                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_CACHED_RESULT, cached);
+                return cached != null;
+        }
 
-                from("file:{{data.input.folder}}?include={{icici.pdf.file.pattern}}&noop=true")
-                                .log("Reading file: ${header.CamelFileName}")
-                                .process(exchange -> {
-                                        byte[] pdfBytes = exchange.getIn().getBody(byte[].class);
-                                        try (PDDocument document = Loader.loadPDF(pdfBytes, iciciPDFPassword)) {
-                                                PDFTextStripper stripper = new PDFTextStripper();
-                                                String text = stripper.getText(document);
-                                                exchange.getIn().setBody(text);
-                                        }
-                                })
-                                .process(iciciPDFStmtProcessor)
-                                .log("Extracted Body: ${body}");
+        private static boolean hasErrorLimits(Exchange exchange) {
+                return exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_MAX_ERROR_ROWS) != null
+                                || exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_MAX_ERROR_STACKS) != null;
+        }
+
+        /**
+         * Adds the rows the last processor left in the response payload to the
+         * transaction store.
+         */
+        private void storeParsedRows(Exchange exchange) {
+                TransactionRecord[] rows = exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD,
+                                TransactionRecord[].class);
+                if (rows != null) {
+                        transactionStore.add(sourceKey(exchange), Arrays.asList(rows));
+                }
+        }
+
+        /**
+         * @return the content key of the statement or, for the folder routes, its
+         *         path, size and modification time; null if neither is known
+         */
+        private static String sourceKey(Exchange exchange) {
+                String contentKey = exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_CONTENT_KEY, String.class);
+                if (contentKey != null) {
+                        return contentKey;
+                }
+                Message in = exchange.getIn();
+                String path = in.getHeader(Exchange.FILE_PATH, String.class);
+                return (path == null) ? null
+                                : path + ":" + in.getHeader(Exchange.FILE_LENGTH) + ":"
+                                                + in.getHeader(Exchange.FILE_LAST_MODIFIED);
+        }
+
+        /**
+         * Reads the filters of <code>/api/transactions</code> from the query
+         * parameters: fromDate and toDate (yyyy-MM-dd), account, minAmount,
+         * maxAmount, type (DEBIT or CREDIT) and limit.
+         */
+        private static TransactionQuery toTransactionQuery(Message in) {
+                String type = in.getHeader("type", String.class);
+                String limit = in.getHeader("limit", String.class);
+                return TransactionQuery.builder()
+                                .fromDate(toQueryDate(in.getHeader("fromDate", String.class)))
+                                .toDate(toQueryDate(in.getHeader("toDate", String.class)))
+                                .account(in.getHeader("account", String.class))
+                                .minAmountPaise(toQueryPaise(in.getHeader("minAmount", String.class)))
+                                .maxAmountPaise(toQueryPaise(in.getHeader("maxAmount", String.class)))
+                                .type(toEnum(TransactionType.class, type, null))
+                                .limit((limit == null || limit.isBlank()) ? 0 : Integer.parseInt(limit.trim()))
+                                .build();
+        }
+
+        private static boolean toGzip(Message in) {
+                String gzip = in.getHeader("gzip", String.class);
+                return gzip != null && Boolean.parseBoolean(gzip.trim());
+        }
+
+        /**
+         * Sets the content type of a CSV response and offers it as a download
+         * named after the given base name.
+         */
+        private static void setCsvHeaders(Message message, String baseName, boolean gzip) {
+                message.setHeader(Exchange.CONTENT_TYPE, gzip ? "application/gzip" : "text/csv; charset=UTF-8");
+                message.setHeader("Content-Disposition",
+                                "attachment; filename=\"" + baseName + (gzip ? ".csv.gz" : ".csv") + "\"");
+        }
+
+        private static <E extends Enum<E>> E toEnum(Class<E> type, String value, E defaultValue) {
+                return (value == null || value.isBlank()) ? defaultValue
+                                : Enum.valueOf(type, value.trim().toUpperCase());
+        }
+
+        private static LocalDate toQueryDate(String date) {
+                return (date == null || date.isBlank()) ? null
+                                : LocalDate.parse(date.trim(), DatePattern.ISO_DATE.getFormatter());
+        }
+
+        private static Long toQueryPaise(String amount) {
+                if (amount == null || amount.isBlank()) {
+                        return null;
+                }
+                long paise = ExpenseUtil.toPaise(amount, TransactionRecord.NO_AMOUNT);
+                if (paise == TransactionRecord.NO_AMOUNT) {
+                        throw new IllegalArgumentException("Not an amount: " + amount);
+                }
+                return paise;
+        }
+
+        /**
+         * @param parser detected parser, null if the format was not recognised
+         * @return the parser if its rows can be returned by the API
+         */
+        private static StatementParser requireRowParser(StatementParser parser) {
+                if (parser == null) {
+                        throw new IllegalArgumentException("Statement format is not recognised");
+                }
+                if (!parser.isPdf() || !parser.emitsRows()) {
+                        throw new IllegalArgumentException(
+                                        "Statement format " + parser.getName() + " is not supported by this API");
+                }
+                return parser;
         }
 }
@@ -0,0 +1,58 @@
+package com.agv.expenses.route;
+
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.SheetsScopes;
+import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.auth.oauth2.ServiceAccountCredentials;
+
+@Configuration
+public class GoogleSheetsConfig {
+
+    // Points the client to another Sheets API endpoint, e.g. a local stand-in for tests
+    @Value("${google.sheets.root-url:}")
+    private String rootUrl;
+
+    // Created on the first write, so the application starts without credentials
+    @Bean
+    @Lazy
+    public Sheets sheetsService() throws Exception {
+        InputStream in = getClass().getResourceAsStream("/credentials.json");
+        if (in == null && !rootUrl.isBlank()) {
+            // A stand-in Sheets API does not need credentials
+            return new Sheets.Builder(
+                    GoogleNetHttpTransport.newTrustedTransport(),
+                    GsonFactory.getDefaultInstance(),
+                    null)
+                    .setRootUrl(rootUrl)
+                    .setApplicationName("expense-analytics-sheets")
+                    .build();
+        }
+        if (in == null) {
+            throw new RuntimeException("credentials.json not found in classpath");
+        }
+
+        GoogleCredentials credentials = ServiceAccountCredentials.fromStream(in)
+                .createScoped(Collections.singleton(SheetsScopes.SPREADSHEETS));
+
+        Sheets.Builder builder = new Sheets.Builder(
+                GoogleNetHttpTransport.newTrustedTransport(),
+                GsonFactory.getDefaultInstance(),
+                new HttpCredentialsAdapter(credentials))
+                .setApplicationName("expense-analytics-sheets");
+        if (!rootUrl.isBlank()) {
+            builder.setRootUrl(rootUrl);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,98 @@
+package com.agv.expenses.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.camel.AggregationStrategy;
+import org.apache.camel.Exchange;
+
+import com.agv.expenses.service.model.StatementBatchResponse;
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.StatementProcessRequest;
+import com.agv.expenses.service.model.StatementProcessResponse;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Collects the per item responses of a split batch request so that they can be
+ * turned into a single {@link StatementBatchResponse}. Results are placed by
+ * split index so the response order matches the request even though items
+ * complete out of order.
+ */
+public class StatementBatchAggregationStrategy implements AggregationStrategy {
+
+    public static final String BATCH_RESULTS = "BATCH_RESULTS";
+
+    @Override
+    public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        Exchange answer = (oldExchange == null) ? newExchange : oldExchange;
+        @SuppressWarnings("unchecked")
+        List<StatementProcessResponse> results = answer.getProperty(BATCH_RESULTS, List.class);
+        if (results == null) {
+            results = new ArrayList<>();
+            answer.setProperty(BATCH_RESULTS, results);
+        }
+        int index = newExchange.getProperty(Exchange.SPLIT_INDEX, results.size(), Integer.class);
+        while (results.size() <= index) {
+            results.add(null);
+        }
+        StatementProcessResponse response = StatementProcessResponse
+                .fromRouteBody(newExchange.getMessage().getBody());
+        if (response == null) {
+            Exception cause = newExchange.getException();
+            response = StatementProcessResponse.builder()
+                    .status("Failed")
+                    .errorMessage(cause != null ? cause.getMessage() : "No response for batch item")
+                    .build();
+            newExchange.setException(null);
+        }
+        results.set(index, response);
+        return answer;
+    }
+
+    /**
+     * Builds the batch response from the results collected by
+     * {@link #aggregate(Exchange, Exchange)}.
+     * 
+     * @param exchange exchange after the split has completed
+     * @param items    items of the original batch request, used for message ids
+     * @return the batch response, with error rows of all items
+     */
+    public static StatementBatchResponse toBatchResponse(Exchange exchange, List<StatementProcessRequest> items) {
+        @SuppressWarnings("unchecked")
+        List<StatementProcessResponse> results = exchange.getProperty(BATCH_RESULTS, List.class);
+        if (results == null) {
+            results = List.of();
+        }
+        List<StatementProcessErrorRow> errorRows = new ArrayList<>();
+        int failures = 0;
+        for (int idx = 0; idx < results.size(); idx++) {
+            StatementProcessResponse response = results.get(idx);
+            if (response == null) {
+                continue;
+            }
+            String messageId = (items != null && idx < items.size()) ? items.get(idx).getMessageId() : null;
+            if ("Failed".equals(response.getStatus())) {
+                failures++;
+                errorRows.add(StatementProcessErrorRow.builder()
+                        .date(ExpenseUtil.getCurrentDateTimeString(null))
+                        .messageId(messageId)
+                        .errorMessage(response.getErrorMessage())
+                        .errorStack(response.getExceptionStack())
+                        .build());
+            }
+            if (response.getErrorRows() != null) {
+                errorRows.addAll(Arrays.asList(response.getErrorRows()));
+            }
+        }
+        String status = (failures == 0) ? "Success" : (failures == results.size()) ? "Failed" : "Partial";
+        exchange.removeProperty(BATCH_RESULTS);
+        return StatementBatchResponse.builder()
+                .status(status)
+                .successCount(results.size() - failures)
+                .failureCount(failures)
+                .results(results.toArray(StatementProcessResponse[]::new))
+                .errorRows(errorRows.toArray(StatementProcessErrorRow[]::new))
+                .build();
+    }
+}
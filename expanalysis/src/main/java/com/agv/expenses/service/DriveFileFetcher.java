@@ -0,0 +1,183 @@
+package com.agv.expenses.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.util.ExpenseUtil;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+
+/**
+ * Fetches statement files from Google Drive with as few round trips as
+ * possible. Media is downloaded directly, without a preceding metadata call,
+ * and its MD5 is computed while streaming. As Drive's md5Checksum is the MD5
+ * of the content, the computed value is remembered per file id and serves as
+ * the content key of later requests for the same file:
+ * <ul>
+ * <li>within the metadata TTL the key is used without calling Drive at
+ * all</li>
+ * <li>after the TTL a call for the checksum, size and modification time
+ * only confirms whether the file is unchanged, which is still cheaper than a
+ * download</li>
+ * </ul>
+ * A file replaced in Drive within the TTL is therefore still served with its
+ * previous content for up to <code>google.drive.metadata-cache.ttl-seconds</code>;
+ * a TTL of 0 checks the metadata on every request.
+ */
+@Service
+public class DriveFileFetcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DriveFileFetcher.class);
+
+    @Autowired
+    private Drive driveService;
+    @Value("${google.drive.metadata-cache.ttl-seconds:30}")
+    private long metadataTtlSeconds;
+    @Value("${google.drive.metadata-cache.max-entries:10000}")
+    private int metadataMaxEntries;
+
+    private Clock clock = Clock.systemUTC();
+
+    private final Map<String, FileMetadata> metadataCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileMetadata> eldest) {
+            return size() > metadataMaxEntries;
+        }
+    };
+
+    /**
+     * Metadata of a Drive file as far as it is needed to recognise its
+     * content.
+     */
+    public record FileMetadata(String md5Checksum, Long size, String modifiedTime, long fetchedAtMillis) {
+    }
+
+    /**
+     * Returns the content key of a file that has been seen before. Unknown
+     * files return null without calling Drive, they are best downloaded
+     * directly.
+     *
+     * @param fileId Drive file id
+     * @return MD5 of the file content or null if it is not known
+     */
+    public String findContentKey(String fileId) throws IOException {
+        FileMetadata known = getCachedMetadata(fileId);
+        if (known == null) {
+            return null;
+        }
+        if (clock.millis() - known.fetchedAtMillis() < metadataTtlSeconds * 1000) {
+            return known.md5Checksum();
+        }
+        File file = driveService.files().get(fileId).setFields(ExpenseUtil.DRIVE_METADATA_FIELDS).execute();
+        FileMetadata refreshed = new FileMetadata(file.getMd5Checksum(), file.getSize(),
+                (file.getModifiedTime() == null) ? null : file.getModifiedTime().toStringRfc3339(),
+                clock.millis());
+        if (known.md5Checksum() != null && !known.md5Checksum().equals(refreshed.md5Checksum())) {
+            LOG.info("Drive file {} changed since it was last fetched", fileId);
+        }
+        putMetadata(fileId, refreshed);
+        return refreshed.md5Checksum();
+    }
+
+    /**
+     * Opens the media of the file in a single request. The content key is
+     * available and remembered for the file once the stream has been read to
+     * the end.
+     *
+     * @param fileId Drive file id
+     * @return the download, to be closed by the caller
+     */
+    public Download download(String fileId) throws IOException {
+        InputStream media = driveService.files().get(fileId).executeMediaAsInputStream();
+        return new Download(fileId, media);
+    }
+
+    public FileMetadata getCachedMetadata(String fileId) {
+        synchronized (metadataCache) {
+            return metadataCache.get(fileId);
+        }
+    }
+
+    private void putMetadata(String fileId, FileMetadata metadata) {
+        synchronized (metadataCache) {
+            metadataCache.put(fileId, metadata);
+        }
+    }
+
+    /**
+     * Media stream of a Drive file which computes the MD5 of the content while
+     * it is read.
+     */
+    public class Download extends FilterInputStream {
+        private final String fileId;
+        private final MessageDigest digest;
+        private long bytesRead;
+        private String contentKey;
+
+        private Download(String fileId, InputStream media) {
+            super(null);
+            this.fileId = fileId;
+            this.digest = newMd5();
+            this.in = new DigestInputStream(media, digest);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete();
+            } else {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                complete();
+            } else {
+                bytesRead += n;
+            }
+            return n;
+        }
+
+        /**
+         * @return MD5 of the content or null if the stream has not been read
+         *         completely
+         */
+        public String getContentKey() {
+            return contentKey;
+        }
+
+        private void complete() {
+            if (contentKey == null) {
+                contentKey = HexFormat.of().formatHex(digest.digest());
+                putMetadata(fileId, new FileMetadata(contentKey, bytesRead, null, clock.millis()));
+            }
+        }
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
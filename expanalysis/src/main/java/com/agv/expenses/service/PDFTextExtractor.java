@@ -0,0 +1,150 @@
+package com.agv.expenses.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.camel.CamelContext;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Extracts the text of a PDF statement. Long documents are split into page
+ * ranges which are stripped concurrently and joined back in page order, so
+ * the result is the same as a single {@link PDFTextStripper} over the whole
+ * document.
+ * <p>
+ * A {@link PDDocument} must not be shared between threads, hence every worker
+ * opens its own copy of the document from the source.
+ */
+@Service
+public class PDFTextExtractor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PDFTextExtractor.class);
+    private static final String THREAD_POOL_NAME = "PDFTextExtraction";
+
+    /**
+     * Opens a fresh {@link PDDocument} each time it is called.
+     */
+    @FunctionalInterface
+    public interface DocumentSource {
+        PDDocument open() throws IOException;
+    }
+
+    @Autowired
+    private CamelContext camelContext;
+    // 0 means one thread per available processor
+    @Value("${pdf.extract.threads:0}")
+    private int threads;
+    // Documents with fewer pages are stripped on the calling thread
+    @Value("${pdf.extract.parallel-min-pages:8}")
+    private int parallelMinPages;
+    @Value("${pdf.extract.min-pages-per-task:4}")
+    private int minPagesPerTask;
+
+    private volatile ExecutorService executor;
+
+    /**
+     * @param pdfBytes content of the PDF file
+     * @param password password to open the file, null if it is not protected
+     * @return text of all pages
+     */
+    public String extractText(byte[] pdfBytes, String password) throws IOException {
+        return extractText(() -> Loader.loadPDF(pdfBytes, password));
+    }
+
+    /**
+     * @param document content of the PDF, in memory or file backed
+     * @param password password to open the file, null if it is not protected
+     * @return text of all pages
+     */
+    public String extractText(StatementDocument document, String password) throws IOException {
+        return extractText(() -> document.open(password));
+    }
+
+    /**
+     * @param source opens the document, called once per page range
+     * @return text of all pages
+     */
+    public String extractText(DocumentSource source) throws IOException {
+        try (PDDocument document = source.open()) {
+            int pageCount = document.getNumberOfPages();
+            int taskCount = getTaskCount(pageCount);
+            if (taskCount <= 1) {
+                return new PDFTextStripper().getText(document);
+            }
+            int pagesPerTask = (pageCount + taskCount - 1) / taskCount;
+            LOG.debug("Extracting {} pages in {} ranges of {} pages", pageCount, taskCount, pagesPerTask);
+            // The first range is done on this thread with the already opened document
+            List<Future<String>> ranges = new ArrayList<>(taskCount - 1);
+            for (int startPage = pagesPerTask + 1; startPage <= pageCount; startPage += pagesPerTask) {
+                int start = startPage;
+                int end = Math.min(pageCount, startPage + pagesPerTask - 1);
+                ranges.add(getExecutor().submit(() -> {
+                    try (PDDocument copy = source.open()) {
+                        return stripPages(copy, start, end);
+                    }
+                }));
+            }
+            StringBuilder text = new StringBuilder(stripPages(document, 1, pagesPerTask));
+            try {
+                for (Future<String> range : ranges) {
+                    text.append(range.get());
+                }
+            } catch (InterruptedException e) {
+                ranges.forEach(range -> range.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while extracting text", e);
+            } catch (ExecutionException e) {
+                ranges.forEach(range -> range.cancel(true));
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException("Text extraction failed: " + cause.getMessage(), cause);
+            }
+            return text.toString();
+        }
+    }
+
+    private int getTaskCount(int pageCount) {
+        int maxThreads = getThreadCount();
+        if (maxThreads <= 1 || pageCount < parallelMinPages) {
+            return 1;
+        }
+        int byPages = pageCount / Math.max(1, minPagesPerTask);
+        return Math.max(1, Math.min(maxThreads, byPages));
+    }
+
+    private static String stripPages(PDDocument document, int startPage, int endPage) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setStartPage(startPage);
+        stripper.setEndPage(endPage);
+        return stripper.getText(document);
+    }
+
+    private int getThreadCount() {
+        return (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = camelContext.getExecutorServiceManager().newFixedThreadPool(this, THREAD_POOL_NAME,
+                            getThreadCount());
+                }
+            }
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,276 @@
+package com.agv.expenses.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Idempotent repository of the statement files consumed from
+ * <code>data.input.folder</code>, kept on disk so that a restart does not
+ * parse the whole folder again. Used by the file endpoints with
+ * <code>idempotentKey=${file:absolute.path}</code>.
+ * <p>
+ * A file counts as processed while its content has the MD5 recorded for its
+ * path, the same checksum Drive reports, so a replaced file is consumed again.
+ * Size and modification time are recorded along with it; while they are
+ * unchanged the file is skipped without being read, otherwise it is hashed
+ * once to tell a touched file from a replaced one.
+ * <p>
+ * Entries are appended to a tab separated file under
+ * <code>expense.processed-files.dir</code>, which is compacted to one line
+ * per path when opened. With <code>expense.processed-files.persist</code> off
+ * the entries are kept in memory only, as Camel's default repository does.
+ */
+@Service("processedFileRepository")
+public class ProcessedFileRepository extends ServiceSupport implements IdempotentRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProcessedFileRepository.class);
+    private static final String FILE_NAME = "processed-files.tsv";
+    private static final String REMOVED = "-";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value("${expense.processed-files.persist:true}")
+    private boolean persist = true;
+    @Value("${expense.processed-files.dir:${user.home}/.expanalysis}")
+    private String dir;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong hashed = new AtomicLong();
+    private Path filePath;
+    private Writer writer;
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!persist) {
+            return;
+        }
+        Path dirPath = Path.of(dir);
+        Files.createDirectories(dirPath);
+        filePath = dirPath.resolve(FILE_NAME);
+        if (Files.exists(filePath)) {
+            read();
+            compact();
+        }
+        writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        LOG.info("Processed file repository at {} holds {} files", filePath, entries.size());
+    }
+
+    @PreDestroy
+    synchronized void closeFile() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        LOG.debug("Processed file repository skipped {} unchanged files, hashed {}", unchanged.get(),
+                hashed.get());
+    }
+
+    /**
+     * @param key absolute path of the file
+     * @return true if the file was processed with its current content
+     */
+    @Override
+    public boolean contains(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        Path path = Path.of(key);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (entry.matches(attributes)) {
+                unchanged.incrementAndGet();
+                return true;
+            }
+            String md5 = md5(path);
+            if (!md5.equals(entry.md5())) {
+                LOG.info("{} was replaced, processing it again", key);
+                return false;
+            }
+            // Touched but not changed, skipped by size and time from now on
+            record(key, Entry.of(attributes, md5));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not check " + key, e);
+        }
+    }
+
+    /**
+     * Records the file with its current content.
+     *
+     * @param key absolute path of the file
+     * @return false if it was recorded with this content before
+     */
+    @Override
+    public boolean add(String key) {
+        Path path = Path.of(key);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            Entry entry = Entry.of(attributes, md5(path));
+            Entry previous = entries.get(key);
+            if (entry.equals(previous)) {
+                return false;
+            }
+            record(key, entry);
+            return previous == null || !previous.md5().equals(entry.md5());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record " + key, e);
+        }
+    }
+
+    @Override
+    public boolean remove(String key) {
+        if (entries.remove(key) == null) {
+            return false;
+        }
+        append(REMOVED + "\t0\t0\t" + key);
+        return true;
+    }
+
+    @Override
+    public boolean confirm(String key) {
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        if (writer != null) {
+            try {
+                writer.close();
+                writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not clear " + filePath, e);
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param key absolute path of the file
+     * @return MD5 the file was recorded with, null if it was not recorded
+     */
+    public String contentKey(String key) {
+        Entry entry = entries.get(key);
+        return (entry == null) ? null : entry.md5();
+    }
+
+    private void record(String key, Entry entry) {
+        entries.put(key, entry);
+        append(entry.md5() + "\t" + entry.length() + "\t" + entry.modified() + "\t" + key);
+    }
+
+    private synchronized void append(String line) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(line);
+            writer.write('\n');
+            // Not forced to disk, a lost line only means the file is parsed once more
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to " + filePath, e);
+        }
+    }
+
+    private void read() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length < 4) {
+                    // Line cut off by a crash
+                    continue;
+                }
+                if (REMOVED.equals(fields[0])) {
+                    entries.remove(fields[3]);
+                } else {
+                    entries.put(fields[3], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            fields[0]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring the rest of {}, it is not a processed file list", filePath, e);
+        }
+    }
+
+    /**
+     * Rewrites the file to one line per path and moves it over the previous
+     * one.
+     */
+    private void compact() throws IOException {
+        Path tmp = Files.createTempFile(filePath.getParent(), "processed-", ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.write(entry.md5() + "\t" + entry.length() + "\t" + entry.modified() + "\t" + e.getKey());
+                out.write('\n');
+            }
+        }
+        Files.move(tmp, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String md5(Path path) throws IOException {
+        hashed.incrementAndGet();
+        try (InputStream in = Files.newInputStream(path)) {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * @param modified last modification time in epoch millis
+     */
+    private record Entry(long length, long modified, String md5) {
+
+        static Entry of(BasicFileAttributes attributes, String md5) {
+            return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), md5);
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return length == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+}
@@ -0,0 +1,912 @@
+package com.agv.expenses.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.camel.CamelContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.service.model.SheetsWriteStats;
+import com.agv.expenses.util.ExpenseUtil;
+import com.agv.expenses.util.LongHashSet;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.BatchUpdateValuesRequest;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-behind queue in front of the spreadsheet <code>my.spreadsheet.id</code>.
+ * <p>
+ * {@link #submit(List)} records the rows in a journal under
+ * <code>google.sheets.queue.dir</code> and returns; the rows are appended in
+ * the background. Rows submitted within <code>google.sheets.flush-delay-ms</code>
+ * of each other, e.g. from several statements of a folder run, are coalesced
+ * and written together, and a full batch is written right away. Each append
+ * call carries at most <code>google.sheets.batch.max-rows</code> rows and
+ * about <code>google.sheets.batch.max-bytes</code> of cell text. Quota and
+ * server errors are retried with exponential backoff and full jitter; rows
+ * still failing after the last attempt stay queued for the next flush. Rows
+ * failing otherwise, e.g. because the Sheets client cannot be created, are
+ * dropped and counted as failed.
+ * <p>
+ * Rows are written once per order id. A row whose order id was queued or
+ * written before is left out, also across restarts. Before each append the
+ * journal records the rows as being sent, and after it as written. Rows left
+ * in between, by a crash or by a failure that may have reached the sheet, are
+ * looked up in the order id column <code>google.sheets.order-id-range</code>
+ * before they are sent again. Rows without an order id are written at least
+ * once.
+ * <p>
+ * {@link #update(List)} rewrites rows written before in place, e.g. once a
+ * later bank statement names the payee of a PhonePe payment. The rows are
+ * found by their order id and the update is not journaled; rows not found in
+ * the sheet are left alone.
+ * <p>
+ * The journal is compacted to the queued rows and the written order ids each
+ * time it grew by <code>google.sheets.queue.compact-bytes</code>. Without
+ * <code>google.sheets.queue.enabled</code> the queue is kept in memory only.
+ */
+@Service
+public class SheetsWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SheetsWriter.class);
+    private static final String THREAD_POOL_NAME = "SheetsWriter";
+    private static final Set<Integer> RETRYABLE_STATUS = Set.of(429, 500, 502, 503, 504);
+    private static final Set<String> RATE_LIMIT_REASONS = Set.of("rateLimitExceeded", "userRateLimitExceeded");
+    // Quotes, separator and brackets of a cell in the request body
+    private static final int CELL_OVERHEAD_BYTES = 4;
+    // Cell of TransactionRecord#toSheetRow holding the order id
+    static final int ORDER_ID_CELL = 8;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Sheet and column of an A1 range, e.g. Sheet1!A1, and the first row of the range
+    private static final Pattern A1_CELL = Pattern.compile("^(.*!)?\\$?([A-Za-z]+)\\$?(\\d+)?");
+
+    private static final String JOURNAL_FILE = "sheets-queue.wal";
+    private static final int RECORD_MAGIC = 0x53485451;
+    // Magic, payload length and checksum
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final byte QUEUED = 1;
+    private static final byte SENDING = 2;
+    private static final byte WRITTEN = 3;
+    private static final byte DROPPED = 4;
+    private static final byte WRITTEN_KEYS = 5;
+
+    @Lazy
+    @Autowired
+    private Sheets sheets;
+    @Autowired
+    private CamelContext camelContext;
+    @Value("${my.spreadsheet.id}")
+    private String spreadsheetId;
+    @Value("${google.sheets.range:Sheet1!A1}")
+    private String range = "Sheet1!A1";
+    @Value("${google.sheets.order-id-range:Sheet1!I:I}")
+    private String orderIdRange = "Sheet1!I:I";
+    @Value("${google.sheets.value-input-option:USER_ENTERED}")
+    private String valueInputOption = "USER_ENTERED";
+    @Value("${google.sheets.flush-delay-ms:1000}")
+    private long flushDelayMs = 1000;
+    @Value("${google.sheets.batch.max-rows:500}")
+    private int maxBatchRows = 500;
+    @Value("${google.sheets.batch.max-bytes:1048576}")
+    private long maxBatchBytes = 1048576;
+    @Value("${google.sheets.retry.max-attempts:6}")
+    private int maxAttempts = 6;
+    @Value("${google.sheets.retry.initial-backoff-ms:500}")
+    private long initialBackoffMs = 500;
+    @Value("${google.sheets.retry.max-backoff-ms:32000}")
+    private long maxBackoffMs = 32000;
+    @Value("${google.sheets.queue.enabled:true}")
+    private boolean queueEnabled = true;
+    @Value("${google.sheets.queue.dir:${user.home}/.expanalysis/sheets-queue}")
+    private String queueDir;
+    @Value("${google.sheets.queue.fsync:true}")
+    private boolean fsync = true;
+    @Value("${google.sheets.queue.compact-bytes:8388608}")
+    private long compactBytes = 8388608;
+
+    // Guarded by itself, in the order the rows were submitted
+    private final ArrayDeque<QueuedRow> pending = new ArrayDeque<>();
+    private final Set<Long> pendingKeys = new HashSet<>();
+    private final LongHashSet writtenKeys = new LongHashSet();
+    // Rows that may have reached the sheet without being recorded as written, guarded by pending
+    private final Set<Long> inFlight = new HashSet<>();
+    private long nextSeq = 1;
+    private boolean flushScheduled;
+    // Held by the single flush running at a time
+    private final Object flushLock = new Object();
+    // Guards the journal channel
+    private final Object journalLock = new Object();
+    private Path journalPath;
+    private FileChannel journal;
+    // Size of the journal after the last compaction, the written order ids alone may outgrow the limit
+    private long compactedBytes;
+
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong appendCalls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong duplicateRows = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile ScheduledExecutorService executor;
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!queueEnabled) {
+            return;
+        }
+        Path dirPath = Path.of(queueDir);
+        Files.createDirectories(dirPath);
+        journalPath = dirPath.resolve(JOURNAL_FILE);
+        synchronized (pending) {
+            synchronized (journalLock) {
+                journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                long valid = recover();
+                if (valid < journal.size()) {
+                    LOG.warn("Cutting off {} bytes of an incomplete record at the end of {}", journal.size() - valid,
+                            journalPath);
+                    journal.truncate(valid);
+                    journal.force(true);
+                }
+                journal.position(valid);
+            }
+            LOG.info("Sheets queue at {} holds {} rows, {} of them possibly sent, and {} written order ids", dirPath,
+                    pending.size(), inFlight.size(), writtenKeys.size());
+            if (!pending.isEmpty()) {
+                schedule(flushDelayMs);
+            }
+        }
+    }
+
+    /**
+     * Queues the rows and schedules a flush. Returns once the rows are in the
+     * journal, without waiting for them to be written.
+     *
+     * @return number of rows queued, without the rows whose order id was
+     *         queued or written before
+     */
+    public int submit(List<List<Object>> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (pending) {
+            List<QueuedRow> queued = new ArrayList<>(rows.size());
+            for (List<Object> row : rows) {
+                long key = orderKey(row);
+                if (key != 0 && (writtenKeys.contains(key) || !pendingKeys.add(key))) {
+                    continue;
+                }
+                queued.add(new QueuedRow(nextSeq++, key, now, row));
+            }
+            duplicateRows.addAndGet(rows.size() - queued.size());
+            if (queued.isEmpty()) {
+                return 0;
+            }
+            try {
+                writeRecord(QUEUED, queued);
+            } catch (IOException e) {
+                queued.forEach(row -> pendingKeys.remove(row.key()));
+                throw new UncheckedIOException("Could not queue rows in " + journalPath, e);
+            }
+            pending.addAll(queued);
+            if (pending.size() >= maxBatchRows) {
+                // A full batch is written right away, the rest keeps waiting for more rows
+                schedule(0);
+            } else if (!flushScheduled) {
+                schedule(flushDelayMs);
+            }
+            return queued.size();
+        }
+    }
+
+    /**
+     * Overwrites the rows of the sheet that hold the order ids of the given
+     * rows, after writing the queued rows so that rows submitted before are
+     * found.
+     *
+     * @return number of rows overwritten, rows without an order id or not
+     *         found in the sheet are not counted
+     */
+    public int update(List<List<Object>> rows) throws IOException, InterruptedException {
+        Map<String, List<Object>> byOrderId = new LinkedHashMap<>();
+        for (List<Object> row : rows) {
+            String orderId = normalizeOrderId(orderId(row));
+            if (orderId != null) {
+                byOrderId.put(orderId, row);
+            }
+        }
+        if (byOrderId.isEmpty()) {
+            return 0;
+        }
+        flush();
+        // Rows start in the first column of the appended range
+        Matcher target = A1_CELL.matcher(range);
+        String sheet = "";
+        String column = "A";
+        if (target.find()) {
+            sheet = (target.group(1) == null) ? "" : target.group(1);
+            column = target.group(2);
+        }
+        for (int attempt = 1;; attempt++) {
+            try {
+                ValueRange orderIds = sheets.spreadsheets().values().get(spreadsheetId, orderIdRange)
+                        .setValueRenderOption("UNFORMATTED_VALUE").execute();
+                List<ValueRange> data = new ArrayList<>();
+                if (orderIds.getValues() != null) {
+                    int rowNumber = firstRow(orderIds.getRange());
+                    for (List<Object> cells : orderIds.getValues()) {
+                        List<Object> row = cells.isEmpty() ? null : byOrderId.get(normalizeOrderId(cells.get(0)));
+                        if (row != null) {
+                            data.add(new ValueRange().setRange(sheet + column + rowNumber)
+                                    .setValues(List.of(toSheetCells(row))));
+                        }
+                        rowNumber++;
+                    }
+                }
+                if (!data.isEmpty()) {
+                    sheets.spreadsheets().values().batchUpdate(spreadsheetId, new BatchUpdateValuesRequest()
+                            .setValueInputOption(valueInputOption).setData(data)).execute();
+                    LOG.info("Updated {} rows of {}", data.size(), spreadsheetId);
+                }
+                return data.size();
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                long backoffMs = backoffMs(attempt);
+                retries.incrementAndGet();
+                LOG.debug("Update of {} rows failed on attempt {}, retrying in {} ms: {}", byOrderId.size(),
+                        attempt, backoffMs, e.getMessage());
+                Thread.sleep(backoffMs);
+            }
+        }
+    }
+
+    /**
+     * @return number of the first row of an A1 range returned by the API,
+     *         e.g. 1 for <code>Sheet1!I1:I1000</code>
+     */
+    static int firstRow(String a1Range) {
+        Matcher matcher = A1_CELL.matcher((a1Range == null) ? "" : a1Range);
+        return (matcher.find() && matcher.group(3) != null) ? Integer.parseInt(matcher.group(3)) : 1;
+    }
+
+    /**
+     * Writes all queued rows in as few append calls as the batch limits allow.
+     *
+     * @return number of rows written
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            List<QueuedRow> rows;
+            Set<Long> unconfirmed;
+            synchronized (pending) {
+                flushScheduled = false;
+                rows = new ArrayList<>(pending);
+                unconfirmed = new HashSet<>(inFlight);
+            }
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            long start = System.nanoTime();
+            int written = 0;
+            List<QueuedRow> chunk = List.of();
+            try {
+                if (!unconfirmed.isEmpty()) {
+                    rows = skipWritten(rows, unconfirmed);
+                }
+                for (List<QueuedRow> next : chunk(rows, QueuedRow::cells)) {
+                    chunk = next;
+                    written += send(chunk);
+                }
+            } catch (IOException e) {
+                // Runs on the scheduler, nothing else would report the failure
+                failed(chunk.isEmpty() ? rows : chunk, e, isRetryable(e));
+            } catch (RuntimeException e) {
+                // E.g. the Sheets client could not be created, another flush would fail the same way
+                failed(chunk.isEmpty() ? rows : chunk, e, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed(chunk, e, true);
+            }
+            long elapsed = System.nanoTime() - start;
+            flushes.incrementAndGet();
+            flushNanos.addAndGet(elapsed);
+            maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+            lastFlushNanos = elapsed;
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            if (written > 0) {
+                LOG.info("Appended {} rows to {} in {} ms, {} rows/s", written, spreadsheetId, elapsedMs,
+                        (long) (written * 1000.0 / Math.max(elapsedMs, 1)));
+            }
+            compactIfNeeded();
+            return written;
+        }
+    }
+
+    public SheetsWriteStats getStats() {
+        int pendingRows;
+        long oldest;
+        synchronized (pending) {
+            pendingRows = pending.size();
+            oldest = pending.isEmpty() ? 0 : pending.peekFirst().queuedAt();
+        }
+        long journalBytes = 0;
+        synchronized (journalLock) {
+            try {
+                journalBytes = (journal == null) ? 0 : journal.size();
+            } catch (IOException e) {
+                LOG.debug("Could not read the size of {}", journalPath, e);
+            }
+        }
+        double seconds = writeNanos.get() / 1e9;
+        long flushCount = flushes.get();
+        return SheetsWriteStats.builder()
+                .rowsWritten(rowsWritten.get())
+                .appendCalls(appendCalls.get())
+                .retries(retries.get())
+                .failedRows(failedRows.get())
+                .duplicateRows(duplicateRows.get())
+                .pendingRows(pendingRows)
+                .oldestPendingMs((oldest == 0) ? 0 : Math.max(0, System.currentTimeMillis() - oldest))
+                .journalBytes(journalBytes)
+                .flushes(flushCount)
+                .lastFlushMs(TimeUnit.NANOSECONDS.toMillis(lastFlushNanos))
+                .meanFlushMs((flushCount == 0) ? 0 : flushNanos.get() / 1e6 / flushCount)
+                .maxFlushMs(TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get()))
+                .rowsPerSecond((seconds > 0) ? rowsWritten.get() / seconds : 0)
+                .build();
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        // The Camel thread pools may already be stopped, the last rows are written on this thread
+        flush();
+        synchronized (journalLock) {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Splits the rows into batches of at most the configured rows and bytes, a
+     * single row above the byte limit forms a batch of its own.
+     */
+    <T> List<List<T>> chunk(List<T> rows, Function<T, List<Object>> cells) {
+        List<List<T>> chunks = new ArrayList<>();
+        int from = 0;
+        long bytes = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            long rowBytes = estimateBytes(cells.apply(rows.get(i)));
+            if (i > from && (i - from >= maxBatchRows || bytes + rowBytes > maxBatchBytes)) {
+                chunks.add(rows.subList(from, i));
+                from = i;
+                bytes = 0;
+            }
+            bytes += rowBytes;
+        }
+        if (from < rows.size()) {
+            chunks.add(rows.subList(from, rows.size()));
+        }
+        return chunks;
+    }
+
+    /**
+     * Appends a chunk, recording it as sent before and as written after the
+     * call. After a failure that may have reached the sheet, the rows already
+     * there are left out of the next attempt.
+     *
+     * @return number of rows appended
+     */
+    private int send(List<QueuedRow> chunk) throws IOException, InterruptedException {
+        markSending(chunk);
+        long start = System.nanoTime();
+        try {
+            List<QueuedRow> rows = chunk;
+            for (int attempt = 1;; attempt++) {
+                try {
+                    appendCalls.incrementAndGet();
+                    sheets.spreadsheets().values()
+                            .append(spreadsheetId, range, new ValueRange().setValues(rows.stream()
+                                    .map(row -> toSheetCells(row.cells())).toList()))
+                            .setValueInputOption(valueInputOption)
+                            .setInsertDataOption("INSERT_ROWS")
+                            .execute();
+                    written(rows);
+                    return rows.size();
+                } catch (IOException e) {
+                    if (attempt >= maxAttempts || !isRetryable(e)) {
+                        throw e;
+                    }
+                    long backoffMs = backoffMs(attempt);
+                    retries.incrementAndGet();
+                    LOG.debug("Append of {} rows failed on attempt {}, retrying in {} ms: {}", rows.size(), attempt,
+                            backoffMs, e.getMessage());
+                    Thread.sleep(backoffMs);
+                    if (!isRejected(e)) {
+                        rows = skipWritten(rows, null);
+                        if (rows.isEmpty()) {
+                            return 0;
+                        }
+                    }
+                }
+            }
+        } finally {
+            writeNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Looks up the order ids of possibly sent rows in the sheet and records
+     * the ones found as written.
+     *
+     * @param unconfirmed sequence numbers of the rows to look up, null for all
+     * @return the rows still to be sent
+     */
+    private List<QueuedRow> skipWritten(List<QueuedRow> rows, Set<Long> unconfirmed) throws IOException {
+        Set<String> orderIds = new HashSet<>();
+        for (QueuedRow row : rows) {
+            if (row.key() != 0 && (unconfirmed == null || unconfirmed.contains(row.seq()))) {
+                orderIds.add(normalizeOrderId(orderId(row.cells())));
+            }
+        }
+        if (orderIds.isEmpty()) {
+            return rows;
+        }
+        // Formatted values depend on the number format of the column, e.g. 4.12346E+11
+        ValueRange column = sheets.spreadsheets().values().get(spreadsheetId, orderIdRange)
+                .setValueRenderOption("UNFORMATTED_VALUE").execute();
+        Set<String> inSheet = new HashSet<>();
+        if (column.getValues() != null) {
+            for (List<Object> cells : column.getValues()) {
+                String orderId = cells.isEmpty() ? null : normalizeOrderId(cells.get(0));
+                if (orderId != null && orderIds.contains(orderId)) {
+                    inSheet.add(orderId);
+                }
+            }
+        }
+        List<QueuedRow> found = new ArrayList<>();
+        List<QueuedRow> remaining = new ArrayList<>(rows.size());
+        for (QueuedRow row : rows) {
+            boolean looked = row.key() != 0 && (unconfirmed == null || unconfirmed.contains(row.seq()));
+            (looked && inSheet.contains(normalizeOrderId(orderId(row.cells()))) ? found : remaining).add(row);
+        }
+        if (!found.isEmpty()) {
+            LOG.info("{} possibly sent rows are already in {}, not sending them again", found.size(), spreadsheetId);
+            written(found);
+        }
+        return remaining;
+    }
+
+    private void markSending(List<QueuedRow> rows) throws IOException {
+        writeRecord(SENDING, rows);
+        synchronized (pending) {
+            rows.forEach(row -> inFlight.add(row.seq()));
+        }
+    }
+
+    private void written(List<QueuedRow> rows) throws IOException {
+        writeRecord(WRITTEN, rows);
+        rowsWritten.addAndGet(rows.size());
+        synchronized (pending) {
+            for (QueuedRow row : rows) {
+                if (row.key() != 0) {
+                    writtenKeys.add(row.key());
+                }
+            }
+            remove(rows);
+        }
+    }
+
+    private void failed(List<QueuedRow> chunk, Exception cause, boolean retryable) {
+        if (retryable) {
+            LOG.warn("Could not append {} rows to {}, retrying with the next flush", pendingRows(), spreadsheetId,
+                    cause);
+            synchronized (pending) {
+                if (!flushScheduled) {
+                    schedule(maxBackoffMs);
+                }
+            }
+            return;
+        }
+        failedRows.addAndGet(chunk.size());
+        LOG.error("Could not append {} rows to {}, dropping them", chunk.size(), spreadsheetId, cause);
+        try {
+            writeRecord(DROPPED, chunk);
+        } catch (IOException e) {
+            LOG.error("Could not record the dropped rows in {}", journalPath, e);
+        }
+        synchronized (pending) {
+            remove(chunk);
+            if (!pending.isEmpty() && !flushScheduled) {
+                schedule(flushDelayMs);
+            }
+        }
+    }
+
+    /**
+     * Removes the rows from the queue, called while holding the lock on the
+     * pending rows.
+     */
+    private void remove(List<QueuedRow> rows) {
+        Set<Long> seqs = new HashSet<>();
+        for (QueuedRow row : rows) {
+            seqs.add(row.seq());
+            inFlight.remove(row.seq());
+            pendingKeys.remove(row.key());
+        }
+        pending.removeIf(row -> seqs.contains(row.seq()));
+    }
+
+    private int pendingRows() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return a random delay up to the exponential backoff of the attempt
+     */
+    long backoffMs(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @return true for quota errors, server errors and failures without a
+     *         response, e.g. a dropped connection
+     */
+    static boolean isRetryable(IOException e) {
+        if (!(e instanceof HttpResponseException response)) {
+            return true;
+        }
+        if (RETRYABLE_STATUS.contains(response.getStatusCode())) {
+            return true;
+        }
+        return isRateLimited(e);
+    }
+
+    /**
+     * @return true if the call was turned down by the quota and cannot have
+     *         reached the sheet
+     */
+    static boolean isRejected(IOException e) {
+        return (e instanceof HttpResponseException response && response.getStatusCode() == 429) || isRateLimited(e);
+    }
+
+    private static boolean isRateLimited(IOException e) {
+        if (e instanceof GoogleJsonResponseException json && json.getStatusCode() == 403
+                && json.getDetails() != null && json.getDetails().getErrors() != null) {
+            for (GoogleJsonError.ErrorInfo error : json.getDetails().getErrors()) {
+                if (RATE_LIMIT_REASONS.contains(error.getReason())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a non-zero key of the order id of the row, 0 for a row without
+     *         one
+     */
+    static long orderKey(List<Object> row) {
+        String orderId = orderId(row);
+        if (orderId == null || orderId.isBlank()) {
+            return 0;
+        }
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < orderId.length(); i++) {
+            hash = (hash ^ orderId.charAt(i)) * FNV_PRIME;
+        }
+        long key = ExpenseUtil.mix64(hash);
+        return (key == 0) ? 1 : key;
+    }
+
+    private static String orderId(List<Object> row) {
+        Object cell = (row.size() > ORDER_ID_CELL) ? row.get(ORDER_ID_CELL) : null;
+        return (cell == null) ? null : cell.toString();
+    }
+
+    /**
+     * Sends the order id as text. Entered as a number, a long id would lose
+     * digits and its leading zeros.
+     */
+    private List<Object> toSheetCells(List<Object> cells) {
+        String orderId = orderId(cells);
+        if (!"USER_ENTERED".equals(valueInputOption) || orderId == null || orderId.isEmpty()) {
+            return cells;
+        }
+        List<Object> sheetCells = new ArrayList<>(cells);
+        sheetCells.set(ORDER_ID_CELL, "'" + orderId);
+        return sheetCells;
+    }
+
+    /**
+     * @return the order id of a queued row or of an unformatted cell of the
+     *         order id column in one form, also for ids held as numbers by rows
+     *         written before they were sent as text
+     */
+    static String normalizeOrderId(Object cell) {
+        if (cell instanceof Number number) {
+            try {
+                return new BigDecimal(number.toString()).stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException e) {
+                return number.toString();
+            }
+        }
+        String orderId = (cell == null) ? "" : cell.toString().strip();
+        if (orderId.startsWith("'")) {
+            orderId = orderId.substring(1);
+        }
+        if (!orderId.isEmpty() && orderId.chars().allMatch(ch -> ch >= '0' && ch <= '9')) {
+            // Numbers have no leading zeros
+            int start = 0;
+            while (start < orderId.length() - 1 && orderId.charAt(start) == '0') {
+                start++;
+            }
+            orderId = orderId.substring(start);
+        }
+        return orderId.isEmpty() ? null : orderId;
+    }
+
+    /**
+     * Schedules a flush, called while holding the lock on the pending rows.
+     */
+    private void schedule(long delayMs) {
+        flushScheduled = true;
+        getExecutor().schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static long estimateBytes(List<Object> row) {
+        long bytes = 0;
+        for (Object cell : row) {
+            bytes += ((cell == null) ? 0 : cell.toString().length()) + CELL_OVERHEAD_BYTES;
+        }
+        return bytes;
+    }
+
+    private ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = camelContext.getExecutorServiceManager().newSingleThreadScheduledExecutor(this,
+                            THREAD_POOL_NAME);
+                }
+            }
+        }
+        return executor;
+    }
+
+    private void writeRecord(byte type, Collection<QueuedRow> rows) throws IOException {
+        synchronized (journalLock) {
+            if (journal == null) {
+                return;
+            }
+            write(journal, type, rows);
+            if (fsync) {
+                journal.force(false);
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, byte type, Collection<QueuedRow> rows) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64 + rows.size() * ((type == QUEUED) ? 256 : 8));
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(type);
+        out.writeInt(rows.size());
+        for (QueuedRow row : rows) {
+            out.writeLong(row.seq());
+            if (type == QUEUED) {
+                out.writeLong(row.key());
+                out.writeLong(row.queuedAt());
+                out.writeInt(row.cells().size());
+                for (Object cell : row.cells()) {
+                    TransactionLedger.writeString(out, (cell == null) ? null : cell.toString());
+                }
+            }
+        }
+        out.flush();
+        writeFramed(channel, payload.toByteArray());
+    }
+
+    private static void writeKeys(FileChannel channel, long[] keys) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(8 + keys.length * 8);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(WRITTEN_KEYS);
+        out.writeInt(keys.length);
+        for (long key : keys) {
+            out.writeLong(key);
+        }
+        out.flush();
+        writeFramed(channel, payload.toByteArray());
+    }
+
+    private static void writeFramed(FileChannel channel, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(RECORD_MAGIC).putInt(payload.length).putLong(crc.getValue()).put(payload).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    /**
+     * Rebuilds the queue from the records of the journal up to its end or the
+     * first record that is incomplete or fails its checksum.
+     *
+     * @return offset after the last valid record
+     */
+    private long recover() throws IOException {
+        long size = journal.size();
+        long offset = 0;
+        Map<Long, QueuedRow> queued = new LinkedHashMap<>();
+        // Reads through its own view of the file, the append position is left alone
+        try (InputStream stream = Channels.newInputStream(FileChannel.open(journalPath, StandardOpenOption.READ));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (size - offset >= RECORD_HEADER_BYTES) {
+                int magic = in.readInt();
+                int length = in.readInt();
+                long checksum = in.readLong();
+                if (magic != RECORD_MAGIC || length < 0 || length > size - offset - RECORD_HEADER_BYTES) {
+                    break;
+                }
+                byte[] payload = in.readNBytes(length);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (payload.length != length || crc.getValue() != checksum) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload)), queued);
+                offset += RECORD_HEADER_BYTES + length;
+            }
+        } catch (EOFException e) {
+            // Incomplete record at the end of the journal
+        }
+        for (QueuedRow row : queued.values()) {
+            pending.add(row);
+            if (row.key() != 0) {
+                pendingKeys.add(row.key());
+            }
+        }
+        inFlight.retainAll(queued.keySet());
+        return offset;
+    }
+
+    private void apply(DataInputStream in, Map<Long, QueuedRow> queued) throws IOException {
+        byte type = in.readByte();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long value = in.readLong();
+            switch (type) {
+            case QUEUED -> {
+                long key = in.readLong();
+                long queuedAt = in.readLong();
+                Object[] cells = new Object[in.readInt()];
+                for (int c = 0; c < cells.length; c++) {
+                    cells[c] = TransactionLedger.readString(in);
+                }
+                queued.put(value, new QueuedRow(value, key, queuedAt, Arrays.asList(cells)));
+                nextSeq = Math.max(nextSeq, value + 1);
+            }
+            case SENDING -> inFlight.add(value);
+            case WRITTEN -> {
+                QueuedRow row = queued.remove(value);
+                if (row != null && row.key() != 0) {
+                    writtenKeys.add(row.key());
+                }
+                inFlight.remove(value);
+            }
+            case DROPPED -> {
+                queued.remove(value);
+                inFlight.remove(value);
+            }
+            case WRITTEN_KEYS -> writtenKeys.add(value);
+            default -> throw new IOException("Unknown record type " + type + " in " + journalPath);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal to the queued rows and the written order ids once it
+     * grew by the configured size since the last compaction, and moves it over
+     * the previous one.
+     */
+    private void compactIfNeeded() {
+        synchronized (pending) {
+            synchronized (journalLock) {
+                try {
+                    if (journal == null || journal.size() < compactedBytes + compactBytes) {
+                        return;
+                    }
+                    Path tmp = Files.createTempFile(journalPath.getParent(), "queue-", ".tmp");
+                    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                        writeKeys(out, writtenKeys.toSortedArray());
+                        write(out, QUEUED, pending);
+                        List<QueuedRow> sending = new ArrayList<>();
+                        for (QueuedRow row : pending) {
+                            if (inFlight.contains(row.seq())) {
+                                sending.add(row);
+                            }
+                        }
+                        write(out, SENDING, sending);
+                        out.force(true);
+                    }
+                    Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    journal.close();
+                    journal = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    journal.position(journal.size());
+                    compactedBytes = journal.size();
+                    LOG.debug("Compacted {} to {} queued rows and {} written order ids", journalPath, pending.size(),
+                            writtenKeys.size());
+                } catch (IOException e) {
+                    // The previous journal stays in place and is compacted after the next flush
+                    LOG.warn("Could not compact the Sheets queue {}", journalPath, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A row waiting in the queue.
+     *
+     * @param seq      position in the order of submission
+     * @param key      key of the order id, 0 if the row has none
+     * @param queuedAt epoch millis the row was submitted at
+     */
+    private record QueuedRow(long seq, long key, long queuedAt, List<Object> cells) {
+    }
+}
@@ -0,0 +1,258 @@
+package com.agv.expenses.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.service.model.SpendingRollup;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+
+/**
+ * Debit and credit totals per day, month or overall, each in total, per
+ * account and per payee. The totals are updated as rows are added to the
+ * {@link TransactionStore}, so a read only visits the buckets it returns.
+ * The totals are indexed by group and then by bucket, for one group or all of
+ * them, and by bucket and then by group, for a date range over all groups,
+ * whose cost then does not depend on the number of groups ever seen.
+ * <p>
+ * Rows without a date only count towards the overall totals, rows without a
+ * type or amount are left out.
+ */
+@Service
+public class SpendingRollups {
+
+    public enum Period {
+        DAY, MONTH, ALL
+    }
+
+    public enum GroupBy {
+        NONE, ACCOUNT, PAYEE
+    }
+
+    private static final Period[] PERIODS = Period.values();
+    private static final GroupBy[] GROUP_BYS = GroupBy.values();
+    private static final int ALL_BUCKET = 0;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Group -> bucket -> totals, one map per period and grouping
+    private final List<Map<String, NavigableMap<Integer, Totals>>> rollups = new ArrayList<>();
+    // Bucket -> group -> the same totals
+    private final List<NavigableMap<Integer, Map<String, Totals>>> bucketRollups = new ArrayList<>();
+
+    /**
+     * Totals of a group in a bucket, as found in a date range.
+     */
+    private record GroupTotals(String group, int bucket, Totals totals) {
+    }
+
+    public SpendingRollups() {
+        for (int i = 0; i < PERIODS.length * GROUP_BYS.length; i++) {
+            rollups.add(new TreeMap<>());
+            bucketRollups.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * Adds the rows to the totals. Called by the store with rows it has not
+     * seen before.
+     */
+    public void add(Collection<TransactionRecord> records) {
+        lock.writeLock().lock();
+        try {
+            for (TransactionRecord record : records) {
+                apply(record, 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a row to the totals of its updated fields, e.g. of the payee a
+     * later bank statement enriched. Called by the store.
+     */
+    public void update(TransactionRecord previous, TransactionRecord updated) {
+        lock.writeLock().lock();
+        try {
+            apply(previous, -1);
+            apply(updated, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the row to its totals or, with a negative sign, takes it out again
+     * and drops totals left empty. Called with the write lock held.
+     */
+    private void apply(TransactionRecord record, int sign) {
+        if (record.getType() == null || record.getAmountPaise() == TransactionRecord.NO_AMOUNT) {
+            return;
+        }
+        for (Period period : PERIODS) {
+            if (period != Period.ALL && record.getEpochDay() == TransactionRecord.NO_DATE) {
+                continue;
+            }
+            int bucket = bucket(period, record.getEpochDay());
+            for (GroupBy groupBy : GROUP_BYS) {
+                String group = group(groupBy, record);
+                NavigableMap<Integer, Totals> buckets = rollup(period, groupBy)
+                        .computeIfAbsent(group, key -> new TreeMap<>());
+                Totals totals = buckets.computeIfAbsent(bucket, key -> {
+                    Totals created = new Totals();
+                    bucketRollup(period, groupBy).computeIfAbsent(bucket, b -> new HashMap<>()).put(group, created);
+                    return created;
+                });
+                totals.add(record, sign);
+                if (totals.isEmpty()) {
+                    buckets.remove(bucket);
+                    if (buckets.isEmpty()) {
+                        rollup(period, groupBy).remove(group);
+                    }
+                    Map<String, Totals> groups = bucketRollup(period, groupBy).get(bucket);
+                    groups.remove(group);
+                    if (groups.isEmpty()) {
+                        bucketRollup(period, groupBy).remove(bucket);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param group    single account or payee to return, null for all
+     * @param fromDate first day of the first period, null for no lower bound
+     * @param toDate   any day of the last period, null for no upper bound
+     * @return totals ordered by group and period
+     * @throws IllegalArgumentException if a date range is given with
+     *                                  {@link Period#ALL}, whose single total
+     *                                  covers every date
+     */
+    public List<SpendingRollup> query(Period period, GroupBy groupBy, String group, LocalDate fromDate,
+            LocalDate toDate) {
+        if (period == Period.ALL && (fromDate != null || toDate != null)) {
+            throw new IllegalArgumentException("fromDate and toDate are not supported with period ALL");
+        }
+        int fromBucket = (fromDate == null) ? Integer.MIN_VALUE : bucket(period, (int) fromDate.toEpochDay());
+        int toBucket = (toDate == null) ? Integer.MAX_VALUE : bucket(period, (int) toDate.toEpochDay());
+        List<SpendingRollup> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (groupBy != GroupBy.NONE && group != null) {
+                NavigableMap<Integer, Totals> buckets = rollup(period, groupBy).get(group);
+                if (buckets != null) {
+                    for (Map.Entry<Integer, Totals> bucket : buckets.subMap(fromBucket, true, toBucket, true)
+                            .entrySet()) {
+                        result.add(toRollup(period, groupBy, group, bucket.getKey(), bucket.getValue()));
+                    }
+                }
+            } else if (fromDate != null || toDate != null) {
+                // Only the buckets of the range are visited, then ordered by group
+                List<GroupTotals> found = new ArrayList<>();
+                for (Map.Entry<Integer, Map<String, Totals>> bucket : bucketRollup(period, groupBy)
+                        .subMap(fromBucket, true, toBucket, true).entrySet()) {
+                    for (Map.Entry<String, Totals> groupEntry : bucket.getValue().entrySet()) {
+                        found.add(new GroupTotals(groupEntry.getKey(), bucket.getKey(), groupEntry.getValue()));
+                    }
+                }
+                found.sort(Comparator.comparing(GroupTotals::group).thenComparingInt(GroupTotals::bucket));
+                for (GroupTotals totals : found) {
+                    result.add(toRollup(period, groupBy, totals.group(), totals.bucket(), totals.totals()));
+                }
+            } else {
+                for (Map.Entry<String, NavigableMap<Integer, Totals>> groupEntry : rollup(period, groupBy)
+                        .entrySet()) {
+                    for (Map.Entry<Integer, Totals> bucket : groupEntry.getValue().entrySet()) {
+                        result.add(toRollup(period, groupBy, groupEntry.getKey(), bucket.getKey(),
+                                bucket.getValue()));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private static SpendingRollup toRollup(Period period, GroupBy groupBy, String group, int bucket,
+            Totals totals) {
+        return SpendingRollup.builder()
+                .period(format(period, bucket))
+                .group((groupBy == GroupBy.NONE) ? null : group)
+                .debitTotal(BigDecimal.valueOf(totals.debitPaise, 2).toPlainString())
+                .debitCount(totals.debitCount)
+                .creditTotal(BigDecimal.valueOf(totals.creditPaise, 2).toPlainString())
+                .creditCount(totals.creditCount)
+                .build();
+    }
+
+    private Map<String, NavigableMap<Integer, Totals>> rollup(Period period, GroupBy groupBy) {
+        return rollups.get(period.ordinal() * GROUP_BYS.length + groupBy.ordinal());
+    }
+
+    private NavigableMap<Integer, Map<String, Totals>> bucketRollup(Period period, GroupBy groupBy) {
+        return bucketRollups.get(period.ordinal() * GROUP_BYS.length + groupBy.ordinal());
+    }
+
+    private static String group(GroupBy groupBy, TransactionRecord record) {
+        String group = switch (groupBy) {
+            case NONE -> "";
+            case ACCOUNT -> TransactionStore.accountOf(record);
+            case PAYEE -> record.getPaidTo();
+        };
+        return (group == null) ? "" : group;
+    }
+
+    private static int bucket(Period period, int epochDay) {
+        return switch (period) {
+            case DAY -> epochDay;
+            case MONTH -> {
+                LocalDate date = LocalDate.ofEpochDay(epochDay);
+                yield date.getYear() * 12 + date.getMonthValue() - 1;
+            }
+            case ALL -> ALL_BUCKET;
+        };
+    }
+
+    private static String format(Period period, int bucket) {
+        return switch (period) {
+            case DAY -> LocalDate.ofEpochDay(bucket).toString();
+            case MONTH -> YearMonth.of(Math.floorDiv(bucket, 12), Math.floorMod(bucket, 12) + 1).toString();
+            case ALL -> null;
+        };
+    }
+
+    private static final class Totals {
+        long debitPaise;
+        long debitCount;
+        long creditPaise;
+        long creditCount;
+
+        void add(TransactionRecord record, int sign) {
+            if (record.getType() == TransactionType.DEBIT) {
+                debitPaise += sign * record.getAmountPaise();
+                debitCount += sign;
+            } else {
+                creditPaise += sign * record.getAmountPaise();
+                creditCount += sign;
+            }
+        }
+
+        boolean isEmpty() {
+            return debitCount == 0 && creditCount == 0;
+        }
+    }
+}
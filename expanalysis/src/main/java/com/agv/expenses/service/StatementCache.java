@@ -0,0 +1,316 @@
+package com.agv.expenses.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.service.model.CacheStats;
+import com.agv.expenses.service.model.ParsedStatement;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Two tier cache for statement processing results, keyed on the content
+ * checksum of the source file. Extracted text and parse results are stored
+ * separately so that a parser change only invalidates the results while the
+ * expensive text extraction is still reused.
+ * <p>
+ * The first tier is an in-memory LRU, the second tier keeps gzip compressed
+ * entries on disk and survives restarts. Entries evicted from memory remain
+ * available on disk until the disk tier exceeds its size limit. The statement
+ * text is private, the disk tier is readable by its owner only on file
+ * systems with POSIX permissions.
+ */
+@Service
+public class StatementCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementCache.class);
+    private static final String FILE_SUFFIX = ".ser.gz";
+    // Only our own models and JDK value types are ever read back from disk
+    private static final ObjectInputFilter DESERIALIZATION_FILTER = ObjectInputFilter.Config.createFilter(
+            "java.lang.*;java.util.*;com.agv.expenses.service.model.*;!*");
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIR = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+    @Value("${expense.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${expense.cache.memory.max-entries:64}")
+    private int maxMemoryEntries;
+    @Value("${expense.cache.disk.enabled:true}")
+    private boolean diskEnabled;
+    @Value("${expense.cache.disk.dir:${user.home}/.expanalysis/statement-cache}")
+    private String diskDir;
+    @Value("${expense.cache.disk.max-bytes:268435456}")
+    private long maxDiskBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong memoryEvictions = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private Map<String, Object> memory;
+    private Path diskPath;
+    private boolean posix;
+
+    @PostConstruct
+    void init() throws IOException {
+        memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                if (size() > maxMemoryEntries) {
+                    memoryEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (enabled && diskEnabled) {
+            diskPath = Path.of(diskDir);
+            posix = diskPath.getFileSystem().supportedFileAttributeViews().contains("posix");
+            if (posix) {
+                Files.createDirectories(diskPath, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIR));
+                // Also when the directory was created before with the default permissions
+                Files.setPosixFilePermissions(diskPath, OWNER_ONLY_DIR);
+            } else {
+                Files.createDirectories(diskPath);
+            }
+            try (Stream<Path> files = Files.list(diskPath)) {
+                diskBytes.set(files.filter(this::isCacheFile).mapToLong(this::sizeOf).sum());
+            }
+            LOG.info("Statement disk cache at {} holds {} bytes", diskPath, diskBytes.get());
+        }
+    }
+
+    /**
+     * @param contentKey checksum identifying the file content
+     * @return cache key for the text extracted from the file
+     */
+    public static String textKey(String contentKey) {
+        return "text:" + contentKey;
+    }
+
+    /**
+     * @param contentKey    checksum identifying the file content
+     * @param parserName    parser the result was produced with
+     * @param parserVersion version of that parser, bumped whenever its output
+     *                      changes
+     * @return cache key for the parse result of the file
+     */
+    public static String resultKey(String contentKey, String parserName, String parserVersion) {
+        return "result:" + contentKey + ":" + parserName + ":" + parserVersion;
+    }
+
+    public String getText(String key) {
+        return get(key, String.class);
+    }
+
+    public void putText(String key, String text) {
+        put(key, text);
+    }
+
+    public ParsedStatement getResult(String key) {
+        return get(key, ParsedStatement.class);
+    }
+
+    public void putResult(String key, ParsedStatement result) {
+        put(key, result);
+    }
+
+    public CacheStats getStats() {
+        int memoryEntries;
+        synchronized (memory) {
+            memoryEntries = memory.size();
+        }
+        int diskEntries = 0;
+        if (diskPath != null) {
+            try (Stream<Path> files = Files.list(diskPath)) {
+                diskEntries = (int) files.filter(this::isCacheFile).count();
+            } catch (IOException e) {
+                LOG.warn("Unable to list statement cache directory {}", diskPath, e);
+            }
+        }
+        return CacheStats.builder()
+                .memoryHits(memoryHits.get())
+                .diskHits(diskHits.get())
+                .misses(misses.get())
+                .puts(puts.get())
+                .memoryEvictions(memoryEvictions.get())
+                .diskEvictions(diskEvictions.get())
+                .memoryEntries(memoryEntries)
+                .diskEntries(diskEntries)
+                .diskBytes(diskBytes.get())
+                .build();
+    }
+
+    private <T> T get(String key, Class<T> type) {
+        if (!enabled || key == null) {
+            return null;
+        }
+        Object value;
+        synchronized (memory) {
+            value = memory.get(key);
+        }
+        if (type.isInstance(value)) {
+            memoryHits.incrementAndGet();
+            return type.cast(value);
+        }
+        value = readFromDisk(key);
+        if (type.isInstance(value)) {
+            diskHits.incrementAndGet();
+            synchronized (memory) {
+                memory.put(key, value);
+            }
+            return type.cast(value);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void put(String key, Serializable value) {
+        if (!enabled || key == null || value == null) {
+            return;
+        }
+        puts.incrementAndGet();
+        synchronized (memory) {
+            memory.put(key, value);
+        }
+        writeToDisk(key, value);
+    }
+
+    private Object readFromDisk(String key) {
+        if (diskPath == null) {
+            return null;
+        }
+        Path file = diskPath.resolve(fileName(key));
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(file);
+                ObjectInputStream ois = new ObjectInputStream(
+                        new GZIPInputStream(new BufferedInputStream(in)))) {
+            ois.setObjectInputFilter(DESERIALIZATION_FILTER);
+            Object value = ois.readObject();
+            // Refresh the modification time, eviction removes the least recently used files first
+            file.toFile().setLastModified(System.currentTimeMillis());
+            return value;
+        } catch (Exception e) {
+            LOG.warn("Discarding unreadable statement cache file {}: {}", file, e.getMessage());
+            deleteFile(file);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Serializable value) {
+        if (diskPath == null) {
+            return;
+        }
+        Path file = diskPath.resolve(fileName(key));
+        try {
+            Path tmp = posix ? Files.createTempFile(diskPath, "entry-", ".tmp",
+                    PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE))
+                    : Files.createTempFile(diskPath, "entry-", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp);
+                    ObjectOutputStream oos = new ObjectOutputStream(
+                            new GZIPOutputStream(new BufferedOutputStream(out)))) {
+                oos.writeObject(value);
+            }
+            long previous = Files.exists(file) ? sizeOf(file) : 0;
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            diskBytes.addAndGet(sizeOf(file) - previous);
+        } catch (IOException e) {
+            LOG.warn("Unable to write statement cache entry {}: {}", key, e.getMessage());
+            return;
+        }
+        if (diskBytes.get() > maxDiskBytes) {
+            evictFromDisk();
+        }
+    }
+
+    private synchronized void evictFromDisk() {
+        try (Stream<Path> files = Files.list(diskPath)) {
+            List<Path> oldestFirst = files.filter(this::isCacheFile)
+                    .sorted(Comparator.comparingLong(this::lastModified))
+                    .toList();
+            for (Path file : oldestFirst) {
+                if (diskBytes.get() <= maxDiskBytes) {
+                    break;
+                }
+                if (deleteFile(file)) {
+                    diskEvictions.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to evict statement cache entries from {}", diskPath, e);
+        }
+    }
+
+    private boolean deleteFile(Path file) {
+        try {
+            long size = sizeOf(file);
+            if (Files.deleteIfExists(file)) {
+                diskBytes.addAndGet(-size);
+                return true;
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to delete statement cache file {}", file, e);
+        }
+        return false;
+    }
+
+    private boolean isCacheFile(Path file) {
+        return file.getFileName().toString().endsWith(FILE_SUFFIX);
+    }
+
+    private long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private long lastModified(Path file) {
+        return file.toFile().lastModified();
+    }
+
+    private static String fileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + FILE_SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.agv.expenses.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.io.RandomAccessStreamCache.StreamCacheCreateFunction;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content of a PDF statement, held either in memory or in a file. File backed
+ * documents are opened through PDFBox's buffered random access so the raw
+ * bytes never have to be on the heap. Temporary files are deleted on close.
+ */
+public class StatementDocument implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementDocument.class);
+
+    private final byte[] content;
+    private final Path file;
+    private final boolean temporary;
+    private final StreamCacheCreateFunction streamCache;
+
+    private StatementDocument(byte[] content, Path file, boolean temporary, StreamCacheCreateFunction streamCache) {
+        this.content = content;
+        this.file = file;
+        this.temporary = temporary;
+        this.streamCache = streamCache;
+    }
+
+    public static StatementDocument ofBytes(byte[] content, StreamCacheCreateFunction streamCache) {
+        return new StatementDocument(content, null, false, streamCache);
+    }
+
+    /**
+     * @param file      PDF file
+     * @param temporary true if the file has to be deleted when the document is
+     *                  closed
+     */
+    public static StatementDocument ofFile(Path file, boolean temporary, StreamCacheCreateFunction streamCache) {
+        return new StatementDocument(null, file, temporary, streamCache);
+    }
+
+    /**
+     * Opens a new {@link PDDocument}, to be closed by the caller. Can be called
+     * several times, e.g. once per extraction thread.
+     */
+    public PDDocument open(String password) throws IOException {
+        if (file != null) {
+            return Loader.loadPDF(new RandomAccessReadBufferedFile(file), password, null, null, streamCache);
+        }
+        return Loader.loadPDF(content, password, null, null, streamCache);
+    }
+
+    /**
+     * @param length maximum number of bytes to read
+     * @return the leading bytes of the content, e.g. to recognise the file type
+     */
+    public byte[] readHeader(int length) throws IOException {
+        if (file != null) {
+            try (InputStream in = Files.newInputStream(file)) {
+                return in.readNBytes(length);
+            }
+        }
+        return Arrays.copyOf(content, Math.min(length, content.length));
+    }
+
+    /**
+     * Opens the content as a stream, to be closed by the caller, e.g. to look
+     * into a statement which is not a PDF.
+     */
+    public InputStream openStream() throws IOException {
+        return (file != null) ? Files.newInputStream(file) : new ByteArrayInputStream(content);
+    }
+
+    public boolean isFileBacked() {
+        return file != null;
+    }
+
+    public long size() throws IOException {
+        return (file != null) ? Files.size(file) : content.length;
+    }
+
+    @Override
+    public void close() {
+        if (temporary) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete temporary statement file {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.agv.expenses.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache.StreamCacheCreateFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Creates {@link StatementDocument}s with bounded memory use. When disk
+ * backing is enabled, downloads larger than the threshold are spooled to a
+ * temporary file instead of being read fully into memory, and PDFBox keeps
+ * decoded streams beyond the main memory limit in scratch files.
+ */
+@Service
+public class StatementDocumentLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementDocumentLoader.class);
+    private static final String TEMP_FILE_PREFIX = "statement-";
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    @Value("${pdf.load.disk-backed:false}")
+    private boolean diskBacked;
+    // Downloads up to this size stay in memory
+    @Value("${pdf.load.disk-threshold-bytes:4194304}")
+    private long diskThresholdBytes;
+    // Memory PDFBox may use per open document before switching to scratch files
+    @Value("${pdf.load.max-main-memory-bytes:16777216}")
+    private long maxMainMemoryBytes;
+    @Value("${pdf.load.temp-dir:}")
+    private String tempDir;
+
+    /**
+     * Reads the stream, the caller still has to close it.
+     *
+     * @param in content of the PDF
+     * @return the document, to be closed once no longer needed
+     */
+    public StatementDocument load(InputStream in) throws IOException {
+        if (!diskBacked) {
+            return StatementDocument.ofBytes(in.readAllBytes(), getStreamCache());
+        }
+        // Buffer up to the threshold and only spill to disk when the content is larger
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while (head.size() <= diskThresholdBytes && (read = in.read(buffer)) != -1) {
+            head.write(buffer, 0, read);
+        }
+        if (head.size() <= diskThresholdBytes) {
+            return StatementDocument.ofBytes(head.toByteArray(), getStreamCache());
+        }
+        Path file = createTempFile();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            head.writeTo(out);
+            head = null;
+            in.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        LOG.debug("Spooled statement of {} bytes to {}", Files.size(file), file);
+        return StatementDocument.ofFile(file, true, getStreamCache());
+    }
+
+    /**
+     * Uses the file in place without reading it into memory.
+     *
+     * @param file PDF file, left in place when the document is closed
+     */
+    public StatementDocument load(Path file) throws IOException {
+        if (!diskBacked) {
+            return StatementDocument.ofBytes(Files.readAllBytes(file), getStreamCache());
+        }
+        return StatementDocument.ofFile(file, false, getStreamCache());
+    }
+
+    private StreamCacheCreateFunction getStreamCache() {
+        if (!diskBacked) {
+            return IOUtils.createMemoryOnlyStreamCache();
+        }
+        MemoryUsageSetting setting = MemoryUsageSetting.setupMixed(maxMainMemoryBytes);
+        if (tempDir != null && !tempDir.isBlank()) {
+            setting.setTempDir(Path.of(tempDir).toFile());
+        }
+        return setting.streamCache;
+    }
+
+    private Path createTempFile() throws IOException {
+        if (tempDir != null && !tempDir.isBlank()) {
+            return Files.createTempFile(Path.of(tempDir), TEMP_FILE_PREFIX, ".pdf");
+        }
+        return Files.createTempFile(TEMP_FILE_PREFIX, ".pdf");
+    }
+}
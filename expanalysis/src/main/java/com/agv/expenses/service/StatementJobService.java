@@ -0,0 +1,236 @@
+package com.agv.expenses.service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
+import org.apache.camel.util.concurrent.ThreadPoolRejectedPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.service.model.StatementJobStatus;
+import com.agv.expenses.service.model.StatementProcessRequest;
+import com.agv.expenses.service.model.StatementProcessResponse;
+import com.agv.expenses.util.DatePattern;
+import com.agv.expenses.util.ExpenseUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs statement processing requests in the background so that the REST
+ * caller only waits for a job id. Jobs are executed on a Camel managed thread
+ * pool through the same <code>direct:processRequest</code> route used by the
+ * synchronous API and can be polled by id until they are evicted.
+ * <p>
+ * The final status is POSTed to the callback URL of the request, if any. Only
+ * URLs under one of <code>expense.jobs.callback.allowed-urls</code> are
+ * accepted, so that a caller cannot have the service send requests to other
+ * hosts of the internal network. Redirects are not followed.
+ */
+@Service
+public class StatementJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementJobService.class);
+    private static final String THREAD_POOL_NAME = "StatementJobs";
+
+    @Autowired
+    private CamelContext camelContext;
+    @Autowired
+    private ProducerTemplate producerTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${expense.jobs.pool-size:4}")
+    private int poolSize;
+    @Value("${expense.jobs.queue-size:100}")
+    private int queueSize;
+    @Value("${expense.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+    // Base URLs callbacks may be sent to, none by default
+    @Value("${expense.jobs.callback.allowed-urls:}")
+    private List<String> allowedCallbackUrls = List.of();
+
+    private final Map<String, StatementJobStatus> jobs = new ConcurrentHashMap<>();
+    private final HttpClient callbackClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private volatile ExecutorService executor;
+
+    /**
+     * Registers a new job for the request and queues it for execution.
+     *
+     * @param request statement to be processed
+     * @return status of the queued job (contains the job id to poll)
+     * @throws IllegalArgumentException   if the callback URL is not allowed
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public StatementJobStatus submit(StatementProcessRequest request) {
+        URI callbackUri = toCallbackUri(request.getCallbackUrl());
+        evictExpiredJobs();
+        String jobId = UUID.randomUUID().toString();
+        StatementJobStatus job = StatementJobStatus.builder()
+                .jobId(jobId)
+                .status(StatementJobStatus.QUEUED)
+                .messageId(request.getMessageId())
+                .fileId(request.getFileId())
+                .submittedAt(now())
+                .build();
+        jobs.put(jobId, job);
+        try {
+            getExecutor().submit(() -> runJob(jobId, request, callbackUri));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            throw e;
+        }
+        LOG.info("Queued statement job {} for file {}", jobId, request.getFileId());
+        return job;
+    }
+
+    /**
+     * @param jobId id returned by {@link #submit(StatementProcessRequest)}
+     * @return current status of the job or null if it is unknown or evicted
+     */
+    public StatementJobStatus getJob(String jobId) {
+        return (jobId == null) ? null : jobs.get(jobId);
+    }
+
+    /**
+     * @param callbackUrl URL from the request, may be empty
+     * @return the URL if it is under one of the allowed base URLs, null if
+     *         it is empty
+     * @throws IllegalArgumentException if the URL is not allowed
+     */
+    URI toCallbackUri(String callbackUrl) {
+        if (callbackUrl == null || callbackUrl.isBlank()) {
+            return null;
+        }
+        URI uri = URI.create(callbackUrl.trim()).normalize();
+        if (uri.getRawUserInfo() == null && uri.getHost() != null && isHttp(uri)) {
+            for (String allowedUrl : allowedCallbackUrls) {
+                if (!allowedUrl.isBlank() && isUnder(uri, URI.create(allowedUrl.trim()).normalize())) {
+                    return uri;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Callback URL is not allowed: " + callbackUrl);
+    }
+
+    private static boolean isHttp(URI uri) {
+        return "http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme());
+    }
+
+    private static boolean isUnder(URI uri, URI base) {
+        if (!uri.getScheme().equalsIgnoreCase(base.getScheme()) || !uri.getHost().equalsIgnoreCase(base.getHost())
+                || port(uri) != port(base)) {
+            return false;
+        }
+        String basePath = (base.getRawPath() == null) ? "" : base.getRawPath();
+        String path = (uri.getRawPath() == null || uri.getRawPath().isEmpty()) ? "/" : uri.getRawPath();
+        if (basePath.isEmpty() || basePath.endsWith("/")) {
+            return path.startsWith(basePath.isEmpty() ? "/" : basePath);
+        }
+        return path.equals(basePath) || path.startsWith(basePath + "/");
+    }
+
+    private static int port(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    private void runJob(String jobId, StatementProcessRequest request, URI callbackUri) {
+        jobs.computeIfPresent(jobId, (id, job) -> job.toBuilder().status(StatementJobStatus.RUNNING).build());
+        StatementJobStatus finished;
+        try {
+            Exchange result = producerTemplate.send("direct:processRequest",
+                    exchange -> exchange.getIn().setBody(request));
+            StatementProcessResponse response = StatementProcessResponse
+                    .fromRouteBody(result.getMessage().getBody());
+            boolean failed = result.getException() != null || response == null
+                    || StatementJobStatus.FAILED.equals(response.getStatus());
+            finished = jobs.get(jobId).toBuilder()
+                    .status(failed ? StatementJobStatus.FAILED : StatementJobStatus.SUCCESS)
+                    .errorMessage(failed && response != null ? response.getErrorMessage() : null)
+                    .response(response)
+                    .completedAt(now())
+                    .build();
+        } catch (Exception e) {
+            LOG.error("Statement job {} failed", jobId, e);
+            finished = jobs.get(jobId).toBuilder()
+                    .status(StatementJobStatus.FAILED)
+                    .errorMessage(e.getMessage())
+                    .completedAt(now())
+                    .build();
+        }
+        jobs.put(jobId, finished);
+        LOG.info("Statement job {} completed with status {}", jobId, finished.getStatus());
+        notifyCallback(callbackUri, finished);
+    }
+
+    private void notifyCallback(URI callbackUrl, StatementJobStatus job) {
+        if (callbackUrl == null) {
+            return;
+        }
+        try {
+            HttpRequest callback = HttpRequest.newBuilder(callbackUrl)
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(job)))
+                    .build();
+            callbackClient.sendAsync(callback, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((resp, err) -> {
+                        if (err != null) {
+                            LOG.warn("Callback for job {} to {} failed: {}", job.getJobId(), callbackUrl,
+                                    err.getMessage());
+                        } else {
+                            LOG.debug("Callback for job {} returned HTTP {}", job.getJobId(), resp.statusCode());
+                        }
+                    });
+        } catch (Exception e) {
+            LOG.warn("Unable to send callback for job {} to {}", job.getJobId(), callbackUrl, e);
+        }
+    }
+
+    private void evictExpiredJobs() {
+        String cutOff = ExpenseUtil.toDateTimeString(LocalDateTime.now().minusMinutes(retentionMinutes),
+                DatePattern.ISO_DATE_TIME);
+        jobs.values().removeIf(job -> job.getCompletedAt() != null && job.getCompletedAt().compareTo(cutOff) < 0);
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    // Managed by Camel so the pool is shut down along with the context
+                    executor = camelContext.getExecutorServiceManager().newThreadPool(this, THREAD_POOL_NAME,
+                            new ThreadPoolProfileBuilder(THREAD_POOL_NAME)
+                                    .poolSize(poolSize)
+                                    .maxPoolSize(poolSize)
+                                    .maxQueueSize(queueSize)
+                                    .rejectedPolicy(ThreadPoolRejectedPolicy.Abort)
+                                    .build());
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static String now() {
+        return ExpenseUtil.toDateTimeString(LocalDateTime.now(), DatePattern.ISO_DATE_TIME);
+    }
+}
@@ -0,0 +1,145 @@
+package com.agv.expenses.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.processor.StatementParser;
+
+/**
+ * Recognises the format of a statement before it is parsed. Only the leading
+ * bytes of the file and, for PDFs, the text of the first page are looked at,
+ * so a statement is matched to its parser and password at a fraction of the
+ * cost of a full extraction. Other files are only given to a parser whose
+ * header check and content check both match, as any workbook has the same
+ * header.
+ * <p>
+ * Parsers are tried in their {@link org.springframework.core.annotation.Order}
+ * and the first match wins.
+ */
+@Service
+public class StatementParserRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementParserRegistry.class);
+    // PDF readers accept the header anywhere in the first 1024 bytes
+    private static final int HEADER_LENGTH = 1024;
+    private static final byte[] PDF_MAGIC = { '%', 'P', 'D', 'F', '-' };
+
+    @Autowired
+    private List<StatementParser> parsers;
+
+    /**
+     * @param parser   parser of the statement
+     * @param password password which opened the PDF, null if it is not
+     *                 protected or not a PDF
+     */
+    public record Detection(StatementParser parser, String password) {
+    }
+
+    public List<StatementParser> getParsers() {
+        return parsers;
+    }
+
+    /**
+     * Opens PDFs with the passwords of the PDF parsers in turn and extracts
+     * the first page only.
+     *
+     * @param document content of the statement
+     * @return the matching parser and the password to use for the extraction
+     * @throws InvalidPasswordException if none of the passwords opens the PDF
+     * @throws IllegalArgumentException if no parser recognises the statement
+     */
+    public Detection detect(StatementDocument document) throws IOException {
+        byte[] header = document.readHeader(HEADER_LENGTH);
+        if (!isPdf(header)) {
+            for (StatementParser parser : parsers) {
+                if (!parser.isPdf() && parser.matches(header, null) && matchesContent(parser, document)) {
+                    LOG.debug("Statement recognised as {}", parser.getName());
+                    return new Detection(parser, null);
+                }
+            }
+            return new Detection(require(null), null);
+        }
+        InvalidPasswordException passwordError = null;
+        for (String password : getPasswords()) {
+            PDDocument pdf;
+            try {
+                pdf = document.open(password);
+            } catch (InvalidPasswordException e) {
+                passwordError = e;
+                continue;
+            }
+            try (pdf) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                stripper.setEndPage(1);
+                return new Detection(require(detect(header, stripper.getText(pdf))), password);
+            }
+        }
+        LOG.warn("None of the statement passwords opens the PDF");
+        throw passwordError;
+    }
+
+    /**
+     * @param header        leading bytes of the file, null if not known
+     * @param firstPageText text of the first page, null if the file is not a
+     *                      PDF
+     * @return the first parser recognising the statement, null if there is
+     *         none
+     */
+    public StatementParser detect(byte[] header, String firstPageText) {
+        for (StatementParser parser : parsers) {
+            if (parser.isPdf() == (firstPageText != null) && parser.matches(header, firstPageText)) {
+                LOG.debug("Statement recognised as {}", parser.getName());
+                return parser;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matchesContent(StatementParser parser, StatementDocument document) throws IOException {
+        try (InputStream content = document.openStream()) {
+            return parser.matchesContent(content);
+        }
+    }
+
+    private static StatementParser require(StatementParser parser) {
+        if (parser == null) {
+            throw new IllegalArgumentException("Statement format is not recognised");
+        }
+        return parser;
+    }
+
+    private List<String> getPasswords() {
+        // Unprotected PDFs open with any password, null is the last resort for
+        // files protected with an empty user password
+        Set<String> passwords = new LinkedHashSet<>();
+        for (StatementParser parser : parsers) {
+            if (parser.isPdf() && parser.getPassword() != null) {
+                passwords.add(parser.getPassword());
+            }
+        }
+        passwords.add(null);
+        return new ArrayList<>(passwords);
+    }
+
+    private static boolean isPdf(byte[] header) {
+        for (int i = 0; i + PDF_MAGIC.length <= header.length; i++) {
+            if (Arrays.equals(header, i, i + PDF_MAGIC.length, PDF_MAGIC, 0, PDF_MAGIC.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,140 @@
+package com.agv.expenses.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.processor.CsvRowSink;
+import com.agv.expenses.processor.NdjsonRowSink;
+import com.agv.expenses.processor.StatementRowSink;
+import com.agv.expenses.service.model.StatementProcessRequest;
+import com.agv.expenses.service.model.StatementProcessResponse;
+import com.agv.expenses.util.ExpenseUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Processes a statement on a worker thread while its rows are piped to the
+ * HTTP response as NDJSON or CSV. The servlet thread only copies the pipe to
+ * the client, so neither side holds the full result in memory.
+ */
+@Service
+public class StatementStreamService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementStreamService.class);
+    private static final String THREAD_POOL_NAME = "StatementStreams";
+
+    @Autowired
+    private CamelContext camelContext;
+    @Autowired
+    private ProducerTemplate producerTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${expense.stream.pool-size:4}")
+    private int poolSize;
+    @Value("${expense.stream.pipe-buffer-bytes:65536}")
+    private int pipeBufferBytes;
+
+    private volatile ExecutorService executor;
+
+    /**
+     * Starts processing the request in the background.
+     *
+     * @param request statement to be processed
+     * @return stream of NDJSON lines, ending with a status line
+     * @throws IOException if the pipe cannot be set up
+     */
+    public InputStream openStream(StatementProcessRequest request) throws IOException {
+        PipedInputStream in = new PipedInputStream(pipeBufferBytes);
+        PipedOutputStream out = new PipedOutputStream(in);
+        getExecutor().submit(() -> writeStream(request, out));
+        return in;
+    }
+
+    /**
+     * Starts processing the request in the background, the rows being
+     * written as CSV. The CSV has no room for a status, a failure is only
+     * logged and ends the stream early.
+     *
+     * @param gzip whether the stream is gzip compressed
+     * @return stream of the CSV file
+     * @throws IOException if the pipe cannot be set up
+     */
+    public InputStream openCsvStream(StatementProcessRequest request, boolean gzip) throws IOException {
+        PipedInputStream in = new PipedInputStream(pipeBufferBytes);
+        PipedOutputStream out = new PipedOutputStream(in);
+        getExecutor().submit(() -> writeCsvStream(request, out, gzip));
+        return in;
+    }
+
+    private void writeStream(StatementProcessRequest request, PipedOutputStream out) {
+        NdjsonRowSink sink = new NdjsonRowSink(out, objectMapper);
+        try (out) {
+            Exchange result = process(request, sink);
+            StatementProcessResponse response = StatementProcessResponse
+                    .fromRouteBody(result.getMessage().getBody());
+            if (response == null) {
+                Exception cause = result.getException();
+                sink.onComplete("Failed", cause != null ? cause.getMessage() : "No response", null);
+            } else {
+                sink.onComplete(response.getStatus(), response.getErrorMessage(), response.getErrorCauses());
+            }
+        } catch (IOException e) {
+            // Usually the client went away, nothing left to write to
+            LOG.warn("Streaming response for file {} aborted: {}", request.getFileId(), e.getMessage());
+        } catch (Exception e) {
+            LOG.error("Streaming response for file {} failed", request.getFileId(), e);
+        }
+    }
+
+    private void writeCsvStream(StatementProcessRequest request, PipedOutputStream out, boolean gzip) {
+        try (out; CsvRowSink sink = new CsvRowSink(out, gzip)) {
+            Exchange result = process(request, sink);
+            StatementProcessResponse response = StatementProcessResponse
+                    .fromRouteBody(result.getMessage().getBody());
+            if (response == null || !"Success".equals(response.getStatus())) {
+                Exception cause = result.getException();
+                LOG.warn("CSV response for file {} is incomplete: {}", request.getFileId(),
+                        (response != null) ? response.getErrorMessage()
+                                : (cause != null) ? cause.getMessage() : "No response");
+            } else if (sink.getErrorCount() > 0) {
+                LOG.info("CSV response for file {} left out {} error rows", request.getFileId(),
+                        sink.getErrorCount());
+            }
+        } catch (IOException e) {
+            // Usually the client went away, nothing left to write to
+            LOG.warn("Streaming response for file {} aborted: {}", request.getFileId(), e.getMessage());
+        } catch (Exception e) {
+            LOG.error("Streaming response for file {} failed", request.getFileId(), e);
+        }
+    }
+
+    private Exchange process(StatementProcessRequest request, StatementRowSink sink) {
+        return producerTemplate.send("direct:processRequest", exchange -> {
+            exchange.getIn().setBody(request);
+            exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_ROW_SINK, sink);
+        });
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = camelContext.getExecutorServiceManager().newFixedThreadPool(this, THREAD_POOL_NAME,
+                            poolSize);
+                }
+            }
+        }
+        return executor;
+    }
+}
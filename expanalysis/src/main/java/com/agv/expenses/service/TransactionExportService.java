@@ -0,0 +1,163 @@
+package com.agv.expenses.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.CamelContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.processor.CsvRowSink;
+import com.agv.expenses.service.model.TransactionQuery;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.DatePattern;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Exports the transactions recorded in the {@link TransactionLedger} as CSV,
+ * either piped to the HTTP response or written to a file in
+ * <code>expense.export.dir</code>. The ledger is read one statement at a
+ * time and each row is written as soon as it is read, so the memory needed
+ * does not depend on the number of rows exported.
+ * <p>
+ * Rows are in the order their statements were ingested, and are filtered as
+ * {@link TransactionStore#query} does, except that the query limit only caps
+ * the number of rows and <code>expense.store.query.max-rows</code> does not
+ * apply.
+ */
+@Service
+public class TransactionExportService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionExportService.class);
+    private static final String THREAD_POOL_NAME = "TransactionExports";
+
+    @Autowired
+    private CamelContext camelContext;
+    @Autowired
+    private TransactionLedger ledger;
+    @Value("${expense.export.dir:${user.home}/.expanalysis/exports}")
+    private String dir;
+    @Value("${expense.export.pool-size:2}")
+    private int poolSize = 2;
+    @Value("${expense.stream.pipe-buffer-bytes:65536}")
+    private int pipeBufferBytes = 65536;
+
+    private volatile ExecutorService executor;
+
+    /**
+     * Starts the export in the background.
+     *
+     * @return stream of the CSV file
+     * @throws IOException if the pipe cannot be set up
+     */
+    public InputStream openExport(TransactionQuery query, boolean gzip) throws IOException {
+        PipedInputStream in = new PipedInputStream(pipeBufferBytes);
+        PipedOutputStream out = new PipedOutputStream(in);
+        getExecutor().submit(() -> {
+            try {
+                export(query, out, gzip);
+            } catch (IOException e) {
+                // Usually the client went away, nothing left to write to
+                LOG.warn("Transaction export aborted: {}", e.getMessage());
+            } catch (Exception e) {
+                LOG.error("Transaction export failed", e);
+            }
+        });
+        return in;
+    }
+
+    /**
+     * Writes the export to a new file, which only appears under its final
+     * name once it is complete. The name is made unique by a random suffix,
+     * so exports started within the same second do not replace each other.
+     *
+     * @return path of the file and the number of rows written
+     */
+    public ExportedFile exportToFile(TransactionQuery query, boolean gzip) throws IOException {
+        Path dirPath = Path.of(dir);
+        Files.createDirectories(dirPath);
+        Path file = dirPath.resolve("transactions_"
+                + ExpenseUtil.toDateTimeString(LocalDateTime.now(), DatePattern.FILE_TIMESTAMP) + "_"
+                + UUID.randomUUID().toString().substring(0, 8) + (gzip ? ".csv.gz" : ".csv"));
+        Path tmp = Files.createTempFile(dirPath, "export-", ".tmp");
+        try {
+            long rows = export(query, Files.newOutputStream(tmp), gzip);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            return new ExportedFile(file, rows);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes the matching rows to the stream and closes it.
+     *
+     * @return number of rows written
+     */
+    public long export(TransactionQuery query, OutputStream out, boolean gzip) throws IOException {
+        long start = System.currentTimeMillis();
+        int limit = (query.getLimit() > 0) ? query.getLimit() : Integer.MAX_VALUE;
+        try (CsvRowSink sink = new CsvRowSink(out, gzip)) {
+            boolean read = ledger.read(records -> {
+                for (TransactionRecord record : records) {
+                    if (sink.getRowCount() < limit && matches(query, record)) {
+                        sink.onRow(record);
+                    }
+                }
+            });
+            if (!read) {
+                LOG.warn("The transaction ledger is disabled, exported no transactions");
+            }
+            LOG.info("Exported {} transactions in {} ms", sink.getRowCount(), System.currentTimeMillis() - start);
+            return sink.getRowCount();
+        }
+    }
+
+    static boolean matches(TransactionQuery query, TransactionRecord record) {
+        int epochDay = record.getEpochDay();
+        long amountPaise = record.getAmountPaise();
+        if ((query.getFromDate() != null || query.getToDate() != null) && epochDay == TransactionRecord.NO_DATE) {
+            return false;
+        }
+        if ((query.getMinAmountPaise() != null || query.getMaxAmountPaise() != null)
+                && amountPaise == TransactionRecord.NO_AMOUNT) {
+            return false;
+        }
+        return (query.getFromDate() == null || epochDay >= query.getFromDate().toEpochDay())
+                && (query.getToDate() == null || epochDay <= query.getToDate().toEpochDay())
+                && (query.getMinAmountPaise() == null || amountPaise >= query.getMinAmountPaise())
+                && (query.getMaxAmountPaise() == null || amountPaise <= query.getMaxAmountPaise())
+                && (query.getAccount() == null || query.getAccount().equals(TransactionStore.accountOf(record)))
+                && (query.getType() == null || query.getType() == record.getType());
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = camelContext.getExecutorServiceManager().newFixedThreadPool(this, THREAD_POOL_NAME,
+                            poolSize);
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * @param rows number of rows written to the file
+     */
+    public record ExportedFile(Path file, long rows) {
+    }
+}
@@ -0,0 +1,549 @@
+package com.agv.expenses.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+import com.agv.expenses.util.ExpenseUtil;
+import com.agv.expenses.util.LongHashSet;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Append-only file ledger of every transaction added to the
+ * {@link TransactionStore}, so that ingestion stays idempotent across restarts
+ * and the store can be rebuilt by replaying it.
+ * <p>
+ * Each statement is appended to the write-ahead log as one checksummed batch
+ * and forced to disk once, not per row. A batch torn by a crash fails its
+ * checksum and is cut off when the ledger is opened. The row keys and the
+ * source keys of the statements are compacted into a sorted index file every
+ * few batches and on shutdown, so opening the ledger only scans the log
+ * written after the last compaction.
+ * <p>
+ * The key of a row is its {@link TransactionRecord#fingerprint()}, remixed
+ * for each identical row before it in the same statement, so two payments of
+ * the same amount to the same payee on one day keep separate keys. A row is
+ * left out if a previous statement already recorded its key, which drops the
+ * overlap of consecutive statements. A statement whose source key is recorded
+ * was appended in full before and is left out without computing its keys.
+ * <p>
+ * Rows are never rewritten. A PhonePe row enriched by a bank statement
+ * ingested later gets a batch of payee updates, keyed by its UTR, which
+ * replay and reads apply to the rows recorded before.
+ */
+@Service
+public class TransactionLedger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionLedger.class);
+    private static final String LOG_FILE = "transactions.wal";
+    private static final String INDEX_FILE = "transactions.idx";
+    private static final int BATCH_MAGIC = 0x4C444742;
+    private static final int PAYEES_MAGIC = 0x4C444750;
+    private static final int INDEX_MAGIC = 0x4C444749;
+    private static final int FORMAT_VERSION = 2;
+    // Magic, payload length and checksum
+    private static final int BATCH_HEADER_BYTES = 16;
+    private static final byte NO_TYPE = -1;
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    @Value("${expense.ledger.enabled:true}")
+    private boolean enabled = true;
+    @Value("${expense.ledger.dir:${user.home}/.expanalysis/ledger}")
+    private String dir;
+    @Value("${expense.ledger.fsync:true}")
+    private boolean fsync = true;
+    @Value("${expense.ledger.index.compact-every:64}")
+    private int compactEvery = 64;
+
+    private final LongHashSet rowKeys = new LongHashSet();
+    private final Set<String> sourceKeys = new HashSet<>();
+
+    private Path logPath;
+    private Path indexPath;
+    private FileChannel log;
+    private int batchesSinceCompaction;
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path dirPath = Path.of(dir);
+        Files.createDirectories(dirPath);
+        logPath = dirPath.resolve(LOG_FILE);
+        indexPath = dirPath.resolve(INDEX_FILE);
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long indexed = readIndex();
+        long valid = scan(indexed, log.size(), (sourceKey, records, keys) -> remember(sourceKey, keys, keys.length), null);
+        if (valid < log.size()) {
+            LOG.warn("Cutting off {} bytes of an incomplete batch at the end of {}", log.size() - valid, logPath);
+            log.truncate(valid);
+            log.force(true);
+        }
+        log.position(valid);
+        LOG.info("Transaction ledger at {} holds {} row keys of {} statements, {} bytes", dirPath,
+                rowKeys.size(), sourceKeys.size(), valid);
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        if (log == null) {
+            return;
+        }
+        if (batchesSinceCompaction > 0) {
+            compact();
+        }
+        log.close();
+        log = null;
+    }
+
+    /**
+     * Appends the rows not recorded before as one batch and forces it to disk.
+     *
+     * @param sourceKey statement the rows were parsed from, null if not known
+     * @return the rows that were appended, all of them if the ledger is
+     *         disabled, none if the statement was appended before
+     */
+    public synchronized List<TransactionRecord> append(String sourceKey, Collection<TransactionRecord> records) {
+        return append(sourceKey, records, new LongHashSet(records.size()), true);
+    }
+
+    /**
+     * Appends one batch of a statement appended in several, e.g. while its
+     * rows are streamed. The source key is recorded with the last batch
+     * only, so a statement cut off halfway is appended again, without the
+     * rows recorded before.
+     *
+     * @param statementKeys keys of the rows of the statement in the batches
+     *                      before, empty for the first batch; the keys of
+     *                      these rows are added
+     * @param last          true for the last batch of the statement
+     * @return the rows that were appended
+     */
+    public synchronized List<TransactionRecord> append(String sourceKey, Collection<TransactionRecord> records,
+            LongHashSet statementKeys, boolean last) {
+        if (log == null) {
+            return new ArrayList<>(records);
+        }
+        if (sourceKey != null && sourceKeys.contains(sourceKey)) {
+            LOG.debug("Transactions of {} are already in the ledger", sourceKey);
+            return new ArrayList<>();
+        }
+        long[] keys = rowKeys(records, statementKeys);
+        sourceKey = last ? sourceKey : null;
+        List<TransactionRecord> added = new ArrayList<>(records.size());
+        long[] addedKeys = new long[keys.length];
+        int i = 0;
+        for (TransactionRecord record : records) {
+            if (!rowKeys.contains(keys[i])) {
+                addedKeys[added.size()] = keys[i];
+                added.add(record);
+            }
+            i++;
+        }
+        if (added.isEmpty()) {
+            LOG.debug("Transactions of {} are already in the ledger", sourceKey);
+            return added;
+        }
+        try {
+            write(sourceKey, added, addedKeys);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the transaction ledger " + logPath, e);
+        }
+        remember(sourceKey, addedKeys, added.size());
+        if (++batchesSinceCompaction >= compactEvery) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The log is complete, the index is rebuilt from it on the next start
+                LOG.warn("Could not compact the ledger index {}", indexPath, e);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Reads every batch of the log in the order it was appended.
+     *
+     * @param consumer called with the source key and rows of each batch
+     */
+    public synchronized void replay(BiConsumer<String, List<TransactionRecord>> consumer) {
+        replay(consumer, payees -> {
+        });
+    }
+
+    /**
+     * Reads every batch of the log in the order it was appended, including
+     * the payee updates.
+     *
+     * @param consumer      called with the source key and rows of each batch
+     * @param payeeConsumer called with each batch of payee updates, the new
+     *                      payee by UTR
+     */
+    public synchronized void replay(BiConsumer<String, List<TransactionRecord>> consumer,
+            Consumer<Map<String, String>> payeeConsumer) {
+        if (log == null) {
+            return;
+        }
+        try {
+            scan(0, log.size(), (sourceKey, records, keys) -> consumer.accept(sourceKey, records), payeeConsumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replay the transaction ledger " + logPath, e);
+        }
+    }
+
+    /**
+     * Reads the batches appended so far in the order they were appended, one
+     * batch in memory at a time, with the payee updates applied. The ledger is
+     * not locked while reading, so a slow consumer does not hold up appends;
+     * batches appended meanwhile are left out.
+     *
+     * @param consumer called with the rows of each batch
+     * @return false if the ledger is disabled
+     */
+    public boolean read(RecordBatchConsumer consumer) throws IOException {
+        long size;
+        synchronized (this) {
+            if (log == null) {
+                return false;
+            }
+            size = log.size();
+        }
+        // The updates follow the rows they apply to, so they are collected first
+        Map<String, String> payees = new HashMap<>();
+        scan(0, size, null, payees::putAll);
+        scan(0, size, (sourceKey, records, keys) -> {
+            if (!payees.isEmpty()) {
+                records.replaceAll(record -> withPayee(record, payees));
+            }
+            consumer.accept(records);
+        }, null);
+        return true;
+    }
+
+    /**
+     * Records new payees of PhonePe rows appended before and forces them to
+     * disk.
+     *
+     * @param payees new payee by the UTR of the PhonePe row
+     */
+    public synchronized void appendPayees(Map<String, String> payees) {
+        if (log == null || payees.isEmpty()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(payees.size() * 64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeInt(payees.size());
+            for (Map.Entry<String, String> payee : payees.entrySet()) {
+                writeString(out, payee.getKey());
+                writeString(out, payee.getValue());
+            }
+            out.flush();
+            writeFramed(PAYEES_MAGIC, payload.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the transaction ledger " + logPath, e);
+        }
+    }
+
+    /**
+     * @return the row with the payee recorded for its UTR, the row itself if
+     *         it is no PhonePe row or has no update
+     */
+    static TransactionRecord withPayee(TransactionRecord record, Map<String, String> payees) {
+        if (!ExpenseUtil.PHONEPE_SENDER.equals(record.getFrom()) || record.getMessage() == null) {
+            return record;
+        }
+        String paidTo = payees.get(record.getMessage());
+        return (paidTo == null) ? record : record.toBuilder().paidTo(paidTo).build();
+    }
+
+    /**
+     * @param statementKeys keys of the rows of the statement before these,
+     *                      identical rows get distinct keys
+     * @return the key of each row of a statement
+     */
+    static long[] rowKeys(Collection<TransactionRecord> records, LongHashSet statementKeys) {
+        long[] keys = new long[records.size()];
+        int i = 0;
+        for (TransactionRecord record : records) {
+            long key = record.fingerprint();
+            while (!statementKeys.add(key)) {
+                key = ExpenseUtil.mix64(key + 1);
+            }
+            keys[i++] = key;
+        }
+        return keys;
+    }
+
+    private void remember(String sourceKey, long[] keys, int count) {
+        if (sourceKey != null) {
+            sourceKeys.add(sourceKey);
+        }
+        for (int i = 0; i < count; i++) {
+            rowKeys.add(keys[i]);
+        }
+    }
+
+    private void write(String sourceKey, List<TransactionRecord> records, long[] keys) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(records.size() * 128);
+        DataOutputStream out = new DataOutputStream(payload);
+        writeString(out, sourceKey);
+        out.writeInt(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            TransactionRecord record = records.get(i);
+            out.writeLong(keys[i]);
+            out.writeInt(record.getEpochDay());
+            out.writeLong(record.getAmountPaise());
+            out.writeByte((record.getType() == null) ? NO_TYPE : record.getType().ordinal());
+            writeString(out, record.getFrom());
+            writeString(out, record.getTo());
+            writeString(out, record.getSubject());
+            writeString(out, record.getPaidTo());
+            writeString(out, record.getBodyCleaned());
+            writeString(out, record.getAccount());
+            writeString(out, record.getOrderId());
+            writeString(out, record.getLink());
+            writeString(out, record.getMessage());
+        }
+        out.flush();
+        writeFramed(BATCH_MAGIC, payload.toByteArray());
+    }
+
+    private void writeFramed(int magic, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer batch = ByteBuffer.allocate(BATCH_HEADER_BYTES + payload.length);
+        batch.putInt(magic).putInt(payload.length).putLong(crc.getValue()).put(payload).flip();
+        while (batch.hasRemaining()) {
+            log.write(batch);
+        }
+        if (fsync) {
+            log.force(false);
+        }
+    }
+
+    /**
+     * Reads the batches from the given offset up to the given log size or the
+     * first batch that is incomplete or fails its checksum.
+     *
+     * @param consumer      called with the rows of each batch, null to skip
+     *                      them
+     * @param payeeConsumer called with each batch of payee updates, null to
+     *                      skip them
+     * @return offset after the last valid batch
+     */
+    private long scan(long from, long size, BatchConsumer consumer, Consumer<Map<String, String>> payeeConsumer)
+            throws IOException {
+        long offset = from;
+        // Reads through its own view of the file, the append position is left alone
+        try (InputStream stream = Channels.newInputStream(FileChannel.open(logPath, StandardOpenOption.READ)
+                .position(from)); DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (size - offset >= BATCH_HEADER_BYTES) {
+                int magic = in.readInt();
+                int length = in.readInt();
+                long checksum = in.readLong();
+                if ((magic != BATCH_MAGIC && magic != PAYEES_MAGIC) || length < 0 || length > size - offset - BATCH_HEADER_BYTES) {
+                    break;
+                }
+                byte[] payload = in.readNBytes(length);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (payload.length != length || crc.getValue() != checksum) {
+                    break;
+                }
+                DataInputStream batch = new DataInputStream(new ByteArrayInputStream(payload));
+                if (magic == PAYEES_MAGIC) {
+                    if (payeeConsumer != null) {
+                        payeeConsumer.accept(readPayees(batch));
+                    }
+                } else if (consumer != null) {
+                    String sourceKey = readString(batch);
+                    int count = batch.readInt();
+                    List<TransactionRecord> records = new ArrayList<>(count);
+                    long[] keys = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        keys[i] = batch.readLong();
+                        records.add(readRecord(batch));
+                    }
+                    consumer.accept(sourceKey, records, keys);
+                }
+                offset += BATCH_HEADER_BYTES + length;
+            }
+        } catch (EOFException e) {
+            // Incomplete batch at the end of the log
+        }
+        return offset;
+    }
+
+    private static Map<String, String> readPayees(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, String> payees = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            payees.put(readString(in), readString(in));
+        }
+        return payees;
+    }
+
+    private static TransactionRecord readRecord(DataInputStream in) throws IOException {
+        int epochDay = in.readInt();
+        long amountPaise = in.readLong();
+        byte type = in.readByte();
+        return TransactionRecord.builder()
+                .epochDay(epochDay)
+                .amountPaise(amountPaise)
+                .type((type == NO_TYPE) ? null : TYPES[type])
+                .from(readString(in))
+                .to(readString(in))
+                .subject(readString(in))
+                .paidTo(readString(in))
+                .bodyCleaned(readString(in))
+                .account(readString(in))
+                .orderId(readString(in))
+                .link(readString(in))
+                .message(readString(in))
+                .build();
+    }
+
+    /**
+     * Writes the keys and the log length they cover to a new index file and
+     * moves it over the previous one.
+     */
+    private void compact() throws IOException {
+        long covered = log.position();
+        Path tmp = Files.createTempFile(indexPath.getParent(), "index-", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(covered);
+            writeSorted(out, sourceKeys);
+            long[] keys = rowKeys.toSortedArray();
+            out.writeInt(keys.length);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        batchesSinceCompaction = 0;
+        LOG.debug("Compacted ledger index with {} row keys up to offset {}", rowKeys.size(), covered);
+    }
+
+    /**
+     * Loads the keys of the index file if it matches the log.
+     *
+     * @return log length covered by the index, 0 if the log has to be scanned
+     *         from the start
+     */
+    private long readIndex() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOG.warn("Ignoring ledger index {} of an unknown format", indexPath);
+                return 0;
+            }
+            long covered = in.readLong();
+            if (covered > log.size()) {
+                LOG.warn("Ignoring ledger index {}, it is ahead of the log", indexPath);
+                return 0;
+            }
+            readStrings(in, sourceKeys);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                rowKeys.add(in.readLong());
+            }
+            return covered;
+        } catch (EOFException e) {
+            LOG.warn("Ignoring incomplete ledger index {}", indexPath);
+            sourceKeys.clear();
+            rowKeys.clear();
+            return 0;
+        }
+    }
+
+    private static void writeSorted(DataOutputStream out, Set<String> values) throws IOException {
+        List<String> sorted = new ArrayList<>(values);
+        sorted.sort(null);
+        out.writeInt(sorted.size());
+        for (String value : sorted) {
+            writeString(out, value);
+        }
+    }
+
+    private static void readStrings(DataInputStream in, Set<String> values) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    public interface RecordBatchConsumer {
+        void accept(List<TransactionRecord> records) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface BatchConsumer {
+        void accept(String sourceKey, List<TransactionRecord> records, long[] keys) throws IOException;
+    }
+}
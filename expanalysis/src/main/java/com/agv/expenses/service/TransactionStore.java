@@ -0,0 +1,594 @@
+package com.agv.expenses.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.agv.expenses.service.model.StoredTransaction;
+import com.agv.expenses.service.model.TransactionQuery;
+import com.agv.expenses.service.model.TransactionQueryResponse;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+import com.agv.expenses.util.DatePattern;
+import com.agv.expenses.util.ExpenseUtil;
+import com.agv.expenses.util.LongHashSet;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * In-memory column store of every transaction parsed by the processors, so
+ * that transactions can be queried without parsing the statements again.
+ * <p>
+ * Date, amount and type are kept in primitive arrays, payee and account are
+ * dictionary encoded. Row ids sorted by date and by amount are merged in as
+ * statements are added; a query binary searches both, looks up the rows of
+ * the account and scans only the narrowest of the three candidate sets.
+ * <p>
+ * Statements are added once per source key, so reprocessing a statement
+ * does not duplicate its rows. Rows are recorded in the
+ * {@link TransactionLedger} first, which also leaves out rows of other
+ * statements seen before, and the store is rebuilt from it on start. The
+ * ledger is written outside the lock, queries are not held up while a
+ * statement is forced to disk. A statement whose rows are streamed is added
+ * in batches as they are parsed, see {@link #appender(String)}.
+ * <p>
+ * The payee of a PhonePe row is the only value that changes once stored, when
+ * a bank statement ingested later enriches it. The change is recorded in the
+ * ledger as well and moves the row between payees in the rollups.
+ */
+@Service
+public class TransactionStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionStore.class);
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte NO_TYPE = -1;
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    @Autowired
+    private SpendingRollups spendingRollups;
+    @Autowired
+    private TransactionLedger ledger;
+    @Value("${expense.store.enabled:true}")
+    private boolean enabled = true;
+    @Value("${expense.ledger.replay-on-start:true}")
+    private boolean replayOnStart = true;
+    @Value("${expense.store.query.max-rows:1000}")
+    private int maxQueryRows = 1000;
+    @Value("${expense.store.stream-batch-rows:500}")
+    private int streamBatchRows = 500;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<String> sourceKeys = new HashSet<>();
+    // Statements being recorded in the ledger, outside the lock
+    private final Set<String> appending = ConcurrentHashMap.newKeySet();
+    private final Dictionary payees = new Dictionary();
+    private final Dictionary accounts = new Dictionary();
+    // Rows of each account id in insertion order
+    private final List<RowIds> accountRows = new ArrayList<>();
+    // PhonePe rows by UTR, bank statements ingested later are reconciled against them
+    private final Map<String, TransactionRecord> phonePeRows = new HashMap<>();
+    private final Map<String, Integer> phonePeRowIds = new HashMap<>();
+
+    private int size;
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private long[] amountsPaise = new long[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] payeeIds = new int[INITIAL_CAPACITY];
+    private int[] accountIds = new int[INITIAL_CAPACITY];
+    private String[] orderIds = new String[INITIAL_CAPACITY];
+    // Row ids ordered by date and by amount, ties in insertion order
+    private int[] byDate = new int[INITIAL_CAPACITY];
+    private int[] byAmount = new int[INITIAL_CAPACITY];
+
+    @PostConstruct
+    void replayLedger() {
+        if (!enabled || !replayOnStart) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            ledger.replay(this::store, this::applyPayees);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.info("Replayed {} transactions of {} statements from the ledger in {} ms", size, sourceKeys.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @param sourceKey identifies the statement the rows were parsed from,
+     *                  e.g. its content key; null if not known, in which case
+     *                  the rows are always added
+     * @param records   rows of the statement
+     * @return number of rows added, 0 if the statement was added before or
+     *         the ledger already holds all of its rows
+     */
+    public int add(String sourceKey, Collection<TransactionRecord> records) {
+        if (!enabled || records == null || records.isEmpty()) {
+            return 0;
+        }
+        if (sourceKey != null && (isStored(sourceKey) || !appending.add(sourceKey))) {
+            LOG.debug("Transactions of {} are already stored", sourceKey);
+            return 0;
+        }
+        try {
+            // Forced to disk without holding up queries, the rows are published once they are recorded
+            List<TransactionRecord> appended = ledger.append(sourceKey, records);
+            lock.writeLock().lock();
+            try {
+                return store(sourceKey, appended);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            if (sourceKey != null) {
+                appending.remove(sourceKey);
+            }
+        }
+    }
+
+    /**
+     * Adds the rows of a statement as they are parsed, in batches of
+     * <code>expense.store.stream-batch-rows</code>, so that a streamed
+     * statement is not held in memory.
+     *
+     * @param sourceKey as for {@link #add(String, Collection)}
+     * @return null if the store is disabled or the statement was added before
+     *         or is being added
+     */
+    public StatementAppender appender(String sourceKey) {
+        if (!enabled) {
+            return null;
+        }
+        if (sourceKey != null && (isStored(sourceKey) || !appending.add(sourceKey))) {
+            LOG.debug("Transactions of {} are already stored", sourceKey);
+            return null;
+        }
+        return new StatementAppender(sourceKey);
+    }
+
+    private boolean isStored(String sourceKey) {
+        lock.readLock().lock();
+        try {
+            return sourceKeys.contains(sourceKey);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the rows to the columns, indexes and rollups. Called with the write
+     * lock held.
+     */
+    private int store(String sourceKey, List<TransactionRecord> records) {
+        if (sourceKey != null) {
+            sourceKeys.add(sourceKey);
+        }
+        if (records.isEmpty()) {
+            return 0;
+        }
+        int first = size;
+        ensureCapacity(size + records.size());
+        for (TransactionRecord record : records) {
+            append(record);
+            if (ExpenseUtil.PHONEPE_SENDER.equals(record.getFrom()) && record.getMessage() != null
+                    && !record.getMessage().isEmpty()) {
+                phonePeRows.put(record.getMessage(), record);
+                phonePeRowIds.put(record.getMessage(), size - 1);
+            }
+        }
+        int[] added = new int[size - first];
+        Arrays.setAll(added, i -> first + i);
+        byDate = merge(byDate, first, sortByDate(added), this::compareDate);
+        byAmount = merge(byAmount, first, sortByAmount(added), this::compareAmount);
+        spendingRollups.add(records);
+        LOG.debug("Stored {} transactions of {}, {} in total", added.length, sourceKey, size);
+        return added.length;
+    }
+
+    /**
+     * Replaces the payee of stored PhonePe rows, e.g. once a bank statement
+     * ingested later names the payee of a payment.
+     *
+     * @param records PhonePe rows as stored before, with the new payee
+     * @return number of rows whose payee changed
+     */
+    public int updatePayees(Collection<TransactionRecord> records) {
+        if (!enabled || records == null || records.isEmpty()) {
+            return 0;
+        }
+        Map<String, String> changed = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            for (TransactionRecord record : records) {
+                TransactionRecord stored = (record.getMessage() == null) ? null
+                        : phonePeRows.get(record.getMessage());
+                if (stored != null && record.getPaidTo() != null && !record.getPaidTo().equals(stored.getPaidTo())) {
+                    changed.put(record.getMessage(), record.getPaidTo());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        ledger.appendPayees(changed);
+        lock.writeLock().lock();
+        try {
+            applyPayees(changed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOG.debug("Updated the payee of {} PhonePe transactions", changed.size());
+        return changed.size();
+    }
+
+    /**
+     * Sets the payee of the PhonePe rows by UTR. Called with the write lock
+     * held.
+     */
+    private void applyPayees(Map<String, String> paidToByUtr) {
+        for (Map.Entry<String, String> payee : paidToByUtr.entrySet()) {
+            TransactionRecord previous = phonePeRows.get(payee.getKey());
+            if (previous == null) {
+                continue;
+            }
+            TransactionRecord updated = previous.toBuilder().paidTo(payee.getValue()).build();
+            phonePeRows.put(payee.getKey(), updated);
+            payeeIds[phonePeRowIds.get(payee.getKey())] = payees.encode(payee.getValue());
+            spendingRollups.update(previous, updated);
+        }
+    }
+
+    /**
+     * @return copy of the stored PhonePe rows keyed by UTR, as the
+     *         <code>MASTER_DATA_MAP</code> of the PhonePe processors
+     */
+    public Map<String, TransactionRecord> getPhonePeRows() {
+        lock.readLock().lock();
+        try {
+            return new HashMap<>(phonePeRows);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the matching rows in date order, at most the smaller of the
+     *         query limit and <code>expense.store.query.max-rows</code>
+     */
+    public TransactionQueryResponse query(TransactionQuery query) {
+        lock.readLock().lock();
+        try {
+            int fromDay = (query.getFromDate() == null) ? TransactionRecord.NO_DATE + 1
+                    : (int) query.getFromDate().toEpochDay();
+            int toDay = (query.getToDate() == null) ? Integer.MAX_VALUE : (int) query.getToDate().toEpochDay();
+            long minPaise = (query.getMinAmountPaise() == null) ? TransactionRecord.NO_AMOUNT + 1
+                    : query.getMinAmountPaise();
+            long maxPaise = (query.getMaxAmountPaise() == null) ? Long.MAX_VALUE : query.getMaxAmountPaise();
+            boolean byDateFilter = query.getFromDate() != null || query.getToDate() != null;
+            boolean byAmountFilter = query.getMinAmountPaise() != null || query.getMaxAmountPaise() != null;
+            int accountId = (query.getAccount() == null) ? -1 : accounts.find(query.getAccount());
+            byte type = (query.getType() == null) ? NO_TYPE : (byte) query.getType().ordinal();
+
+            IntPredicate matches = row -> (!byDateFilter || (epochDays[row] >= fromDay && epochDays[row] <= toDay))
+                    && (!byAmountFilter || (amountsPaise[row] >= minPaise && amountsPaise[row] <= maxPaise))
+                    && (query.getAccount() == null || accountIds[row] == accountId)
+                    && (type == NO_TYPE || types[row] == type);
+
+            // Candidates of each filter, the smallest set is scanned
+            int[] candidates = byDate;
+            int from = 0;
+            int to = size;
+            if (byDateFilter) {
+                from = firstIndex(byDate, row -> epochDays[row] >= fromDay);
+                to = firstIndex(byDate, row -> epochDays[row] > toDay);
+            }
+            if (byAmountFilter) {
+                int amountFrom = firstIndex(byAmount, row -> amountsPaise[row] >= minPaise);
+                int amountTo = firstIndex(byAmount, row -> amountsPaise[row] > maxPaise);
+                if (amountTo - amountFrom < to - from) {
+                    candidates = byAmount;
+                    from = amountFrom;
+                    to = amountTo;
+                }
+            }
+            if (query.getAccount() != null) {
+                RowIds rows = (accountId < 0) ? RowIds.EMPTY : accountRows.get(accountId);
+                if (rows.size < to - from) {
+                    candidates = rows.values;
+                    from = 0;
+                    to = rows.size;
+                }
+            }
+
+            int[] matched = new int[Math.min(to - from, INITIAL_CAPACITY)];
+            int matchCount = 0;
+            long totalPaise = 0;
+            for (int i = from; i < to; i++) {
+                int row = candidates[i];
+                if (matches.test(row)) {
+                    if (matchCount == matched.length) {
+                        matched = Arrays.copyOf(matched, matchCount * 2);
+                    }
+                    matched[matchCount++] = row;
+                    if (amountsPaise[row] != TransactionRecord.NO_AMOUNT) {
+                        totalPaise += amountsPaise[row];
+                    }
+                }
+            }
+            matched = Arrays.copyOf(matched, matchCount);
+            if (candidates != byDate) {
+                matched = sortByDate(matched);
+            }
+            int limit = (query.getLimit() > 0) ? Math.min(query.getLimit(), maxQueryRows) : maxQueryRows;
+            StoredTransaction[] rows = new StoredTransaction[Math.min(limit, matchCount)];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = toStoredTransaction(matched[i]);
+            }
+            return TransactionQueryResponse.builder()
+                    .status("Success")
+                    .matchCount(matchCount)
+                    .matchTotal(BigDecimal.valueOf(totalPaise, 2).toPlainString())
+                    .storedCount(size)
+                    .rows(rows)
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of rows in the store
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(TransactionRecord record) {
+        int row = size++;
+        epochDays[row] = record.getEpochDay();
+        amountsPaise[row] = record.getAmountPaise();
+        types[row] = (record.getType() == null) ? NO_TYPE : (byte) record.getType().ordinal();
+        payeeIds[row] = payees.encode(record.getPaidTo());
+        int accountId = accounts.encode(accountOf(record));
+        if (accountId == accountRows.size()) {
+            accountRows.add(new RowIds());
+        }
+        accountRows.get(accountId).add(row);
+        accountIds[row] = accountId;
+        orderIds[row] = record.getOrderId();
+    }
+
+    /**
+     * @return the account number of the row, the account name for statements
+     *         without account numbers
+     */
+    static String accountOf(TransactionRecord record) {
+        return (record.getAccount() == null || record.getAccount().isEmpty()) ? record.getFrom()
+                : record.getAccount();
+    }
+
+    private StoredTransaction toStoredTransaction(int row) {
+        return StoredTransaction.builder()
+                .txnDate((epochDays[row] == TransactionRecord.NO_DATE) ? null
+                        : ExpenseUtil.toDateString(LocalDate.ofEpochDay(epochDays[row]), DatePattern.REPORT_DATE))
+                .account(accounts.decode(accountIds[row]))
+                .paidTo(payees.decode(payeeIds[row]))
+                .amount((amountsPaise[row] == TransactionRecord.NO_AMOUNT) ? ""
+                        : BigDecimal.valueOf(amountsPaise[row], 2).toPlainString())
+                .transactionFlag((types[row] == NO_TYPE) ? null : TYPES[types[row]].name())
+                .orderID(orderIds[row])
+                .build();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= epochDays.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, epochDays.length * 2);
+        epochDays = Arrays.copyOf(epochDays, newCapacity);
+        amountsPaise = Arrays.copyOf(amountsPaise, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        payeeIds = Arrays.copyOf(payeeIds, newCapacity);
+        accountIds = Arrays.copyOf(accountIds, newCapacity);
+        orderIds = Arrays.copyOf(orderIds, newCapacity);
+    }
+
+    private int compareDate(int left, int right) {
+        int result = Integer.compare(epochDays[left], epochDays[right]);
+        return (result != 0) ? result : Integer.compare(left, right);
+    }
+
+    private int compareAmount(int left, int right) {
+        int result = Long.compare(amountsPaise[left], amountsPaise[right]);
+        return (result != 0) ? result : Integer.compare(left, right);
+    }
+
+    private int[] sortByDate(int[] rows) {
+        // Date and row id packed into one long, sorted without boxing
+        long[] keys = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = ((long) epochDays[rows[i]] << 32) | rows[i];
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = (int) keys[i];
+        }
+        return sorted;
+    }
+
+    private int[] sortByAmount(int[] rows) {
+        return Arrays.stream(rows).boxed().sorted(this::compareAmount).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Merges the sorted new rows into the first <code>length</code> entries
+     * of the index.
+     */
+    private static int[] merge(int[] index, int length, int[] added, RowComparator comparator) {
+        int[] merged = new int[Math.max(index.length, length + added.length)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < length && j < added.length) {
+            merged[k++] = (comparator.compare(index[i], added[j]) <= 0) ? index[i++] : added[j++];
+        }
+        System.arraycopy(index, i, merged, k, length - i);
+        System.arraycopy(added, j, merged, k + length - i, added.length - j);
+        return merged;
+    }
+
+    /**
+     * @param atOrAfter false for the leading entries of the index and true
+     *                  for all others
+     * @return index of the first entry for which the predicate holds
+     */
+    private int firstIndex(int[] index, IntPredicate atOrAfter) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (atOrAfter.test(index[mid])) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Rows of one statement, added in batches. The rows of a batch can be
+     * queried once it is added, before the statement is finished.
+     */
+    public final class StatementAppender {
+        private final String sourceKey;
+        // Keys of the rows added so far, identical rows of the statement are kept
+        private final LongHashSet statementKeys = new LongHashSet();
+        private final List<TransactionRecord> batch = new ArrayList<>();
+        private int added;
+        private boolean released;
+
+        private StatementAppender(String sourceKey) {
+            this.sourceKey = sourceKey;
+        }
+
+        public void add(TransactionRecord row) {
+            batch.add(row);
+            if (batch.size() >= streamBatchRows) {
+                write(false);
+            }
+        }
+
+        /**
+         * Adds the last batch and records the statement as added.
+         *
+         * @return number of rows of the statement added
+         */
+        public int finish() {
+            try {
+                write(true);
+            } finally {
+                release();
+            }
+            return added;
+        }
+
+        /**
+         * Gives up the statement without recording it as added, e.g. once its
+         * parser failed. The rows of the batches added stay, adding the
+         * statement again leaves them out.
+         */
+        public void release() {
+            if (!released && sourceKey != null) {
+                appending.remove(sourceKey);
+            }
+            released = true;
+        }
+
+        /**
+         * @return number of rows waiting for the next batch
+         */
+        int buffered() {
+            return batch.size();
+        }
+
+        private void write(boolean last) {
+            List<TransactionRecord> appended = ledger.append(sourceKey, batch, statementKeys, last);
+            batch.clear();
+            lock.writeLock().lock();
+            try {
+                added += store(last ? sourceKey : null, appended);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowComparator {
+        int compare(int left, int right);
+    }
+
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            return ids.computeIfAbsent((value == null) ? "" : value, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+
+        int find(String value) {
+            Integer id = ids.get(value);
+            return (id == null) ? -1 : id;
+        }
+
+        String decode(int id) {
+            return values.get(id);
+        }
+    }
+
+    private static final class RowIds {
+        static final RowIds EMPTY = new RowIds();
+
+        int[] values = new int[16];
+        int size;
+
+        void add(int row) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = row;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class CacheStats implements Serializable {
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    private long puts;
+    private long memoryEvictions;
+    private long diskEvictions;
+    private int memoryEntries;
+    private int diskEntries;
+    private long diskBytes;
+}
@@ -0,0 +1,21 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class FolderIngestionSummary implements Serializable {
+    private int files;
+    private int statements;
+    // Names of the files that could not be ingested, retried on the next poll
+    private List<String> failedFiles;
+    private int rows;
+    private ReconciliationSummary reconciliation;
+    private int concurrency;
+    // Wall time of the concurrent extraction and of the ordered merge
+    private long extractMs;
+    private long mergeMs;
+}
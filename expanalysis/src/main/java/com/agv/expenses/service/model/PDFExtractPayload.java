@@ -15,6 +15,7 @@ public class PDFExtractPayload implements Serializable {
     private String to;
     private String subject;
     private String paidTo;
+    // Two decimals without grouping, e.g. 1250.00 for "1,250"
     private String amount;
     private String bodyCleaned;
     private String subscriberID;
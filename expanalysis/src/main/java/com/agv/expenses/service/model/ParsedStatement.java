@@ -0,0 +1,16 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+/**
+ * Final result of parsing one statement, as kept by the statement cache.
+ */
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class ParsedStatement implements Serializable {
+    private TransactionRecord[] rows;
+    private StatementProcessErrorRow[] errorRows;
+    private StatementErrorCause[] errorCauses;
+}
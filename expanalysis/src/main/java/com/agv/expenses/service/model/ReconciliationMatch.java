@@ -0,0 +1,20 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class ReconciliationMatch implements Serializable {
+    private String phonePeReference;
+    private String bankReference;
+    private String phonePeDate;
+    private String bankDate;
+    private String phonePeAmount;
+    private String bankAmount;
+    // 1.0 for a matching UTR, lower for matches on date and amount
+    private double confidence;
+    // Too weak to replace the bank row, which is kept with a note
+    private boolean flagged;
+}
@@ -0,0 +1,21 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class ReconciliationSummary implements Serializable {
+    private int phonePeRows;
+    private int exactMatches;
+    private int fuzzyMatches;
+    // Fuzzy matches below the merge confidence, the bank row is kept
+    private int flaggedMatches;
+    // Bank debits without a matching PhonePe row
+    private int unmatched;
+    // Fuzzy matches of payments later matched by UTR, the bank row is lost
+    private int revokedMatches;
+    private List<ReconciliationMatch> matches;
+}
@@ -0,0 +1,27 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class SheetsWriteStats implements Serializable {
+    private long rowsWritten;
+    private long appendCalls;
+    private long retries;
+    private long failedRows;
+    // Rows left out because their order id was queued or written before
+    private long duplicateRows;
+    // Queue depth and the time the oldest queued row has been waiting
+    private int pendingRows;
+    private long oldestPendingMs;
+    private long journalBytes;
+    // Time taken by a flush, lookups and retries included
+    private long flushes;
+    private long lastFlushMs;
+    private double meanFlushMs;
+    private long maxFlushMs;
+    // Rows written per second of time spent in append calls, backoff included
+    private double rowsPerSecond;
+}
@@ -0,0 +1,18 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class SpendingRollup implements Serializable {
+    // Day (yyyy-MM-dd) or month (yyyy-MM), null for the overall totals
+    private String period;
+    // Account or payee, null when not grouped
+    private String group;
+    private String debitTotal;
+    private long debitCount;
+    private String creditTotal;
+    private long creditCount;
+}
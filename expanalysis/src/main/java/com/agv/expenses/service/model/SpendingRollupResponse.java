@@ -0,0 +1,16 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class SpendingRollupResponse implements Serializable {
+    private String status;
+    private String errorMessage;
+    private String period;
+    private String groupBy;
+    private List<SpendingRollup> rollups;
+}
@@ -0,0 +1,14 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+@lombok.Data
+@lombok.Builder
+public class StatementBatchRequest implements Serializable {
+
+    private List<StatementProcessRequest> items;
+
+}
@@ -0,0 +1,18 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class StatementBatchResponse implements Serializable {
+
+    private String status;
+    private int successCount;
+    private int failureCount;
+    // Same order as the items of the request
+    private StatementProcessResponse[] results;
+    private StatementProcessErrorRow[] errorRows;
+
+}
@@ -0,0 +1,21 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+/**
+ * Failures of one statement with the same cause, being the error code and
+ * exception class, of which only the first few are reported as error rows.
+ */
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class StatementErrorCause implements Serializable {
+    private String errorCode;
+    private String exceptionClass;
+    // Message and line of the first failure
+    private String errorMessage;
+    private String referenceLine;
+    private int count;
+    private int reportedRows;
+}
@@ -0,0 +1,39 @@
+package com.agv.expenses.service.model;
+
+import java.time.DateTimeException;
+
+/**
+ * Kind of failure of a statement line or row, so that clients can tell error
+ * rows apart without parsing their messages.
+ */
+public enum StatementErrorCode {
+    INVALID_DATE,
+    INVALID_AMOUNT,
+    MISSING_FIELD,
+    MALFORMED_LINE,
+    UNEXPECTED;
+
+    /**
+     * @return the code of the exception, or of the first of its causes with a
+     *         more specific code than {@link #MALFORMED_LINE}
+     */
+    public static StatementErrorCode of(Throwable e) {
+        StatementErrorCode code = UNEXPECTED;
+        for (Throwable cause = e; cause != null; cause = (cause.getCause() == cause) ? null : cause.getCause()) {
+            if (cause instanceof DateTimeException) {
+                return INVALID_DATE;
+            }
+            if (cause instanceof NumberFormatException || cause instanceof ArithmeticException) {
+                return INVALID_AMOUNT;
+            }
+            if (cause instanceof NullPointerException) {
+                return MISSING_FIELD;
+            }
+            if (code == UNEXPECTED && (cause instanceof IllegalArgumentException
+                    || cause instanceof IllegalStateException || cause instanceof IndexOutOfBoundsException)) {
+                code = MALFORMED_LINE;
+            }
+        }
+        return code;
+    }
+}
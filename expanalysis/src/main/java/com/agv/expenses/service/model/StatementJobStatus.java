@@ -0,0 +1,23 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+@lombok.Data
+@lombok.Builder(toBuilder = true)
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class StatementJobStatus implements Serializable {
+    public static final String QUEUED = "Queued";
+    public static final String RUNNING = "Running";
+    public static final String SUCCESS = "Success";
+    public static final String FAILED = "Failed";
+
+    private String jobId;
+    private String status;
+    private String messageId;
+    private String fileId;
+    private String submittedAt;
+    private String completedAt;
+    private String errorMessage;
+    private StatementProcessResponse response;
+}
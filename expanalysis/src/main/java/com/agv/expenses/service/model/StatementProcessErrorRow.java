@@ -9,6 +9,8 @@ import java.io.Serializable;
 public class StatementProcessErrorRow implements Serializable {
     private String date;
     private String messageId;
+    // Name of a StatementErrorCode
+    private String errorCode;
     private String errorMessage;
     private String referenceLine;
     private String errorStack;
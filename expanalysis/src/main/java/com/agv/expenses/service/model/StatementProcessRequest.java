@@ -11,5 +11,11 @@ public class StatementProcessRequest implements Serializable{
     private String messageId;
     private String fileUrl;
     private String fileId;
+    // Optional: POSTed the final job status when the request is submitted as a job
+    private String callbackUrl;
+    // Optional: failures of each cause reported as error rows and, of these, the ones with a stack
+    // trace; expense.errors.* by default
+    private Integer maxErrorRowsPerCause;
+    private Integer maxErrorStacksPerCause;
 
 }
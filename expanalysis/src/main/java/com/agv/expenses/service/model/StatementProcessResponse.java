@@ -1,6 +1,7 @@
 package com.agv.expenses.service.model;
 
 import java.io.Serializable;
+import java.util.List;
 
 @lombok.Data
 @lombok.Builder
@@ -13,5 +14,25 @@ public class StatementProcessResponse implements Serializable {
     private String exceptionStack;
     private PDFExtractPayload[] responsePayLoad;
     private StatementProcessErrorRow[] errorRows;
-    
+    // Every failure counted by cause, also those not reported as error rows
+    private StatementErrorCause[] errorCauses;
+
+    /**
+     * Extracts the response from the body left by the processRequest route. On
+     * failure the route replies with a list holding a single response.
+     * 
+     * @param body message body after the route completed
+     * @return the response or null if the body does not contain one
+     */
+    public static StatementProcessResponse fromRouteBody(Object body) {
+        if (body instanceof StatementProcessResponse response) {
+            return response;
+        }
+        if (body instanceof List<?> list && !list.isEmpty()
+                && list.get(0) instanceof StatementProcessResponse response) {
+            return response;
+        }
+        return null;
+    }
+
 }
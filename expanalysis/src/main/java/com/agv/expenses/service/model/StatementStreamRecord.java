@@ -0,0 +1,27 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One line of the NDJSON streaming response. Exactly one of row, errorRow or
+ * status is set; the status line is always the last one of the stream.
+ */
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StatementStreamRecord implements Serializable {
+    public static final String TYPE_ROW = "row";
+    public static final String TYPE_ERROR = "error";
+    public static final String TYPE_STATUS = "status";
+
+    private String type;
+    private PDFExtractPayload row;
+    private StatementProcessErrorRow errorRow;
+    private String status;
+    private String errorMessage;
+    private StatementErrorCause[] errorCauses;
+}
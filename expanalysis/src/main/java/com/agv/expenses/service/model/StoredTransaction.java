@@ -0,0 +1,16 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class StoredTransaction implements Serializable {
+    private String txnDate;
+    private String account;
+    private String paidTo;
+    private String amount;
+    private String transactionFlag;
+    private String orderID;
+}
@@ -0,0 +1,18 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+/**
+ * Result of an export of the transactions to a CSV file on the server.
+ */
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class TransactionExportResponse implements Serializable {
+    private String status;
+    private String errorMessage;
+    // Absolute path of the written file
+    private String file;
+    private long rows;
+}
@@ -0,0 +1,19 @@
+package com.agv.expenses.service.model;
+
+import java.time.LocalDate;
+
+/**
+ * Filters of a query on the transaction store. Null fields do not restrict
+ * the result, date and amount bounds are inclusive.
+ */
+@lombok.Value
+@lombok.Builder
+public class TransactionQuery {
+    LocalDate fromDate;
+    LocalDate toDate;
+    String account;
+    Long minAmountPaise;
+    Long maxAmountPaise;
+    TransactionType type;
+    int limit;
+}
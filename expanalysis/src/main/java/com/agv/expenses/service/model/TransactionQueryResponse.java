@@ -0,0 +1,17 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+
+@lombok.Data
+@lombok.Builder
+@lombok.NoArgsConstructor
+@lombok.AllArgsConstructor
+public class TransactionQueryResponse implements Serializable {
+    private String status;
+    private String errorMessage;
+    // Rows matching the filters, the rows returned are capped by the limit
+    private int matchCount;
+    private String matchTotal;
+    private int storedCount;
+    private StoredTransaction[] rows;
+}
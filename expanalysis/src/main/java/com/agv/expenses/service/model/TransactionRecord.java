@@ -0,0 +1,152 @@
+package com.agv.expenses.service.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import com.agv.expenses.util.DatePattern;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * A transaction as held by the processors. The date is kept as epoch day and
+ * the amount in paise, so neither is parsed again once the row is built, and
+ * account fields are interned as they repeat on every row of a statement.
+ * Converted to {@link PDFExtractPayload} or a sheet row only when it leaves
+ * the application.
+ */
+@lombok.Value
+@lombok.Builder(toBuilder = true)
+public class TransactionRecord implements Serializable {
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    public static final long NO_AMOUNT = Long.MIN_VALUE;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Mixed in after each text field, outside the range of a char
+    private static final int FIELD_END = 0x10000;
+
+    @lombok.Builder.Default
+    int epochDay = NO_DATE;
+    String from;
+    String to;
+    String subject;
+    String paidTo;
+    @lombok.Builder.Default
+    long amountPaise = NO_AMOUNT;
+    String bodyCleaned;
+    // Account number, reported as subscriber id
+    String account;
+    String orderId;
+    String link;
+    String message;
+    TransactionType type;
+
+    public static class TransactionRecordBuilder {
+        public TransactionRecordBuilder date(LocalDate date) {
+            return epochDay((date == null) ? NO_DATE : (int) date.toEpochDay());
+        }
+
+        public TransactionRecordBuilder from(String from) {
+            this.from = (from == null) ? null : from.intern();
+            return this;
+        }
+
+        public TransactionRecordBuilder account(String account) {
+            this.account = (account == null) ? null : account.intern();
+            return this;
+        }
+    }
+
+    /**
+     * @param row  row in the layout described at
+     *             {@link ExpenseUtil#DATA_ARRAY_SIZE}
+     * @param date date of the row, column 0 is not parsed again
+     */
+    public static TransactionRecord fromRow(String[] row, LocalDate date) {
+        return builder().date(date).from(row[1]).to(row[2]).subject(row[3]).paidTo(row[4])
+                .amountPaise(ExpenseUtil.toPaise(row[5], NO_AMOUNT))
+                .bodyCleaned(row[6]).account(row[7]).orderId(row[8]).link(row[9]).message(row[10])
+                .type(TransactionType.of(row[11]))
+                .build();
+    }
+
+    /**
+     * @return the date, null if the row has none
+     */
+    public LocalDate getDate() {
+        return (epochDay == NO_DATE) ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * @return the amount with two decimals and without grouping, empty if the
+     *         row has none
+     */
+    public String formatAmount() {
+        return (amountPaise == NO_AMOUNT) ? "" : BigDecimal.valueOf(amountPaise, 2).toPlainString();
+    }
+
+    /**
+     * @return the row as returned by the REST API, the amount as by
+     *         {@link #formatAmount()} whatever the statement showed, e.g.
+     *         <code>250.00</code> for <code>250</code>
+     */
+    public PDFExtractPayload toPayload() {
+        return PDFExtractPayload.builder()
+                .txnDate(ExpenseUtil.toDateString(getDate(), DatePattern.REPORT_DATE))
+                .from(from).to(to).subject(subject).paidTo(paidTo)
+                .amount(formatAmount())
+                .bodyCleaned(bodyCleaned).subscriberID(account).orderID(orderId)
+                .link(link).message(message)
+                .transactionFlag((type == null) ? null : type.name())
+                .build();
+    }
+
+    /**
+     * @return the row as written to Google Sheets, see
+     *         {@link ExpenseUtil#DATA_ARRAY_SIZE} for the columns
+     */
+    public List<Object> toSheetRow() {
+        String[] row = { ExpenseUtil.toDateString(getDate(), DatePattern.SHEET_DATE), from, to, subject, paidTo,
+                formatAmount(), bodyCleaned, account, orderId, link, message,
+                (type == null) ? null : type.name() };
+        return Arrays.asList((Object[]) ExpenseUtil.initializeDataArray(row));
+    }
+
+    /**
+     * 64-bit fingerprint over account, date, amount, order id and payee, the
+     * same for a transaction found in two overlapping statements. Text is
+     * compared on its letters and digits ignoring case, and the payee only up
+     * to the first '|', after which a reconciled bank row appends its details.
+     * Computed on the fields directly, without building a key string.
+     */
+    public long fingerprint() {
+        long hash = FNV_OFFSET;
+        hash = mixText(hash, (account == null || account.isEmpty()) ? from : account, -1);
+        hash = (hash ^ epochDay) * FNV_PRIME;
+        hash = (hash ^ amountPaise) * FNV_PRIME;
+        hash = mixText(hash, orderId, -1);
+        hash = mixText(hash, paidTo, '|');
+        return ExpenseUtil.mix64(hash);
+    }
+
+    private static long mixText(long hash, String text, int stop) {
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == stop) {
+                    break;
+                }
+                if (Character.isLetterOrDigit(c)) {
+                    hash = (hash ^ Character.toUpperCase(c)) * FNV_PRIME;
+                }
+            }
+        }
+        return (hash ^ FIELD_END) * FNV_PRIME;
+    }
+
+    public static PDFExtractPayload[] toPayloads(TransactionRecord[] records) {
+        return (records == null) ? null
+                : Arrays.stream(records).map(TransactionRecord::toPayload).toArray(PDFExtractPayload[]::new);
+    }
+}
@@ -0,0 +1,22 @@
+package com.agv.expenses.service.model;
+
+/**
+ * Direction of a transaction as seen from the account holder.
+ */
+public enum TransactionType {
+    DEBIT, CREDIT;
+
+    /**
+     * @param flag flag as written by the processors, e.g. "DEBIT"
+     * @return the type, null if the flag is empty or not known
+     */
+    public static TransactionType of(String flag) {
+        if ("DEBIT".equals(flag)) {
+            return DEBIT;
+        }
+        if ("CREDIT".equals(flag)) {
+            return CREDIT;
+        }
+        return null;
+    }
+}
@@ -4,7 +4,10 @@ import java.time.format.DateTimeFormatter;
 
 public enum DatePattern {
     ISO_DATE("yyyy-MM-dd"),
+    ISO_DATE_TIME("yyyy-MM-dd'T'HH:mm:ss"),
     ICICI_SAC_DATE("dd-MM-yyyy"),
+    SBI_DATE("dd-MM-yy"),
+    SHEET_DATE("dd-MMM-yyyy"),
     ORDER_ID_DATE("yyyyMMdd"),
     FILE_TIMESTAMP("yyyyMMdd_HHmmss"),
     DISPLAY_TIME("HH:mm:ss"),
@@ -5,11 +5,14 @@ import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Locale;
 import java.util.Date;
 import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +38,21 @@ public class ExpenseUtil {
     public static final int DATA_ARRAY_SIZE = 12;
     public static final String EXCH_PROPERTY_RES_PAYLOAD = "EXCH_PROPERTY_RES_PAYLOAD";
     public static final String EXCH_PROPERTY_RES_ERR_LIST = "EXCH_PROPERTY_RES_ERR_LIST";
+    public static final String EXCH_PROPERTY_RES_ERR_CAUSES = "EXCH_PROPERTY_RES_ERR_CAUSES";
+    public static final String EXCH_PROPERTY_MAX_ERROR_ROWS = "EXCH_PROPERTY_MAX_ERROR_ROWS";
+    public static final String EXCH_PROPERTY_MAX_ERROR_STACKS = "EXCH_PROPERTY_MAX_ERROR_STACKS";
+    public static final String EXCH_PROPERTY_ROW_SINK = "EXCH_PROPERTY_ROW_SINK";
+    public static final String EXCH_PROPERTY_CONTENT_KEY = "EXCH_PROPERTY_CONTENT_KEY";
+    public static final String EXCH_PROPERTY_CACHED_RESULT = "EXCH_PROPERTY_CACHED_RESULT";
+    public static final String EXCH_PROPERTY_STATEMENT_PARSER = "EXCH_PROPERTY_STATEMENT_PARSER";
+    public static final String EXCH_PROPERTY_RECONCILIATION = "EXCH_PROPERTY_RECONCILIATION";
+    public static final String EXCH_PROPERTY_RECONCILER = "EXCH_PROPERTY_RECONCILER";
+    // PhonePe rows of earlier polls enriched by the statements of this one
+    public static final String EXCH_PROPERTY_UPDATED_ROWS = "EXCH_PROPERTY_UPDATED_ROWS";
+    // "From" of the PhonePe rows, which bank statements are reconciled against
+    public static final String PHONEPE_SENDER = "alerts@phonepe.com";
+    // Drive file fields needed to recognise a file's content without downloading it
+    public static final String DRIVE_METADATA_FIELDS = "md5Checksum,size,modifiedTime";
     public static final String EXCH_HEADER_PROPERTY_PDF_FILE_ID = "CamelGoogleDrive.fileId";
     public static final String EXCH_HEADER_PROPERTY_EMAIL_MSG_ID = "EXCH_HEADER_PROPERTY_EMAIL_MSG_ID";
 
@@ -99,7 +117,7 @@ public class ExpenseUtil {
         } catch (DateTimeParseException e) {
             // Handle or log the error
             throw new IllegalArgumentException(
-                    "Input Date: " + strDate + " Not as per format " + datePattern.getPattern());
+                    "Input Date: " + strDate + " Not as per format " + datePattern.getPattern(), e);
         }
     }
 
@@ -114,6 +132,34 @@ public class ExpenseUtil {
         return (date == null) ? null : date.format(pattern.getFormatter());
     }
 
+    /**
+     * @param text    statement text
+     * @param pattern matches a date at the start of a line in its first group
+     * @return the earliest of the dates found, null if none parses
+     */
+    public static LocalDate earliestDate(CharSequence text, Pattern pattern, DateTimeFormatter formatter) {
+        if (text == null) {
+            return null;
+        }
+        LocalDate earliest = null;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            try {
+                LocalDate date = LocalDate.parse(matcher.group(1), formatter);
+                if (earliest == null || date.isBefore(earliest)) {
+                    earliest = date;
+                }
+            } catch (DateTimeParseException e) {
+                // A reference or amount shaped like a date
+            }
+        }
+        return earliest;
+    }
+
+    public static String toDateTimeString(LocalDateTime dateTime, DatePattern pattern) {
+        return (dateTime == null) ? null : dateTime.format(pattern.getFormatter());
+    }
+
     /**
      * This method is used to convert the stack trace of a Throwable into a String
      * format.
@@ -140,6 +186,26 @@ public class ExpenseUtil {
         }
         return LocalDate.now().atStartOfDay().format(pattern.getFormatter());
     }
+    /**
+     * Converts an amount as written in a statement to paise.
+     *
+     * @param amountStr    the raw string (e.g., " 4,234.02 ")
+     * @param defaultValue returned if the amount is empty or not a number
+     * @return amount in paise, rounded half up
+     */
+    public static long toPaise(String amountStr, long defaultValue) {
+        if (amountStr == null || amountStr.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return new BigDecimal(amountStr.trim().replace(",", "")).movePointRight(2)
+                    .setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            LOG.debug("Not an amount: {}", amountStr);
+            return defaultValue;
+        }
+    }
+
     /**
      * Generates a unique Order ID string.
      * 
@@ -184,4 +250,38 @@ public class ExpenseUtil {
 
         return datePart + amountPart;
     }
+
+    /**
+     * Same as {@link #generateOrderId(LocalDate, String)} for an amount already
+     * converted to paise, without parsing or formatting it again.
+     *
+     * @throws IllegalArgumentException if the amount is negative
+     */
+    public static String generateOrderId(LocalDate date, long amountPaise) {
+        Objects.requireNonNull(date, "Date cannot be null");
+        if (amountPaise < 0) {
+            throw new IllegalArgumentException("Amount cannot be negative: " + amountPaise);
+        }
+        long paise = amountPaise % 100;
+        StringBuilder orderId = new StringBuilder(24);
+        if (date.getYear() >= 1000 && date.getYear() <= 9999) {
+            orderId.append(date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth());
+        } else {
+            orderId.append(toDateString(date, DatePattern.ORDER_ID_DATE));
+        }
+        return orderId.append(amountPaise / 100).append(paise < 10 ? "0" : "").append(paise).toString();
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads every input bit over the whole result.
+     * A bijection, so distinct inputs stay distinct.
+     */
+    public static long mix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
 }
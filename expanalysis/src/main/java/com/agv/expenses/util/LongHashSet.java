@@ -0,0 +1,130 @@
+package com.agv.expenses.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of longs in a single open addressing table with linear probing, used
+ * for transaction fingerprints. Takes 8 to 16 bytes per value, against about
+ * 60 for a boxed <code>HashSet&lt;Long&gt;</code>, and never allocates per
+ * value. Values cannot be removed. Not thread-safe.
+ */
+public final class LongHashSet {
+
+    // Marks a free slot, zero itself is tracked separately
+    private static final long FREE = 0L;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table;
+    private int size;
+    private boolean containsFree;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of values the set holds without growing
+     */
+    public LongHashSet(int expectedSize) {
+        table = new long[tableSize(expectedSize)];
+    }
+
+    /**
+     * @return true if the value was not in the set
+     */
+    public boolean add(long value) {
+        if (value == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        for (int slot = slot(value, mask);; slot = (slot + 1) & mask) {
+            if (table[slot] == value) {
+                return false;
+            }
+            if (table[slot] == FREE) {
+                table[slot] = value;
+                // Kept at most half full so that probes stay short
+                if (++size * 2 > table.length) {
+                    rehash(table.length * 2);
+                }
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(long value) {
+        if (value == FREE) {
+            return containsFree;
+        }
+        int mask = table.length - 1;
+        for (int slot = slot(value, mask);; slot = (slot + 1) & mask) {
+            if (table[slot] == value) {
+                return true;
+            }
+            if (table[slot] == FREE) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(table, FREE);
+        size = 0;
+        containsFree = false;
+    }
+
+    /**
+     * @return the values in ascending order
+     */
+    public long[] toSortedArray() {
+        long[] values = new long[size];
+        int count = 0;
+        if (containsFree) {
+            values[count++] = FREE;
+        }
+        for (long value : table) {
+            if (value != FREE) {
+                values[count++] = value;
+            }
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        table = new long[capacity];
+        int mask = capacity - 1;
+        for (long value : old) {
+            if (value != FREE) {
+                int slot = slot(value, mask);
+                while (table[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    private static int slot(long value, int mask) {
+        // Fibonacci hashing, spreads values that differ only in the low bits
+        return (int) ((value * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L + 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,113 @@
+package com.agv.expenses.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the parts of the Drive v3 API the application uses:
+ * file metadata and media download. Point {@code google.drive.root-url} to
+ * {@link #getRootUrl()}.
+ */
+public class DriveStandIn implements AutoCloseable {
+
+    private static final String FILES_PATH = "/drive/v3/files/";
+    private static final String MEDIA_PATH = "/download" + FILES_PATH;
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, String> checksums = new ConcurrentHashMap<>();
+    private final AtomicLong mediaRequests = new AtomicLong();
+    private final AtomicLong metadataRequests = new AtomicLong();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+
+    public DriveStandIn(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void putFile(String fileId, byte[] content) {
+        files.put(fileId, content);
+        checksums.put(fileId, md5(content));
+    }
+
+    public String getRootUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    public long getMediaRequests() {
+        return mediaRequests.get();
+    }
+
+    public long getMetadataRequests() {
+        return metadataRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+        }
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getQuery();
+        boolean media = path.startsWith(MEDIA_PATH) || (query != null && query.contains("alt=media"));
+        String fileId = path.substring(path.lastIndexOf('/') + 1);
+        byte[] content = files.get(fileId);
+        if (content == null) {
+            send(exchange, 404, "application/json",
+                    "{\"error\":{\"code\":404,\"message\":\"File not found: " + fileId + "\"}}");
+            return;
+        }
+        if (media) {
+            mediaRequests.incrementAndGet();
+            send(exchange, 200, "application/pdf", content);
+        } else {
+            metadataRequests.incrementAndGet();
+            send(exchange, 200, "application/json", "{\"id\":\"" + fileId + "\",\"name\":\"" + fileId
+                    + ".pdf\",\"md5Checksum\":\"" + checksums.get(fileId) + "\",\"size\":\"" + content.length
+                    + "\",\"version\":\"1\"}");
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        send(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String md5(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
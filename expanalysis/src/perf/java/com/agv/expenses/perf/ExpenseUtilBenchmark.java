@@ -0,0 +1,78 @@
+package com.agv.expenses.perf;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.DatePattern;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Throughput of the {@link ExpenseUtil} helpers called per transaction. The
+ * inputs are the typical tokens of a UPI narration, numeric and non numeric,
+ * as {@code isOnlyNumbers} is mostly called on the latter. The record
+ * fingerprint is included as it is computed for every row ingested.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpenseUtilBenchmark {
+
+    private String numericToken = "412345678901";
+    private String textToken = "merchant42@ybl";
+    private String excelDate = "07-Dec-2025";
+    private String iciciDate = "07-12-2025";
+    private LocalDate orderDate = LocalDate.of(2025, 12, 7);
+    private String amount = " 4,234.02 ";
+    private long amountPaise = 423402;
+    private TransactionRecord txn = TransactionRecord.builder().date(orderDate).amountPaise(amountPaise)
+            .account("XXXXXXXX4990").orderId("412345678901").paidTo("SWIGGY | swiggy@icici").build();
+
+    @Benchmark
+    public boolean isOnlyNumbersNumeric() {
+        return ExpenseUtil.isOnlyNumbers(numericToken);
+    }
+
+    @Benchmark
+    public boolean isOnlyNumbersText() {
+        return ExpenseUtil.isOnlyNumbers(textToken);
+    }
+
+    @Benchmark
+    public String reformatDate() {
+        return ExpenseUtil.reformatDate(excelDate);
+    }
+
+    @Benchmark
+    public String generateOrderId() {
+        return ExpenseUtil.generateOrderId(orderDate, amount);
+    }
+
+    @Benchmark
+    public String generateOrderIdFromPaise() {
+        return ExpenseUtil.generateOrderId(orderDate, amountPaise);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return txn.fingerprint();
+    }
+
+    @Benchmark
+    public String convertStrngDateFormat() {
+        return ExpenseUtil.convertStrngDateFormat(iciciDate, DatePattern.ICICI_SAC_DATE, DatePattern.REPORT_DATE);
+    }
+}
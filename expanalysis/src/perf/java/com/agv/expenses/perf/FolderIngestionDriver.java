@@ -0,0 +1,144 @@
+package com.agv.expenses.perf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.processor.FolderIngestionProcessor;
+import com.agv.expenses.processor.ICICISacStmtPDFProcessor;
+import com.agv.expenses.processor.PhonePePDFProcessorGSheets;
+import com.agv.expenses.processor.SBIPDFStatementProcessor;
+import com.agv.expenses.service.PDFTextExtractor;
+import com.agv.expenses.service.ProcessedFileRepository;
+import com.agv.expenses.service.StatementCache;
+import com.agv.expenses.service.StatementDocumentLoader;
+import com.agv.expenses.service.StatementParserRegistry;
+import com.agv.expenses.service.TransactionStore;
+import com.agv.expenses.service.model.FolderIngestionSummary;
+import com.agv.expenses.service.model.TransactionRecord;
+
+/**
+ * Wall time of the {@link FolderIngestionProcessor} on a folder of generated
+ * PhonePe, ICICI and SBI statements, ingested serially and with the given
+ * concurrency. The statement cache is off, so every run decrypts and
+ * extracts all files. Fails if the master data map of a parallel run differs
+ * from the serial one.
+ * <p>
+ * Options, given as {@code --name=value}:
+ * <ul>
+ * <li>{@code files} statements per layout, default 4</li>
+ * <li>{@code pages} pages per statement, default 20</li>
+ * <li>{@code rows-per-page} transactions per page, default 30</li>
+ * <li>{@code concurrency} threads of the parallel runs, default 4</li>
+ * <li>{@code runs} runs of each mode after one warm-up run, default 3</li>
+ * </ul>
+ */
+public final class FolderIngestionDriver {
+
+    private FolderIngestionDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadOptions.parse(args);
+        int files = Integer.parseInt(options.getOrDefault("files", "4"));
+        int pages = Integer.parseInt(options.getOrDefault("pages", "20"));
+        int rowsPerPage = Integer.parseInt(options.getOrDefault("rows-per-page", "30"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "4"));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "3"));
+
+        Path folder = Files.createTempDirectory("folder-ingestion-");
+        List<String> paths = new ArrayList<>();
+        for (StatementPdfGenerator.Layout layout : StatementPdfGenerator.Layout.values()) {
+            for (int i = 0; i < files; i++) {
+                // PhonePe statements unprotected, as they are downloaded
+                String password = (layout == StatementPdfGenerator.Layout.PHONEPE) ? null
+                        : StatementPdfGenerator.DEFAULT_PASSWORD;
+                Path file = folder.resolve(layout.fileName(i));
+                Files.write(file, StatementPdfGenerator.generate(layout, pages, rowsPerPage,
+                        i * pages * rowsPerPage, password));
+                paths.add(file.toString());
+            }
+        }
+
+        DefaultCamelContext camelContext = new DefaultCamelContext();
+        camelContext.start();
+        try {
+            Map<String, TransactionRecord> expected = null;
+            for (int threads : new int[] { 1, concurrency }) {
+                long total = 0;
+                FolderIngestionSummary summary = null;
+                for (int run = 0; run <= runs; run++) {
+                    Exchange exchange = ingest(camelContext, paths, threads);
+                    summary = exchange.getIn().getBody(FolderIngestionSummary.class);
+                    @SuppressWarnings("unchecked")
+                    Map<String, TransactionRecord> masterDataMap = new TreeMap<>(
+                            exchange.getProperty("MASTER_DATA_MAP", Map.class));
+                    if (expected == null) {
+                        expected = masterDataMap;
+                    } else if (!expected.equals(masterDataMap)) {
+                        throw new IllegalStateException("Run with " + threads
+                                + " threads differs from the serial run");
+                    }
+                    if (run > 0) {
+                        total += summary.getExtractMs() + summary.getMergeMs();
+                    }
+                }
+                System.out.printf(Locale.ROOT, "%d thread(s): %d files, %d rows, %d PhonePe rows, %.0f ms per run "
+                        + "(last: extraction %d ms, merge %d ms)%n", threads, summary.getFiles(), summary.getRows(),
+                        expected.size(), (double) total / runs, summary.getExtractMs(), summary.getMergeMs());
+            }
+            System.out.println("Master data map identical to the serial run");
+        } finally {
+            camelContext.stop();
+        }
+    }
+
+    private static Exchange ingest(DefaultCamelContext camelContext, List<String> paths, int maxConcurrency)
+            throws Exception {
+        ICICISacStmtPDFProcessor iciciProcessor = new ICICISacStmtPDFProcessor();
+        ReflectionTestUtils.setField(iciciProcessor, "accountNameMap",
+                Map.of(StatementFixtures.ICICI_ACCOUNT_NO, "ICICI Santhome AGV"));
+        ReflectionTestUtils.setField(iciciProcessor, "pdfPassword", StatementPdfGenerator.DEFAULT_PASSWORD);
+        SBIPDFStatementProcessor sbiProcessor = new SBIPDFStatementProcessor();
+        ReflectionTestUtils.setField(sbiProcessor, "pdfPassword", StatementPdfGenerator.DEFAULT_PASSWORD);
+        StatementParserRegistry registry = new StatementParserRegistry();
+        ReflectionTestUtils.setField(registry, "parsers",
+                List.of(iciciProcessor, sbiProcessor, new PhonePePDFProcessorGSheets()));
+        PDFTextExtractor extractor = new PDFTextExtractor();
+        ReflectionTestUtils.setField(extractor, "camelContext", camelContext);
+        ReflectionTestUtils.setField(extractor, "threads", 1);
+        ReflectionTestUtils.setField(extractor, "parallelMinPages", Integer.MAX_VALUE);
+        StatementCache cache = new StatementCache();
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        TransactionStore store = new TransactionStore();
+        ReflectionTestUtils.setField(store, "enabled", false);
+        ProcessedFileRepository processedFiles = new ProcessedFileRepository();
+        ReflectionTestUtils.setField(processedFiles, "persist", false);
+        for (String path : paths) {
+            processedFiles.add(path);
+        }
+
+        FolderIngestionProcessor processor = new FolderIngestionProcessor();
+        ReflectionTestUtils.setField(processor, "camelContext", camelContext);
+        ReflectionTestUtils.setField(processor, "statementParserRegistry", registry);
+        ReflectionTestUtils.setField(processor, "statementDocumentLoader", new StatementDocumentLoader());
+        ReflectionTestUtils.setField(processor, "pdfTextExtractor", extractor);
+        ReflectionTestUtils.setField(processor, "statementCache", cache);
+        ReflectionTestUtils.setField(processor, "transactionStore", store);
+        ReflectionTestUtils.setField(processor, "processedFiles", processedFiles);
+        ReflectionTestUtils.setField(processor, "maxConcurrency", maxConcurrency);
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(paths);
+        processor.process(exchange);
+        return exchange;
+    }
+}
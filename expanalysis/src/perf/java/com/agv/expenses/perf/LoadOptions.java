@@ -0,0 +1,29 @@
+package com.agv.expenses.perf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line options of the perf tools, given as {@code --name=value}.
+ */
+final class LoadOptions {
+
+    private LoadOptions() {
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Options are expected as --name=value: " + arg);
+            }
+            int idx = arg.indexOf('=');
+            if (idx == -1) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, idx), arg.substring(idx + 1));
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,86 @@
+package com.agv.expenses.perf;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.agv.expenses.processor.PhonePeReconciler;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+
+/**
+ * Time to reconcile a run of bank debits against as many PhonePe payments,
+ * a third of them without a UTR and posted up to a day late, so that both
+ * the exact and the windowed lookups are exercised. The parallel variant
+ * splits the debits over the common pool as parallel statements would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhonePeReconcilerBenchmark {
+
+    @Param({ "1000", "20000" })
+    private int rows;
+
+    private Map<String, TransactionRecord> phonePeRows;
+    private String[] bankReferences;
+    private LocalDate[] bankDates;
+    private long[] bankAmounts;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2023, 4, 1);
+        phonePeRows = new HashMap<>();
+        bankReferences = new String[rows];
+        bankDates = new LocalDate[rows];
+        bankAmounts = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            String utr = String.valueOf(500000000000L + i);
+            LocalDate date = start.plusDays(random.nextInt(730));
+            long amountPaise = 1000 + random.nextInt(500000);
+            phonePeRows.put(utr, TransactionRecord.builder().date(date).amountPaise(amountPaise)
+                    .paidTo("MERCHANT " + (i % 300)).type(TransactionType.DEBIT).build());
+            boolean withUtr = i % 3 != 0;
+            bankReferences[i] = withUtr ? utr : "";
+            bankDates[i] = withUtr ? date : date.plusDays(random.nextInt(2));
+            bankAmounts[i] = amountPaise;
+        }
+    }
+
+    @Benchmark
+    public Object reconcile() {
+        PhonePeReconciler reconciler = new PhonePeReconciler(new ConcurrentHashMap<>(phonePeRows), 1, 100, 0.5, 0.8);
+        for (int i = 0; i < rows; i++) {
+            reconciler.reconcile(bankReferences[i], bankDates[i], bankAmounts[i], true, "BANK");
+        }
+        return reconciler.getSummary();
+    }
+
+    @Benchmark
+    public Object reconcileParallel() {
+        PhonePeReconciler reconciler = new PhonePeReconciler(new ConcurrentHashMap<>(phonePeRows), 1, 100, 0.5, 0.8);
+        IntStream.range(0, rows).parallel()
+                .forEach(i -> reconciler.reconcile(bankReferences[i], bankDates[i], bankAmounts[i], true, "BANK"));
+        return reconciler.getSummary();
+    }
+}
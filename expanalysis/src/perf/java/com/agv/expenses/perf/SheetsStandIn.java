@@ -0,0 +1,108 @@
+package com.agv.expenses.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the Sheets v4 append call. Each call takes
+ * {@code latencyMs} and every {@code quotaErrorEvery}-th call fails with 429
+ * as the per-minute quota would. Point {@code google.sheets.root-url} to
+ * {@link #getRootUrl()}.
+ */
+public class SheetsStandIn implements AutoCloseable {
+
+    private final long latencyMs;
+    private final int quotaErrorEvery;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong quotaErrors = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+
+    /**
+     * @param quotaErrorEvery 0 for no quota errors
+     */
+    public SheetsStandIn(int port, long latencyMs, int quotaErrorEvery) throws IOException {
+        this.latencyMs = latencyMs;
+        this.quotaErrorEvery = quotaErrorEvery;
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getRootUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getQuotaErrors() {
+        return quotaErrors.get();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body;
+        boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        try (InputStream in = gzip ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+        if (!exchange.getRequestURI().getPath().endsWith(":append")) {
+            send(exchange, 404, "{\"error\":{\"code\":404,\"message\":\"Not found\"}}");
+            return;
+        }
+        long call = calls.incrementAndGet();
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (quotaErrorEvery > 0 && call % quotaErrorEvery == 0) {
+            quotaErrors.incrementAndGet();
+            send(exchange, 429, "{\"error\":{\"code\":429,\"message\":\"Quota exceeded for quota metric "
+                    + "'Write requests'\",\"status\":\"RESOURCE_EXHAUSTED\"}}");
+            return;
+        }
+        requestBytes.addAndGet(body.length);
+        rows.addAndGet(JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject()
+                .getAsJsonArray("values").size());
+        send(exchange, 200, "{\"spreadsheetId\":\"stand-in\"}");
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.agv.expenses.perf;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.SheetsWriter;
+import com.agv.expenses.service.model.SheetsWriteStats;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.sheets.v4.Sheets;
+
+/**
+ * Throughput of the {@link SheetsWriter} against a {@link SheetsStandIn}.
+ * Submits the rows of several statements back to back, as a folder run
+ * does, waits until all of them are appended and reports rows per second,
+ * append calls, retries and the time a submit takes with the journal.
+ * <p>
+ * Options, given as {@code --name=value}:
+ * <ul>
+ * <li>{@code statements} statements submitted, default 20</li>
+ * <li>{@code rows} rows per statement, default 1000</li>
+ * <li>{@code latency-ms} time the stand-in takes per call, default 50</li>
+ * <li>{@code quota-error-every} every n-th call fails with 429, default 10,
+ * 0 for none</li>
+ * <li>{@code batch-rows}, {@code batch-bytes}, {@code flush-delay-ms} the
+ * writer settings, default 500, 1048576 and 200</li>
+ * <li>{@code fsync} force the journal to disk, default true</li>
+ * </ul>
+ */
+public final class SheetsWriteDriver {
+
+    private SheetsWriteDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadOptions.parse(args);
+        int statements = Integer.parseInt(options.getOrDefault("statements", "20"));
+        int rowsPerStatement = Integer.parseInt(options.getOrDefault("rows", "1000"));
+        long latencyMs = Long.parseLong(options.getOrDefault("latency-ms", "50"));
+        int quotaErrorEvery = Integer.parseInt(options.getOrDefault("quota-error-every", "10"));
+
+        DefaultCamelContext camelContext = new DefaultCamelContext();
+        camelContext.start();
+        try (SheetsStandIn standIn = new SheetsStandIn(0, latencyMs, quotaErrorEvery)) {
+            SheetsWriter writer = new SheetsWriter();
+            ReflectionTestUtils.setField(writer, "sheets", new Sheets.Builder(new NetHttpTransport(),
+                    GsonFactory.getDefaultInstance(), null)
+                    .setRootUrl(standIn.getRootUrl())
+                    .setApplicationName("expense-analytics-sheets")
+                    .build());
+            ReflectionTestUtils.setField(writer, "camelContext", camelContext);
+            ReflectionTestUtils.setField(writer, "spreadsheetId", "stand-in");
+            ReflectionTestUtils.setField(writer, "maxBatchRows",
+                    Integer.parseInt(options.getOrDefault("batch-rows", "500")));
+            ReflectionTestUtils.setField(writer, "maxBatchBytes",
+                    Long.parseLong(options.getOrDefault("batch-bytes", "1048576")));
+            ReflectionTestUtils.setField(writer, "flushDelayMs",
+                    Long.parseLong(options.getOrDefault("flush-delay-ms", "200")));
+            ReflectionTestUtils.setField(writer, "initialBackoffMs", 100L);
+            ReflectionTestUtils.setField(writer, "maxBackoffMs", 2000L);
+            Path queueDir = Files.createTempDirectory("sheets-queue-");
+            ReflectionTestUtils.setField(writer, "queueDir", queueDir.toString());
+            ReflectionTestUtils.setField(writer, "fsync", Boolean.parseBoolean(options.getOrDefault("fsync", "true")));
+            ReflectionTestUtils.invokeMethod(writer, "init");
+
+            long total = (long) statements * rowsPerStatement;
+            long start = System.nanoTime();
+            long submitNanos = 0;
+            for (int i = 0; i < statements; i++) {
+                List<List<Object>> rows = statementRows(i, rowsPerStatement);
+                long submitStart = System.nanoTime();
+                writer.submit(rows);
+                submitNanos += System.nanoTime() - submitStart;
+            }
+            while (writer.getStats().getRowsWritten() + writer.getStats().getFailedRows() < total) {
+                Thread.sleep(20);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            SheetsWriteStats stats = writer.getStats();
+            System.out.printf(Locale.ROOT, "Rows:       %d of %d statements in %.2f s, %d failed%n",
+                    stats.getRowsWritten(), statements, seconds, stats.getFailedRows());
+            System.out.printf(Locale.ROOT, "Throughput: %.0f rows/s end to end, %.0f rows/s in append calls%n",
+                    stats.getRowsWritten() / seconds, stats.getRowsPerSecond());
+            System.out.printf(Locale.ROOT, "Calls:      %d appends, %d retried (%d quota errors), %.1f KB per call%n",
+                    standIn.getCalls(), stats.getRetries(), standIn.getQuotaErrors(),
+                    standIn.getRequestBytes() / 1024.0 / Math.max(1, standIn.getCalls() - standIn.getQuotaErrors()));
+            System.out.printf(Locale.ROOT, "Queue:      %.2f ms per submit, %d flushes, mean %.0f ms, max %d ms, "
+                    + "journal %.1f KB%n", submitNanos / 1e6 / statements, stats.getFlushes(), stats.getMeanFlushMs(),
+                    stats.getMaxFlushMs(), stats.getJournalBytes() / 1024.0);
+            ReflectionTestUtils.invokeMethod(writer, "close");
+        } finally {
+            camelContext.stop();
+        }
+    }
+
+    private static List<List<Object>> statementRows(int statement, int rows) {
+        LocalDate start = LocalDate.of(2025, 4, 1);
+        List<List<Object>> sheetRows = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            sheetRows.add(TransactionRecord.builder()
+                    .date(start.plusDays(i % 30))
+                    .from("alerts@phonepe.com")
+                    .to("UPI")
+                    .paidTo("MERCHANT " + (i % 300))
+                    .amountPaise(1000 + (i * 7919L) % 500000)
+                    .account(StatementFixtures.ICICI_ACCOUNT_NO)
+                    .orderId(String.valueOf(500000000000L + (long) statement * rows + i))
+                    .type(TransactionType.DEBIT)
+                    .build()
+                    .toSheetRow());
+        }
+        return sheetRows;
+    }
+}
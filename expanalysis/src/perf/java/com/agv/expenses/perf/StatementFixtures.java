@@ -0,0 +1,230 @@
+package com.agv.expenses.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Deterministic statement content in the layouts the processors expect. The
+ * text matches what {@code PDFTextStripper} returns for the respective PDFs,
+ * with the usual mix of single line, wrapped, credit and debit entries.
+ */
+public final class StatementFixtures {
+
+    public static final String ICICI_ACCOUNT_NO = "XXXXXXXX4990";
+    public static final String ICICI_SAC_HEADER = "DATE MODE PARTICULARS DEPOSITS WITHDRAWALS BALANCE";
+    private static final int ROWS_PER_PAGE = 30;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2025, 4, 1);
+    private static final DateTimeFormatter ICICI_DATE = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    private static final DateTimeFormatter SBI_DATE = DateTimeFormatter.ofPattern("dd-MM-yy");
+    private static final DateTimeFormatter PHONEPE_DATE = DateTimeFormatter.ofPattern("MMM dd, yyyy",
+            Locale.ENGLISH);
+    private static final DateTimeFormatter EXCEL_DATE = DateTimeFormatter.ofPattern("dd-MMM-yyyy", Locale.ENGLISH);
+    private static final String[] MERCHANTS = { "SWIGGY", "ZEPTO MARKETPLACE", "RELIANCE FRESH", "UBER INDIA",
+            "KSEB", "AMAZON PAY", "APOLLO PHARMACY", "INDIAN OIL" };
+
+    private StatementFixtures() {
+    }
+
+    /**
+     * @return statement text of an ICICI savings account
+     */
+    public static String iciciSavingsText(int rows) {
+        return iciciSavingsText(rows, ROWS_PER_PAGE, 0);
+    }
+
+    /**
+     * @param rows        number of transactions
+     * @param rowsPerPage transactions per page, each page ends with a page
+     *                    number line
+     * @param firstRow    number of the first transaction, statements with
+     *                    different first rows have different content
+     * @return statement text of an ICICI savings account
+     */
+    public static String iciciSavingsText(int rows, int rowsPerPage, int firstRow) {
+        StringBuilder text = new StringBuilder(rows * 90);
+        int pages = (rows + rowsPerPage - 1) / rowsPerPage;
+        for (int n = 0; n < rows; n++) {
+            int i = firstRow + n;
+            if (n % rowsPerPage == 0) {
+                int page = n / rowsPerPage + 1;
+                if (page == 1) {
+                    text.append("ICICI Bank Limited\n")
+                            .append("Statement of Transactions in Savings Account\n")
+                            .append("Savings A/c ").append(ICICI_ACCOUNT_NO).append(" INR\n")
+                            .append("Period 01-04-2025 to 31-03-2026\n")
+                            .append(ICICI_SAC_HEADER).append('\n')
+                            .append(iciciDate(i)).append("  B/F  ").append("25,000.00\n");
+                } else {
+                    text.append(ICICI_SAC_HEADER).append('\n');
+                }
+            }
+            String date = iciciDate(i);
+            String merchant = MERCHANTS[i % MERCHANTS.length];
+            String utr = utr(i);
+            switch (i % 10) {
+                case 6 -> text.append(date).append('\n')
+                        .append("UPI/").append(merchant).append("/").append(vpa(i)).append("/Rent for\n")
+                        .append("the month/HDFC/").append(utr).append('\n')
+                        .append(amount(i)).append("   ").append(balance(i)).append('\n');
+                case 7 -> text.append(date).append(" NEFT-HDFC0000123-ACME PAYROLL-SALARY-N").append(utr)
+                        .append(' ').append(amount(i)).append("   ").append(balance(i)).append('\n');
+                case 8 -> text.append(date).append(" MMT/IMPS/").append(utr).append("/Transfer/SBIN ")
+                        .append(amount(i)).append(' ').append(balance(i)).append('\n');
+                case 9 -> text.append(date).append(" 021201554990:Int.Pd:01-01-2025 to 31-03-2025 ")
+                        .append(amount(i)).append("   ").append(balance(i)).append('\n');
+                default -> text.append(date).append(" UPI/").append(merchant).append('/').append(vpa(i))
+                        .append("/Payment fr/YESB/").append(utr).append(' ').append(amount(i)).append(' ')
+                        .append(balance(i)).append('\n');
+            }
+            if (n % rowsPerPage == rowsPerPage - 1 || n == rows - 1) {
+                text.append("Page ").append(n / rowsPerPage + 1).append(" of ").append(pages).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return statement text of an SBI savings account
+     */
+    public static String sbiText(int rows) {
+        return sbiText(rows, ROWS_PER_PAGE, 0);
+    }
+
+    /**
+     * @param rows        number of transactions
+     * @param rowsPerPage transactions per page, each page ends with a page
+     *                    number line
+     * @param firstRow    number of the first transaction
+     * @return statement text of an SBI savings account
+     */
+    public static String sbiText(int rows, int rowsPerPage, int firstRow) {
+        StringBuilder text = new StringBuilder(rows * 80);
+        text.append("STATE BANK OF INDIA\nAccount Statement\n")
+                .append("Date Transaction Reference Ref.No./Chq.No. Credit Debit Balance\n");
+        for (int n = 0; n < rows; n++) {
+            int i = firstRow + n;
+            if (n > 0 && n % rowsPerPage == 0) {
+                text.append("Page ").append(n / rowsPerPage).append('\n');
+            }
+            String date = FIRST_DATE.plusDays(i / 5).format(SBI_DATE);
+            String merchant = MERCHANTS[i % MERCHANTS.length];
+            switch (i % 4) {
+                case 1 -> text.append(date).append(" BY TRANSFER-NEFT*HDFC0000123*N").append(utr(i))
+                        .append(" - ").append(amount(i)).append(" - ").append(balance(i)).append('\n');
+                case 3 -> text.append(date).append(" TO TRANSFER-UPI/DR/").append(utr(i)).append('/')
+                        .append(merchant).append('\n')
+                        .append("/YESB/").append(vpa(i)).append(" - - ").append(amount(i)).append(' ')
+                        .append(balance(i)).append('\n');
+                default -> text.append(date).append(" TO TRANSFER-UPI/DR/").append(utr(i)).append('/')
+                        .append(merchant).append(" - - ").append(amount(i)).append(' ').append(balance(i))
+                        .append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return transaction statement text of the PhonePe app
+     */
+    public static String phonePeText(int rows) {
+        return phonePeText(rows, ROWS_PER_PAGE, 0);
+    }
+
+    /**
+     * @param rows        number of transactions
+     * @param rowsPerPage transactions per page, each page ends with a page
+     *                    number line
+     * @param firstRow    number of the first transaction
+     * @return transaction statement text of the PhonePe app
+     */
+    public static String phonePeText(int rows, int rowsPerPage, int firstRow) {
+        StringBuilder text = new StringBuilder(rows * 140);
+        text.append("Transaction Statement for 98XXXXXX10\n");
+        for (int n = 0; n < rows; n++) {
+            int i = firstRow + n;
+            if (n > 0 && n % rowsPerPage == 0) {
+                text.append("Page ").append(n / rowsPerPage).append('\n');
+            }
+            text.append(FIRST_DATE.plusDays(i / 5).format(PHONEPE_DATE)).append('\n')
+                    .append(String.format("%02d:%02d am", 1 + i % 11, i % 60)).append('\n');
+            if (i % 9 == 4) {
+                text.append("CREDIT ₹").append(amount(i)).append(" Received from FRIEND ").append(i).append('\n')
+                        .append("Transaction ID T25").append(utr(i)).append('\n')
+                        .append("UTR No. ").append(utr(i)).append('\n')
+                        .append("Credited to XXXXXXXXXX4990\n");
+                continue;
+            }
+            text.append("DEBIT ₹").append(amount(i)).append(" Paid to ").append(MERCHANTS[i % MERCHANTS.length])
+                    .append('\n');
+            if (i % 5 == 0) {
+                text.append("PRIVATE LIMITED\n");
+            }
+            text.append("Transaction ID T25").append(utr(i)).append('\n')
+                    .append("UTR No. ").append(utr(i)).append('\n')
+                    .append("Paid by XXXXXXXX4990\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return ICICI transaction history export as an .xls workbook
+     */
+    public static byte[] iciciTransactionHistoryXls(int rows) throws IOException {
+        try (Workbook workbook = new HSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet sheet = workbook.createSheet("OpTransactionHistory");
+            sheet.createRow(3).createCell(1).setCellValue("Transactions List - SANTHOME - 021201554990");
+            String[] header = { "S No.", "Value Date", "Transaction Date", "Cheque Number", "Transaction Remarks",
+                    "Withdrawal Amount (INR )", "Deposit Amount (INR )", "Balance (INR )" };
+            Row headerRow = sheet.createRow(4);
+            for (int col = 0; col < header.length; col++) {
+                headerRow.createCell(col + 1).setCellValue(header[col]);
+            }
+            for (int i = 0; i < rows; i++) {
+                Row row = sheet.createRow(5 + i);
+                String date = FIRST_DATE.plusDays(i / 5).format(EXCEL_DATE);
+                boolean credit = i % 7 == 3;
+                row.createCell(1).setCellValue(i + 1);
+                row.createCell(2).setCellValue(date);
+                row.createCell(3).setCellValue(date);
+                row.createCell(4).setCellValue("-");
+                row.createCell(5).setCellValue("UPI/" + MERCHANTS[i % MERCHANTS.length] + "/" + vpa(i)
+                        + "/Payment fr/YESB/" + utr(i) + "/");
+                row.createCell(6).setCellValue(credit ? 0 : 100 + (i * 37) % 4900 + 0.5);
+                row.createCell(7).setCellValue(credit ? 2500 : 0);
+                row.createCell(8).setCellValue(25000 + i);
+            }
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static String iciciDate(int row) {
+        return FIRST_DATE.plusDays(row / 5).format(ICICI_DATE);
+    }
+
+    private static String utr(int row) {
+        return String.valueOf(412345000000L + row * 7919L);
+    }
+
+    private static String vpa(int row) {
+        return "merchant" + (row % 97) + "@ybl";
+    }
+
+    private static String amount(int row) {
+        int paise = 10000 + (row * 7919) % 2500000;
+        return String.format(Locale.ENGLISH, "%,d.%02d", paise / 100, paise % 100);
+    }
+
+    private static String balance(int row) {
+        int paise = 2500000 + (row * 104729) % 50000000;
+        return String.format(Locale.ENGLISH, "%,d.%02d", paise / 100, paise % 100);
+    }
+}
@@ -0,0 +1,278 @@
+package com.agv.expenses.perf;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.agv.expenses.ExpanalysisApplication;
+
+/**
+ * End to end load test of {@code /expense/api/processMessage}. Generates a
+ * corpus of ICICI savings statements, serves it from a {@link DriveStandIn}
+ * and starts the application in this JVM against the stand-in, so the whole
+ * route runs: Drive download, PDF decryption and text extraction, parsing and
+ * the JSON response. Reports latency percentiles, throughput and heap usage;
+ * the heap limit of the JVM running the driver is the heap of the instance.
+ * <p>
+ * Options, given as {@code --name=value}:
+ * <ul>
+ * <li>{@code files} distinct statements, default 20</li>
+ * <li>{@code pages}, {@code rows-per-page} size of each statement, default 5
+ * and 30</li>
+ * <li>{@code requests} measured requests, default 500</li>
+ * <li>{@code warmup} requests before measuring, default 50</li>
+ * <li>{@code concurrency} parallel clients, default 8</li>
+ * <li>{@code cache} keep the statement cache enabled, default false so that
+ * every request is parsed</li>
+ * </ul>
+ * Any other option is passed on to the application, e.g.
+ * {@code --pdf.extract.threads=2}.
+ */
+public final class StatementLoadDriver {
+
+    private static final String[] DRIVER_OPTIONS = { "files", "pages", "rows-per-page", "requests", "warmup",
+            "concurrency", "cache" };
+
+    private StatementLoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadOptions.parse(args);
+        int files = Integer.parseInt(options.getOrDefault("files", "20"));
+        int pages = Integer.parseInt(options.getOrDefault("pages", "5"));
+        int rowsPerPage = Integer.parseInt(options.getOrDefault("rows-per-page", "30"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "500"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "50"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        boolean cache = Boolean.parseBoolean(options.getOrDefault("cache", "false"));
+        if (files < 1 || requests < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("files, requests and concurrency must be at least 1");
+        }
+
+        Path workDir = Files.createTempDirectory("expanalysis-load-");
+        int exitCode = 0;
+        try (DriveStandIn drive = new DriveStandIn(0)) {
+            long corpusBytes = 0;
+            for (int i = 0; i < files; i++) {
+                byte[] pdf = StatementPdfGenerator.generate(StatementPdfGenerator.Layout.ICICI, pages, rowsPerPage,
+                        i * pages * rowsPerPage, StatementPdfGenerator.DEFAULT_PASSWORD);
+                drive.putFile(fileId(i), pdf);
+                corpusBytes += pdf.length;
+            }
+            System.out.printf(Locale.ROOT, "Corpus: %d statements of %d pages x %d rows, %.1f KB on average%n",
+                    files, pages, rowsPerPage, corpusBytes / 1024.0 / files);
+
+            List<String> appArgs = new ArrayList<>(List.of(
+                    "--server.port=0",
+                    "--google.drive.root-url=" + drive.getRootUrl(),
+                    "--icici.pdf.password=" + StatementPdfGenerator.DEFAULT_PASSWORD,
+                    "--sbi.pdf.password=" + StatementPdfGenerator.DEFAULT_PASSWORD,
+                    "--data.input.folder=" + workDir.resolve("input"),
+                    "--expense.cache.enabled=" + cache,
+                    "--expense.cache.disk.dir=" + workDir.resolve("cache"),
+                    "--expense.ledger.dir=" + workDir.resolve("ledger"),
+                    "--google.sheets.queue.dir=" + workDir.resolve("sheets-queue"),
+                    "--expense.processed-files.dir=" + workDir,
+                    "--logging.level.root=WARN",
+                    "--logging.level.com.agv=WARN",
+                    // The corpus uses a standard font which PDFBox substitutes on every extraction
+                    "--logging.level.org.apache.pdfbox.pdmodel.font=ERROR"));
+            options.forEach((name, value) -> {
+                if (!Arrays.asList(DRIVER_OPTIONS).contains(name)) {
+                    appArgs.add("--" + name + "=" + value);
+                }
+            });
+            ConfigurableApplicationContext context = SpringApplication.run(ExpanalysisApplication.class,
+                    appArgs.toArray(String[]::new));
+            try {
+                URI uri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                        + "/expense/api/processMessage");
+                Report report = run(uri, files, warmup, requests, concurrency, drive);
+                report.print();
+                exitCode = report.failures() == 0 ? 0 : 1;
+            } finally {
+                SpringApplication.exit(context);
+            }
+        } finally {
+            try (var paths = Files.walk(workDir)) {
+                paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    private static Report run(URI uri, int files, int warmup, int requests, int concurrency, DriveStandIn drive)
+            throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(concurrency))
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        try {
+            Report warmupReport = execute(client, clients, uri, files, warmup, concurrency, 0);
+            if (warmupReport.failures() > 0) {
+                System.out.println("Warmup failed: " + warmupReport.firstFailure);
+            }
+            System.gc();
+            long mediaBefore = drive.getMediaRequests();
+            Report report = execute(client, clients, uri, files, requests, concurrency, warmup);
+            report.driveDownloads = drive.getMediaRequests() - mediaBefore;
+            return report;
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static Report execute(HttpClient client, ExecutorService clients, URI uri, int files, int requests,
+            int concurrency, int firstRequest) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong maxHeapUsed = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> maxHeapUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(),
+                Math::max), 0, 50, TimeUnit.MILLISECONDS);
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+
+        Report report = new Report(requests);
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int w = 0; w < concurrency; w++) {
+            workers.add(clients.submit(() -> {
+                int idx;
+                while ((idx = next.getAndIncrement()) < requests) {
+                    int requestNo = firstRequest + idx;
+                    String body = "{\"messageId\":\"load-" + requestNo + "\",\"fileId\":\""
+                            + fileId(requestNo % files) + "\"}";
+                    HttpRequest request = HttpRequest.newBuilder(uri)
+                            .header("Content-Type", "application/json")
+                            .timeout(Duration.ofMinutes(2))
+                            .POST(HttpRequest.BodyPublishers.ofString(body))
+                            .build();
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        report.latencies[idx] = System.nanoTime() - sent;
+                        if (response.statusCode() != 200 || !response.body().contains("\"Success\"")) {
+                            report.fail("HTTP " + response.statusCode() + ": " + abbreviate(response.body()));
+                        }
+                    } catch (Exception e) {
+                        report.latencies[idx] = System.nanoTime() - sent;
+                        report.fail(e.toString());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        sampler.shutdownNow();
+        report.maxHeapUsed = maxHeapUsed.get();
+        report.heapCommitted = memory.getHeapMemoryUsage().getCommitted();
+        report.heapMax = memory.getHeapMemoryUsage().getMax();
+        report.gcCount = gcCount() - gcCountBefore;
+        report.gcMillis = gcTime() - gcTimeBefore;
+        return report;
+    }
+
+    private static String fileId(int index) {
+        return "load-statement-" + index;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    private static String abbreviate(String text) {
+        return (text.length() > 200) ? text.substring(0, 200) + "..." : text;
+    }
+
+    private static final class Report {
+        private final long[] latencies;
+        private final AtomicInteger failureCount = new AtomicInteger();
+        private volatile String firstFailure;
+        private long elapsedNanos;
+        private long maxHeapUsed;
+        private long heapCommitted;
+        private long heapMax;
+        private long gcCount;
+        private long gcMillis;
+        private long driveDownloads;
+
+        private Report(int requests) {
+            latencies = new long[requests];
+        }
+
+        private void fail(String reason) {
+            if (failureCount.getAndIncrement() == 0) {
+                firstFailure = reason;
+            }
+        }
+
+        private int failures() {
+            return failureCount.get();
+        }
+
+        private void print() {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf(Locale.ROOT, "Requests:   %d in %.2f s, %d failed%n", sorted.length, seconds,
+                    failures());
+            if (firstFailure != null) {
+                System.out.println("First failure: " + firstFailure);
+            }
+            System.out.printf(Locale.ROOT, "Throughput: %.1f statements/s%n", sorted.length / seconds);
+            System.out.printf(Locale.ROOT, "Latency ms: p50 %.1f  p90 %.1f  p99 %.1f  max %.1f%n",
+                    millis(percentile(sorted, 50)), millis(percentile(sorted, 90)), millis(percentile(sorted, 99)),
+                    millis(sorted[sorted.length - 1]));
+            System.out.printf(Locale.ROOT, "Heap MB:    max used %.1f  committed %.1f  limit %.1f%n",
+                    mb(maxHeapUsed), mb(heapCommitted), mb(heapMax));
+            System.out.printf(Locale.ROOT, "GC:         %d collections, %d ms%n", gcCount, gcMillis);
+            System.out.printf(Locale.ROOT, "Drive:      %d downloads%n", driveDownloads);
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            int idx = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+
+        private static double mb(long bytes) {
+            return bytes / (1024.0 * 1024.0);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.agv.expenses.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+/**
+ * Writes password protected statement PDFs in the ICICI savings, SBI and
+ * PhonePe layouts. Every line of the {@link StatementFixtures} text becomes a
+ * line on the page, so the text extracted from the PDF is what the processors
+ * are written for. A new page starts after each page number line, or when
+ * the page is full for layouts spanning several lines per transaction.
+ * <p>
+ * Run as a program to write a corpus to disk, options are given as
+ * {@code --name=value}:
+ * <ul>
+ * <li>{@code out} target directory, default {@code target/corpus}</li>
+ * <li>{@code layout} icici, sbi, phonepe or all, default all</li>
+ * <li>{@code files} number of files per layout, default 10</li>
+ * <li>{@code pages} pages per file, default 5</li>
+ * <li>{@code rows-per-page} transactions per page, default 30</li>
+ * <li>{@code password} user password of the files, default
+ * {@value #DEFAULT_PASSWORD}</li>
+ * </ul>
+ */
+public final class StatementPdfGenerator {
+
+    public static final String DEFAULT_PASSWORD = "loadtest";
+    private static final PDType1Font FONT = new PDType1Font(Standard14Fonts.FontName.COURIER);
+    private static final float FONT_SIZE = 8;
+    private static final float LEADING = 10;
+    private static final float MARGIN = 36;
+
+    /**
+     * Statement layouts, each with the file name pattern the file routes pick
+     * up.
+     */
+    public enum Layout {
+        ICICI("Statement_%03d.pdf"), SBI("SBI_Statement_%03d.pdf"), PHONEPE("PhonePe_%03d_StmtPDF.pdf");
+
+        private final String fileNamePattern;
+
+        Layout(String fileNamePattern) {
+            this.fileNamePattern = fileNamePattern;
+        }
+
+        public String fileName(int index) {
+            return String.format(fileNamePattern, index);
+        }
+
+        public String text(int pages, int rowsPerPage, int firstRow) {
+            int rows = pages * rowsPerPage;
+            return switch (this) {
+                case ICICI -> StatementFixtures.iciciSavingsText(rows, rowsPerPage, firstRow);
+                case SBI -> StatementFixtures.sbiText(rows, rowsPerPage, firstRow);
+                case PHONEPE -> StatementFixtures.phonePeText(rows, rowsPerPage, firstRow);
+            };
+        }
+    }
+
+    private StatementPdfGenerator() {
+    }
+
+    /**
+     * @param layout      statement layout
+     * @param pages       number of pages
+     * @param rowsPerPage transactions per page
+     * @param firstRow    number of the first transaction, files with different
+     *                    first rows have different content
+     * @param password    user password, null for an unprotected file
+     * @return content of the PDF file
+     */
+    public static byte[] generate(Layout layout, int pages, int rowsPerPage, int firstRow, String password)
+            throws IOException {
+        return toPdf(layout.text(pages, rowsPerPage, firstRow), password);
+    }
+
+    /**
+     * Lays out the text line by line, starting a new page after each page
+     * number line or when the page is full.
+     */
+    public static byte[] toPdf(String text, String password) throws IOException {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            int linesPerPage = (int) ((PDRectangle.A4.getHeight() - 2 * MARGIN) / LEADING);
+            List<String> pageLines = new ArrayList<>(linesPerPage);
+            for (String line : text.split("\n")) {
+                pageLines.add(line);
+                if (line.startsWith("Page ") || pageLines.size() == linesPerPage) {
+                    addPage(document, pageLines);
+                    pageLines.clear();
+                }
+            }
+            if (!pageLines.isEmpty()) {
+                addPage(document, pageLines);
+            }
+            if (password != null) {
+                StandardProtectionPolicy policy = new StandardProtectionPolicy(password + "-owner", password,
+                        new AccessPermission());
+                policy.setEncryptionKeyLength(128);
+                document.protect(policy);
+            }
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void addPage(PDDocument document, List<String> lines) throws IOException {
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            content.beginText();
+            content.setFont(FONT, FONT_SIZE);
+            content.setLeading(LEADING);
+            content.newLineAtOffset(MARGIN, PDRectangle.A4.getHeight() - MARGIN);
+            for (String line : lines) {
+                content.showText(encodable(line));
+                content.newLine();
+            }
+            content.endText();
+        }
+    }
+
+    /**
+     * The standard fonts have no rupee sign, PhonePe statements extracted
+     * without the embedded font show it as '?', which the processor accepts
+     * as well.
+     */
+    private static String encodable(String line) {
+        return line.replace('₹', '?');
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = LoadOptions.parse(args);
+        Path out = Path.of(options.getOrDefault("out", "target/corpus"));
+        String layoutOption = options.getOrDefault("layout", "all");
+        int files = Integer.parseInt(options.getOrDefault("files", "10"));
+        int pages = Integer.parseInt(options.getOrDefault("pages", "5"));
+        int rowsPerPage = Integer.parseInt(options.getOrDefault("rows-per-page", "30"));
+        String password = options.getOrDefault("password", DEFAULT_PASSWORD);
+        Files.createDirectories(out);
+        for (Layout layout : Layout.values()) {
+            if (!"all".equalsIgnoreCase(layoutOption) && !layout.name().equalsIgnoreCase(layoutOption)) {
+                continue;
+            }
+            for (int i = 0; i < files; i++) {
+                Path file = out.resolve(layout.fileName(i));
+                Files.write(file, generate(layout, pages, rowsPerPage, i * pages * rowsPerPage, password));
+            }
+            System.out.printf(Locale.ROOT, "%d %s files of %d pages x %d rows written to %s%n", files,
+                    layout, pages, rowsPerPage, out.toAbsolutePath());
+        }
+    }
+}
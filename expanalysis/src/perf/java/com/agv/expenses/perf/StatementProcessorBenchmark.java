@@ -0,0 +1,117 @@
+package com.agv.expenses.perf;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.processor.ICICISacStmtPDFProcessor;
+import com.agv.expenses.processor.ICICITransactionProcessor;
+import com.agv.expenses.processor.PhonePePDFProcessorGSheets;
+import com.agv.expenses.processor.SBIPDFStatementProcessor;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Throughput of the statement processors on already extracted content, one
+ * operation being one complete statement of {@link #rows} transactions. Run
+ * with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementProcessorBenchmark {
+
+    @Param({ "100", "2000" })
+    public int rows;
+
+    private CamelContext camelContext;
+    private ICICISacStmtPDFProcessor iciciSavingsProcessor;
+    private SBIPDFStatementProcessor sbiProcessor;
+    private PhonePePDFProcessorGSheets phonePeProcessor;
+    private ICICITransactionProcessor iciciExcelProcessor;
+    private String iciciSavingsText;
+    private String sbiText;
+    private String phonePeText;
+    private byte[] iciciExcel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        iciciSavingsProcessor = new ICICISacStmtPDFProcessor();
+        ReflectionTestUtils.setField(iciciSavingsProcessor, "accountNameMap",
+                Map.of(StatementFixtures.ICICI_ACCOUNT_NO, "ICICI Santhome AGV"));
+        sbiProcessor = new SBIPDFStatementProcessor();
+        phonePeProcessor = new PhonePePDFProcessorGSheets();
+        iciciExcelProcessor = new ICICITransactionProcessor();
+        iciciSavingsText = StatementFixtures.iciciSavingsText(rows);
+        sbiText = StatementFixtures.sbiText(rows);
+        phonePeText = StatementFixtures.phonePeText(rows);
+        iciciExcel = StatementFixtures.iciciTransactionHistoryXls(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        camelContext.stop();
+    }
+
+    @Benchmark
+    public Object iciciSavingsPdf() throws Exception {
+        Exchange exchange = newExchange(iciciSavingsText);
+        exchange.setProperty("MASTER_DATA_MAP", new HashMap<>());
+        iciciSavingsProcessor.process(exchange);
+        return exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD);
+    }
+
+    @Benchmark
+    public Object sbiPdf() throws Exception {
+        Exchange exchange = newExchange(sbiText);
+        sbiProcessor.process(exchange);
+        return exchange.getProperty("MASTER_DATA_MAP");
+    }
+
+    @Benchmark
+    public Object phonePePdf() throws Exception {
+        Exchange exchange = newExchange(phonePeText);
+        phonePeProcessor.process(exchange);
+        return exchange.getProperty("MASTER_DATA_MAP");
+    }
+
+    @Benchmark
+    public Object iciciTransactionHistoryExcel() throws Exception {
+        Exchange exchange = newExchange(new ByteArrayInputStream(iciciExcel));
+        Map<String, Object> masterDataMap = new HashMap<>();
+        exchange.setProperty("MASTER_DATA_MAP", masterDataMap);
+        iciciExcelProcessor.process(exchange);
+        return masterDataMap;
+    }
+
+    private Exchange newExchange(Object body) {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(body);
+        exchange.getIn().setHeader(ExpenseUtil.EXCH_HEADER_PROPERTY_EMAIL_MSG_ID, "benchmark");
+        return exchange;
+    }
+}
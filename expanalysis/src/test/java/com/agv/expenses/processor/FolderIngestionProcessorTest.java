@@ -0,0 +1,291 @@
+package com.agv.expenses.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.PDFTextExtractor;
+import com.agv.expenses.service.ProcessedFileRepository;
+import com.agv.expenses.service.StatementCache;
+import com.agv.expenses.service.StatementDocumentLoader;
+import com.agv.expenses.service.SpendingRollups;
+import com.agv.expenses.service.StatementParserRegistry;
+import com.agv.expenses.service.TransactionLedger;
+import com.agv.expenses.service.TransactionStore;
+import com.agv.expenses.service.model.FolderIngestionSummary;
+import com.agv.expenses.service.model.StoredTransaction;
+import com.agv.expenses.service.model.TransactionQuery;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.ExpenseUtil;
+
+class FolderIngestionProcessorTest {
+
+    private static final Pattern DATE = Pattern.compile("DATE (\\d{4}-\\d{2}-\\d{2})");
+    private static final Pattern ID = Pattern.compile("ID (\\w+)");
+    private static final Pattern PAYS = Pattern.compile("PAYS (\\w+)");
+
+    @TempDir
+    Path dir;
+
+    private DefaultCamelContext camelContext;
+    private ProcessedFileRepository processedFiles;
+    private TransactionStore store;
+    // Bank statements in the order they were parsed, with the PhonePe rows known at the time
+    private final List<String> parsed = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws Exception {
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        processedFiles = new ProcessedFileRepository();
+        ReflectionTestUtils.setField(processedFiles, "persist", false);
+        ReflectionTestUtils.invokeMethod(processedFiles, "open");
+        store = new TransactionStore();
+        ReflectionTestUtils.setField(store, "enabled", false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        camelContext.stop();
+    }
+
+    @Test
+    void parallelRunMergesInTheOrderOfASerialRun() throws Exception {
+        List<String> paths = List.of(
+                createPdf("c.pdf", "BANK", "ID c"),
+                createPdf("a.pdf", "BANK", "ID a", "DATE 2025-04-01"),
+                createPdf("z.pdf", "REF", "ID z", "DATE 2025-05-01"),
+                createPdf("y.pdf", "Some other bank"),
+                createPdf("b.pdf", "BANK", "ID b", "DATE 2025-03-01"),
+                createPdf("x.pdf", "REF", "ID x", "DATE 2025-06-01"));
+        for (String path : paths) {
+            processedFiles.add(path);
+        }
+
+        Exchange serial = ingest(paths, 1);
+        List<String> serialOrder = new ArrayList<>(parsed);
+        parsed.clear();
+        for (String path : paths) {
+            processedFiles.add(path);
+        }
+        Exchange parallel = ingest(paths, 4);
+
+        assertEquals(List.of("b:2", "a:2", "c:2"), serialOrder);
+        assertEquals(serialOrder, parsed);
+        assertEquals(2, parallel.getProperty("MASTER_DATA_MAP", Map.class).size());
+        FolderIngestionSummary summary = parallel.getIn().getBody(FolderIngestionSummary.class);
+        assertEquals(6, summary.getFiles());
+        assertEquals(5, summary.getStatements());
+        assertEquals(List.of("y.pdf"), summary.getFailedFiles());
+        assertEquals(serial.getIn().getBody(FolderIngestionSummary.class).getFailedFiles(),
+                summary.getFailedFiles());
+        // Retried on the next poll
+        assertFalse(processedFiles.contains(paths.get(3)));
+    }
+
+    @Test
+    void reconcilesAgainstPhonePeRowsOfEarlierPolls() throws Exception {
+        enableStore();
+        String reference = createPdf("x.pdf", "REF", "ID x", "DATE 2025-06-01");
+        processedFiles.add(reference);
+        ingest(List.of(reference), 1);
+        assertEquals(List.of(), parsed);
+
+        String bank = createPdf("c.pdf", "BANK", "ID c");
+        processedFiles.add(bank);
+        Exchange exchange = ingest(List.of(bank), 1);
+        assertEquals(List.of("c:1"), parsed);
+        assertEquals(1, exchange.getIn().getBody(FolderIngestionSummary.class).getStatements());
+    }
+
+    @Test
+    void storesPhonePeRowsAsEnrichedByBankStatements() throws Exception {
+        enableStore();
+        List<String> paths = List.of(
+                createPdf("x.pdf", "REF", "ID x", "DATE 2025-06-01"),
+                createPdf("c.pdf", "BANK", "ID c", "PAYS x"));
+        paths.forEach(processedFiles::add);
+
+        Exchange exchange = ingest(paths, 1);
+
+        assertEquals("SHOP | BANK c", store.getPhonePeRows().get("x").getPaidTo());
+        assertEquals("SHOP | BANK c", store.query(TransactionQuery.builder().build()).getRows()[0].getPaidTo());
+        Map<?, ?> polled = exchange.getProperty("MASTER_DATA_MAP", Map.class);
+        assertEquals("SHOP | BANK c", ((TransactionRecord) polled.get("x")).getPaidTo());
+        assertEquals(List.of(), exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_UPDATED_ROWS, List.class));
+    }
+
+    @Test
+    void handsOnOnlyThePhonePeRowsOfThePollAndTheOnesItEnriched() throws Exception {
+        enableStore();
+        String reference = createPdf("x.pdf", "REF", "ID x", "DATE 2025-06-01");
+        processedFiles.add(reference);
+        Exchange first = ingest(List.of(reference), 1);
+        assertEquals(Set.of("x"), first.getProperty("MASTER_DATA_MAP", Map.class).keySet());
+
+        List<String> paths = List.of(
+                createPdf("y.pdf", "REF", "ID y", "DATE 2025-07-01"),
+                createPdf("c.pdf", "BANK", "ID c", "PAYS x"));
+        paths.forEach(processedFiles::add);
+        Exchange second = ingest(paths, 1);
+
+        // Written to the sheet before, only rewritten with the new payee
+        assertEquals(Set.of("y"), second.getProperty("MASTER_DATA_MAP", Map.class).keySet());
+        List<?> updated = second.getProperty(ExpenseUtil.EXCH_PROPERTY_UPDATED_ROWS, List.class);
+        assertEquals(1, updated.size());
+        assertEquals("SHOP | BANK c", ((TransactionRecord) updated.get(0)).getPaidTo());
+        assertEquals("SHOP | BANK c", store.getPhonePeRows().get("x").getPaidTo());
+        assertEquals(List.of("SHOP | BANK c", "SHOP"), Arrays.stream(store.query(TransactionQuery.builder().build())
+                .getRows()).map(StoredTransaction::getPaidTo).toList());
+    }
+
+    private void enableStore() {
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "spendingRollups", new SpendingRollups());
+        // Not opened, rows pass through
+        ReflectionTestUtils.setField(store, "ledger", new TransactionLedger());
+    }
+
+    private Exchange ingest(List<String> paths, int maxConcurrency) throws Exception {
+        StatementParserRegistry registry = new StatementParserRegistry();
+        ReflectionTestUtils.setField(registry, "parsers", List.of(new FakeParser("REF"), new FakeParser("BANK")));
+        PDFTextExtractor extractor = new PDFTextExtractor();
+        ReflectionTestUtils.setField(extractor, "camelContext", camelContext);
+        ReflectionTestUtils.setField(extractor, "threads", 1);
+        StatementCache cache = new StatementCache();
+        ReflectionTestUtils.invokeMethod(cache, "init");
+
+        FolderIngestionProcessor processor = new FolderIngestionProcessor();
+        ReflectionTestUtils.setField(processor, "camelContext", camelContext);
+        ReflectionTestUtils.setField(processor, "statementParserRegistry", registry);
+        ReflectionTestUtils.setField(processor, "statementDocumentLoader", new StatementDocumentLoader());
+        ReflectionTestUtils.setField(processor, "pdfTextExtractor", extractor);
+        ReflectionTestUtils.setField(processor, "statementCache", cache);
+        ReflectionTestUtils.setField(processor, "transactionStore", store);
+        ReflectionTestUtils.setField(processor, "processedFiles", processedFiles);
+        ReflectionTestUtils.setField(processor, "maxConcurrency", maxConcurrency);
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(paths);
+        processor.process(exchange);
+        return exchange;
+    }
+
+    /**
+     * PhonePe like reference statements with one row each and bank
+     * statements which record the order they were parsed in.
+     */
+    private class FakeParser implements StatementParser {
+
+        private final String signature;
+
+        FakeParser(String signature) {
+            this.signature = signature;
+        }
+
+        @Override
+        public String getName() {
+            return signature;
+        }
+
+        @Override
+        public String getVersion() {
+            return "1";
+        }
+
+        @Override
+        public boolean isPdf() {
+            return true;
+        }
+
+        @Override
+        public boolean matches(byte[] header, String firstPageText) {
+            return firstPageText != null && firstPageText.startsWith(signature);
+        }
+
+        @Override
+        public boolean isReference() {
+            return "REF".equals(signature);
+        }
+
+        @Override
+        public LocalDate startDate(String text) {
+            Matcher matcher = DATE.matcher(text);
+            return matcher.find() ? LocalDate.parse(matcher.group(1)) : null;
+        }
+
+        @Override
+        public void process(Exchange exchange) {
+            String text = exchange.getIn().getBody(String.class);
+            Matcher matcher = ID.matcher(text);
+            matcher.find();
+            if (isReference()) {
+                Map<String, TransactionRecord> rows = new ConcurrentHashMap<>();
+                rows.put(matcher.group(1), TransactionRecord.builder().from(ExpenseUtil.PHONEPE_SENDER)
+                        .paidTo("SHOP").message(matcher.group(1)).build());
+                exchange.setProperty("MASTER_DATA_MAP", rows);
+                exchange.setProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD,
+                        rows.values().toArray(TransactionRecord[]::new));
+            } else {
+                @SuppressWarnings("unchecked")
+                Map<String, TransactionRecord> masterDataMap = exchange.getProperty("MASTER_DATA_MAP", Map.class);
+                parsed.add(matcher.group(1) + ":" + masterDataMap.size());
+                // Names the payee of the PhonePe payment, as the reconciler does
+                String bank = "BANK " + matcher.group(1);
+                Matcher pays = PAYS.matcher(text);
+                while (pays.find()) {
+                    masterDataMap.computeIfPresent(pays.group(1),
+                            (utr, row) -> row.toBuilder().paidTo(row.getPaidTo() + " | " + bank).build());
+                }
+                // As the SBI parser does
+                exchange.setProperty("MASTER_DATA_MAP", new HashMap<>());
+            }
+        }
+    }
+
+    private String createPdf(String name, String... lines) throws Exception {
+        Path file = dir.resolve(name);
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 10);
+                content.newLineAtOffset(40, 750);
+                for (String line : lines) {
+                    content.showText(line);
+                    content.newLineAtOffset(0, -14);
+                }
+                content.endText();
+            }
+            document.save(file.toFile());
+        }
+        return file.toString();
+    }
+}
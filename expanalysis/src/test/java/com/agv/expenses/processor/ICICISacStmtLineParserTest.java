@@ -0,0 +1,115 @@
+package com.agv.expenses.processor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+
+/**
+ * Parses a small statement and checks the rows and the states passed on the
+ * way.
+ */
+class ICICISacStmtLineParserTest {
+
+    private static final String STATEMENT = String.join("\n",
+            "Statement of Transactions",
+            "Savings A/c   XXXXXXXX1234",
+            "DATE MODE PARTICULARS DEPOSITS WITHDRAWALS BALANCE",
+            "01-04-2025  B/F  10,000.00",
+            "02-04-2025 UPI/SHOP/Groceries/412345678901/YESB 250.00 9,750.00",
+            "03-04-2025",
+            "NEFT-HDFC0001-ACME LTD-",
+            "998877 1,000.00   10,750.00",
+            "Page 1 of 1\r",
+            "");
+
+    private final List<String[]> rows = new ArrayList<>();
+    private final List<String> errorLines = new ArrayList<>();
+
+    @Test
+    void parsesSingleAndMultiLineTransactions() throws Exception {
+        ICICISacStmtLineParser parser = newParser();
+        parser.parse(STATEMENT);
+
+        assertEquals("XXXXXXXX1234", parser.getAccountNo());
+        assertEquals(ICICISacStmtLineParser.State.IN_TABLE, parser.getState());
+        assertEquals(List.of(), errorLines);
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] { "02-04-2025", "Savings", "UPI", "",
+                "SHOP | Groceries | 412345678901 | YESB", "250.00",
+                "02-04-2025###UPI/SHOP/Groceries/412345678901/YESB###250.00###DEBIT###9,750.00",
+                "XXXXXXXX1234", "412345678901", null, null, "DEBIT" }, rows.get(0));
+        assertArrayEquals(new String[] { "03-04-2025", "Savings", "NEFT", "",
+                "HDFC0001 | ACME LTD", "1,000.00",
+                "03-04-2025###NEFT-HDFC0001-ACME LTD-###1,000.00###CREDIT###10,750.00",
+                "XXXXXXXX1234", "", null, null, "CREDIT" }, rows.get(1));
+    }
+
+    @Test
+    void stopsCapturingAtNextDateLine() throws Exception {
+        ICICISacStmtLineParser parser = newParser();
+        parser.parse("DATE MODE PARTICULARS DEPOSITS WITHDRAWALS BALANCE\n05-04-2025 partial\ncontinued");
+        assertEquals(ICICISacStmtLineParser.State.CAPTURING, parser.getState());
+
+        parser.parse("06-04-2025 UPI/SHOP/x/123/y 5.00 6.00");
+        assertEquals(2, rows.size());
+        // The incomplete row is passed on with its raw text for review
+        assertEquals("05-04-2025###", rows.get(0)[6]);
+        assertEquals("6.00", rows.get(1)[6].substring(rows.get(1)[6].length() - 4));
+    }
+
+    @Test
+    void matchesUtrsBeforeRowsWithoutReference() throws Exception {
+        ConcurrentHashMap<String, TransactionRecord> phonePeRows = new ConcurrentHashMap<>();
+        phonePeRows.put("412345678901", TransactionRecord.builder().date(LocalDate.of(2025, 4, 2)).amountPaise(25000)
+                .paidTo("SHOP").type(TransactionType.DEBIT).build());
+        ICICISacStmtLineParser parser = newParser(phonePeRows);
+        // The row without a reference comes first, but the payment is the
+        // one of the UTR further down
+        parser.parse(String.join("\n",
+                "DATE MODE PARTICULARS DEPOSITS WITHDRAWALS BALANCE",
+                "02-04-2025 UPI/SHOP/Groceries 250.00 9,750.00",
+                "02-04-2025 UPI/SHOP/Groceries/412345678901/YESB 250.00 9,500.00"));
+
+        assertEquals(1, rows.size());
+        assertEquals("", rows.get(0)[8]);
+        assertEquals("SHOP | SHOP", phonePeRows.get("412345678901").getPaidTo());
+    }
+
+    @Test
+    void dateLinePrefixIsStrict() {
+        assertEquals(true, ICICISacStmtLineParser.startsWithDate("01-02-2025 x", 0, 12));
+        assertEquals(false, ICICISacStmtLineParser.startsWithDate("01/02/2025 x", 0, 12));
+        assertEquals(false, ICICISacStmtLineParser.startsWithDate("01-02-202", 0, 9));
+        assertEquals(false, ICICISacStmtLineParser.startsWithDate("01-02-2025\rx", 0, 12));
+    }
+
+    private ICICISacStmtLineParser newParser() {
+        return newParser(new ConcurrentHashMap<>());
+    }
+
+    private ICICISacStmtLineParser newParser(ConcurrentHashMap<String, TransactionRecord> phonePeRows) {
+        Map<String, String> accounts = Map.of("XXXXXXXX1234", "Savings");
+        PhonePeReconciler reconciler = new PhonePeReconciler(phonePeRows, 1, 100, 0.5, 0.8);
+        return new ICICISacStmtLineParser(accounts, reconciler, new ICICISacStmtLineParser.RowHandler() {
+            @Override
+            public void onRow(String[] row) {
+                rows.add(row.clone());
+            }
+
+            @Override
+            public void onLineError(String line, Exception e) {
+                errorLines.add(line);
+            }
+        });
+    }
+}
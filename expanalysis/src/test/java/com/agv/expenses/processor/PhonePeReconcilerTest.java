@@ -0,0 +1,196 @@
+package com.agv.expenses.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.agv.expenses.service.model.ReconciliationSummary;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+
+class PhonePeReconcilerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 4, 10);
+
+    @Test
+    void matchesByUtrThenWithinWindow() {
+        ConcurrentMap<String, TransactionRecord> phonePeRows = new ConcurrentHashMap<>();
+        phonePeRows.put("512345678901", phonePe(DAY, 45000, "SWIGGY"));
+        phonePeRows.put("512345678902", phonePe(DAY, 120000, "KSEB"));
+        phonePeRows.put("512345678903", phonePe(DAY.plusDays(5), 120000, "KSEB"));
+        phonePeRows.put("512345678904", phonePe(DAY, 9900, "JIO"));
+        phonePeRows.put("512345678905", phonePe(DAY, 30000, "CAFE"));
+        PhonePeReconciler reconciler = new PhonePeReconciler(phonePeRows, 1, 100, 0.5, 0.8);
+
+        PhonePeReconciler.Match exact = reconciler.reconcile("512345678901", DAY, 45000, true, "swiggy@icici");
+        assertEquals(PhonePeReconciler.EXACT_CONFIDENCE, exact.confidence());
+        assertFalse(exact.flagged());
+        assertEquals("SWIGGY | swiggy@icici", phonePeRows.get("512345678901").getPaidTo());
+
+        // Same day and amount without a reference replaces the bank row
+        PhonePeReconciler.Match merged = reconciler.reconcile("", DAY, 9900, true, "JIO");
+        assertEquals("512345678904", merged.key());
+        assertFalse(merged.flagged());
+        assertEquals("JIO | JIO", phonePeRows.get("512345678904").getPaidTo());
+
+        // Posted a day later and rounded by 50 paise, only flagged
+        PhonePeReconciler.Match flagged = reconciler.reconcile("", DAY.plusDays(1), 120050, true, "KSEB");
+        assertEquals("512345678902", flagged.key());
+        assertEquals(0.6, flagged.confidence(), 1e-9);
+        assertTrue(flagged.flagged());
+        assertEquals("Possible PhonePe payment 512345678902, confidence 0.60", flagged.note());
+        assertEquals("KSEB", phonePeRows.get("512345678902").getPaidTo());
+
+        // Each payment matches once, the other KSEB payment is outside the window
+        assertNull(reconciler.reconcile("", DAY, 120000, true, "KSEB"));
+        assertNull(reconciler.reconcile("", DAY.plusDays(5), 120000, false, "KSEB"));
+        assertTrue(reconciler.reconcile("", DAY.plusDays(4), 120000, true, "KSEB").flagged());
+
+        // A card or other UPI debit with a reference of its own is never matched fuzzily
+        assertNull(reconciler.reconcile("998877665544", DAY, 30000, true, "CARD"));
+        assertEquals("512345678905", reconciler.reconcile("", DAY, 30000, true, "CAFE").key());
+
+        ReconciliationSummary summary = reconciler.getSummary();
+        assertEquals(5, summary.getPhonePeRows());
+        assertEquals(1, summary.getExactMatches());
+        assertEquals(2, summary.getFuzzyMatches());
+        assertEquals(2, summary.getFlaggedMatches());
+        assertEquals(2, summary.getUnmatched());
+    }
+
+    @Test
+    void exactMatchRevokesAFuzzyMatchOfItsPayment() {
+        ConcurrentMap<String, TransactionRecord> phonePeRows = new ConcurrentHashMap<>();
+        phonePeRows.put("512345678901", phonePe(DAY, 45000, "SWIGGY"));
+        PhonePeReconciler reconciler = new PhonePeReconciler(phonePeRows, 1, 100, 0.5, 0.8);
+
+        assertFalse(reconciler.reconcile("", DAY, 45000, true, "ATM").flagged());
+        reconciler.reconcile("512345678901", DAY, 45000, true, "swiggy@icici");
+
+        assertEquals("SWIGGY | swiggy@icici", phonePeRows.get("512345678901").getPaidTo());
+        ReconciliationSummary summary = reconciler.getSummary();
+        assertEquals(1, summary.getExactMatches());
+        assertEquals(0, summary.getFuzzyMatches());
+        assertEquals(1, summary.getRevokedMatches());
+    }
+
+    @Test
+    void reservedPaymentsAreOnlyMatchedByUtr() {
+        ConcurrentMap<String, TransactionRecord> phonePeRows = new ConcurrentHashMap<>();
+        phonePeRows.put("512345678901", phonePe(DAY, 45000, "SWIGGY"));
+        phonePeRows.put("512345678902", phonePe(DAY, 45000, "ZOMATO"));
+        PhonePeReconciler reconciler = new PhonePeReconciler(phonePeRows, 1, 100, 0.5, 0.8);
+
+        assertEquals(1, reconciler.reserve("10-04-2025 UPI/512345678901/swiggy@icici 450.00"));
+        assertEquals("512345678902", reconciler.reconcile("", DAY, 45000, true, "ATM").key());
+        assertNull(reconciler.reconcile("", DAY, 45000, true, "ATM"));
+        reconciler.reconcile("512345678901", DAY, 45000, true, "swiggy@icici");
+
+        assertEquals("SWIGGY | swiggy@icici", phonePeRows.get("512345678901").getPaidTo());
+        assertEquals(0, reconciler.getSummary().getRevokedMatches());
+    }
+
+    @Test
+    void parallelStatementsClaimEachPaymentOnce() throws Exception {
+        int payments = 2000;
+        int statements = 4;
+        ConcurrentMap<String, TransactionRecord> phonePeRows = new ConcurrentHashMap<>();
+        for (int i = 0; i < payments; i++) {
+            phonePeRows.put(utr(i), phonePe(DAY.plusDays(i % 30), 10000, "SHOP"));
+        }
+        PhonePeReconciler reconciler = new PhonePeReconciler(phonePeRows, 1, 100, 0.5, 0.8);
+
+        // Payment i is in statement i % 4, every other one by UTR. The next
+        // statement has a debit of its own without reference on the same day
+        // and amount as each payment by UTR, which races for it. Statements 1
+        // and 3 only start once 0 and 2 are done, so the racing debits of 0
+        // and 2 come before the UTRs of 1 and 3.
+        List<List<Integer>> byUtr = new ArrayList<>();
+        List<List<Integer>> withoutReference = new ArrayList<>();
+        for (int statement = 0; statement < statements; statement++) {
+            byUtr.add(new ArrayList<>());
+            withoutReference.add(new ArrayList<>());
+        }
+        for (int i = 0; i < payments; i++) {
+            if (i / statements % 2 == 0) {
+                byUtr.get(i % statements).add(i);
+                withoutReference.get((i + 1) % statements).add(i);
+            } else {
+                withoutReference.get(i % statements).add(i);
+            }
+        }
+        for (List<Integer> utrs : byUtr) {
+            reconciler.reserve(String.join("/", utrs.stream().map(PhonePeReconcilerTest::utr).toList()));
+        }
+        CountDownLatch evenDone = new CountDownLatch(statements / 2);
+        ExecutorService executor = Executors.newFixedThreadPool(statements);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int statement = 0; statement < statements; statement++) {
+                String bank = "BANK" + statement;
+                List<Integer> utrs = byUtr.get(statement);
+                List<Integer> others = withoutReference.get(statement);
+                boolean odd = statement % 2 == 1;
+                futures.add(executor.submit(() -> {
+                    if (odd) {
+                        evenDone.await();
+                    }
+                    for (int i : utrs) {
+                        reconciler.reconcile(utr(i), DAY.plusDays(i % 30), 10000, true, bank);
+                    }
+                    for (int i : others) {
+                        reconciler.reconcile("", DAY.plusDays(i % 30), 10000, true, bank);
+                    }
+                    if (!odd) {
+                        evenDone.countDown();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        ReconciliationSummary summary = reconciler.getSummary();
+        // Every bank debit is kept or matched exactly once, no merged one is revoked
+        assertEquals(0, summary.getRevokedMatches());
+        assertEquals(payments / 2, summary.getExactMatches());
+        assertEquals(payments / 2, summary.getFuzzyMatches() + summary.getFlaggedMatches());
+        assertEquals(payments / 2, summary.getUnmatched());
+        for (Map.Entry<String, TransactionRecord> entry : phonePeRows.entrySet()) {
+            int i = (int) (Long.parseLong(entry.getKey()) - 500000000000L);
+            int enrichments = entry.getValue().getPaidTo().split(" \\| ").length - 1;
+            assertTrue(enrichments <= 1, entry.getKey());
+            if (i / statements % 2 == 0) {
+                // Enriched by its own statement, not by the racing debit
+                assertEquals("SHOP | BANK" + (i % statements), entry.getValue().getPaidTo());
+            }
+        }
+    }
+
+    private static String utr(int payment) {
+        return String.valueOf(500000000000L + payment);
+    }
+
+    private static TransactionRecord phonePe(LocalDate date, long amountPaise, String paidTo) {
+        return TransactionRecord.builder().date(date).amountPaise(amountPaise).paidTo(paidTo)
+                .type(TransactionType.DEBIT).build();
+    }
+}
@@ -0,0 +1,58 @@
+package com.agv.expenses.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+import com.agv.expenses.util.ExpenseUtil;
+
+class SBIPDFStatementProcessorTest {
+
+    private final SBIPDFStatementProcessor processor = new SBIPDFStatementProcessor();
+
+    @Test
+    void parsesDebitsAndCredits() throws Exception {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(String.join("\n", "State Bank of India",
+                "01-04-25 UPI/DR/509112345678/SWIGGY - - 450.00 10,000.00",
+                "02-04-25 NEFT SALARY",
+                "APRIL - 50000.00 - 60,000.00"));
+        processor.process(exchange);
+
+        TransactionRecord[] rows = exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_RES_PAYLOAD,
+                TransactionRecord[].class);
+        assertEquals(2, rows.length);
+        assertEquals(45000, rows[0].getAmountPaise());
+        assertEquals(TransactionType.DEBIT, rows[0].getType());
+        assertEquals(5000000, rows[1].getAmountPaise());
+        assertEquals(TransactionType.CREDIT, rows[1].getType());
+        assertEquals(0, exchange.getProperty(ExpenseUtil.EXCH_PROPERTY_RES_ERR_LIST,
+                StatementProcessErrorRow[].class).length);
+    }
+
+    @Test
+    void reportsARecordWithoutDescriptionAsErrorRow() throws Exception {
+        List<TransactionRecord> rows = new ArrayList<>();
+        CollectingRowSink sink = new CollectingRowSink();
+        StatementErrorCollector errors = new StatementErrorCollector(sink,
+                LoggerFactory.getLogger(SBIPDFStatementProcessorTest.class), "msg-1", 10, 1);
+
+        ReflectionTestUtils.invokeMethod(processor, "addRow", rows, errors, "01-04-25 ");
+
+        assertEquals(List.of(), rows);
+        assertEquals(1, sink.getErrorRows().length);
+        assertEquals("MALFORMED_LINE", sink.getErrorRows()[0].getErrorCode());
+        assertEquals("01-04-25 ", sink.getErrorRows()[0].getReferenceLine());
+    }
+}
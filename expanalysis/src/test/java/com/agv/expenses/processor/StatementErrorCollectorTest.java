@@ -0,0 +1,65 @@
+package com.agv.expenses.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import com.agv.expenses.service.model.StatementErrorCause;
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.DatePattern;
+import com.agv.expenses.util.ExpenseUtil;
+
+class StatementErrorCollectorTest {
+
+    @Test
+    void reportsFirstFailuresOfEachCauseAndCountsTheRest() throws Exception {
+        List<StatementProcessErrorRow> rows = new ArrayList<>();
+        StatementRowSink sink = new StatementRowSink() {
+            @Override
+            public void onRow(TransactionRecord row) {
+            }
+
+            @Override
+            public void onError(StatementProcessErrorRow errorRow) {
+                rows.add(errorRow);
+            }
+        };
+        StatementErrorCollector errors = new StatementErrorCollector(sink,
+                LoggerFactory.getLogger(StatementErrorCollectorTest.class), "msg-1", 2, 1);
+
+        for (int i = 0; i < 50; i++) {
+            String date = "3" + i + "-Feb-20";
+            Exception e = assertThrows(IllegalArgumentException.class,
+                    () -> ExpenseUtil.convertStringToDate(date, DatePattern.SHEET_DATE));
+            errors.onError(() -> "line " + date, e);
+        }
+        errors.onError(() -> "amount line", new NumberFormatException("x.y"));
+
+        assertEquals(51, errors.getErrorCount());
+        StatementErrorCause[] causes = errors.getCauses();
+        assertEquals(2, causes.length);
+        assertEquals("INVALID_DATE", causes[0].getErrorCode());
+        assertEquals(IllegalArgumentException.class.getName(), causes[0].getExceptionClass());
+        assertEquals("line 30-Feb-20", causes[0].getReferenceLine());
+        assertEquals(50, causes[0].getCount());
+        assertEquals(2, causes[0].getReportedRows());
+        assertEquals("INVALID_AMOUNT", causes[1].getErrorCode());
+        assertEquals(1, causes[1].getCount());
+
+        assertEquals(3, rows.size());
+        assertNotNull(rows.get(0).getErrorStack());
+        assertEquals("line 31-Feb-20", rows.get(1).getReferenceLine());
+        assertNull(rows.get(1).getErrorStack());
+        assertEquals("INVALID_AMOUNT", rows.get(2).getErrorCode());
+        assertNotNull(rows.get(2).getErrorStack());
+        assertEquals("msg-1", rows.get(2).getMessageId());
+    }
+}
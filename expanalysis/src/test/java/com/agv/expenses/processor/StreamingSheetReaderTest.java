@@ -0,0 +1,112 @@
+package com.agv.expenses.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StreamingSheetReaderTest {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MMM-yyyy", Locale.ENGLISH);
+    private static final List<String> EXPECTED = List.of(
+            "3: | Transactions List - SANTHOME - 021201554990 |  | ",
+            "5: | 1.0 | 01-Apr-2025 | UPI/SWIGGY/412345000000/",
+            "6: | 2.0 | 02-Apr-2025 | B2*2");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsXlsLikeTheUserModel() throws Exception {
+        byte[] workbook = workbook(new HSSFWorkbook());
+        assertEquals(EXPECTED, read(workbook, null));
+        Path file = Files.write(dir.resolve("OpTransactionHistory.xls"), workbook);
+        assertEquals(EXPECTED, read(null, file));
+    }
+
+    @Test
+    void readsXlsxLikeTheUserModel() throws Exception {
+        byte[] workbook = workbook(new XSSFWorkbook());
+        assertEquals(EXPECTED, read(workbook, null));
+        Path file = Files.write(dir.resolve("OpTransactionHistory.xlsx"), workbook);
+        assertEquals(EXPECTED, read(null, file));
+    }
+
+    @Test
+    void rejectsWorkbooksWithoutTheSheet() {
+        StreamingSheetReader reader = new StreamingSheetReader("Missing", 4, DATE_FORMAT, (rowNum, cells) -> {
+        });
+        assertThrows(IllegalArgumentException.class,
+                () -> reader.read(new ByteArrayInputStream(workbook(new HSSFWorkbook()))));
+    }
+
+    @Test
+    void findsSheetsByName() throws Exception {
+        for (byte[] workbook : List.of(workbook(new HSSFWorkbook()), workbook(new XSSFWorkbook()))) {
+            assertTrue(StreamingSheetReader.hasSheet(new ByteArrayInputStream(workbook), "OpTransactionHistory"));
+            assertFalse(StreamingSheetReader.hasSheet(new ByteArrayInputStream(workbook), "Missing"));
+        }
+        assertFalse(StreamingSheetReader.hasSheet(new ByteArrayInputStream("%PDF-1.7".getBytes()),
+                "OpTransactionHistory"));
+    }
+
+    private static List<String> read(byte[] workbook, Path file) throws Exception {
+        List<String> rows = new ArrayList<>();
+        StreamingSheetReader reader = new StreamingSheetReader("OpTransactionHistory", 4, DATE_FORMAT,
+                (rowNum, cells) -> rows.add(rowNum + ":" + String.join(" | ", cells)));
+        if (file != null) {
+            reader.read(file.toFile());
+        } else {
+            reader.read(new ByteArrayInputStream(workbook));
+        }
+        return rows;
+    }
+
+    /**
+     * A sheet ahead of the transaction history, a blank row, cells beyond the
+     * reported columns, a date cell and a formula.
+     */
+    private static byte[] workbook(Workbook workbook) throws Exception {
+        try (workbook; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            workbook.createSheet("Summary").createRow(0).createCell(1).setCellValue("Not read");
+            Sheet sheet = workbook.createSheet("OpTransactionHistory");
+            sheet.createRow(3).createCell(1).setCellValue("Transactions List - SANTHOME - 021201554990");
+            sheet.createRow(4).createCell(1);
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.createDataFormat().getFormat("dd/mm/yyyy"));
+            Row row = sheet.createRow(5);
+            row.createCell(1).setCellValue(1);
+            row.createCell(2).setCellValue("01-Apr-2025");
+            row.createCell(3).setCellValue("UPI/SWIGGY/412345000000/");
+            row.createCell(6).setCellValue(100.5);
+            row = sheet.createRow(6);
+            row.createCell(1).setCellValue(2);
+            row.createCell(2).setCellValue(LocalDate.of(2025, 4, 2));
+            row.getCell(2).setCellStyle(dateStyle);
+            row.createCell(3).setCellFormula("B2*2");
+            // Cached results as Excel saves them
+            workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.agv.expenses.route;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.processor.idempotent.MemoryIdempotentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.processor.FolderIngestionProcessor;
+import com.agv.expenses.processor.GoogleSheetsWriteProcessor;
+import com.agv.expenses.processor.ICICISacStmtPDFProcessor;
+import com.agv.expenses.processor.ICICITransactionProcessor;
+import com.agv.expenses.service.DriveFileFetcher;
+import com.agv.expenses.service.StatementCache;
+import com.agv.expenses.service.StatementJobService;
+import com.agv.expenses.service.StatementParserRegistry;
+import com.agv.expenses.service.StatementStreamService;
+import com.agv.expenses.service.TransactionStore;
+import com.agv.expenses.service.model.ParsedStatement;
+import com.agv.expenses.service.model.StatementBatchRequest;
+import com.agv.expenses.service.model.StatementBatchResponse;
+import com.agv.expenses.service.model.StatementJobStatus;
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.StatementProcessRequest;
+import com.agv.expenses.service.model.StatementStreamRecord;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the routes in a plain Camel context. Drive is replaced by a fetcher
+ * which knows the content key of every file, and the parse result of that
+ * content is cached, so requests are served from the cache.
+ */
+class ExpenseDataRouteTest {
+
+    private static final String CONTENT_KEY = "0cc175b9c0f1b6a831c399e269772661";
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private DefaultCamelContext context;
+    private StatementJobService jobService;
+    private StatementStreamService streamService;
+
+    @BeforeEach
+    void startRoutes() throws Exception {
+        context = new DefaultCamelContext();
+        Properties properties = new Properties();
+        properties.setProperty("data.input.folder", dir.toString());
+        properties.setProperty("icici.pdf.file.pattern", "none\\.pdf");
+        properties.setProperty("santhome.excel.file.name", "none.xls");
+        context.getPropertiesComponent().setInitialProperties(properties);
+        context.getRegistry().bind("processedFileRepository",
+                MemoryIdempotentRepository.memoryIdempotentRepository());
+
+        StatementCache cache = new StatementCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxMemoryEntries", 8);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        cache.putResult(StatementCache.resultKey(CONTENT_KEY, ICICISacStmtPDFProcessor.PARSER_NAME,
+                ICICISacStmtPDFProcessor.PARSER_VERSION), ParsedStatement.builder()
+                        .rows(new TransactionRecord[] { TransactionRecord.builder().date(LocalDate.of(2025, 4, 2))
+                                .paidTo("SHOP").amountPaise(25000).orderId("412345678901")
+                                .type(TransactionType.DEBIT).build() })
+                        .errorRows(new StatementProcessErrorRow[] { StatementProcessErrorRow.builder()
+                                .messageId("msg-1").errorCode("INVALID_DATE").referenceLine("31-02-2025 x")
+                                .build() })
+                        .build());
+        StatementParserRegistry registry = new StatementParserRegistry();
+        ReflectionTestUtils.setField(registry, "parsers", List.of(new ICICISacStmtPDFProcessor()));
+        TransactionStore store = new TransactionStore();
+        ReflectionTestUtils.setField(store, "enabled", false);
+
+        jobService = new StatementJobService();
+        ReflectionTestUtils.setField(jobService, "camelContext", context);
+        ReflectionTestUtils.setField(jobService, "producerTemplate", context.createProducerTemplate());
+        ReflectionTestUtils.setField(jobService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(jobService, "poolSize", 1);
+        ReflectionTestUtils.setField(jobService, "queueSize", 10);
+        ReflectionTestUtils.setField(jobService, "retentionMinutes", 60L);
+        ReflectionTestUtils.setField(jobService, "allowedCallbackUrls", List.of("http://localhost:9/hooks/"));
+
+        streamService = new StatementStreamService();
+        ReflectionTestUtils.setField(streamService, "camelContext", context);
+        ReflectionTestUtils.setField(streamService, "producerTemplate", context.createProducerTemplate());
+        ReflectionTestUtils.setField(streamService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(streamService, "poolSize", 1);
+        ReflectionTestUtils.setField(streamService, "pipeBufferBytes", 1024);
+
+        ExpenseDataRoute route = new ExpenseDataRoute();
+        ReflectionTestUtils.setField(route, "batchMaxConcurrency", 2);
+        ReflectionTestUtils.setField(route, "driveFileFetcher", new DriveFileFetcher() {
+            @Override
+            public String findContentKey(String fileId) throws IOException {
+                if ("file-missing".equals(fileId)) {
+                    throw new IOException("File not found: " + fileId);
+                }
+                return CONTENT_KEY;
+            }
+        });
+        ReflectionTestUtils.setField(route, "statementCache", cache);
+        ReflectionTestUtils.setField(route, "statementParserRegistry", registry);
+        ReflectionTestUtils.setField(route, "transactionStore", store);
+        ReflectionTestUtils.setField(route, "statementJobService", jobService);
+        ReflectionTestUtils.setField(route, "statementStreamService", streamService);
+        ReflectionTestUtils.setField(route, "folderIngestionProcessor", new FolderIngestionProcessor());
+        ReflectionTestUtils.setField(route, "googleSheetsWriteProcessor", new GoogleSheetsWriteProcessor());
+        ReflectionTestUtils.setField(route, "iciciTransactionProcessor", new ICICITransactionProcessor());
+        context.addRoutes(route);
+        context.start();
+    }
+
+    @AfterEach
+    void stopRoutes() {
+        context.stop();
+    }
+
+    @Test
+    void jobRunsTheProcessingRoute() throws Exception {
+        StatementJobStatus job = jobService.submit(StatementProcessRequest.builder().messageId("msg-1")
+                .fileId("file-1").callbackUrl("http://localhost:9/hooks/statements").build());
+
+        StatementJobStatus done = awaitJob(job.getJobId());
+        assertEquals(StatementJobStatus.SUCCESS, done.getStatus(), done.getErrorMessage());
+        assertEquals(1, done.getResponse().getResponsePayLoad().length);
+        assertEquals("SHOP", done.getResponse().getResponsePayLoad()[0].getPaidTo());
+    }
+
+    @Test
+    void streamsRowsErrorsAndStatusAsNdjson() throws Exception {
+        List<StatementStreamRecord> records = new ArrayList<>();
+        try (InputStream stream = context.createProducerTemplate().requestBody("direct:processRequestStream",
+                "{\"messageId\":\"msg-1\",\"fileId\":\"file-1\"}", InputStream.class);
+                BufferedReader lines = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                records.add(objectMapper.readValue(line, StatementStreamRecord.class));
+            }
+        }
+
+        assertEquals(List.of(StatementStreamRecord.TYPE_ROW, StatementStreamRecord.TYPE_ERROR,
+                StatementStreamRecord.TYPE_STATUS), records.stream().map(StatementStreamRecord::getType).toList());
+        assertEquals("SHOP", records.get(0).getRow().getPaidTo());
+        assertEquals("250.00", records.get(0).getRow().getAmount());
+        assertEquals("INVALID_DATE", records.get(1).getErrorRow().getErrorCode());
+        assertEquals("Success", records.get(2).getStatus());
+    }
+
+    @Test
+    void batchAnswersEachItemInRequestOrder() {
+        StatementBatchResponse response = context.createProducerTemplate().requestBody("direct:processBatch",
+                StatementBatchRequest.builder().items(List.of(
+                        StatementProcessRequest.builder().messageId("msg-1").fileId("file-1").build(),
+                        StatementProcessRequest.builder().messageId("msg-2").fileId("file-missing").build(),
+                        StatementProcessRequest.builder().messageId("msg-3").fileId("file-3").build())).build(),
+                StatementBatchResponse.class);
+
+        assertEquals("Partial", response.getStatus());
+        assertEquals(2, response.getSuccessCount());
+        assertEquals(1, response.getFailureCount());
+        assertEquals(1, response.getResults()[0].getResponsePayLoad().length);
+        assertEquals("File not found: file-missing", response.getResults()[1].getErrorMessage());
+        assertEquals(1, response.getResults()[2].getResponsePayLoad().length);
+        // The cached error row of each statement and the failure of the second item
+        assertEquals(List.of("INVALID_DATE", "msg-2", "INVALID_DATE"), List.of(response.getErrorRows()).stream()
+                .map(row -> (row.getErrorCode() != null) ? row.getErrorCode() : row.getMessageId()).toList());
+    }
+
+    @Test
+    void rejectsCallbacksOutsideTheAllowedUrls() {
+        for (String callbackUrl : List.of("http://169.254.169.254/latest/meta-data", "http://localhost:8080/hooks/",
+                "http://localhost:9/hooks/../admin", "http://user@localhost:9/hooks/x", "file:///etc/passwd",
+                "ftp://localhost:9/hooks/x")) {
+            assertThrows(IllegalArgumentException.class, () -> jobService.submit(StatementProcessRequest.builder()
+                    .fileId("file-1").callbackUrl(callbackUrl).build()), callbackUrl);
+        }
+    }
+
+    @Test
+    void rejectsJobsWithoutBodyOrFileId() {
+        for (Object body : Arrays.asList(null, StatementProcessRequest.builder().messageId("msg-1").build(),
+                StatementProcessRequest.builder().messageId("msg-1").fileId(" ").build())) {
+            Exchange exchange = context.createProducerTemplate().request("direct:submitJob",
+                    request -> request.getIn().setBody(body));
+
+            assertEquals(400, exchange.getMessage().getHeader(Exchange.HTTP_RESPONSE_CODE), String.valueOf(body));
+            assertEquals(StatementJobStatus.FAILED, exchange.getMessage().getBody(StatementJobStatus.class)
+                    .getStatus());
+        }
+    }
+
+    private StatementJobStatus awaitJob(String jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        StatementJobStatus job = jobService.getJob(jobId);
+        while (job.getCompletedAt() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            job = jobService.getJob(jobId);
+        }
+        return job;
+    }
+}
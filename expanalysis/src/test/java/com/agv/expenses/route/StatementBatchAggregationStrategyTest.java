@@ -0,0 +1,84 @@
+package com.agv.expenses.route;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import com.agv.expenses.service.model.StatementBatchResponse;
+import com.agv.expenses.service.model.StatementProcessErrorRow;
+import com.agv.expenses.service.model.StatementProcessRequest;
+import com.agv.expenses.service.model.StatementProcessResponse;
+
+class StatementBatchAggregationStrategyTest {
+
+    private final DefaultCamelContext context = new DefaultCamelContext();
+    private final StatementBatchAggregationStrategy strategy = new StatementBatchAggregationStrategy();
+
+    @Test
+    void placesResultsByIndexAndReportsFailures() {
+        // Completed out of order, the failed item replied with a list as the route does
+        Exchange answer = strategy.aggregate(null, item(2, StatementProcessResponse.builder().status("Success")
+                .errorRows(new StatementProcessErrorRow[] { StatementProcessErrorRow.builder().messageId("msg-3")
+                        .errorCode("INVALID_DATE").build() })
+                .build()));
+        answer = strategy.aggregate(answer, item(0, StatementProcessResponse.builder().status("Success").build()));
+        answer = strategy.aggregate(answer, item(1, List.of(StatementProcessResponse.builder().status("Failed")
+                .errorMessage("File not found").build())));
+
+        StatementBatchResponse response = StatementBatchAggregationStrategy.toBatchResponse(answer, items(3));
+
+        assertEquals("Partial", response.getStatus());
+        assertEquals(2, response.getSuccessCount());
+        assertEquals(1, response.getFailureCount());
+        assertEquals(List.of("Success", "Failed", "Success"),
+                List.of(response.getResults()).stream().map(StatementProcessResponse::getStatus).toList());
+        assertEquals(2, response.getErrorRows().length);
+        assertEquals("msg-2", response.getErrorRows()[0].getMessageId());
+        assertEquals("File not found", response.getErrorRows()[0].getErrorMessage());
+        assertEquals("INVALID_DATE", response.getErrorRows()[1].getErrorCode());
+        assertNull(answer.getProperty(StatementBatchAggregationStrategy.BATCH_RESULTS));
+    }
+
+    @Test
+    void itemWithoutResponseFailsWithItsException() {
+        Exchange failed = item(0, null);
+        failed.setException(new IllegalStateException("Route stopped"));
+        Exchange answer = strategy.aggregate(null, failed);
+
+        StatementBatchResponse response = StatementBatchAggregationStrategy.toBatchResponse(answer, items(1));
+
+        assertEquals("Failed", response.getStatus());
+        assertEquals("Route stopped", response.getResults()[0].getErrorMessage());
+        // Handled here, the batch itself does not fail
+        assertNull(failed.getException());
+    }
+
+    @Test
+    void emptyBatchSucceeds() {
+        StatementBatchResponse response = StatementBatchAggregationStrategy
+                .toBatchResponse(new DefaultExchange(context), List.of());
+
+        assertEquals("Success", response.getStatus());
+        assertEquals(0, response.getResults().length);
+    }
+
+    private Exchange item(int index, Object body) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.setProperty(Exchange.SPLIT_INDEX, index);
+        exchange.getMessage().setBody(body);
+        return exchange;
+    }
+
+    private static List<StatementProcessRequest> items(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(i -> StatementProcessRequest.builder().messageId("msg-" + i).fileId("file-" + i).build())
+                .toList();
+    }
+}
@@ -0,0 +1,138 @@
+package com.agv.expenses.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the fetcher against a local stand-in for the Drive API and checks the
+ * number of round trips.
+ */
+class DriveFileFetcherTest {
+
+    private static final byte[] CONTENT = "%PDF-1.7 statement content".getBytes(StandardCharsets.US_ASCII);
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2025-04-01T10:00:00Z"), ZoneOffset.UTC);
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private DriveFileFetcher fetcher;
+    private String md5;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        md5 = HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(CONTENT));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        // Media is served below /download, metadata below /drive/v3/files
+        server.createContext("/", this::handle);
+        server.start();
+        Drive drive = new Drive.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), null)
+                .setRootUrl("http://localhost:" + server.getAddress().getPort() + "/")
+                .setApplicationName("drive-stand-in")
+                .build();
+        fetcher = new DriveFileFetcher();
+        ReflectionTestUtils.setField(fetcher, "driveService", drive);
+        ReflectionTestUtils.setField(fetcher, "metadataTtlSeconds", 300L);
+        ReflectionTestUtils.setField(fetcher, "metadataMaxEntries", 100);
+        ReflectionTestUtils.setField(fetcher, "clock", CLOCK);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void unknownFileIsDownloadedInOneRequest() throws Exception {
+        assertNull(fetcher.findContentKey("file-1"));
+        try (DriveFileFetcher.Download download = fetcher.download("file-1")) {
+            assertArrayEquals(CONTENT, download.readAllBytes());
+            assertEquals(md5, download.getContentKey());
+        }
+        assertEquals(List.of("media"), requests);
+    }
+
+    @Test
+    void knownFileIsRecognisedWithoutDrive() throws Exception {
+        try (DriveFileFetcher.Download download = fetcher.download("file-1")) {
+            download.readAllBytes();
+        }
+        requests.clear();
+        assertEquals(md5, fetcher.findContentKey("file-1"));
+        assertEquals(List.of(), requests);
+    }
+
+    @Test
+    void expiredMetadataIsRefreshedWithoutDownload() throws Exception {
+        try (DriveFileFetcher.Download download = fetcher.download("file-1")) {
+            download.readAllBytes();
+        }
+        requests.clear();
+        ReflectionTestUtils.setField(fetcher, "clock", Clock.offset(CLOCK, Duration.ofSeconds(299)));
+        assertEquals(md5, fetcher.findContentKey("file-1"));
+        assertEquals(List.of(), requests);
+
+        ReflectionTestUtils.setField(fetcher, "clock", Clock.offset(CLOCK, Duration.ofSeconds(300)));
+        assertEquals(md5, fetcher.findContentKey("file-1"));
+        assertEquals(List.of("metadata"), requests);
+    }
+
+    @Test
+    void zeroTtlChecksTheMetadataOnEveryRequest() throws Exception {
+        ReflectionTestUtils.setField(fetcher, "metadataTtlSeconds", 0L);
+        try (DriveFileFetcher.Download download = fetcher.download("file-1")) {
+            download.readAllBytes();
+        }
+        requests.clear();
+        assertEquals(md5, fetcher.findContentKey("file-1"));
+        assertEquals(md5, fetcher.findContentKey("file-1"));
+        assertEquals(List.of("metadata", "metadata"), requests);
+    }
+
+    private void handle(HttpExchange exchange) throws java.io.IOException {
+        String query = exchange.getRequestURI().getQuery();
+        byte[] body;
+        String contentType;
+        if (query != null && query.contains("alt=media")) {
+            requests.add("media");
+            body = CONTENT;
+            contentType = "application/pdf";
+        } else {
+            requests.add("metadata");
+            body = ("{\"id\":\"file-1\",\"md5Checksum\":\"" + md5 + "\",\"size\":\"" + CONTENT.length + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            contentType = "application/json";
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+        }
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
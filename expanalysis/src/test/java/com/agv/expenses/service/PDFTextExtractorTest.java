@@ -0,0 +1,91 @@
+package com.agv.expenses.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class PDFTextExtractorTest {
+
+    private static final String PASSWORD = "secret";
+
+    private DefaultCamelContext camelContext;
+    private PDFTextExtractor extractor;
+
+    @BeforeEach
+    void setUp() {
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        extractor = new PDFTextExtractor();
+        ReflectionTestUtils.setField(extractor, "camelContext", camelContext);
+        ReflectionTestUtils.setField(extractor, "threads", 4);
+        ReflectionTestUtils.setField(extractor, "parallelMinPages", 8);
+        ReflectionTestUtils.setField(extractor, "minPagesPerTask", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        camelContext.stop();
+    }
+
+    @Test
+    void parallelExtractionMatchesSingleStripper() throws Exception {
+        byte[] pdf = createStatement(23);
+        String expected;
+        try (PDDocument document = Loader.loadPDF(pdf, PASSWORD)) {
+            expected = new PDFTextStripper().getText(document);
+        }
+        assertTrue(expected.contains("UPI/2301/PAYEE 1"));
+        assertEquals(expected, extractor.extractText(pdf, PASSWORD));
+    }
+
+    @Test
+    void shortDocumentIsExtractedOnCallingThread() throws Exception {
+        byte[] pdf = createStatement(3);
+        String expected;
+        try (PDDocument document = Loader.loadPDF(pdf, PASSWORD)) {
+            expected = new PDFTextStripper().getText(document);
+        }
+        assertEquals(expected, extractor.extractText(pdf, PASSWORD));
+    }
+
+    private static byte[] createStatement(int pages) throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int pageNo = 1; pageNo <= pages; pageNo++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 10);
+                    content.newLineAtOffset(40, 750);
+                    for (int line = 1; line <= 30; line++) {
+                        content.showText(String.format("%02d-01-2025 UPI/%d%02d/PAYEE %d 1,%03d.00 52,114.%02d",
+                                line % 28 + 1, pageNo, line, line, pageNo * 7 % 1000, line));
+                        content.newLineAtOffset(0, -14);
+                    }
+                    content.endText();
+                }
+            }
+            document.protect(new StandardProtectionPolicy(PASSWORD, PASSWORD, new AccessPermission()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+}
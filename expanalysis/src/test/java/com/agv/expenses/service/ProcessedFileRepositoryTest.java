@@ -0,0 +1,56 @@
+package com.agv.expenses.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ProcessedFileRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void skipsUnchangedFilesAcrossRestartsAndReprocessesReplacedOnes() throws Exception {
+        Path statement = Files.writeString(dir.resolve("ICICI_StmtPDF.pdf"), "April statement");
+        String key = statement.toString();
+
+        ProcessedFileRepository first = open();
+        assertFalse(first.contains(key));
+        assertTrue(first.add(key));
+        assertTrue(first.contains(key));
+        first.closeFile();
+
+        ProcessedFileRepository second = open();
+        assertTrue(second.contains(key));
+        // Touched, same content
+        Files.setLastModifiedTime(statement, FileTime.fromMillis(Files.getLastModifiedTime(statement).toMillis()
+                + 60000));
+        assertTrue(second.contains(key));
+        // Replaced with another statement of the same name
+        Files.writeString(statement, "May statement, longer");
+        assertFalse(second.contains(key));
+        assertTrue(second.add(key));
+        assertTrue(second.remove(key));
+        second.closeFile();
+
+        ProcessedFileRepository third = open();
+        assertEquals(0, third.size());
+        assertFalse(third.contains(key));
+        third.closeFile();
+    }
+
+    private ProcessedFileRepository open() throws Exception {
+        ProcessedFileRepository repository = new ProcessedFileRepository();
+        ReflectionTestUtils.setField(repository, "dir", dir.resolve("state").toString());
+        ReflectionTestUtils.invokeMethod(repository, "open");
+        return repository;
+    }
+}
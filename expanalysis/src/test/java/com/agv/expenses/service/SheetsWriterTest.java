@@ -0,0 +1,324 @@
+package com.agv.expenses.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.model.SheetsWriteStats;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class SheetsWriterTest {
+
+    private HttpServer server;
+    private DefaultCamelContext camelContext;
+    private SheetsWriter writer;
+    // Rows per append call received by the stand-in
+    private final List<Integer> appends = new ArrayList<>();
+    private final AtomicInteger quotaErrors = new AtomicInteger();
+    // Appends that reach the sheet but answer with a server error
+    private final AtomicInteger lostResponses = new AtomicInteger();
+    // Order id cell of every row in the sheet, entered as by USER_ENTERED
+    private final List<Object> sheetOrderIds = new ArrayList<>();
+    // Range and payee cell of every row rewritten by a batch update
+    private final List<String> updates = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        writer = newWriter();
+    }
+
+    private SheetsWriter newWriter() {
+        SheetsWriter writer = new SheetsWriter();
+        ReflectionTestUtils.setField(writer, "sheets", new Sheets.Builder(new NetHttpTransport(),
+                GsonFactory.getDefaultInstance(), null)
+                .setRootUrl("http://localhost:" + server.getAddress().getPort() + "/").build());
+        ReflectionTestUtils.setField(writer, "camelContext", camelContext);
+        ReflectionTestUtils.setField(writer, "spreadsheetId", "sheet-1");
+        ReflectionTestUtils.setField(writer, "flushDelayMs", 20L);
+        ReflectionTestUtils.setField(writer, "maxBatchRows", 3);
+        ReflectionTestUtils.setField(writer, "initialBackoffMs", 1L);
+        ReflectionTestUtils.setField(writer, "maxBackoffMs", 5L);
+        return writer;
+    }
+
+    @AfterEach
+    void tearDown() {
+        camelContext.stop();
+        server.stop(0);
+    }
+
+    @Test
+    void coalescesStatementsIntoChunksAndRetriesQuotaErrors() throws Exception {
+        quotaErrors.set(2);
+        // Two statements within the flush delay
+        writer.submit(rows(2));
+        writer.submit(rows(5));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (writer.getStats().getRowsWritten() < 7 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        SheetsWriteStats stats = writer.getStats();
+        assertEquals(7, stats.getRowsWritten());
+        assertEquals(2, stats.getRetries());
+        assertEquals(0, stats.getPendingRows());
+        assertTrue(stats.getRowsPerSecond() > 0);
+        synchronized (appends) {
+            assertEquals(7, appends.stream().mapToInt(Integer::intValue).sum());
+            assertTrue(appends.stream().allMatch(size -> size <= 3), appends.toString());
+        }
+    }
+
+    @Test
+    void writesOncePerOrderIdAcrossRestarts(@TempDir Path dir) throws Exception {
+        SheetsWriter first = journaled(dir);
+        assertEquals(5, first.submit(orderRows(0, 5)));
+        assertEquals(2, first.submit(orderRows(3, 7)));
+        assertEquals(7, first.getStats().getPendingRows());
+        assertEquals(2, first.getStats().getDuplicateRows());
+
+        // Restarted before anything was written, the first chunk reaches the sheet but its response is lost
+        SheetsWriter second = journaled(dir);
+        assertEquals(7, second.getStats().getPendingRows());
+        ReflectionTestUtils.setField(second, "maxAttempts", 1);
+        ReflectionTestUtils.setField(second, "maxBatchRows", 3);
+        lostResponses.set(1);
+        assertEquals(0, second.flush());
+        assertEquals(3, sheetOrderIds.size());
+
+        // Restarted again, the possibly sent rows are found in the sheet and not sent again
+        SheetsWriter third = journaled(dir);
+        assertEquals(7, third.getStats().getPendingRows());
+        ReflectionTestUtils.setField(third, "maxBatchRows", 3);
+        assertEquals(4, third.flush());
+        assertEquals(0, third.getStats().getPendingRows());
+        assertEquals(0, third.submit(orderRows(0, 7)));
+        synchronized (appends) {
+            assertEquals(orderRows(0, 7).stream().map(row -> row.get(SheetsWriter.ORDER_ID_CELL)).toList(),
+                    sheetOrderIds);
+        }
+
+        SheetsWriter fourth = journaled(dir);
+        assertEquals(0, fourth.getStats().getPendingRows());
+        assertEquals(1, fourth.submit(orderRows(6, 8)));
+    }
+
+    @Test
+    void findsOrderIdsEnteredAsNumbers(@TempDir Path dir) throws Exception {
+        SheetsWriter first = journaled(dir);
+        first.submit(List.of(orderRow("412345678901"), orderRow("000123")));
+        ReflectionTestUtils.setField(first, "maxAttempts", 1);
+        lostResponses.set(1);
+        assertEquals(0, first.flush());
+        synchronized (appends) {
+            // Sent as text
+            assertEquals(List.of("412345678901", "000123"), sheetOrderIds);
+            // As rows written before would hold them
+            sheetOrderIds.replaceAll(orderId -> new BigDecimal(orderId.toString()));
+        }
+
+        SheetsWriter second = journaled(dir);
+        assertEquals(2, second.getStats().getPendingRows());
+        assertEquals(0, second.flush());
+        assertEquals(0, second.getStats().getPendingRows());
+        assertEquals(2, second.getStats().getRowsWritten());
+        synchronized (appends) {
+            assertEquals(1, appends.size());
+        }
+    }
+
+    @Test
+    void rewritesRowsByOrderId() throws Exception {
+        writer.submit(orderRows(0, 3));
+        List<Object> enriched = new ArrayList<>(orderRows(1, 2).get(0));
+        enriched.set(4, "SWIGGY 1 | HDFC");
+
+        // The queued rows are written first
+        assertEquals(1, writer.update(List.of(enriched, orderRow("ORD9999"))));
+        synchronized (appends) {
+            assertEquals(List.of("Sheet1!A2=SWIGGY 1 | HDFC"), updates);
+        }
+        assertEquals(3, writer.getStats().getRowsWritten());
+    }
+
+    @Test
+    void dropsRowsWhenTheClientFails() {
+        ReflectionTestUtils.setField(writer, "sheets", new Sheets(new NetHttpTransport(),
+                GsonFactory.getDefaultInstance(), null) {
+            @Override
+            public Spreadsheets spreadsheets() {
+                throw new IllegalStateException("No credentials");
+            }
+        });
+        writer.submit(rows(2));
+        assertEquals(0, writer.flush());
+
+        SheetsWriteStats stats = writer.getStats();
+        assertEquals(2, stats.getFailedRows());
+        assertEquals(0, stats.getPendingRows());
+    }
+
+    @Test
+    void normalizesOrderIds() {
+        assertEquals("412345678901", SheetsWriter.normalizeOrderId(new BigDecimal("412345678901")));
+        assertEquals("412345678901", SheetsWriter.normalizeOrderId(4.12345678901E11));
+        assertEquals("123", SheetsWriter.normalizeOrderId("'000123"));
+        assertEquals("0", SheetsWriter.normalizeOrderId("000"));
+        assertEquals("ORD1000", SheetsWriter.normalizeOrderId(" ORD1000 "));
+        assertEquals(null, SheetsWriter.normalizeOrderId(""));
+    }
+
+    @Test
+    void splitsOnBytes() {
+        ReflectionTestUtils.setField(writer, "maxBatchRows", 100);
+        ReflectionTestUtils.setField(writer, "maxBatchBytes", 150L);
+        List<List<Object>> rows = new ArrayList<>(rows(3));
+        rows.add(1, List.of("x".repeat(500)));
+        assertEquals(List.of(1, 1, 2), writer.chunk(rows, row -> row).stream().map(List::size).toList());
+    }
+
+    private SheetsWriter journaled(Path dir) throws Exception {
+        SheetsWriter journaled = newWriter();
+        ReflectionTestUtils.setField(journaled, "queueDir", dir.toString());
+        // Flushed by the test only
+        ReflectionTestUtils.setField(journaled, "flushDelayMs", 60000L);
+        ReflectionTestUtils.setField(journaled, "maxBatchRows", 100);
+        ReflectionTestUtils.setField(journaled, "maxBackoffMs", 60000L);
+        ReflectionTestUtils.setField(journaled, "initialBackoffMs", 1L);
+        ReflectionTestUtils.invokeMethod(journaled, "init");
+        return journaled;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body;
+        // The client compresses larger request bodies
+        boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        try (InputStream in = gzip ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if ("GET".equals(exchange.getRequestMethod())) {
+            boolean unformatted = String.valueOf(exchange.getRequestURI().getQuery())
+                    .contains("valueRenderOption=UNFORMATTED_VALUE");
+            JsonArray values = new JsonArray();
+            synchronized (appends) {
+                sheetOrderIds.forEach(orderId -> {
+                    JsonArray row = new JsonArray();
+                    if (!(orderId instanceof BigDecimal number)) {
+                        row.add(orderId.toString());
+                    } else if (unformatted) {
+                        row.add(new JsonPrimitive(number));
+                    } else {
+                        // Automatic number format of a large number
+                        row.add(new DecimalFormat("0.#####E0").format(number));
+                    }
+                    values.add(row);
+                });
+            }
+            send(exchange, 200, "{\"range\":\"Sheet1!I1:I" + Math.max(values.size(), 1) + "\",\"values\":"
+                    + values + "}");
+        } else if (exchange.getRequestURI().getPath().endsWith(":batchUpdate")) {
+            for (JsonElement data : JsonParser.parseString(body).getAsJsonObject().getAsJsonArray("data")) {
+                JsonObject range = data.getAsJsonObject();
+                synchronized (appends) {
+                    updates.add(range.get("range").getAsString() + "="
+                            + range.getAsJsonArray("values").get(0).getAsJsonArray().get(4).getAsString());
+                }
+            }
+            send(exchange, 200, "{\"spreadsheetId\":\"sheet-1\"}");
+        } else if (!exchange.getRequestURI().getPath().endsWith(":append")) {
+            send(exchange, 404, "{\"error\":{\"code\":404,\"message\":\"Not found\"}}");
+        } else if (quotaErrors.getAndDecrement() > 0) {
+            send(exchange, 429, "{\"error\":{\"code\":429,\"message\":\"Quota exceeded\",\"status\":"
+                    + "\"RESOURCE_EXHAUSTED\"}}");
+        } else {
+            JsonArray rows = JsonParser.parseString(body).getAsJsonObject().getAsJsonArray("values");
+            synchronized (appends) {
+                appends.add(rows.size());
+                for (JsonElement row : rows) {
+                    JsonArray cells = row.getAsJsonArray();
+                    if (cells.size() > SheetsWriter.ORDER_ID_CELL) {
+                        sheetOrderIds.add(enter(cells.get(SheetsWriter.ORDER_ID_CELL).getAsString()));
+                    }
+                }
+            }
+            if (lostResponses.getAndDecrement() > 0) {
+                send(exchange, 500, "{\"error\":{\"code\":500,\"message\":\"Internal error\"}}");
+            } else {
+                send(exchange, 200, "{\"spreadsheetId\":\"sheet-1\"}");
+            }
+        }
+    }
+
+    /**
+     * @return the cell value the sheet keeps for user entered text
+     */
+    private static Object enter(String text) {
+        if (text.startsWith("'")) {
+            return text.substring(1);
+        }
+        return text.matches("[0-9]+") ? new BigDecimal(text) : text;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static List<List<Object>> orderRows(int from, int to) {
+        List<List<Object>> rows = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            rows.add(List.of("07/04/2025", "ICICI", "UPI", "", "SWIGGY " + i, "450.00", "", "XX1234",
+                    "ORD" + (1000 + i)));
+        }
+        return rows;
+    }
+
+    private static List<Object> orderRow(String orderId) {
+        return List.of("07/04/2025", "ICICI", "UPI", "", "SWIGGY", "450.00", "", "XX1234", orderId);
+    }
+
+    private static List<List<Object>> rows(int count) {
+        List<List<Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(List.of("07/04/2025", "ICICI", "UPI", "", "SWIGGY " + i, "450.00"));
+        }
+        return rows;
+    }
+}
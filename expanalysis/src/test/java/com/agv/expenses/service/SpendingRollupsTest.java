@@ -0,0 +1,84 @@
+package com.agv.expenses.service;
+
+import static com.agv.expenses.service.TestTransactions.txn;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.SpendingRollups.GroupBy;
+import com.agv.expenses.service.SpendingRollups.Period;
+import com.agv.expenses.service.model.SpendingRollup;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+
+class SpendingRollupsTest {
+
+    @Test
+    void totalsFollowTheStore() {
+        SpendingRollups rollups = new SpendingRollups();
+        TransactionStore store = new TransactionStore();
+        ReflectionTestUtils.setField(store, "spendingRollups", rollups);
+        // Not opened, rows pass through
+        ReflectionTestUtils.setField(store, "ledger", new TransactionLedger());
+        List<TransactionRecord> statement = List.of(
+                txn("2025-03-31", 10000, "XXXXXXXX4990", "SWIGGY", TransactionType.DEBIT),
+                txn("2025-04-01", 25050, "XXXXXXXX4990", "SWIGGY", TransactionType.DEBIT),
+                txn("2025-04-20", 500000, "XXXXXXXX4990", "SALARY", TransactionType.CREDIT),
+                txn("2025-04-02", 99900, "XXXXXXXX0793", "KSEB", TransactionType.DEBIT));
+        store.add("statement-1", statement);
+        store.add("statement-1", statement);
+
+        List<SpendingRollup> months = rollups.query(Period.MONTH, GroupBy.NONE, null, null, null);
+        assertEquals(2, months.size());
+        assertEquals("2025-04", months.get(1).getPeriod());
+        assertEquals("1249.50", months.get(1).getDebitTotal());
+        assertEquals(2, months.get(1).getDebitCount());
+        assertEquals("5000.00", months.get(1).getCreditTotal());
+
+        List<SpendingRollup> swiggy = rollups.query(Period.DAY, GroupBy.PAYEE, "SWIGGY",
+                LocalDate.of(2025, 4, 1), LocalDate.of(2025, 4, 30));
+        assertEquals(1, swiggy.size());
+        assertEquals("2025-04-01", swiggy.get(0).getPeriod());
+        assertEquals("250.50", swiggy.get(0).getDebitTotal());
+
+        List<SpendingRollup> accounts = rollups.query(Period.ALL, GroupBy.ACCOUNT, null, null, null);
+        assertEquals(List.of("XXXXXXXX0793", "XXXXXXXX4990"),
+                accounts.stream().map(SpendingRollup::getGroup).toList());
+        assertEquals("350.50", accounts.get(1).getDebitTotal());
+    }
+
+    @Test
+    void dateRangeOverAllGroupsIsOrderedByGroupAndPeriod() {
+        SpendingRollups rollups = new SpendingRollups();
+        rollups.add(List.of(
+                txn("2025-04-03", 30000, "ZOMATO", TransactionType.DEBIT),
+                txn("2025-04-01", 10000, "ZOMATO", TransactionType.DEBIT),
+                txn("2025-04-02", 20000, "AMAZON", TransactionType.DEBIT),
+                txn("2025-03-31", 40000, "AMAZON", TransactionType.DEBIT),
+                txn("2025-05-01", 50000, "KSEB", TransactionType.DEBIT)));
+
+        List<SpendingRollup> days = rollups.query(Period.DAY, GroupBy.PAYEE, null, LocalDate.of(2025, 4, 1),
+                LocalDate.of(2025, 4, 30));
+        assertEquals(List.of("AMAZON 2025-04-02", "ZOMATO 2025-04-01", "ZOMATO 2025-04-03"),
+                days.stream().map(rollup -> rollup.getGroup() + " " + rollup.getPeriod()).toList());
+        // The same totals as without a range
+        assertEquals(rollups.query(Period.DAY, GroupBy.PAYEE, null, null, null).stream()
+                .filter(rollup -> rollup.getPeriod().startsWith("2025-04")).toList(), days);
+        assertEquals(List.of("2025-04"), rollups.query(Period.MONTH, GroupBy.NONE, null, LocalDate.of(2025, 4, 15),
+                LocalDate.of(2025, 4, 15)).stream().map(SpendingRollup::getPeriod).toList());
+    }
+
+    @Test
+    void rejectsADateRangeForTheOverallTotal() {
+        SpendingRollups rollups = new SpendingRollups();
+        assertThrows(IllegalArgumentException.class, () -> rollups.query(Period.ALL, GroupBy.NONE, null,
+                LocalDate.of(2025, 4, 1), null));
+        assertThrows(IllegalArgumentException.class, () -> rollups.query(Period.ALL, GroupBy.NONE, null,
+                null, LocalDate.of(2025, 4, 30)));
+    }
+}
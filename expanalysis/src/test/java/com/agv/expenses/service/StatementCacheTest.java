@@ -0,0 +1,128 @@
+package com.agv.expenses.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.model.CacheStats;
+import com.agv.expenses.service.model.ParsedStatement;
+import com.agv.expenses.service.model.TransactionRecord;
+
+class StatementCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void memoryTierEvictsTheLeastRecentlyUsedEntry() throws IOException {
+        StatementCache cache = open(2, false);
+        cache.putText("a", "text a");
+        cache.putText("b", "text b");
+        assertEquals("text a", cache.getText("a"));
+        cache.putText("c", "text c");
+
+        assertNull(cache.getText("b"));
+        assertEquals("text a", cache.getText("a"));
+        assertEquals("text c", cache.getText("c"));
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.getMemoryEntries());
+        assertEquals(1, stats.getMemoryEvictions());
+        assertEquals(3, stats.getMemoryHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0, stats.getDiskEntries());
+    }
+
+    @Test
+    void diskTierServesEntriesEvictedFromMemoryAndSurvivesRestarts() throws IOException {
+        StatementCache cache = open(1, true);
+        String resultKey = StatementCache.resultKey("md5-1", "parser", "1");
+        cache.putResult(resultKey, ParsedStatement.builder()
+                .rows(new TransactionRecord[] { TransactionRecord.builder().paidTo("SHOP").build() }).build());
+        cache.putText(StatementCache.textKey("md5-1"), "statement text");
+
+        // Evicted from memory by the text, read back from disk
+        assertEquals("SHOP", cache.getResult(resultKey).getRows()[0].getPaidTo());
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getDiskHits());
+        assertEquals(2, stats.getDiskEntries());
+        assertTrue(stats.getDiskBytes() > 0);
+
+        StatementCache restarted = open(1, true);
+        assertEquals("statement text", restarted.getText(StatementCache.textKey("md5-1")));
+        assertEquals(stats.getDiskBytes(), restarted.getStats().getDiskBytes());
+        // A parser version bump misses the result but still finds the text
+        assertNull(restarted.getResult(StatementCache.resultKey("md5-1", "parser", "2")));
+    }
+
+    @Test
+    void diskTierEvictsTheOldestFilesAboveItsLimit() throws IOException {
+        StatementCache cache = open(0, true);
+        cache.putText("a", "statement text a");
+        cache.putText("b", "statement text b");
+        Instant now = Instant.now();
+        Files.setLastModifiedTime(file("a"), FileTime.from(now.minus(2, ChronoUnit.HOURS)));
+        Files.setLastModifiedTime(file("b"), FileTime.from(now.minus(1, ChronoUnit.HOURS)));
+        long twoFiles = cache.getStats().getDiskBytes();
+        ReflectionTestUtils.setField(cache, "maxDiskBytes", twoFiles + twoFiles / 4);
+
+        cache.putText("c", "statement text c");
+
+        assertFalse(Files.exists(file("a")));
+        assertNull(cache.getText("a"));
+        assertEquals("statement text b", cache.getText("b"));
+        assertEquals("statement text c", cache.getText("c"));
+        assertEquals(1, cache.getStats().getDiskEvictions());
+        assertEquals(2, cache.getStats().getDiskEntries());
+    }
+
+    @Test
+    void discardsUnreadableDiskEntries() throws IOException {
+        StatementCache cache = open(0, true);
+        cache.putText("a", "statement text a");
+        Files.writeString(file("a"), "not gzip");
+
+        assertNull(cache.getText("a"));
+        assertFalse(Files.exists(file("a")));
+        assertEquals(0, cache.getStats().getDiskEntries());
+    }
+
+    @Test
+    void diskTierIsReadableByItsOwnerOnly() throws IOException {
+        Assumptions.assumeTrue(dir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxr-xr-x"));
+        StatementCache cache = open(0, true);
+        cache.putText("a", "statement text a");
+
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file("a"))));
+    }
+
+    private StatementCache open(int maxMemoryEntries, boolean diskEnabled) throws IOException {
+        StatementCache cache = new StatementCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxMemoryEntries", maxMemoryEntries);
+        ReflectionTestUtils.setField(cache, "diskEnabled", diskEnabled);
+        ReflectionTestUtils.setField(cache, "diskDir", dir.toString());
+        ReflectionTestUtils.setField(cache, "maxDiskBytes", Long.MAX_VALUE);
+        cache.init();
+        return cache;
+    }
+
+    private Path file(String key) {
+        return dir.resolve(ReflectionTestUtils.<String>invokeMethod(StatementCache.class, "fileName", key));
+    }
+}
@@ -0,0 +1,114 @@
+package com.agv.expenses.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class StatementDocumentLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private StatementDocumentLoader loader;
+    private byte[] pdf;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        loader = new StatementDocumentLoader();
+        ReflectionTestUtils.setField(loader, "diskBacked", true);
+        ReflectionTestUtils.setField(loader, "maxMainMemoryBytes", 1024L);
+        ReflectionTestUtils.setField(loader, "tempDir", tempDir.toString());
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            document.addPage(new PDPage());
+            document.addPage(new PDPage());
+            document.save(out);
+            pdf = out.toByteArray();
+        }
+    }
+
+    @Test
+    void keepsDownloadsUpToTheThresholdInMemory() throws IOException {
+        ReflectionTestUtils.setField(loader, "diskThresholdBytes", (long) pdf.length);
+        try (StatementDocument document = loader.load(new ByteArrayInputStream(pdf))) {
+            assertFalse(document.isFileBacked());
+            assertEquals(pdf.length, document.size());
+            assertEquals(2, pageCount(document));
+        }
+        assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    void spoolsLargerDownloadsToATempFileDeletedOnClose() throws IOException {
+        ReflectionTestUtils.setField(loader, "diskThresholdBytes", 64L);
+        try (StatementDocument document = loader.load(new ByteArrayInputStream(pdf))) {
+            assertTrue(document.isFileBacked());
+            assertEquals(pdf.length, document.size());
+            assertArrayEquals("%PDF".getBytes(StandardCharsets.US_ASCII), document.readHeader(4));
+            assertEquals(2, pageCount(document));
+            assertEquals(1, tempFiles().size());
+        }
+        assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    void deletesTheTempFileOfAFailedDownload() {
+        ReflectionTestUtils.setField(loader, "diskThresholdBytes", 64L);
+        InputStream broken = new SequenceInputStream(new ByteArrayInputStream(pdf), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        });
+        assertThrows(IOException.class, () -> loader.load(broken));
+        assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    void usesFilesInPlace() throws IOException {
+        Path file = Files.write(tempDir.resolve("statement.pdf"), pdf);
+        try (StatementDocument document = loader.load(file)) {
+            assertTrue(document.isFileBacked());
+            assertEquals(2, pageCount(document));
+        }
+        assertTrue(Files.exists(file));
+
+        ReflectionTestUtils.setField(loader, "diskBacked", false);
+        try (StatementDocument document = loader.load(file)) {
+            assertFalse(document.isFileBacked());
+            assertEquals(2, pageCount(document));
+        }
+    }
+
+    private static int pageCount(StatementDocument document) throws IOException {
+        try (PDDocument opened = document.open(null)) {
+            return opened.getNumberOfPages();
+        }
+    }
+
+    private List<Path> tempFiles() {
+        try (var files = Files.list(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("statement-")).toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.agv.expenses.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
+import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
+import org.apache.pdfbox.pdmodel.encryption.StandardProtectionPolicy;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.processor.ICICISacStmtPDFProcessor;
+import com.agv.expenses.processor.ICICITransactionProcessor;
+import com.agv.expenses.processor.PhonePePDFProcessorGSheets;
+import com.agv.expenses.processor.SBIPDFStatementProcessor;
+
+class StatementParserRegistryTest {
+
+    private static final String ICICI_PASSWORD = "icici-secret";
+    private static final String SBI_PASSWORD = "sbi-secret";
+
+    private StatementParserRegistry registry;
+    private ICICISacStmtPDFProcessor iciciProcessor;
+    private SBIPDFStatementProcessor sbiProcessor;
+    private PhonePePDFProcessorGSheets phonePeProcessor;
+    private ICICITransactionProcessor excelProcessor;
+
+    @BeforeEach
+    void setUp() {
+        iciciProcessor = new ICICISacStmtPDFProcessor();
+        ReflectionTestUtils.setField(iciciProcessor, "pdfPassword", ICICI_PASSWORD);
+        sbiProcessor = new SBIPDFStatementProcessor();
+        ReflectionTestUtils.setField(sbiProcessor, "pdfPassword", SBI_PASSWORD);
+        phonePeProcessor = new PhonePePDFProcessorGSheets();
+        excelProcessor = new ICICITransactionProcessor();
+        registry = new StatementParserRegistry();
+        ReflectionTestUtils.setField(registry, "parsers",
+                List.of(iciciProcessor, sbiProcessor, phonePeProcessor, excelProcessor));
+    }
+
+    @Test
+    void detectsFormatAndPasswordFromFirstPage() throws Exception {
+        StatementParserRegistry.Detection detection = registry.detect(document(createPdf(SBI_PASSWORD,
+                "STATE BANK OF INDIA", "Date Transaction Reference Ref.No./Chq.No. Credit Debit Balance")));
+        assertSame(sbiProcessor, detection.parser());
+        assertEquals(SBI_PASSWORD, detection.password());
+
+        detection = registry.detect(document(createPdf(ICICI_PASSWORD, "Savings A/c XXXXXXXX4990 INR",
+                "DATE MODE PARTICULARS DEPOSITS WITHDRAWALS BALANCE")));
+        assertSame(iciciProcessor, detection.parser());
+        assertEquals(ICICI_PASSWORD, detection.password());
+
+        detection = registry.detect(document(createPdf(null, "Transaction Statement for 98XXXXXX10")));
+        assertSame(phonePeProcessor, detection.parser());
+    }
+
+    @Test
+    void detectsExcelFromHeaderAndSheet() throws Exception {
+        StatementParserRegistry.Detection detection = registry.detect(document(workbook(new HSSFWorkbook(),
+                "OpTransactionHistory")));
+        assertSame(excelProcessor, detection.parser());
+        assertNull(detection.password());
+        assertSame(excelProcessor, registry.detect(document(workbook(new XSSFWorkbook(), "Summary",
+                "OpTransactionHistory"))).parser());
+    }
+
+    @Test
+    void rejectsOtherWorkbooksAndArchives() throws Exception {
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.detect(document(workbook(new HSSFWorkbook(), "Sheet1"))));
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.detect(document(workbook(new XSSFWorkbook(), "Sheet1"))));
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            out.putNextEntry(new ZipEntry("readme.txt"));
+            out.write("Not a workbook".getBytes(StandardCharsets.UTF_8));
+        }
+        assertThrows(IllegalArgumentException.class, () -> registry.detect(document(zip.toByteArray())));
+    }
+
+    @Test
+    void rejectsUnknownStatements() throws Exception {
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.detect(document(createPdf(null, "Some other bank"))));
+        assertThrows(InvalidPasswordException.class,
+                () -> registry.detect(document(createPdf("unknown", "STATE BANK OF INDIA"))));
+    }
+
+    private static byte[] workbook(Workbook workbook, String... sheetNames) throws Exception {
+        try (workbook; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (String sheetName : sheetNames) {
+                workbook.createSheet(sheetName).createRow(0).createCell(0).setCellValue(sheetName);
+            }
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static StatementDocument document(byte[] content) {
+        return StatementDocument.ofBytes(content, IOUtils.createMemoryOnlyStreamCache());
+    }
+
+    private static byte[] createPdf(String password, String... lines) throws Exception {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 10);
+                content.newLineAtOffset(40, 750);
+                for (String line : lines) {
+                    content.showText(line);
+                    content.newLineAtOffset(0, -14);
+                }
+                content.endText();
+            }
+            if (password != null) {
+                document.protect(new StandardProtectionPolicy(password + "-owner", password, new AccessPermission()));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+}
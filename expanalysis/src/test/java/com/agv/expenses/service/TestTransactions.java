@@ -0,0 +1,44 @@
+package com.agv.expenses.service;
+
+import java.time.LocalDate;
+
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+import com.agv.expenses.util.ExpenseUtil;
+
+/**
+ * Transaction rows shared by the tests of the store and the services built on
+ * it.
+ */
+final class TestTransactions {
+
+    static final String ACCOUNT = "XXXXXXXX4990";
+
+    private TestTransactions() {
+    }
+
+    static TransactionRecord txn(String date, long amountPaise, String account, String paidTo,
+            TransactionType type) {
+        return TransactionRecord.builder().date(LocalDate.parse(date)).amountPaise(amountPaise)
+                .account(account).paidTo(paidTo).type(type).build();
+    }
+
+    static TransactionRecord txn(String date, long amountPaise, String paidTo, TransactionType type) {
+        return txn(date, amountPaise, ACCOUNT, paidTo, type);
+    }
+
+    /**
+     * Debit of 10 April 2025 with the given order id, null for a row without
+     * reference.
+     */
+    static TransactionRecord payment(String orderId, long amountPaise, String paidTo) {
+        return txn("2025-04-10", amountPaise, paidTo, TransactionType.DEBIT).toBuilder().orderId(orderId).build();
+    }
+
+    /**
+     * PhonePe payment of 10 April 2025 with the given UTR.
+     */
+    static TransactionRecord phonePe(String utr, long amountPaise, String paidTo) {
+        return payment(utr, amountPaise, paidTo).toBuilder().from(ExpenseUtil.PHONEPE_SENDER).message(utr).build();
+    }
+}
@@ -0,0 +1,89 @@
+package com.agv.expenses.service;
+
+import static com.agv.expenses.service.TestTransactions.txn;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.model.TransactionQuery;
+import com.agv.expenses.service.model.TransactionType;
+
+class TransactionExportServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void exportsFilteredRowsOfAllStatements() throws IOException {
+        TransactionLedger ledger = new TransactionLedger();
+        ReflectionTestUtils.setField(ledger, "dir", dir.resolve("ledger").toString());
+        ReflectionTestUtils.setField(ledger, "fsync", false);
+        ledger.init();
+        ledger.append("statement-1", List.of(
+                txn("2023-04-10", 45000, "SWIGGY, \"BLR\"", TransactionType.DEBIT),
+                txn("2024-01-05", 250000, "SALARY", TransactionType.CREDIT)));
+        ledger.append("statement-2", List.of(
+                txn("2025-04-10", 9900, "JIO\nPREPAID", TransactionType.DEBIT)));
+        TransactionExportService service = new TransactionExportService();
+        ReflectionTestUtils.setField(service, "ledger", ledger);
+        ReflectionTestUtils.setField(service, "dir", dir.resolve("exports").toString());
+
+        TransactionExportService.ExportedFile exported = service.exportToFile(
+                TransactionQuery.builder().type(TransactionType.DEBIT).build(), true);
+        ledger.close();
+
+        assertEquals(2, exported.rows());
+        assertTrue(exported.file().getFileName().toString().endsWith(".csv.gz"));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(exported.file()))) {
+            assertEquals("Date,From,To,Subject,Paid To,Amount,Body Cleaned,Subscriber ID,Order ID,Link,Message,"
+                    + "Transaction Flag\r\n"
+                    + "10-Apr-2023,,,,\"SWIGGY, \"\"BLR\"\"\",450.00,,XXXXXXXX4990,,,,DEBIT\r\n"
+                    + "10-Apr-2025,,,,\"JIO\nPREPAID\",99.00,,XXXXXXXX4990,,,,DEBIT\r\n",
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        // Only the final file is left behind
+        try (var files = Files.list(dir.resolve("exports"))) {
+            assertEquals(List.of(exported.file()), files.toList());
+        }
+    }
+
+    @Test
+    void escapesFormulasAndNamesEachFileUniquely() throws IOException {
+        TransactionLedger ledger = new TransactionLedger();
+        ReflectionTestUtils.setField(ledger, "dir", dir.resolve("ledger").toString());
+        ReflectionTestUtils.setField(ledger, "fsync", false);
+        ledger.init();
+        ledger.append("statement-1", List.of(
+                txn("2025-04-10", 45000, "=HYPERLINK(\"http://x\")", TransactionType.DEBIT),
+                txn("2025-04-11", 9900, "@SUM(A1)", TransactionType.DEBIT),
+                txn("2025-04-12", -5000, "-REFUND", TransactionType.CREDIT)));
+        TransactionExportService service = new TransactionExportService();
+        ReflectionTestUtils.setField(service, "ledger", ledger);
+        ReflectionTestUtils.setField(service, "dir", dir.resolve("exports").toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export(TransactionQuery.builder().build(), out, false);
+        assertEquals(List.of("10-Apr-2025,,,,\"'=HYPERLINK(\"\"http://x\"\")\",450.00,,XXXXXXXX4990,,,,DEBIT",
+                "11-Apr-2025,,,,'@SUM(A1),99.00,,XXXXXXXX4990,,,,DEBIT",
+                "12-Apr-2025,,,,'-REFUND,-50.00,,XXXXXXXX4990,,,,CREDIT"),
+                out.toString(StandardCharsets.UTF_8).lines().skip(1).toList());
+
+        // Exports of the same second
+        Path first = service.exportToFile(TransactionQuery.builder().build(), false).file();
+        Path second = service.exportToFile(TransactionQuery.builder().build(), false).file();
+        ledger.close();
+        assertTrue(Files.exists(first) && Files.exists(second) && !first.equals(second));
+    }
+}
@@ -0,0 +1,152 @@
+package com.agv.expenses.service;
+
+import static com.agv.expenses.service.TestTransactions.payment;
+import static com.agv.expenses.service.TestTransactions.phonePe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.util.LongHashSet;
+
+class TransactionLedgerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void skipsRecordedRowsAcrossRestarts() throws IOException {
+        TransactionLedger ledger = open();
+        assertEquals(3, ledger.append("statement-1", List.of(
+                payment("412345678901", 45000, "SWIGGY"),
+                payment("412345678902", 120000, "KSEB"),
+                payment(null, 5000, "CHARGES"))).size());
+        ledger.close();
+
+        ledger = open();
+        // Same statement again: nothing new
+        assertEquals(0, ledger.append("statement-1", List.of(payment(null, 5000, "CHARGES"))).size());
+        // An overlapping statement only adds the new payment
+        List<TransactionRecord> added = ledger.append("statement-2", List.of(
+                payment("412345678902", 120000, "KSEB"),
+                payment("412345678903", 9900, "JIO"),
+                payment(null, 5000, "charges ")));
+        assertEquals(List.of("JIO"), added.stream().map(TransactionRecord::getPaidTo).toList());
+
+        List<TransactionRecord> replayed = new ArrayList<>();
+        ledger.replay((sourceKey, records) -> replayed.addAll(records));
+        assertEquals(4, replayed.size());
+        assertEquals(payment("412345678901", 45000, "SWIGGY"), replayed.get(0));
+        ledger.close();
+    }
+
+    @Test
+    void skipsStatementsAppendedBefore() throws IOException {
+        TransactionLedger ledger = open();
+        ledger.append("statement-1", List.of(payment("412345678901", 45000, "SWIGGY")));
+        ledger.close();
+
+        ledger = open();
+        // Rows of a statement appended before are not looked at again, even ones not recorded
+        assertEquals(0, ledger.append("statement-1", List.of(payment("412345678902", 120000, "KSEB"))).size());
+        assertEquals(1, ledger.append("statement-2", List.of(payment("412345678902", 120000, "KSEB"))).size());
+        ledger.close();
+    }
+
+    @Test
+    void keepsIdenticalRowsOfOneStatement() throws IOException {
+        TransactionLedger ledger = open();
+        TransactionRecord tea = payment(null, 2000, "TEA STALL");
+        assertEquals(2, ledger.append("statement-1", List.of(tea, tea)).size());
+        // The next statement overlaps that day and has a third one
+        assertEquals(1, ledger.append("statement-2", List.of(tea, tea, tea)).size());
+        ledger.close();
+    }
+
+    @Test
+    void cutsOffTornBatch() throws IOException {
+        TransactionLedger ledger = open();
+        ledger.append("statement-1", List.of(payment("412345678901", 45000, "SWIGGY")));
+        ledger.append("statement-2", List.of(payment("412345678902", 120000, "KSEB")));
+        // Crash without compaction, half of the last batch made it to disk
+        ReflectionTestUtils.setField(ledger, "batchesSinceCompaction", 0);
+        ledger.close();
+        Path log = dir.resolve("transactions.wal");
+        long size = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 10);
+        }
+
+        ledger = open();
+        assertEquals(1, ledger.append("statement-2", List.of(payment("412345678902", 120000, "KSEB"))).size());
+        List<String> sourceKeys = new ArrayList<>();
+        ledger.replay((sourceKey, records) -> sourceKeys.add(sourceKey));
+        assertEquals(List.of("statement-1", "statement-2"), sourceKeys);
+        ledger.close();
+    }
+
+    @Test
+    void appliesPayeeUpdatesToTheRowsRecordedBefore() throws IOException {
+        TransactionLedger ledger = open();
+        ledger.append("phonepe-1", List.of(phonePe("T1", 45000, "SHOP"), phonePe("T2", 9900, "CAFE"),
+                payment(null, 45000, "SHOP").toBuilder().message("T1").build()));
+        ledger.appendPayees(Map.of("T1", "SHOP | SWIGGY"));
+        ledger.close();
+
+        ledger = open();
+        Map<String, String> payees = new HashMap<>();
+        ledger.replay((sourceKey, records) -> {
+        }, payees::putAll);
+        assertEquals(Map.of("T1", "SHOP | SWIGGY"), payees);
+        List<String> read = new ArrayList<>();
+        ledger.read(records -> records.forEach(record -> read.add(record.getPaidTo())));
+        // Only the PhonePe row with that UTR
+        assertEquals(List.of("SHOP | SWIGGY", "CAFE", "SHOP"), read);
+        // The rows are still recorded, the enriched copy is not new
+        assertEquals(0, ledger.append("phonepe-2", List.of(phonePe("T1", 45000, "SHOP | SWIGGY"))).size());
+        ledger.close();
+    }
+
+    @Test
+    void recordsAStatementAppendedInBatchesWithItsLastBatch() throws IOException {
+        TransactionLedger ledger = open();
+        TransactionRecord tea = payment(null, 2000, "TEA STALL");
+        LongHashSet statementKeys = new LongHashSet();
+        assertEquals(2, ledger.append("statement-1", List.of(tea, tea), statementKeys, false).size());
+        // Identical rows of the same statement in the next batch are kept
+        assertEquals(1, ledger.append("statement-1", List.of(tea), statementKeys, false).size());
+        ledger.close();
+
+        // Cut off before its last batch, the statement is appended again without the rows recorded
+        ledger = open();
+        statementKeys = new LongHashSet();
+        assertEquals(1, ledger.append("statement-1", List.of(tea, tea, tea, tea), statementKeys, true).size());
+        assertEquals(0, ledger.append("statement-1", List.of(payment(null, 100, "NEW")), new LongHashSet(), true)
+                .size());
+        List<String> sourceKeys = new ArrayList<>();
+        ledger.replay((sourceKey, records) -> sourceKeys.add(sourceKey));
+        assertEquals(Arrays.asList(null, null, "statement-1"), sourceKeys);
+        ledger.close();
+    }
+
+    private TransactionLedger open() throws IOException {
+        TransactionLedger ledger = new TransactionLedger();
+        ReflectionTestUtils.setField(ledger, "dir", dir.toString());
+        ReflectionTestUtils.setField(ledger, "fsync", false);
+        ledger.init();
+        return ledger;
+    }
+}
@@ -0,0 +1,154 @@
+package com.agv.expenses.service;
+
+import static com.agv.expenses.service.TestTransactions.phonePe;
+import static com.agv.expenses.service.TestTransactions.txn;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.agv.expenses.service.SpendingRollups.GroupBy;
+import com.agv.expenses.service.SpendingRollups.Period;
+import com.agv.expenses.service.model.SpendingRollup;
+import com.agv.expenses.service.model.StoredTransaction;
+import com.agv.expenses.service.model.TransactionQuery;
+import com.agv.expenses.service.model.TransactionQueryResponse;
+import com.agv.expenses.service.model.TransactionRecord;
+import com.agv.expenses.service.model.TransactionType;
+
+class TransactionStoreTest {
+
+    private TransactionStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new TransactionStore();
+        ReflectionTestUtils.setField(store, "spendingRollups", new SpendingRollups());
+        // Not opened, rows pass through
+        ReflectionTestUtils.setField(store, "ledger", new TransactionLedger());
+        store.add("statement-1", List.of(
+                txn("2025-04-03", 150000, "XXXXXXXX4990", "RENT", TransactionType.DEBIT),
+                txn("2025-04-01", 25050, "XXXXXXXX4990", "SWIGGY", TransactionType.DEBIT),
+                txn("2025-05-10", 500000, "XXXXXXXX4990", "SALARY", TransactionType.CREDIT)));
+        store.add("statement-2", List.of(
+                txn("2025-04-02", 99900, "XXXXXXXX0793", "KSEB", TransactionType.DEBIT),
+                TransactionRecord.builder().from("ICICI - Santhome").paidTo("NO DATE").build()));
+    }
+
+    @Test
+    void filtersByDateAccountAndAmount() {
+        TransactionQueryResponse april = store.query(TransactionQuery.builder()
+                .fromDate(LocalDate.of(2025, 4, 1)).toDate(LocalDate.of(2025, 4, 30)).build());
+        assertArrayEquals(new String[] { "SWIGGY", "KSEB", "RENT" }, paidTo(april));
+        assertEquals("2749.50", april.getMatchTotal());
+
+        TransactionQueryResponse account = store.query(TransactionQuery.builder()
+                .account("XXXXXXXX4990").minAmountPaise(100000L).build());
+        assertArrayEquals(new String[] { "RENT", "SALARY" }, paidTo(account));
+        assertEquals("03 Apr 2025", account.getRows()[0].getTxnDate());
+
+        TransactionQueryResponse credits = store.query(TransactionQuery.builder()
+                .type(TransactionType.CREDIT).maxAmountPaise(500000L).limit(1).build());
+        assertArrayEquals(new String[] { "SALARY" }, paidTo(credits));
+
+        assertEquals(1, store.query(TransactionQuery.builder().account("ICICI - Santhome").build()).getMatchCount());
+        assertEquals(0, store.query(TransactionQuery.builder().account("unknown").build()).getMatchCount());
+    }
+
+    @Test
+    void addsEachStatementOnce() {
+        assertEquals(0, store.add("statement-1",
+                List.of(txn("2025-04-03", 150000, "XXXXXXXX4990", "RENT", TransactionType.DEBIT))));
+        assertEquals(5, store.size());
+        TransactionQueryResponse all = store.query(TransactionQuery.builder().limit(2).build());
+        assertEquals(5, all.getMatchCount());
+        assertEquals(2, all.getRows().length);
+        // Rows without a date sort first
+        assertEquals("NO DATE", all.getRows()[0].getPaidTo());
+    }
+
+    @Test
+    void queriesAreNotHeldUpByTheLedger() throws Exception {
+        CountDownLatch appending = new CountDownLatch(1);
+        CountDownLatch forced = new CountDownLatch(1);
+        ReflectionTestUtils.setField(store, "ledger", new TransactionLedger() {
+            @Override
+            public synchronized List<TransactionRecord> append(String sourceKey,
+                    Collection<TransactionRecord> records) {
+                appending.countDown();
+                try {
+                    forced.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ArrayList<>(records);
+            }
+        });
+        CompletableFuture<Integer> added = CompletableFuture.supplyAsync(() -> store.add("statement-3",
+                List.of(txn("2025-06-01", 1000, "XXXXXXXX4990", "TEA", TransactionType.DEBIT))));
+        appending.await(10, TimeUnit.SECONDS);
+
+        // Answered while the statement is being forced to disk
+        assertEquals(5, store.query(TransactionQuery.builder().build()).getMatchCount());
+        // Another add of the statement in the meantime
+        assertEquals(0, store.add("statement-3",
+                List.of(txn("2025-06-01", 1000, "XXXXXXXX4990", "TEA", TransactionType.DEBIT))));
+        forced.countDown();
+        assertEquals(1, added.get(10, TimeUnit.SECONDS));
+        assertEquals(6, store.size());
+    }
+
+    @Test
+    void updatesThePayeeOfPhonePeRows() {
+        SpendingRollups rollups = new SpendingRollups();
+        ReflectionTestUtils.setField(store, "spendingRollups", rollups);
+        store.add("phonepe-1", List.of(phonePe("T1", 45000, "SHOP"), phonePe("T2", 9900, "SHOP")));
+
+        assertEquals(1, store.updatePayees(List.of(phonePe("T1", 45000, "SHOP | SWIGGY"),
+                phonePe("T2", 9900, "SHOP"), phonePe("T9", 100, "UNKNOWN"))));
+
+        assertEquals("SHOP | SWIGGY", store.getPhonePeRows().get("T1").getPaidTo());
+        assertArrayEquals(new String[] { "SHOP | SWIGGY", "SHOP" }, paidTo(store.query(TransactionQuery.builder()
+                .fromDate(LocalDate.of(2025, 4, 10)).toDate(LocalDate.of(2025, 4, 10)).build())));
+        List<SpendingRollup> payees = rollups.query(Period.ALL, GroupBy.PAYEE, null, null, null);
+        assertEquals(List.of("SHOP", "SHOP | SWIGGY"), payees.stream().map(SpendingRollup::getGroup).toList());
+        assertEquals("99.00", payees.get(0).getDebitTotal());
+        assertEquals(1, payees.get(0).getDebitCount());
+        assertEquals("450.00", payees.get(1).getDebitTotal());
+    }
+
+    @Test
+    void streamedStatementIsAddedInBatchesAsItIsParsed() {
+        ReflectionTestUtils.setField(store, "streamBatchRows", 3);
+        TransactionStore.StatementAppender appender = store.appender("statement-3");
+        assertNull(store.appender("statement-3"));
+        for (int i = 0; i < 10; i++) {
+            appender.add(txn("2025-06-01", 1000, "XXXXXXXX4990", "TEA", TransactionType.DEBIT));
+            // Never more than a batch of the statement is held back
+            assertTrue(appender.buffered() < 3);
+            assertEquals(5 + (i + 1) / 3 * 3, store.size());
+        }
+        assertEquals(10, appender.finish());
+        assertEquals(15, store.size());
+        assertNull(store.appender("statement-3"));
+        assertEquals(0, store.add("statement-3",
+                List.of(txn("2025-06-01", 1000, "XXXXXXXX4990", "TEA", TransactionType.DEBIT))));
+    }
+
+    private static String[] paidTo(TransactionQueryResponse response) {
+        return Arrays.stream(response.getRows()).map(StoredTransaction::getPaidTo).toArray(String[]::new);
+    }
+}
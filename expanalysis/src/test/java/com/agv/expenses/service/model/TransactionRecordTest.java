@@ -0,0 +1,77 @@
+package com.agv.expenses.service.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.agv.expenses.util.ExpenseUtil;
+
+class TransactionRecordTest {
+
+    @Test
+    void convertsToApiPayload() {
+        TransactionRecord txn = TransactionRecord.builder()
+                .date(LocalDate.of(2025, 4, 7))
+                .from("ICICI Santhome AGV")
+                .to("UPI")
+                .paidTo("SWIGGY | merchant@ybl")
+                .amountPaise(ExpenseUtil.toPaise("1,234.50", TransactionRecord.NO_AMOUNT))
+                .account(new String("XXXXXXXX4990"))
+                .orderId("412345678901")
+                .type(TransactionType.DEBIT)
+                .build();
+        PDFExtractPayload payload = txn.toPayload();
+        assertEquals("07 Apr 2025", payload.getTxnDate());
+        assertEquals("1234.50", payload.getAmount());
+        assertEquals("XXXXXXXX4990", payload.getSubscriberID());
+        assertEquals("DEBIT", payload.getTransactionFlag());
+        assertSame("XXXXXXXX4990", txn.getAccount());
+    }
+
+    @Test
+    void amountsAreReportedWithTwoDecimals() {
+        for (String[] amount : new String[][] { { "250", "250.00" }, { "1,250", "1250.00" }, { "45.5", "45.50" },
+                { " 4,234.02 ", "4234.02" }, { "-12", "-12.00" } }) {
+            TransactionRecord txn = TransactionRecord.builder()
+                    .amountPaise(ExpenseUtil.toPaise(amount[0], TransactionRecord.NO_AMOUNT)).build();
+            assertEquals(amount[1], txn.toPayload().getAmount(), amount[0]);
+            assertEquals(amount[1], txn.toSheetRow().get(5), amount[0]);
+        }
+    }
+
+    @Test
+    void missingValuesStayEmpty() {
+        TransactionRecord txn = TransactionRecord.builder().bodyCleaned("23-06-2025###").build();
+        PDFExtractPayload payload = txn.toPayload();
+        assertNull(payload.getTxnDate());
+        assertEquals("", payload.getAmount());
+        assertNull(payload.getTransactionFlag());
+
+        List<Object> sheetRow = txn.toSheetRow();
+        assertEquals(ExpenseUtil.DATA_ARRAY_SIZE, sheetRow.size());
+        assertEquals("", sheetRow.get(0));
+        assertEquals("23-06-2025###", sheetRow.get(6));
+        assertEquals(TransactionRecord.NO_AMOUNT, ExpenseUtil.toPaise("1.2.3", TransactionRecord.NO_AMOUNT));
+    }
+
+    @Test
+    void fingerprintIgnoresFormattingAndEnrichment() {
+        TransactionRecord txn = TransactionRecord.builder().date(LocalDate.of(2025, 4, 7)).amountPaise(45000)
+                .account("XXXXXXXX4990").orderId("412345678901").paidTo("Swiggy Ltd").build();
+        assertEquals(txn.fingerprint(), txn.toBuilder().paidTo("SWIGGY-LTD | swiggy@icici").build().fingerprint());
+        assertNotEquals(txn.fingerprint(), txn.toBuilder().amountPaise(45001).build().fingerprint());
+        assertNotEquals(txn.fingerprint(), txn.toBuilder().date(LocalDate.of(2025, 4, 8)).build().fingerprint());
+        // Text cannot shift between account and order id
+        assertNotEquals(txn.fingerprint(),
+                txn.toBuilder().account("XXXXXXXX49904").orderId("12345678901").build().fingerprint());
+        assertEquals("2025040745000", ExpenseUtil.generateOrderId(LocalDate.of(2025, 4, 7), 45000));
+        assertEquals(ExpenseUtil.generateOrderId(LocalDate.of(2025, 4, 7), "0.05"),
+                ExpenseUtil.generateOrderId(LocalDate.of(2025, 4, 7), 5));
+    }
+}